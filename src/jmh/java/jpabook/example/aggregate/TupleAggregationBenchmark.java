@@ -0,0 +1,125 @@
+package jpabook.example.aggregate;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import jpabook.example.ExampleApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static jpabook.example.domain.QMember.member;
+
+/**
+ * 같은 H2 테이블의 팀별 평균 나이 집계를 세 경로로 비교한다.
+ * - tuple: Querydsl fetch()로 List&lt;Tuple&gt;을 만든 뒤 HashMap으로 집계
+ * - jpql: 같은 Querydsl 쿼리를 PrimitiveResultReader가 SQL로 번역해서 ResultSet에서 바로 읽음
+ * - nativeSql: ResultSet에서 getLong, getInt로 읽음
+ * 행 당 할당량은 -prof gc의 gc.alloc.rate.norm / rows 로 확인한다.
+ *
+ * ./gradlew jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TupleAggregationBenchmark {
+
+    @Param({"200000"})
+    int rows;
+
+    @Param({"1000"})
+    int teams;
+
+    ConfigurableApplicationContext context;
+    JPAQueryFactory queryFactory;
+    PrimitiveResultReader reader;
+    TransactionTemplate readOnly;
+    PrimitiveColumns columns;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(ExampleApplication.class)
+                .run("--spring.datasource.url=jdbc:h2:mem:aggregate;DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.hibernate.ddl-auto=create",
+                        "--logging.level.org.hibernate.SQL=warn",
+                        "--decorator.datasource.p6spy.enable-logging=false",
+                        "--spring.jpa.properties.jpabook.order-id.node=0",
+                        "--jpabook.cdc.enabled=false");
+        queryFactory = context.getBean(JPAQueryFactory.class);
+        reader = context.getBean(PrimitiveResultReader.class);
+        readOnly = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnly.setReadOnly(true);
+
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        jdbc.update("insert into team (team_id, name) select x, 'team' || x from system_range(1, ?)", teams);
+        jdbc.update("insert into member (member_id, name, age, team_id) "
+                + "select ? + x, 'member' || x, mod(x * 7, 70) + 10, mod(x, ?) + 1 from system_range(1, ?)",
+                teams, teams, rows);
+
+        columns = PrimitiveColumns.of(member.team.id, member.age);
+        // 버퍼를 한 번 키워두면 이후 반복에서는 배열을 다시 할당하지 않는다.
+        jpql();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Map<Long, double[]> tuple() {
+        return readOnly.execute(status -> {
+            List<Tuple> result = queryFactory.select(member.team.id, member.age)
+                    .from(member)
+                    .fetch();
+
+            Map<Long, double[]> groups = new HashMap<>();
+            for (Tuple tuple : result) {
+                double[] group = groups.computeIfAbsent(tuple.get(member.team.id), key -> new double[2]);
+                group[0]++;
+                group[1] += tuple.get(member.age);
+            }
+            return groups;
+        });
+    }
+
+    @Benchmark
+    public LongGroupAggregator jpql() {
+        return readOnly.execute(status -> {
+            columns.clear();
+            reader.read(queryFactory.select(member.team.id, member.age).from(member), columns);
+            return columns.groupBy(member.team.id, member.age);
+        });
+    }
+
+    @Benchmark
+    public LongGroupAggregator nativeSql() {
+        return readOnly.execute(status -> {
+            columns.clear();
+            reader.read("select team_id, age from member", columns);
+            return columns.groupBy(member.team.id, member.age);
+        });
+    }
+}
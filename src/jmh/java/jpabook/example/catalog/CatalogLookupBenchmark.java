@@ -0,0 +1,75 @@
+package jpabook.example.catalog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 메모리 매핑한 카탈로그에서 아이디로 이름을 찾는 비용
+ * gc.alloc.rate.norm이 0에 가까워야 한다.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CatalogLookupBenchmark {
+
+    @Param({"1000000"})
+    int entries;
+
+    Path file;
+    CatalogSnapshot snapshot;
+    CatalogView view;
+    long[] ids;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        List<CatalogEntry> items = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            items.add(new CatalogEntry(i * 2L + 1, "item" + i));
+        }
+        file = Files.createTempFile("catalog", ".bin");
+        CatalogSnapshotWriter.write(file, List.of(new CatalogEntry(1, "team")), items);
+        snapshot = CatalogSnapshot.open(file);
+        view = snapshot.newView();
+
+        SplittableRandom random = new SplittableRandom(42);
+        ids = new long[4096];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = random.nextInt(entries) * 2L + 1;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public int lookup() {
+        long id = ids[next++ & (ids.length - 1)];
+        snapshot.findItem(id, view);
+        return view.getNameLength();
+    }
+}
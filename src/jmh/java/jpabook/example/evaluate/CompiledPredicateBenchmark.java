@@ -0,0 +1,94 @@
+package jpabook.example.evaluate;
+
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.Predicate;
+import jpabook.example.domain.Member;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import static jpabook.example.domain.QMember.member;
+
+/**
+ * 컴파일한 Querydsl 조건, 정렬을 직접 작성한 람다와 비교한다.
+ * 행당 비용 차이가 작아야 하고, 컴파일은 캐시되므로 조건을 만드는 비용만 더해진다.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompiledPredicateBenchmark {
+
+    @Param({"10000"})
+    int rows;
+
+    List<Member> members;
+    ExpressionCompiler compiler;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(42);
+        members = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            members.add(new Member("member" + random.nextInt(rows), random.nextInt(80), null));
+        }
+        compiler = new ExpressionCompiler(1000);
+    }
+
+    @Benchmark
+    public int compiledFilter() {
+        Predicate where = member.name.startsWith("member1").and(member.age.gt(20));
+        java.util.function.Predicate<Member> filter = compiler.predicate(Member.class, where);
+        int count = 0;
+        for (Member m : members) {
+            if (filter.test(m)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int handwrittenFilter() {
+        int count = 0;
+        for (Member m : members) {
+            if (m.getName() != null && m.getName().startsWith("member1") && m.getAge() > 20) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public Member compiledSort() {
+        OrderSpecifier<?>[] orders = {member.age.desc(), member.name.asc()};
+        List<Member> copy = new ArrayList<>(members);
+        copy.sort(compiler.comparator(Member.class, orders));
+        return copy.get(0);
+    }
+
+    @Benchmark
+    public Member handwrittenSort() {
+        List<Member> copy = new ArrayList<>(members);
+        copy.sort(Comparator.comparingInt(Member::getAge).reversed()
+                .thenComparing(Member::getName, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return copy.get(0);
+    }
+}
@@ -1,13 +1,24 @@
 package jpabook.example;
 
+import jpabook.example.startup.StartupTimeline;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 
 @SpringBootApplication
 public class ExampleApplication {
 
 	public static void main(String[] args) {
-		SpringApplication.run(ExampleApplication.class, args);
+		createApplication().run(args);
+	}
+
+	static SpringApplication createApplication() {
+		StartupTimeline startupTimeline = new StartupTimeline();
+		SpringApplication application = new SpringApplication(ExampleApplication.class);
+		application.setApplicationStartup(new BufferingApplicationStartup(2048));
+		application.addListeners(startupTimeline);
+		application.addInitializers(context -> context.getBeanFactory().registerSingleton("startupTimeline", startupTimeline));
+		return application;
 	}
 
 }
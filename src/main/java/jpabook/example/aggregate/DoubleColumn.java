@@ -0,0 +1,70 @@
+package jpabook.example.aggregate;
+
+import com.querydsl.core.types.Expression;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+public final class DoubleColumn extends PrimitiveColumn {
+
+    private double[] values = new double[INITIAL_CAPACITY];
+
+    DoubleColumn(Expression<?> expression) {
+        super(expression);
+    }
+
+    public void add(double value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, grow(values.length));
+        }
+        values[size++] = value;
+    }
+
+    public double get(int row) {
+        return values[row];
+    }
+
+    public double sum() {
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    public double min() {
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            min = Math.min(min, values[i]);
+        }
+        return min;
+    }
+
+    public double max() {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+
+    @Override
+    void read(ResultSet rs, int columnIndex) throws SQLException {
+        double value = rs.getDouble(columnIndex);
+        if (rs.wasNull()) {
+            markNull();
+        }
+        add(value);
+    }
+
+    @Override
+    void append(Object value) {
+        if (value == null) {
+            markNull();
+            add(0.0);
+        } else {
+            add(((Number) value).doubleValue());
+        }
+    }
+}
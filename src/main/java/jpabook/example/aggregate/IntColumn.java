@@ -0,0 +1,70 @@
+package jpabook.example.aggregate;
+
+import com.querydsl.core.types.Expression;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+public final class IntColumn extends PrimitiveColumn {
+
+    private int[] values = new int[INITIAL_CAPACITY];
+
+    IntColumn(Expression<?> expression) {
+        super(expression);
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, grow(values.length));
+        }
+        values[size++] = value;
+    }
+
+    public int get(int row) {
+        return values[row];
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    public int min() {
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            min = Math.min(min, values[i]);
+        }
+        return min;
+    }
+
+    public int max() {
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+
+    @Override
+    void read(ResultSet rs, int columnIndex) throws SQLException {
+        int value = rs.getInt(columnIndex);
+        if (rs.wasNull()) {
+            markNull();
+        }
+        add(value);
+    }
+
+    @Override
+    void append(Object value) {
+        if (value == null) {
+            markNull();
+            add(0);
+        } else {
+            add(((Number) value).intValue());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package jpabook.example.aggregate;
+
+import com.querydsl.core.types.Expression;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+public final class LongColumn extends PrimitiveColumn {
+
+    private long[] values = new long[INITIAL_CAPACITY];
+
+    LongColumn(Expression<?> expression) {
+        super(expression);
+    }
+
+    public void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, grow(values.length));
+        }
+        values[size++] = value;
+    }
+
+    public long get(int row) {
+        return values[row];
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    public long min() {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            min = Math.min(min, values[i]);
+        }
+        return min;
+    }
+
+    public long max() {
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+
+    @Override
+    void read(ResultSet rs, int columnIndex) throws SQLException {
+        long value = rs.getLong(columnIndex);
+        if (rs.wasNull()) {
+            markNull();
+        }
+        add(value);
+    }
+
+    @Override
+    void append(Object value) {
+        if (value == null) {
+            markNull();
+            add(0L);
+        } else {
+            add(((Number) value).longValue());
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package jpabook.example.aggregate;
+
+import java.util.Arrays;
+
+/**
+ * long 키에 대한 count, sum, min, max를 기본형 배열로 보관하는 오픈 어드레싱 해시맵
+ */
+public final class LongGroupAggregator {
+
+    private static final int EMPTY = -1;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] slots;
+    private long[] keys;
+    private long[] counts;
+    private double[] sums;
+    private double[] mins;
+    private double[] maxs;
+    private int size;
+
+    public LongGroupAggregator() {
+        this(16);
+    }
+
+    public LongGroupAggregator(int expectedGroups) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedGroups / LOAD_FACTOR)) - 1) << 1;
+        slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        keys = new long[expectedGroups];
+        counts = new long[expectedGroups];
+        sums = new double[expectedGroups];
+        mins = new double[expectedGroups];
+        maxs = new double[expectedGroups];
+    }
+
+    public void add(long key, double value) {
+        int group = groupOf(key);
+        if (group == EMPTY) {
+            group = insert(key);
+            mins[group] = value;
+            maxs[group] = value;
+        } else {
+            mins[group] = Math.min(mins[group], value);
+            maxs[group] = Math.max(maxs[group], value);
+        }
+        counts[group]++;
+        sums[group] += value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(long key) {
+        return groupOf(key) != EMPTY;
+    }
+
+    /**
+     * 처음 등장한 순서대로 키를 반환한다.
+     */
+    public long[] keys() {
+        return Arrays.copyOf(keys, size);
+    }
+
+    public long count(long key) {
+        int group = groupOf(key);
+        return group == EMPTY ? 0 : counts[group];
+    }
+
+    public double sum(long key) {
+        int group = groupOf(key);
+        return group == EMPTY ? 0 : sums[group];
+    }
+
+    public double avg(long key) {
+        int group = groupOf(key);
+        return group == EMPTY ? Double.NaN : sums[group] / counts[group];
+    }
+
+    public double min(long key) {
+        int group = groupOf(key);
+        return group == EMPTY ? Double.NaN : mins[group];
+    }
+
+    public double max(long key) {
+        int group = groupOf(key);
+        return group == EMPTY ? Double.NaN : maxs[group];
+    }
+
+    private int groupOf(long key) {
+        int mask = slots.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int group = slots[slot];
+            if (group == EMPTY || keys[group] == key) {
+                return group;
+            }
+        }
+    }
+
+    private int insert(long key) {
+        if (size == keys.length) {
+            int capacity = keys.length + (keys.length >> 1) + 1;
+            keys = Arrays.copyOf(keys, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            sums = Arrays.copyOf(sums, capacity);
+            mins = Arrays.copyOf(mins, capacity);
+            maxs = Arrays.copyOf(maxs, capacity);
+        }
+        if (size + 1 > slots.length * LOAD_FACTOR) {
+            rehash(slots.length << 1);
+        }
+        int group = size++;
+        keys[group] = key;
+        place(key, group);
+        return group;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        for (int group = 0; group < size; group++) {
+            place(keys[group], group);
+        }
+    }
+
+    private void place(long key, int group) {
+        int mask = slots.length - 1;
+        int slot = hash(key) & mask;
+        while (slots[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = group;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
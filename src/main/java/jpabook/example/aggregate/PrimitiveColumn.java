@@ -0,0 +1,58 @@
+package jpabook.example.aggregate;
+
+import com.querydsl.core.types.Expression;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.BitSet;
+
+/**
+ * 조회 결과 한 컬럼을 박싱 없이 담는 버퍼
+ * null은 별도 비트셋으로 표시하고 값은 0으로 채운다.
+ */
+public abstract class PrimitiveColumn {
+
+    static final int INITIAL_CAPACITY = 64;
+
+    private final Expression<?> expression;
+    private BitSet nulls;
+    int size;
+
+    PrimitiveColumn(Expression<?> expression) {
+        this.expression = expression;
+    }
+
+    public Expression<?> getExpression() {
+        return expression;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isNull(int row) {
+        return nulls != null && nulls.get(row);
+    }
+
+    public void clear() {
+        size = 0;
+        if (nulls != null) {
+            nulls.clear();
+        }
+    }
+
+    abstract void read(ResultSet rs, int columnIndex) throws SQLException;
+
+    abstract void append(Object value);
+
+    void markNull() {
+        if (nulls == null) {
+            nulls = new BitSet();
+        }
+        nulls.set(size);
+    }
+
+    static int grow(int capacity) {
+        return capacity + (capacity >> 1) + 1;
+    }
+}
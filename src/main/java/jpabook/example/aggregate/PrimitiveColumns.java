@@ -0,0 +1,142 @@
+package jpabook.example.aggregate;
+
+import com.querydsl.core.types.Expression;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Querydsl 표현식을 키로 하는 컬럼 버퍼 묶음
+ * select 절의 순서와 같은 순서로 컬럼을 만들고, 표현식 타입에 따라 int, long, double 버퍼를 고른다.
+ * clear() 후 재사용하면 배열을 다시 할당하지 않는다.
+ */
+public final class PrimitiveColumns {
+
+    private final Expression<?>[] expressions;
+    private final PrimitiveColumn[] columns;
+    private final Map<Expression<?>, PrimitiveColumn> byIdentity = new IdentityHashMap<>();
+
+    private PrimitiveColumns(Expression<?>[] expressions) {
+        this.expressions = expressions;
+        this.columns = new PrimitiveColumn[expressions.length];
+        for (int i = 0; i < expressions.length; i++) {
+            columns[i] = newColumn(expressions[i]);
+            byIdentity.put(expressions[i], columns[i]);
+        }
+    }
+
+    public static PrimitiveColumns of(Expression<?>... expressions) {
+        return new PrimitiveColumns(expressions.clone());
+    }
+
+    public Expression<?>[] getExpressions() {
+        return expressions.clone();
+    }
+
+    public int getRowCount() {
+        return columns.length == 0 ? 0 : columns[0].size();
+    }
+
+    public IntColumn ints(Expression<?> expression) {
+        return column(expression, IntColumn.class);
+    }
+
+    public LongColumn longs(Expression<?> expression) {
+        return column(expression, LongColumn.class);
+    }
+
+    public DoubleColumn doubles(Expression<?> expression) {
+        return column(expression, DoubleColumn.class);
+    }
+
+    public void clear() {
+        for (PrimitiveColumn column : columns) {
+            column.clear();
+        }
+    }
+
+    /**
+     * 팀 아이디처럼 long 컬럼을 키로 value 컬럼을 그룹 집계한다.
+     */
+    public LongGroupAggregator groupBy(Expression<?> key, Expression<?> value) {
+        LongColumn keys = longs(key);
+        PrimitiveColumn values = column(value, PrimitiveColumn.class);
+        LongGroupAggregator aggregator = new LongGroupAggregator();
+        int rowCount = getRowCount();
+        for (int row = 0; row < rowCount; row++) {
+            if (keys.isNull(row) || values.isNull(row)) {
+                continue;
+            }
+            aggregator.add(keys.get(row), valueAt(values, row));
+        }
+        return aggregator;
+    }
+
+    void readRow(ResultSet rs) throws SQLException {
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].read(rs, i + 1);
+        }
+    }
+
+    void appendRow(Object[] row) {
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].append(row[i]);
+        }
+    }
+
+    void appendValue(Object value) {
+        columns[0].append(value);
+    }
+
+    int getColumnCount() {
+        return columns.length;
+    }
+
+    private <T extends PrimitiveColumn> T column(Expression<?> expression, Class<T> type) {
+        PrimitiveColumn column = byIdentity.get(expression);
+        if (column == null) {
+            for (int i = 0; i < expressions.length; i++) {
+                if (expressions[i].equals(expression)) {
+                    column = columns[i];
+                    break;
+                }
+            }
+        }
+        if (column == null) {
+            throw new IllegalArgumentException("Unknown expression: " + expression);
+        }
+        if (!type.isInstance(column)) {
+            throw new IllegalArgumentException(expression + " is " + column.getClass().getSimpleName());
+        }
+        return type.cast(column);
+    }
+
+    private static double valueAt(PrimitiveColumn column, int row) {
+        if (column instanceof IntColumn) {
+            return ((IntColumn) column).get(row);
+        }
+        if (column instanceof LongColumn) {
+            return ((LongColumn) column).get(row);
+        }
+        return ((DoubleColumn) column).get(row);
+    }
+
+    private static PrimitiveColumn newColumn(Expression<?> expression) {
+        Class<?> type = expression.getType();
+        if (type == Integer.class || type == int.class || type == Short.class || type == Byte.class) {
+            return new IntColumn(expression);
+        }
+        if (type == Long.class || type == long.class || type == BigInteger.class) {
+            return new LongColumn(expression);
+        }
+        if (type == Double.class || type == double.class || type == Float.class
+                || type == BigDecimal.class || Number.class.isAssignableFrom(type)) {
+            return new DoubleColumn(expression);
+        }
+        throw new IllegalArgumentException("Not a numeric expression: " + expression + " (" + type.getName() + ")");
+    }
+}
@@ -0,0 +1,262 @@
+package jpabook.example.aggregate;
+
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.jpa.JPQLQuery;
+import com.querydsl.jpa.JPQLSerializer;
+import com.querydsl.jpa.impl.AbstractJPAQuery;
+import com.querydsl.jpa.impl.JPAProvider;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.engine.query.spi.HQLQueryPlan;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AutoFlushEvent;
+import org.hibernate.event.spi.AutoFlushEventListener;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.hql.spi.ParameterTranslations;
+import org.hibernate.hql.spi.PositionalParameterInformation;
+import org.hibernate.hql.spi.QueryTranslator;
+import org.hibernate.type.Type;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 조회 결과를 List&lt;Tuple&gt;로 만들지 않고 PrimitiveColumns에 바로 채운다.
+ */
+@Component
+public class PrimitiveResultReader {
+
+    private static final int FETCH_SIZE = 1_000;
+
+    @PersistenceContext
+    EntityManager em;
+
+    /**
+     * Querydsl 쿼리를 Hibernate가 만드는 SQL로 번역해서 ResultSet에서 바로 읽는다.
+     * select 절은 columns를 만든 표현식과 같은 순서여야 한다.
+     * in 절의 컬렉션 파라미터는 원소 수만큼 자리표시자를 늘린다.
+     * 여러 SQL로 나뉘는 다형 쿼리와 빈 컬렉션 파라미터는 SQL로 바꿀 수 없어서 커서로 읽는다.
+     */
+    public PrimitiveColumns read(JPQLQuery<?> query, PrimitiveColumns columns) {
+        if (!(query instanceof AbstractJPAQuery)) {
+            throw new IllegalArgumentException("Unsupported query type: " + query.getClass().getName());
+        }
+        QueryMetadata metadata = query.getMetadata();
+        JPQLSerializer serializer = new JPQLSerializer(JPAProvider.getTemplates(em), em);
+        serializer.serialize(metadata, false, null);
+
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        HQLQueryPlan plan = session.getFactory().getQueryPlanCache()
+                .getHQLQueryPlan(serializer.toString(), false, Collections.emptyMap());
+        if (plan.getTranslators().length != 1 || hasEmptyCollectionParameter(serializer, metadata)) {
+            return scroll((AbstractJPAQuery<?, ?>) query, columns);
+        }
+        QueryTranslator translator = plan.getTranslators()[0];
+        Binding[] bindings = bindings(translator, serializer, metadata);
+        String sql = expand(translator.getSQLString(), bindings);
+        autoFlush(session, translator);
+
+        Long limit = metadata.getModifiers().getLimit();
+        Long offset = metadata.getModifiers().getOffset();
+        session.doWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setFetchSize(FETCH_SIZE);
+                if (limit != null) {
+                    ps.setMaxRows(Math.toIntExact(limit + (offset != null ? offset : 0)));
+                }
+                bind(ps, bindings, session);
+                try (ResultSet rs = ps.executeQuery()) {
+                    for (long skip = offset != null ? offset : 0; skip > 0 && rs.next(); skip--) {
+                        // offset만큼 건너뛴다.
+                    }
+                    while (rs.next()) {
+                        columns.readRow(rs);
+                    }
+                }
+            }
+        });
+        return columns;
+    }
+
+    /**
+     * 네이티브 SQL은 JDBC ResultSet에서 getInt, getLong, getDouble로 바로 읽어서 박싱이 없다.
+     */
+    public PrimitiveColumns read(String sql, PrimitiveColumns columns, Object... parameters) {
+        em.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setFetchSize(FETCH_SIZE);
+                for (int i = 0; i < parameters.length; i++) {
+                    ps.setObject(i + 1, parameters[i]);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        columns.readRow(rs);
+                    }
+                }
+            }
+        });
+        return columns;
+    }
+
+    /**
+     * SQL로 바꿀 수 없는 쿼리는 forward-only 커서로 읽는다. 값마다 박싱된다.
+     */
+    @SuppressWarnings("deprecation")
+    private PrimitiveColumns scroll(AbstractJPAQuery<?, ?> query, PrimitiveColumns columns) {
+        org.hibernate.query.Query<?> hibernateQuery = query.createQuery()
+                .unwrap(org.hibernate.query.Query.class)
+                .setFetchSize(FETCH_SIZE)
+                .setReadOnly(true);
+        // Querydsl이 등록한 Tuple 변환기를 제거해서 Object[] 행을 그대로 읽는다.
+        hibernateQuery.setResultTransformer(null);
+
+        try (ScrollableResults results = hibernateQuery.scroll(ScrollMode.FORWARD_ONLY)) {
+            if (columns.getColumnCount() == 1) {
+                while (results.next()) {
+                    columns.appendValue(results.get(0));
+                }
+            } else {
+                while (results.next()) {
+                    columns.appendRow(results.get());
+                }
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * JDBC로 바로 실행하면 Hibernate의 자동 flush가 빠지므로 HQL 쿼리와 같은 규칙으로 직접 발생시킨다.
+     */
+    private static void autoFlush(SessionImplementor session, QueryTranslator translator) {
+        if (!session.isTransactionInProgress()) {
+            return;
+        }
+        AutoFlushEvent event = new AutoFlushEvent(translator.getQuerySpaces(), (EventSource) session);
+        session.getFactory().getServiceRegistry().getService(EventListenerRegistry.class)
+                .getEventListenerGroup(EventType.AUTO_FLUSH)
+                .fireEventOnEachListener(event, AutoFlushEventListener::onAutoFlush);
+    }
+
+    private static boolean hasEmptyCollectionParameter(JPQLSerializer serializer, QueryMetadata metadata) {
+        for (Object constant : serializer.getConstantToAllLabels().keySet()) {
+            Object value = value(constant, metadata);
+            if (value instanceof Collection && ((Collection<?>) value).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * SQL의 자리표시자 순서대로 값과 타입을 모은다. source location이 SQL 안의 자리표시자 순번이다.
+     */
+    private static Binding[] bindings(QueryTranslator translator, JPQLSerializer serializer, QueryMetadata metadata) {
+        ParameterTranslations translations = translator.getParameterTranslations();
+        Binding[] bindings = new Binding[placeholders(translator.getSQLString())];
+        for (Map.Entry<Object, String> entry : serializer.getConstantToAllLabels().entrySet()) {
+            int label = Integer.parseInt(entry.getValue().replaceAll("\\D", ""));
+            PositionalParameterInformation information = translations.getPositionalParameterInformation(label);
+            if (information == null) {
+                continue;
+            }
+            Binding binding = new Binding(value(entry.getKey(), metadata), information.getExpectedType());
+            for (int location : information.getSourceLocations()) {
+                bindings[location] = binding;
+            }
+        }
+        for (int i = 0; i < bindings.length; i++) {
+            if (bindings[i] == null) {
+                throw new IllegalStateException("unbound parameter " + (i + 1) + " in " + translator.getSQLString());
+            }
+        }
+        return bindings;
+    }
+
+    /**
+     * 컬렉션 값에 해당하는 자리표시자를 원소 수만큼 늘린다. 문자열 리터럴 안의 ?는 건너뛴다.
+     */
+    private static String expand(String sql, Binding[] bindings) {
+        StringBuilder expanded = new StringBuilder(sql.length());
+        boolean quoted = false;
+        int placeholder = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (c == '?' && !quoted) {
+                Object value = bindings[placeholder++].value;
+                if (value instanceof Collection) {
+                    expanded.append(String.join(", ", Collections.nCopies(((Collection<?>) value).size(), "?")));
+                    continue;
+                }
+            }
+            expanded.append(c);
+        }
+        return expanded.toString();
+    }
+
+    private static int placeholders(String sql) {
+        boolean quoted = false;
+        int count = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (c == '?' && !quoted) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void bind(PreparedStatement ps, Binding[] bindings, SessionImplementor session)
+            throws java.sql.SQLException {
+        int index = 1;
+        for (Binding binding : bindings) {
+            if (binding.value instanceof Collection) {
+                for (Object element : (Collection<?>) binding.value) {
+                    binding.set(ps, element, index++, session);
+                }
+            } else {
+                binding.set(ps, binding.value, index++, session);
+            }
+        }
+    }
+
+    private static Object value(Object constant, QueryMetadata metadata) {
+        if (constant instanceof ParamExpression) {
+            return metadata.getParams().get(constant);
+        }
+        return constant;
+    }
+
+    private static class Binding {
+
+        final Object value;
+        final Type type;
+
+        Binding(Object value, Type type) {
+            this.value = value;
+            this.type = type;
+        }
+
+        void set(PreparedStatement ps, Object value, int index, SessionImplementor session)
+                throws java.sql.SQLException {
+            if (type != null) {
+                type.nullSafeSet(ps, value, index, session);
+            } else {
+                ps.setObject(index, value);
+            }
+        }
+    }
+}
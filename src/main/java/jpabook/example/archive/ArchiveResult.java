@@ -0,0 +1,24 @@
+package jpabook.example.archive;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Duration;
+import java.time.Instant;
+
+@Getter
+@ToString
+public class ArchiveResult {
+
+    private final Instant cutoff;
+    private final long rows;
+    private final int chunks;
+    private final Duration elapsed;
+
+    public ArchiveResult(Instant cutoff, long rows, int chunks, Duration elapsed) {
+        this.cutoff = cutoff;
+        this.rows = rows;
+        this.chunks = chunks;
+        this.elapsed = elapsed;
+    }
+}
@@ -0,0 +1,120 @@
+package jpabook.example.archive;
+
+import jpabook.example.domain.ArchivedOrder;
+import jpabook.example.domain.Order;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.query.NativeQuery;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * 보관 기간이 지난 파티션의 주문을 orders에서 orders_archive로 옮긴다.
+ *
+ * 파티션 경계(jpabook.archive.partition-length)에 맞춰 통째로 옮기므로 한 파티션이 두 테이블에 나뉘어 있지 않다.
+ * chunk-size 건씩 id 순서로 insert-select 후 delete 하고 청크마다 커밋한다. 중간에 멈춰도 다시 실행하면 이어서 옮긴다.
+ * 시퀀스로 만들어진 이전 주문 id는 EPOCH 이전 시각으로 해석되므로 가장 먼저 옮겨진다.
+ */
+@Slf4j
+@Component
+public class OrderArchiver {
+
+    private static final String COLUMNS = "order_id, member_id, item_id, quantity";
+
+    @PersistenceContext
+    EntityManager em;
+
+    private final TransactionTemplate transactionTemplate;
+    private final Duration partitionLength;
+    private final Duration retention;
+    private final int chunkSize;
+
+    public OrderArchiver(TransactionTemplate transactionTemplate,
+                         @Value("${jpabook.archive.partition-length:30d}") Duration partitionLength,
+                         @Value("${jpabook.archive.retention:365d}") Duration retention,
+                         @Value("${jpabook.archive.chunk-size:1000}") int chunkSize) {
+        this.transactionTemplate = transactionTemplate;
+        this.partitionLength = partitionLength;
+        this.retention = retention;
+        this.chunkSize = chunkSize;
+    }
+
+    public Duration getPartitionLength() {
+        return partitionLength;
+    }
+
+    /**
+     * retention보다 오래된 파티션을 옮긴다. 스케줄러에서 주기적으로 호출하면 된다.
+     */
+    public ArchiveResult archiveColdPartitions() {
+        return archiveBefore(Instant.now().minus(retention));
+    }
+
+    /**
+     * cutoff가 속한 파티션 이전의 파티션을 모두 옮긴다.
+     */
+    public ArchiveResult archiveBefore(Instant cutoff) {
+        long start = System.nanoTime();
+        OrderPartition boundary = OrderPartition.containing(cutoff, partitionLength);
+        long rows = 0;
+        int chunks = 0;
+        while (true) {
+            Long moved = transactionTemplate.execute(status -> moveChunk(boundary.getFromId()));
+            if (moved == null || moved == 0) {
+                break;
+            }
+            rows += moved;
+            chunks++;
+        }
+        ArchiveResult result = new ArchiveResult(boundary.getStart(), rows, chunks, Duration.ofNanos(System.nanoTime() - start));
+        log.info("archived orders before {}: {} rows in {} chunks", boundary.getStart(), rows, chunks);
+        return result;
+    }
+
+    /**
+     * 이 값보다 작은 id는 orders_archive에 있을 수 있다. 조회 범위가 이보다 크면 보관 테이블을 읽지 않아도 된다.
+     * 다른 인스턴스가 옮기거나 테이블을 다시 만들 수 있으므로 캐시하지 않고 매번 읽는다. 기본 키의 max라 인덱스로 끝난다.
+     */
+    public long getWatermark() {
+        Number max = (Number) em.createNativeQuery("select max(order_id) from orders_archive").getSingleResult();
+        return max == null ? 0 : max.longValue() + 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private long moveChunk(long boundaryId) {
+        List<Number> ids = em.createNativeQuery("select order_id from orders where order_id < ? order by order_id")
+                .setParameter(1, boundaryId)
+                .setMaxResults(chunkSize)
+                .getResultList();
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        long last = ids.get(ids.size() - 1).longValue();
+
+        int inserted = synchronizedWith(em.createNativeQuery("insert into orders_archive (" + COLUMNS + ") "
+                + "select " + COLUMNS + " from orders where order_id <= ?"), ArchivedOrder.class)
+                .setParameter(1, last)
+                .executeUpdate();
+        int deleted = synchronizedWith(em.createNativeQuery("delete from orders where order_id <= ?"), Order.class)
+                .setParameter(1, last)
+                .executeUpdate();
+        if (inserted != deleted) {
+            throw new IllegalStateException("archived " + inserted + " orders but deleted " + deleted);
+        }
+        return deleted;
+    }
+
+    /**
+     * 네이티브 DML이 2차 캐시 전체를 비우지 않도록 영향을 받는 엔티티만 알려 준다.
+     */
+    private static NativeQuery<?> synchronizedWith(Query query, Class<?> entityClass) {
+        return query.unwrap(NativeQuery.class).addSynchronizedEntityClass(entityClass);
+    }
+}
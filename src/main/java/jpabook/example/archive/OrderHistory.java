@@ -0,0 +1,133 @@
+package jpabook.example.archive;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.JPQLQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import jpabook.example.shard.SnowflakeIdAllocator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static jpabook.example.domain.QArchivedOrder.archivedOrder;
+import static jpabook.example.domain.QOrder.order;
+
+/**
+ * 주문 조회. OrderScope.HOT이면 orders만, ALL이면 orders_archive도 함께 읽는다.
+ * 기간 조회는 id 범위 조건으로 바뀌고, 범위가 보관 워터마크 이후이면 ALL이어도 보관 테이블을 읽지 않는다.
+ */
+@Component
+@RequiredArgsConstructor
+public class OrderHistory {
+
+    private final JPAQueryFactory queryFactory;
+    private final OrderArchiver archiver;
+
+    public List<OrderRecord> findByMember(long memberId, OrderScope scope) {
+        List<OrderRecord> result = new ArrayList<>();
+        if (scope == OrderScope.ALL) {
+            result.addAll(archived(queryFactory
+                    .select(archivedOrder.id, archivedOrder.memberId, archivedOrder.itemId, archivedOrder.quantity)
+                    .from(archivedOrder)
+                    .where(archivedOrder.memberId.eq(memberId))
+                    .orderBy(archivedOrder.id.asc())));
+        }
+        result.addAll(hot(queryFactory
+                .select(order.id, order.member.id, order.item.id, order.quantity)
+                .from(order)
+                .where(order.member.id.eq(memberId))
+                .orderBy(order.id.asc())));
+        return result;
+    }
+
+    public long countByMember(long memberId, OrderScope scope) {
+        long count = queryFactory
+                .select(order.count())
+                .from(order)
+                .where(order.member.id.eq(memberId))
+                .fetchOne();
+        if (scope == OrderScope.ALL) {
+            count += queryFactory
+                    .select(archivedOrder.count())
+                    .from(archivedOrder)
+                    .where(archivedOrder.memberId.eq(memberId))
+                    .fetchOne();
+        }
+        return count;
+    }
+
+    /**
+     * 회원별 주문 수. Member.memberWithOrderCount의 group by와 같은 집계다.
+     */
+    public Map<Long, Long> orderCountsByMember(OrderScope scope) {
+        Map<Long, Long> counts = new HashMap<>();
+        for (Tuple row : queryFactory
+                .select(order.member.id, order.count())
+                .from(order)
+                .groupBy(order.member.id)
+                .fetch()) {
+            counts.merge(row.get(order.member.id), row.get(order.count()), Long::sum);
+        }
+        if (scope == OrderScope.ALL) {
+            for (Tuple row : queryFactory
+                    .select(archivedOrder.memberId, archivedOrder.count())
+                    .from(archivedOrder)
+                    .groupBy(archivedOrder.memberId)
+                    .fetch()) {
+                counts.merge(row.get(archivedOrder.memberId), row.get(archivedOrder.count()), Long::sum);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * [from, to) 기간에 만들어진 주문.
+     * orders를 먼저 읽고 나서 워터마크와 보관 테이블을 읽는다. 그 사이에 다른 인스턴스가 옮긴 주문은
+     * 두 번 읽힐 수는 있어도 빠지지 않으므로 id로 중복만 없앤다.
+     */
+    public List<OrderRecord> findBetween(Instant from, Instant to, OrderScope scope) {
+        long fromId = SnowflakeIdAllocator.minIdAt(from);
+        long toId = SnowflakeIdAllocator.minIdAt(to);
+        Map<Long, OrderRecord> result = new HashMap<>();
+        for (OrderRecord record : hot(queryFactory
+                .select(order.id, order.member.id, order.item.id, order.quantity)
+                .from(order)
+                .where(order.id.goe(fromId), order.id.lt(toId)))) {
+            result.put(record.getId(), record);
+        }
+        if (scope == OrderScope.ALL && fromId < archiver.getWatermark()) {
+            for (OrderRecord record : archived(queryFactory
+                    .select(archivedOrder.id, archivedOrder.memberId, archivedOrder.itemId, archivedOrder.quantity)
+                    .from(archivedOrder)
+                    .where(archivedOrder.id.goe(fromId), archivedOrder.id.lt(toId)))) {
+                result.put(record.getId(), record);
+            }
+        }
+        List<OrderRecord> sorted = new ArrayList<>(result.values());
+        sorted.sort(Comparator.comparing(OrderRecord::getId));
+        return sorted;
+    }
+
+    private static List<OrderRecord> hot(JPQLQuery<Tuple> query) {
+        List<OrderRecord> records = new ArrayList<>();
+        for (Tuple row : query.fetch()) {
+            records.add(new OrderRecord(row.get(order.id), row.get(order.member.id), row.get(order.item.id),
+                    row.get(order.quantity), false));
+        }
+        return records;
+    }
+
+    private static List<OrderRecord> archived(JPQLQuery<Tuple> query) {
+        List<OrderRecord> records = new ArrayList<>();
+        for (Tuple row : query.fetch()) {
+            records.add(new OrderRecord(row.get(archivedOrder.id), row.get(archivedOrder.memberId),
+                    row.get(archivedOrder.itemId), row.get(archivedOrder.quantity), true));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,52 @@
+package jpabook.example.archive;
+
+import jpabook.example.shard.SnowflakeIdAllocator;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Order id 범위로 나눈 논리 파티션. id가 생성 시각을 담고 있으므로 [start, end) 기간은 [fromId, toId) id 범위와 같다.
+ * H2는 선언적 파티셔닝을 지원하지 않으므로 이 범위를 조건으로 써서 파티션 단위로 옮기고 조회한다.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public class OrderPartition {
+
+    private final Instant start;
+    private final Instant end;
+    private final long fromId;
+    private final long toId;
+
+    private OrderPartition(Instant start, Instant end) {
+        this.start = start;
+        this.end = end;
+        this.fromId = SnowflakeIdAllocator.minIdAt(start);
+        this.toId = SnowflakeIdAllocator.minIdAt(end);
+    }
+
+    /**
+     * EPOCH부터 length 단위로 자른 파티션 중 instant가 속한 것.
+     */
+    public static OrderPartition containing(Instant instant, Duration length) {
+        long lengthMillis = length.toMillis();
+        if (lengthMillis <= 0) {
+            throw new IllegalArgumentException("partition length must be positive: " + length);
+        }
+        long offset = Math.max(0, instant.toEpochMilli() - SnowflakeIdAllocator.EPOCH.toEpochMilli());
+        Instant start = SnowflakeIdAllocator.EPOCH.plusMillis(offset - offset % lengthMillis);
+        return new OrderPartition(start, start.plusMillis(lengthMillis));
+    }
+
+    public static OrderPartition ofId(long id, Duration length) {
+        return containing(SnowflakeIdAllocator.timestampOf(id), length);
+    }
+
+    public boolean contains(long id) {
+        return id >= fromId && id < toId;
+    }
+}
@@ -0,0 +1,26 @@
+package jpabook.example.archive;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * orders와 orders_archive 어느 쪽에서 읽었든 같은 모양으로 돌려준다.
+ */
+@Getter
+@ToString
+public class OrderRecord {
+
+    private final Long id;
+    private final Long memberId;
+    private final Long itemId;
+    private final int quantity;
+    private final boolean archived;
+
+    public OrderRecord(Long id, Long memberId, Long itemId, int quantity, boolean archived) {
+        this.id = id;
+        this.memberId = memberId;
+        this.itemId = itemId;
+        this.quantity = quantity;
+        this.archived = archived;
+    }
+}
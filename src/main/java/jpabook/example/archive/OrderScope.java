@@ -0,0 +1,9 @@
+package jpabook.example.archive;
+
+/**
+ * 주문 조회 범위. 기본은 HOT이고, 보관된 주문까지 필요할 때만 ALL을 지정한다.
+ */
+public enum OrderScope {
+    HOT,
+    ALL
+}
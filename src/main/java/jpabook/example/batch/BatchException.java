@@ -0,0 +1,20 @@
+package jpabook.example.batch;
+
+import lombok.Getter;
+
+/**
+ * 청크 처리 중 실패. 실패한 청크는 롤백되고, 앞서 커밋된 청크는 그대로 남는다.
+ * committedCount부터 다시 시작하면 된다.
+ */
+@Getter
+public class BatchException extends RuntimeException {
+
+    private final long committedCount;
+    private final int committedChunks;
+
+    public BatchException(long committedCount, int committedChunks, Throwable cause) {
+        super("Batch failed after " + committedChunks + " committed chunks (" + committedCount + " items)", cause);
+        this.committedCount = committedCount;
+        this.committedChunks = committedChunks;
+    }
+}
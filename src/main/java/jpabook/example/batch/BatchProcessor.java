@@ -0,0 +1,10 @@
+package jpabook.example.batch;
+
+/**
+ * 스크롤로 읽은 행 하나를 처리한다.
+ */
+@FunctionalInterface
+public interface BatchProcessor<T> {
+
+    void process(T item, BatchWriter writer);
+}
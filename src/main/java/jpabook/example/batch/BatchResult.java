@@ -0,0 +1,28 @@
+package jpabook.example.batch;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Duration;
+
+@Getter
+@ToString
+public class BatchResult {
+
+    private final long readCount;
+    private final long writeCount;
+    private final int chunkCount;
+    private final Duration elapsed;
+
+    public BatchResult(long readCount, long writeCount, int chunkCount, Duration elapsed) {
+        this.readCount = readCount;
+        this.writeCount = writeCount;
+        this.chunkCount = chunkCount;
+        this.elapsed = elapsed;
+    }
+
+    public double getItemsPerSecond() {
+        long nanos = elapsed.toNanos();
+        return nanos == 0 ? 0 : Math.max(readCount, writeCount) * 1_000_000_000.0 / nanos;
+    }
+}
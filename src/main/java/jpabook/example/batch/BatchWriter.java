@@ -0,0 +1,13 @@
+package jpabook.example.batch;
+
+/**
+ * 청크 안에서 쓰기를 모은다. 호출 즉시 StatelessSession으로 전달되고 청크 경계에서 커밋된다.
+ */
+public interface BatchWriter {
+
+    void insert(Object entity);
+
+    void update(Object entity);
+
+    void delete(Object entity);
+}
@@ -0,0 +1,200 @@
+package jpabook.example.batch;
+
+import com.querydsl.jpa.hibernate.HibernateQuery;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.Duration;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * StatelessSession으로 대량 데이터를 읽고 쓴다.
+ *
+ * 영속성 컨텍스트가 없으므로 1차 캐시가 커지지 않고 변경 감지, cascade, 이벤트 리스너도 동작하지 않는다.
+ * 쓰기는 chunk-size 건마다 커밋하고, hibernate.jdbc.batch_size 단위로 JDBC 배치에 묶인다.
+ * 스프링 트랜잭션과 무관하게 별도 커넥션을 사용하므로 @Transactional 안에서 호출해도 함께 롤백되지 않는다.
+ */
+@Component
+public class StatelessBatchTemplate {
+
+    private final EntityManagerFactory emf;
+    private final int chunkSize;
+    private final int fetchSize;
+
+    public StatelessBatchTemplate(EntityManagerFactory emf,
+                                  @Value("${jpabook.batch.chunk-size:1000}") int chunkSize,
+                                  @Value("${jpabook.batch.fetch-size:1000}") int fetchSize) {
+        if (chunkSize <= 0 || fetchSize <= 0) {
+            throw new IllegalArgumentException("chunkSize and fetchSize must be positive");
+        }
+        this.emf = emf;
+        this.chunkSize = chunkSize;
+        this.fetchSize = fetchSize;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * 결과를 forward-only 커서로 읽는다. 행은 consumer로 넘긴 뒤 참조를 남기지 않는다.
+     */
+    public <T> BatchResult read(Function<StatelessQueryFactory, HibernateQuery<T>> query, Consumer<? super T> consumer) {
+        return process(query, (item, writer) -> consumer.accept(item));
+    }
+
+    /**
+     * 읽기 세션에서 스크롤하면서 쓰기 세션으로 변경을 보낸다. 읽은 건수 기준으로 chunk-size마다 커밋한다.
+     */
+    public <T> BatchResult process(Function<StatelessQueryFactory, HibernateQuery<T>> query,
+                                   BatchProcessor<? super T> processor) {
+        long start = System.nanoTime();
+        SessionFactory sessionFactory = emf.unwrap(SessionFactory.class);
+        try (StatelessSession reader = sessionFactory.openStatelessSession();
+             ChunkWriter writer = new ChunkWriter(sessionFactory.openStatelessSession())) {
+            Transaction readTransaction = reader.beginTransaction();
+            try (ScrollableResults results = query.apply(new StatelessQueryFactory(reader))
+                    .setFetchSize(fetchSize)
+                    .scroll(ScrollMode.FORWARD_ONLY)) {
+                while (results.next()) {
+                    @SuppressWarnings("unchecked")
+                    T item = (T) results.get(0);
+                    writer.process(item, processor);
+                }
+            } finally {
+                readTransaction.rollback();
+            }
+            writer.finish();
+            return writer.result(start);
+        }
+    }
+
+    public BatchResult insert(Iterable<?> entities) {
+        return write(entities, BatchWriter::insert);
+    }
+
+    public BatchResult update(Iterable<?> entities) {
+        return write(entities, BatchWriter::update);
+    }
+
+    public BatchResult delete(Iterable<?> entities) {
+        return write(entities, BatchWriter::delete);
+    }
+
+    private BatchResult write(Iterable<?> entities, BiConsumer<BatchWriter, Object> operation) {
+        long start = System.nanoTime();
+        SessionFactory sessionFactory = emf.unwrap(SessionFactory.class);
+        try (ChunkWriter writer = new ChunkWriter(sessionFactory.openStatelessSession())) {
+            for (Object entity : entities) {
+                writer.process(entity, (item, w) -> operation.accept(w, item));
+            }
+            writer.finish();
+            return writer.result(start);
+        }
+    }
+
+    /**
+     * 벌크 update/delete처럼 한 번에 실행하는 작업을 하나의 트랜잭션으로 실행한다.
+     */
+    public <R> R execute(Function<StatelessQueryFactory, R> work) {
+        try (StatelessSession session = emf.unwrap(SessionFactory.class).openStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                R result = work.apply(new StatelessQueryFactory(session));
+                transaction.commit();
+                return result;
+            } catch (RuntimeException e) {
+                transaction.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private class ChunkWriter implements BatchWriter, AutoCloseable {
+
+        private final StatelessSession session;
+        private Transaction transaction;
+        private long readCount;
+        private long writeCount;
+        private long committedCount;
+        private int chunkCount;
+
+        ChunkWriter(StatelessSession session) {
+            this.session = session;
+            this.transaction = session.beginTransaction();
+        }
+
+        <T> void process(T item, BatchProcessor<? super T> processor) {
+            try {
+                processor.process(item, this);
+            } catch (RuntimeException e) {
+                throw fail(e);
+            }
+            if (++readCount % chunkSize == 0) {
+                commit();
+            }
+        }
+
+        @Override
+        public void insert(Object entity) {
+            session.insert(entity);
+            writeCount++;
+        }
+
+        @Override
+        public void update(Object entity) {
+            session.update(entity);
+            writeCount++;
+        }
+
+        @Override
+        public void delete(Object entity) {
+            session.delete(entity);
+            writeCount++;
+        }
+
+        void finish() {
+            if (committedCount < readCount) {
+                commit();
+            }
+        }
+
+        private void commit() {
+            try {
+                transaction.commit();
+            } catch (RuntimeException e) {
+                throw fail(e);
+            }
+            committedCount = readCount;
+            chunkCount++;
+            transaction = session.beginTransaction();
+        }
+
+        private BatchException fail(RuntimeException e) {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+            return new BatchException(committedCount, chunkCount, e);
+        }
+
+        BatchResult result(long start) {
+            return new BatchResult(readCount, writeCount, chunkCount, Duration.ofNanos(System.nanoTime() - start));
+        }
+
+        @Override
+        public void close() {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+            session.close();
+        }
+    }
+}
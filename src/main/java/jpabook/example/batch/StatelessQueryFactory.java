@@ -0,0 +1,52 @@
+package jpabook.example.batch;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.EntityPath;
+import com.querydsl.core.types.Expression;
+import com.querydsl.jpa.HQLTemplates;
+import com.querydsl.jpa.hibernate.HibernateDeleteClause;
+import com.querydsl.jpa.hibernate.HibernateQuery;
+import com.querydsl.jpa.hibernate.HibernateUpdateClause;
+import com.querydsl.jpa.hibernate.StatelessSessionHolder;
+import org.hibernate.StatelessSession;
+
+/**
+ * StatelessSession 위에서 JPAQueryFactory와 같은 방식으로 쿼리를 만든다.
+ * HibernateQueryFactory는 Session만 받기 때문에 따로 둔다.
+ */
+public class StatelessQueryFactory {
+
+    private final StatelessSessionHolder session;
+
+    public StatelessQueryFactory(StatelessSession session) {
+        this.session = new StatelessSessionHolder(session);
+    }
+
+    public <T> HibernateQuery<T> select(Expression<T> expr) {
+        return query().select(expr);
+    }
+
+    public HibernateQuery<Tuple> select(Expression<?>... exprs) {
+        return query().select(exprs);
+    }
+
+    public <T> HibernateQuery<T> selectFrom(EntityPath<T> from) {
+        return select(from).from(from);
+    }
+
+    public HibernateQuery<?> from(EntityPath<?> from) {
+        return query().from(from);
+    }
+
+    public HibernateUpdateClause update(EntityPath<?> path) {
+        return new HibernateUpdateClause(session, path, HQLTemplates.DEFAULT);
+    }
+
+    public HibernateDeleteClause delete(EntityPath<?> path) {
+        return new HibernateDeleteClause(session, path, HQLTemplates.DEFAULT);
+    }
+
+    public HibernateQuery<?> query() {
+        return new HibernateQuery<Void>(session, HQLTemplates.DEFAULT);
+    }
+}
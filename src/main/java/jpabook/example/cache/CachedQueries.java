@@ -0,0 +1,97 @@
+package jpabook.example.cache;
+
+import jpabook.example.query.SqlFingerprint;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.NativeQuery;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 약간의 지연을 허용하는 조회를 QueryResultCache를 거쳐 실행한다.
+ * 캐시된 엔티티는 처음 조회한 영속성 컨텍스트에 속하므로 이후 호출자에게는 준영속 상태다.
+ * 쓰기 문을 실행한 트랜잭션 안에서는 캐시를 거치지 않고 매번 조회한다.
+ */
+@Component
+@RequiredArgsConstructor
+public class CachedQueries {
+
+    private final QueryResultCache queryResultCache;
+
+    @PersistenceContext
+    EntityManager em;
+
+    @SuppressWarnings("unchecked")
+    public <T> List<T> nativeQuery(String sql, Class<T> resultClass, Object... parameters) {
+        QueryCacheKey key = new QueryCacheKey(SqlFingerprint.of(sql) + "|" + resultClass.getName(), parameters);
+        return queryResultCache.get(key, SqlFingerprint.tables(sql),
+                () -> bind(em.createNativeQuery(sql, resultClass), parameters).getResultList());
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<Object[]> nativeQuery(String sql, String resultSetMapping, Object... parameters) {
+        QueryCacheKey key = new QueryCacheKey(SqlFingerprint.of(sql) + "|" + resultSetMapping, parameters);
+        return queryResultCache.get(key, SqlFingerprint.tables(sql),
+                () -> bind(em.createNativeQuery(sql, resultSetMapping), parameters).getResultList());
+    }
+
+    /**
+     * Member.memberSQL, Member.memberWithOrderCount 같은 @NamedNativeQuery를 위치 기반 파라미터로 실행한다.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> namedNativeQuery(String name, Object... parameters) {
+        Query query = em.createNamedQuery(name);
+        String sql = query.unwrap(NativeQuery.class).getQueryString();
+        QueryCacheKey key = new QueryCacheKey(SqlFingerprint.of(sql) + "|" + name, parameters);
+        return queryResultCache.get(key, SqlFingerprint.tables(sql),
+                () -> bind(query, parameters).getResultList());
+    }
+
+    public <T> List<T> jpql(String jpql, Class<T> resultClass, Map<String, ?> parameters) {
+        Map<String, ?> sorted = new TreeMap<>(parameters);
+        List<Object> namesAndValues = new ArrayList<>();
+        sorted.forEach((name, value) -> {
+            namesAndValues.add(name);
+            namesAndValues.add(value);
+        });
+        QueryCacheKey key = new QueryCacheKey(jpql.trim() + "|" + resultClass.getName(), namesAndValues.toArray());
+        return queryResultCache.get(key, querySpaces(jpql), () -> {
+            TypedQuery<T> query = em.createQuery(jpql, resultClass);
+            sorted.forEach(query::setParameter);
+            return query.getResultList();
+        });
+    }
+
+    public QueryCacheStats getStats() {
+        return queryResultCache.getStats();
+    }
+
+    private Set<String> querySpaces(String jpql) {
+        SessionFactoryImplementor sessionFactory = em.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class);
+        Set<String> tables = new LinkedHashSet<>();
+        for (Object space : sessionFactory.getQueryPlanCache()
+                .getHQLQueryPlan(jpql, false, Collections.emptyMap())
+                .getQuerySpaces()) {
+            tables.add(space.toString());
+        }
+        return tables;
+    }
+
+    private static Query bind(Query query, Object[] parameters) {
+        for (int i = 0; i < parameters.length; i++) {
+            query.setParameter(i + 1, parameters[i]);
+        }
+        return query;
+    }
+}
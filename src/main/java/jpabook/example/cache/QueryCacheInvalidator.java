@@ -0,0 +1,36 @@
+package jpabook.example.cache;
+
+import jpabook.example.query.SqlFingerprint;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.stereotype.Component;
+
+/**
+ * 플러시나 벌크 연산으로 insert, update, delete 문이 준비될 때 대상 테이블을 QueryResultCache에 알린다.
+ * 무효화는 트랜잭션이 커밋된 뒤에 한다. (StatementInspectorChain으로 등록된다)
+ */
+@Component
+@RequiredArgsConstructor
+public class QueryCacheInvalidator implements StatementInspector {
+
+    private final QueryResultCache queryResultCache;
+
+    @Override
+    public String inspect(String sql) {
+        if (isWrite(sql)) {
+            queryResultCache.recordWrite(SqlFingerprint.tables(sql));
+        }
+        return sql;
+    }
+
+    private static boolean isWrite(String sql) {
+        int start = 0;
+        while (start < sql.length() && Character.isWhitespace(sql.charAt(start))) {
+            start++;
+        }
+        return sql.regionMatches(true, start, "insert", 0, 6)
+                || sql.regionMatches(true, start, "update", 0, 6)
+                || sql.regionMatches(true, start, "delete", 0, 6)
+                || sql.regionMatches(true, start, "merge", 0, 5);
+    }
+}
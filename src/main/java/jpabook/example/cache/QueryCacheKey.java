@@ -0,0 +1,23 @@
+package jpabook.example.cache;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@Getter
+@EqualsAndHashCode
+@ToString
+public final class QueryCacheKey {
+
+    private final String fingerprint;
+    private final List<Object> parameters;
+
+    public QueryCacheKey(String fingerprint, Object... parameters) {
+        this.fingerprint = fingerprint;
+        this.parameters = Collections.unmodifiableList(Arrays.asList(parameters.clone()));
+    }
+}
@@ -0,0 +1,289 @@
+package jpabook.example.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 쿼리 결과를 SQL 지문과 파라미터로 캐시한다.
+ *
+ * 크기를 넘으면 가장 오래 사용하지 않은 결과부터 제거하고(LRU), TTL이 지난 결과는 다시 조회한다.
+ * 결과는 조회에 사용한 테이블 이름으로 태그를 달아두고, 해당 테이블에 쓰기가 커밋되면 무효화한다.
+ *
+ * 쓰기 문을 실행한 트랜잭션은 커밋 전까지 캐시를 거치지 않는다(조회도 저장도 하지 않는다).
+ * 그 트랜잭션의 조회 결과에는 커밋되지 않은 행이 들어 있을 수 있기 때문이다.
+ * 플러시하지 않은 변경은 쿼리 실행 전 자동 플러시로 나가므로 그 쿼리의 결과는 저장되지 않지만,
+ * 플러시 전에 캐시에 있던 결과는 그 변경을 반영하지 않는다. 자기 변경을 바로 읽어야 하면 먼저 flush()한다.
+ *
+ * 테이블마다 무효화 세대를 센다. 조회를 시작한 뒤 다른 트랜잭션의 커밋으로 세대가 바뀌면
+ * 그 조회 결과는 이미 지난 데이터일 수 있으므로 저장하지 않는다.
+ */
+@Component
+public class QueryResultCache {
+
+    /**
+     * 쓰기 문에서 테이블을 읽지 못했을 때 모든 결과를 무효화하는 표시
+     */
+    private static final String ALL_TABLES = "*";
+
+    private final int maxSize;
+    private final long ttlNanos;
+
+    private final LinkedHashMap<QueryCacheKey, Entry> entries;
+    private final Map<String, Set<QueryCacheKey>> keysByTable = new HashMap<>();
+    private final Map<String, Long> generations = new HashMap<>();
+    private long allGeneration;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public QueryResultCache(@Value("${jpabook.query-cache.max-size:1000}") int maxSize,
+                            @Value("${jpabook.query-cache.ttl:5s}") Duration ttl) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public <T> List<T> get(QueryCacheKey key, Set<String> tables, Supplier<List<T>> loader) {
+        if (isWrittenInTransaction()) {
+            return Collections.unmodifiableList(loader.get());
+        }
+        List<T> cached = getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        long generation = generation(tables);
+        List<T> result = Collections.unmodifiableList(loader.get());
+        // loader의 자동 플러시로 쓰기가 나갔으면 결과에 커밋되지 않은 행이 있을 수 있다.
+        if (!isWrittenInTransaction()) {
+            putIfUnchanged(key, tables, result, generation);
+        }
+        return result;
+    }
+
+    /**
+     * 테이블들의 무효화 세대. 어느 한 테이블이라도 무효화되면 값이 바뀐다.
+     */
+    public synchronized long generation(Set<String> tables) {
+        long generation = allGeneration;
+        for (String table : tables) {
+            generation += generations.getOrDefault(normalize(table), 0L);
+        }
+        return generation;
+    }
+
+    /**
+     * 조회 전에 읽은 세대가 그대로일 때만 저장한다. 그 사이 무효화가 있었으면 저장하지 않고 false를 반환한다.
+     */
+    public synchronized boolean putIfUnchanged(QueryCacheKey key, Set<String> tables, List<?> result, long generation) {
+        if (generation(tables) != generation) {
+            return false;
+        }
+        put(key, tables, result);
+        return true;
+    }
+
+    /**
+     * 테이블에 쓰기 문이 실행될 때 호출한다.
+     * 트랜잭션 안이면 커밋된 뒤에 무효화하고, 트랜잭션 밖이면 바로 무효화한다.
+     */
+    public void recordWrite(Set<String> tables) {
+        if (tables.isEmpty()) {
+            tables = Set.of(ALL_TABLES);
+        }
+        if (!TransactionSynchronizationManager.isActualTransactionActive()
+                || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidateTables(tables);
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Set<String> written = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        if (written == null) {
+            written = new HashSet<>();
+            TransactionSynchronizationManager.bindResource(this, written);
+            TransactionSynchronizationManager.registerSynchronization(new WrittenTables(written));
+        }
+        for (String table : tables) {
+            written.add(table.equals(ALL_TABLES) ? table : normalize(table));
+        }
+    }
+
+    /**
+     * 현재 트랜잭션에서 쓰기 문을 실행했는지
+     */
+    public boolean isWrittenInTransaction() {
+        return TransactionSynchronizationManager.hasResource(this);
+    }
+
+    /**
+     * 현재 트랜잭션에서 이 테이블(또는 대상을 알 수 없는 쓰기 문)을 실행했는지
+     */
+    public boolean isWrittenInTransaction(String table) {
+        @SuppressWarnings("unchecked")
+        Set<String> written = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        return written != null && (written.contains(ALL_TABLES) || written.contains(normalize(table)));
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized <T> List<T> getIfPresent(QueryCacheKey key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.expiresAt - System.nanoTime() < 0) {
+            remove(key);
+            expirations.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return (List<T>) entry.result;
+    }
+
+    public synchronized void put(QueryCacheKey key, Set<String> tables, List<?> result) {
+        Set<String> normalized = new HashSet<>();
+        for (String table : tables) {
+            normalized.add(normalize(table));
+        }
+
+        remove(key);
+        entries.put(key, new Entry(result, normalized, System.nanoTime() + ttlNanos));
+        for (String table : normalized) {
+            keysByTable.computeIfAbsent(table, t -> new HashSet<>()).add(key);
+        }
+
+        Iterator<Map.Entry<QueryCacheKey, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxSize && eldest.hasNext()) {
+            Map.Entry<QueryCacheKey, Entry> evicted = eldest.next();
+            eldest.remove();
+            untag(evicted.getKey(), evicted.getValue());
+            evictions.increment();
+        }
+    }
+
+    /**
+     * 테이블에 쓰기가 일어나면 그 테이블을 조회한 결과를 모두 제거한다.
+     */
+    public synchronized void invalidateTable(String table) {
+        generations.merge(normalize(table), 1L, Long::sum);
+        Set<QueryCacheKey> keys = keysByTable.remove(normalize(table));
+        if (keys == null) {
+            return;
+        }
+        for (QueryCacheKey key : keys) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                untag(key, entry);
+                invalidations.increment();
+            }
+        }
+    }
+
+    private void invalidateTables(Set<String> tables) {
+        if (tables.contains(ALL_TABLES)) {
+            invalidateAll();
+            return;
+        }
+        tables.forEach(this::invalidateTable);
+    }
+
+    public synchronized void invalidateAll() {
+        allGeneration++;
+        invalidations.add(entries.size());
+        entries.clear();
+        keysByTable.clear();
+    }
+
+    public synchronized QueryCacheStats getStats() {
+        return new QueryCacheStats(hits.sum(), misses.sum(), evictions.sum(),
+                expirations.sum(), invalidations.sum(), entries.size());
+    }
+
+    private void remove(QueryCacheKey key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            untag(key, entry);
+        }
+    }
+
+    private void untag(QueryCacheKey key, Entry entry) {
+        for (String table : entry.tables) {
+            Set<QueryCacheKey> keys = keysByTable.get(table);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    keysByTable.remove(table);
+                }
+            }
+        }
+    }
+
+    private static String normalize(String table) {
+        String name = table.toLowerCase(Locale.ROOT);
+        int schema = name.lastIndexOf('.');
+        return schema < 0 ? name : name.substring(schema + 1);
+    }
+
+    /**
+     * 트랜잭션이 끝나면 쓴 테이블을 무효화한다. 롤백이면 바뀐 것이 없다.
+     * REQUIRES_NEW로 트랜잭션이 중단되는 동안에는 리소스를 풀어서 안쪽 트랜잭션이 따로 기록하게 한다.
+     */
+    private final class WrittenTables implements TransactionSynchronization {
+
+        private final Set<String> tables;
+
+        WrittenTables(Set<String> tables) {
+            this.tables = tables;
+        }
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(QueryResultCache.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(QueryResultCache.this, tables);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(QueryResultCache.this);
+            if (status == STATUS_COMMITTED) {
+                invalidateTables(tables);
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        final List<?> result;
+        final Set<String> tables;
+        final long expiresAt;
+
+        Entry(List<?> result, Set<String> tables, long expiresAt) {
+            this.result = result;
+            this.tables = tables;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
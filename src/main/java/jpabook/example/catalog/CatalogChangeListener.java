@@ -0,0 +1,75 @@
+package jpabook.example.catalog;
+
+import jpabook.example.domain.Item;
+import jpabook.example.domain.Team;
+import jpabook.example.config.HibernateListenerRegistrar;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * Team, Item 변경이 커밋되면 카탈로그 스냅샷 갱신을 예약한다.
+ * CatalogSnapshotStore는 EntityManagerFactory를 사용하므로 변경이 일어날 때 꺼낸다.
+ */
+@Component
+@RequiredArgsConstructor
+public class CatalogChangeListener implements HibernateListenerRegistrar, PostCommitInsertEventListener,
+        PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+    private final ObjectProvider<CatalogSnapshotStore> catalogSnapshotStore;
+
+    @Override
+    public void register(EventListenerRegistry registry) {
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        changed(event.getEntity());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        changed(event.getEntity());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        changed(event.getEntity());
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        Class<?> type = persister.getMappedClass();
+        return type == Team.class || type == Item.class;
+    }
+
+    private void changed(Object entity) {
+        if (entity instanceof Team || entity instanceof Item) {
+            catalogSnapshotStore.getObject().scheduleRefresh();
+        }
+    }
+}
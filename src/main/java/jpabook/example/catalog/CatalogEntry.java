@@ -0,0 +1,14 @@
+package jpabook.example.catalog;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+@Getter
+@ToString
+@RequiredArgsConstructor
+public class CatalogEntry {
+
+    private final long id;
+    private final String name;
+}
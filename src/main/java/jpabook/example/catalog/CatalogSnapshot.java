@@ -0,0 +1,107 @@
+package jpabook.example.catalog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static jpabook.example.catalog.CatalogSnapshotWriter.ENTRY_SIZE;
+import static jpabook.example.catalog.CatalogSnapshotWriter.HEADER_SIZE;
+import static jpabook.example.catalog.CatalogSnapshotWriter.MAGIC;
+import static jpabook.example.catalog.CatalogSnapshotWriter.VERSION;
+
+/**
+ * 메모리 매핑한 읽기 전용 Team, Item 카탈로그
+ * 데이터는 힙 밖에 있고, 아이디 인덱스를 이진 탐색해서 CatalogView를 해당 엔트리로 옮긴다.
+ */
+public final class CatalogSnapshot {
+
+    private final Path path;
+    private final ByteBuffer buffer;
+    private final int teamCount;
+    private final int itemCount;
+    private final int teamIndexPosition;
+    private final int itemIndexPosition;
+    private final int poolPosition;
+
+    private CatalogSnapshot(Path path, ByteBuffer buffer) {
+        this.path = path;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalStateException("Not a catalog snapshot: " + path);
+        }
+        this.teamCount = buffer.getInt(8);
+        this.itemCount = buffer.getInt(12);
+        this.teamIndexPosition = Math.toIntExact(buffer.getLong(16));
+        this.itemIndexPosition = Math.toIntExact(buffer.getLong(24));
+        this.poolPosition = Math.toIntExact(buffer.getLong(32));
+    }
+
+    public static CatalogSnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new CatalogSnapshot(path, mapped.order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getTeamCount() {
+        return teamCount;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * 가장 큰 팀 아이디. 팀이 없으면 0
+     */
+    public long getMaxTeamId() {
+        return maxId(teamIndexPosition, teamCount);
+    }
+
+    public long getMaxItemId() {
+        return maxId(itemIndexPosition, itemCount);
+    }
+
+    public boolean findTeam(long id, CatalogView view) {
+        return find(teamIndexPosition, teamCount, id, view);
+    }
+
+    public boolean findItem(long id, CatalogView view) {
+        return find(itemIndexPosition, itemCount, id, view);
+    }
+
+    public CatalogView newView() {
+        return new CatalogView();
+    }
+
+    private long maxId(int indexPosition, int count) {
+        return count == 0 ? 0 : buffer.getLong(indexPosition + (count - 1) * ENTRY_SIZE);
+    }
+
+    private boolean find(int indexPosition, int count, long id, CatalogView view) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = indexPosition + mid * ENTRY_SIZE;
+            long midId = buffer.getLong(entry);
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                view.moveTo(buffer, id, poolPosition + buffer.getInt(entry + 8), buffer.getInt(entry + 12));
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,163 @@
+package jpabook.example.catalog;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 현재 카탈로그 스냅샷을 보관하고, 변경이 생기면 새 파일을 만들어 원자적으로 교체한다.
+ * 재시작할 때 파일이 남아 있으면 전체를 다시 읽지 않고 매핑해서 사용한다.
+ * 다만 다른 인스턴스가 쓴 파일이거나 그 사이 DB가 바뀌었을 수 있으므로,
+ * 파일의 행 수와 최대 아이디를 DB의 count, max와 비교해서 다르면 버리고 새로 만든다.
+ * 같더라도 이름 변경은 이 비교로 알 수 없으므로 열자마자 백그라운드 갱신을 예약한다.
+ */
+@Slf4j
+@Component
+public class CatalogSnapshotStore {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final Path path;
+    private final AtomicReference<CatalogSnapshot> current = new AtomicReference<>();
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "catalog-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CatalogSnapshotStore(EntityManagerFactory entityManagerFactory,
+                                @Value("${jpabook.catalog.path:${java.io.tmpdir}/jpabook-catalog.bin}") String path) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.path = Paths.get(path);
+    }
+
+    public CatalogSnapshot getSnapshot() {
+        CatalogSnapshot snapshot = current.get();
+        if (snapshot != null) {
+            return snapshot;
+        }
+        synchronized (this) {
+            snapshot = current.get();
+            if (snapshot == null) {
+                snapshot = Files.exists(path) ? openExisting() : null;
+                if (snapshot == null || !matchesDatabase(snapshot)) {
+                    snapshot = refresh();
+                } else {
+                    current.set(snapshot);
+                    scheduleRefresh();
+                }
+            }
+            return snapshot;
+        }
+    }
+
+    public boolean findTeam(long id, CatalogView view) {
+        return getSnapshot().findTeam(id, view);
+    }
+
+    public boolean findItem(long id, CatalogView view) {
+        return getSnapshot().findItem(id, view);
+    }
+
+    /**
+     * Team, Item을 다시 조회해서 임시 파일에 쓰고, 이름을 바꿔 교체한 다음 새 매핑으로 바꾼다.
+     * 이전 스냅샷을 사용 중인 스레드는 기존 매핑을 계속 읽을 수 있다.
+     */
+    public synchronized CatalogSnapshot refresh() {
+        refreshScheduled.set(false);
+        EntityManager em = entityManagerFactory.createEntityManager();
+        try {
+            List<CatalogEntry> teams = load(em, "select t.id, t.name from Team t");
+            List<CatalogEntry> items = load(em, "select i.id, i.name from Item i");
+
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            CatalogSnapshotWriter.write(temp, teams, items);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            CatalogSnapshot snapshot = CatalogSnapshot.open(path);
+            current.set(snapshot);
+            log.debug("catalog snapshot refreshed: teams={}, items={}", teams.size(), items.size());
+            return snapshot;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * 여러 번 호출되어도 대기 중인 갱신은 한 번만 실행한다.
+     */
+    public void scheduleRefresh() {
+        if (refreshScheduled.compareAndSet(false, true)) {
+            refresher.execute(() -> {
+                try {
+                    refresh();
+                } catch (RuntimeException e) {
+                    log.warn("catalog snapshot refresh failed", e);
+                }
+            });
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    private CatalogSnapshot openExisting() {
+        try {
+            return CatalogSnapshot.open(path);
+        } catch (IOException | RuntimeException e) {
+            log.warn("ignoring unreadable catalog snapshot {}", path, e);
+            return null;
+        }
+    }
+
+    /**
+     * 남아 있던 파일이 지금 DB와 같은 행 수, 최대 아이디를 가지는지
+     */
+    private boolean matchesDatabase(CatalogSnapshot snapshot) {
+        EntityManager em = entityManagerFactory.createEntityManager();
+        try {
+            Object[] teams = em.createQuery("select count(t), coalesce(max(t.id), 0) from Team t", Object[].class)
+                    .getSingleResult();
+            Object[] items = em.createQuery("select count(i), coalesce(max(i.id), 0) from Item i", Object[].class)
+                    .getSingleResult();
+            boolean matches = ((Number) teams[0]).longValue() == snapshot.getTeamCount()
+                    && ((Number) teams[1]).longValue() == snapshot.getMaxTeamId()
+                    && ((Number) items[0]).longValue() == snapshot.getItemCount()
+                    && ((Number) items[1]).longValue() == snapshot.getMaxItemId();
+            if (!matches) {
+                log.info("catalog snapshot {} is out of date, rebuilding", path);
+            }
+            return matches;
+        } finally {
+            em.close();
+        }
+    }
+
+    private static List<CatalogEntry> load(EntityManager em, String jpql) {
+        List<CatalogEntry> entries = new ArrayList<>();
+        for (Object[] row : em.createQuery(jpql, Object[].class).getResultList()) {
+            entries.add(new CatalogEntry((Long) row[0], (String) row[1]));
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,122 @@
+package jpabook.example.catalog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 카탈로그 스냅샷 파일을 만든다.
+ *
+ * 헤더 | 팀 인덱스 | 상품 인덱스 | 문자열 풀
+ * 인덱스는 아이디 순으로 정렬한 16바이트 고정 폭 엔트리(id, 이름 오프셋, 이름 길이)다.
+ */
+public final class CatalogSnapshotWriter {
+
+    static final int MAGIC = 0x4A504354;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 40;
+    static final int ENTRY_SIZE = 16;
+
+    private CatalogSnapshotWriter() {
+    }
+
+    public static void write(Path path, List<CatalogEntry> teams, List<CatalogEntry> items) throws IOException {
+        CatalogEntry[] sortedTeams = sorted(teams);
+        CatalogEntry[] sortedItems = sorted(items);
+
+        byte[][] teamNames = encode(sortedTeams);
+        byte[][] itemNames = encode(sortedItems);
+
+        long teamIndexPosition = HEADER_SIZE;
+        long itemIndexPosition = teamIndexPosition + (long) sortedTeams.length * ENTRY_SIZE;
+        long poolPosition = itemIndexPosition + (long) sortedItems.length * ENTRY_SIZE;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putInt(sortedTeams.length)
+                    .putInt(sortedItems.length)
+                    .putLong(teamIndexPosition)
+                    .putLong(itemIndexPosition)
+                    .putLong(poolPosition);
+
+            int poolOffset = 0;
+            poolOffset = writeIndex(channel, buffer, sortedTeams, teamNames, poolOffset);
+            writeIndex(channel, buffer, sortedItems, itemNames, poolOffset);
+            writePool(channel, buffer, teamNames);
+            writePool(channel, buffer, itemNames);
+
+            buffer.flip();
+            writeFully(channel, buffer);
+            channel.force(true);
+        }
+    }
+
+    private static int writeIndex(FileChannel channel, ByteBuffer buffer, CatalogEntry[] entries,
+                                  byte[][] names, int poolOffset) throws IOException {
+        for (int i = 0; i < entries.length; i++) {
+            ensureRemaining(channel, buffer, ENTRY_SIZE);
+            buffer.putLong(entries[i].getId())
+                    .putInt(poolOffset)
+                    .putInt(names[i].length);
+            poolOffset += names[i].length;
+        }
+        return poolOffset;
+    }
+
+    private static void writePool(FileChannel channel, ByteBuffer buffer, byte[][] names) throws IOException {
+        for (byte[] name : names) {
+            int offset = 0;
+            while (offset < name.length) {
+                ensureRemaining(channel, buffer, 1);
+                int length = Math.min(buffer.remaining(), name.length - offset);
+                buffer.put(name, offset, length);
+                offset += length;
+            }
+        }
+    }
+
+    private static void ensureRemaining(FileChannel channel, ByteBuffer buffer, int size) throws IOException {
+        if (buffer.remaining() < size) {
+            buffer.flip();
+            writeFully(channel, buffer);
+            buffer.clear();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static CatalogEntry[] sorted(List<CatalogEntry> entries) {
+        CatalogEntry[] sorted = entries.toArray(new CatalogEntry[0]);
+        Arrays.sort(sorted, Comparator.comparingLong(CatalogEntry::getId));
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i - 1].getId() == sorted[i].getId()) {
+                throw new IllegalArgumentException("Duplicate id: " + sorted[i].getId());
+            }
+        }
+        return sorted;
+    }
+
+    private static byte[][] encode(CatalogEntry[] entries) {
+        byte[][] names = new byte[entries.length][];
+        for (int i = 0; i < entries.length; i++) {
+            String name = entries[i].getName();
+            names[i] = name == null ? new byte[0] : name.getBytes(StandardCharsets.UTF_8);
+        }
+        return names;
+    }
+}
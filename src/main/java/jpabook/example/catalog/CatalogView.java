@@ -0,0 +1,72 @@
+package jpabook.example.catalog;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 스냅샷의 한 엔트리를 가리키는 재사용 가능한 뷰
+ * 조회할 때마다 위치만 바꾸므로 객체를 새로 만들지 않는다.
+ * 뷰는 스레드 간에 공유하지 않는다.
+ */
+public final class CatalogView {
+
+    private ByteBuffer buffer;
+    private long id;
+    private int nameOffset;
+    private int nameLength;
+
+    void moveTo(ByteBuffer buffer, long id, int nameOffset, int nameLength) {
+        this.buffer = buffer;
+        this.id = id;
+        this.nameOffset = nameOffset;
+        this.nameLength = nameLength;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getNameLength() {
+        return nameLength;
+    }
+
+    public byte nameByteAt(int index) {
+        return buffer.get(nameOffset + index);
+    }
+
+    /**
+     * 이름을 String으로 디코딩한다. 이 메서드만 힙에 객체를 만든다.
+     */
+    public String getName() {
+        byte[] bytes = new byte[nameLength];
+        for (int i = 0; i < nameLength; i++) {
+            bytes[i] = buffer.get(nameOffset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public boolean nameEquals(String name) {
+        if (name.length() == nameLength) {
+            boolean ascii = true;
+            for (int i = 0; i < nameLength; i++) {
+                char c = name.charAt(i);
+                if (c >= 0x80) {
+                    ascii = false;
+                    break;
+                }
+                if (buffer.get(nameOffset + i) != (byte) c) {
+                    return false;
+                }
+            }
+            if (ascii) {
+                return true;
+            }
+        }
+        return getName().equals(name);
+    }
+
+    @Override
+    public String toString() {
+        return "CatalogView(id=" + id + ", name=" + getName() + ")";
+    }
+}
@@ -0,0 +1,110 @@
+package jpabook.example.cdc;
+
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.EntityPathBase;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.NumberPath;
+import com.querydsl.jpa.impl.JPADeleteClause;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.querydsl.jpa.impl.JPAUpdateClause;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.LockModeType;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 벌크 수정, 삭제의 대상 아이디를 먼저 잠금 조회해서 기록한다.
+ * 조건을 다시 평가하지 않고 조회한 아이디만 수정하므로, 그 사이에 조건에 맞게 된 행이 섞여 기록이 어긋나지 않는다.
+ * 변경은 커밋된 뒤에 로그에 추가한다. 아이디를 기록하므로 BulkStatementCapture의 테이블 단위 기록은 남기지 않는다.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "jpabook.cdc.enabled", havingValue = "true", matchIfMissing = true)
+public class BulkChangeCapture {
+
+    private static final int IN_CHUNK_SIZE = 1000;
+
+    private final JPAQueryFactory queryFactory;
+    private final ChangeLog changeLog;
+
+    /**
+     * @param assignments 수정할 값을 지정한다. 아이디 1000개마다 한 번씩 호출된다.
+     * @return 수정된 행 수
+     */
+    @Transactional
+    public long update(EntityPathBase<?> entity, Predicate where, Consumer<JPAUpdateClause> assignments) {
+        CdcEntity cdcEntity = cdcEntityOf(entity);
+        List<Long> ids = lockIds(entity, where);
+        NumberPath<Long> id = idPath(entity);
+        long updated = 0;
+        for (int from = 0; from < ids.size(); from += IN_CHUNK_SIZE) {
+            JPAUpdateClause clause = queryFactory.update(entity)
+                    .where(id.in(ids.subList(from, Math.min(from + IN_CHUNK_SIZE, ids.size()))));
+            assignments.accept(clause);
+            updated += BulkStatementCapture.capturedByIds(clause::execute);
+        }
+        appendAfterCommit(ChangeType.UPDATE, cdcEntity, ids);
+        return updated;
+    }
+
+    /**
+     * @return 삭제된 행 수
+     */
+    @Transactional
+    public long delete(EntityPathBase<?> entity, Predicate where) {
+        CdcEntity cdcEntity = cdcEntityOf(entity);
+        List<Long> ids = lockIds(entity, where);
+        NumberPath<Long> id = idPath(entity);
+        long deleted = 0;
+        for (int from = 0; from < ids.size(); from += IN_CHUNK_SIZE) {
+            JPADeleteClause clause = queryFactory.delete(entity)
+                    .where(id.in(ids.subList(from, Math.min(from + IN_CHUNK_SIZE, ids.size()))));
+            deleted += BulkStatementCapture.capturedByIds(clause::execute);
+        }
+        appendAfterCommit(ChangeType.DELETE, cdcEntity, ids);
+        return deleted;
+    }
+
+    private List<Long> lockIds(EntityPathBase<?> entity, Predicate where) {
+        return queryFactory.select(idPath(entity))
+                .from(entity)
+                .where(where)
+                .orderBy(idPath(entity).asc())
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .fetch();
+    }
+
+    private void appendAfterCommit(ChangeType type, CdcEntity entity, List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            changeLog.appendAll(type, entity, ids);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                changeLog.appendAll(type, entity, ids);
+            }
+        });
+    }
+
+    private static NumberPath<Long> idPath(EntityPathBase<?> entity) {
+        return Expressions.numberPath(Long.class, entity, "id");
+    }
+
+    private static CdcEntity cdcEntityOf(EntityPathBase<?> entity) {
+        CdcEntity cdcEntity = CdcEntity.of(entity.getType());
+        if (cdcEntity == null) {
+            throw new IllegalArgumentException("changes of " + entity.getType().getSimpleName() + " are not captured");
+        }
+        return cdcEntity;
+    }
+}
@@ -0,0 +1,157 @@
+package jpabook.example.cdc;
+
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 플러시 밖에서 실행된 insert, update, delete 문을 테이블 단위 변경(ChangeType.TABLE)으로 기록한다.
+ *
+ * JPQL, Querydsl의 executeUpdate()나 네이티브 DML, StatelessSession처럼 영속성 컨텍스트를 거치지 않는 쓰기는
+ * ChangeCaptureListener에 잡히지 않고, 어느 행이 바뀌었는지도 알 수 없다. 대상 테이블이 기록 대상이면
+ * 트랜잭션이 커밋된 뒤 엔티티마다 한 건씩 남겨서 소비하는 쪽이 다시 읽게 한다.
+ * 플러시 중의 문장은 엔티티 단위로 기록되므로 SessionEventListener로 플러시 구간을 표시해서 건너뛰고,
+ * BulkChangeCapture처럼 아이디를 직접 기록하는 쪽은 capturedByIds()로 감싸서 건너뛴다.
+ * Spring 트랜잭션 밖(StatelessBatchTemplate 등)의 문장은 실행할 때 바로 기록하므로 커밋보다 조금 앞설 수 있다.
+ * Hibernate를 거치지 않는 JDBC 쓰기는 보이지 않는다.
+ */
+@Component
+@ConditionalOnProperty(name = "jpabook.cdc.enabled", havingValue = "true", matchIfMissing = true)
+public class BulkStatementCapture implements StatementInspector, HibernatePropertiesCustomizer {
+
+    private static final Pattern TARGET = Pattern.compile("^\\s*(?:insert\\s+into|update|delete\\s+from|delete)\\s+([\\w.]+)");
+
+    /**
+     * 이 스레드에서 진행 중인 플러시 또는 capturedByIds() 수
+     */
+    private static final ThreadLocal<int[]> SKIP_DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+
+    private final ChangeLog changeLog;
+
+    public BulkStatementCapture(ChangeLog changeLog) {
+        this.changeLog = changeLog;
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put(AvailableSettings.AUTO_SESSION_EVENTS_LISTENER, FlushTracker.class.getName());
+    }
+
+    @Override
+    public String inspect(String sql) {
+        if (SKIP_DEPTH.get()[0] > 0) {
+            return sql;
+        }
+        Matcher matcher = TARGET.matcher(sql.toLowerCase(Locale.ROOT));
+        if (matcher.find()) {
+            CdcEntity entity = CdcEntity.ofTable(matcher.group(1));
+            if (entity != null) {
+                changed(entity);
+            }
+        }
+        return sql;
+    }
+
+    /**
+     * 변경한 아이디를 직접 기록하는 작업. 그 안의 문장은 테이블 단위로 다시 기록하지 않는다.
+     */
+    public static <T> T capturedByIds(Supplier<T> work) {
+        int[] depth = SKIP_DEPTH.get();
+        depth[0]++;
+        try {
+            return work.get();
+        } finally {
+            depth[0]--;
+        }
+    }
+
+    private void changed(CdcEntity entity) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()
+                || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            changeLog.append(ChangeType.TABLE, entity, 0);
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Set<CdcEntity> changed = (Set<CdcEntity>) TransactionSynchronizationManager.getResource(this);
+        if (changed == null) {
+            changed = EnumSet.noneOf(CdcEntity.class);
+            TransactionSynchronizationManager.bindResource(this, changed);
+            TransactionSynchronizationManager.registerSynchronization(new ChangedTables(changed));
+        }
+        changed.add(entity);
+    }
+
+    /**
+     * 커밋되면 바뀐 엔티티마다 TABLE 변경을 추가한다. 롤백이면 아무것도 남기지 않는다.
+     * REQUIRES_NEW로 트랜잭션이 중단되는 동안에는 리소스를 풀어서 안쪽 트랜잭션이 따로 기록하게 한다.
+     */
+    private final class ChangedTables implements TransactionSynchronization {
+
+        private final Set<CdcEntity> entities;
+
+        ChangedTables(Set<CdcEntity> entities) {
+            this.entities = entities;
+        }
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(BulkStatementCapture.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(BulkStatementCapture.this, entities);
+        }
+
+        @Override
+        public void afterCommit() {
+            for (CdcEntity entity : entities) {
+                changeLog.append(ChangeType.TABLE, entity, 0);
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(BulkStatementCapture.this);
+        }
+    }
+
+    /**
+     * 세션마다 Hibernate가 만드는 리스너. 플러시하는 동안 이 스레드의 문장을 건너뛰게 한다.
+     */
+    public static class FlushTracker extends BaseSessionEventListener {
+
+        @Override
+        public void flushStart() {
+            SKIP_DEPTH.get()[0]++;
+        }
+
+        @Override
+        public void flushEnd(int numberOfEntities, int numberOfCollections) {
+            SKIP_DEPTH.get()[0]--;
+        }
+
+        @Override
+        public void partialFlushStart() {
+            SKIP_DEPTH.get()[0]++;
+        }
+
+        @Override
+        public void partialFlushEnd(int numberOfEntities, int numberOfCollections) {
+            SKIP_DEPTH.get()[0]--;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package jpabook.example.cdc;
+
+import jpabook.example.domain.Item;
+import jpabook.example.domain.Member;
+import jpabook.example.domain.Order;
+import jpabook.example.domain.Team;
+
+/**
+ * 변경을 기록하는 엔티티. code는 로그 레코드에 저장되므로 한 번 정한 값은 바꾸지 않는다.
+ */
+public enum CdcEntity {
+    MEMBER(1, Member.class, "member"),
+    ORDER(2, Order.class, "orders"),
+    TEAM(3, Team.class, "team"),
+    ITEM(4, Item.class, "item");
+
+    private final int code;
+    private final Class<?> entityClass;
+    private final String table;
+
+    CdcEntity(int code, Class<?> entityClass, String table) {
+        this.code = code;
+        this.entityClass = entityClass;
+        this.table = table;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * 기록 대상이 아니면 null.
+     */
+    public static CdcEntity of(Class<?> type) {
+        for (CdcEntity entity : values()) {
+            if (entity.entityClass == type) {
+                return entity;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 테이블 이름으로 찾는다. 대소문자와 스키마는 무시하고, 기록 대상이 아니면 null.
+     */
+    public static CdcEntity ofTable(String table) {
+        String name = table.substring(table.lastIndexOf('.') + 1);
+        for (CdcEntity entity : values()) {
+            if (entity.table.equalsIgnoreCase(name)) {
+                return entity;
+            }
+        }
+        return null;
+    }
+
+    static CdcEntity ofCode(int code) {
+        for (CdcEntity entity : values()) {
+            if (entity.code == code) {
+                return entity;
+            }
+        }
+        throw new IllegalArgumentException("unknown entity code: " + code);
+    }
+}
@@ -0,0 +1,77 @@
+package jpabook.example.cdc;
+
+import jpabook.example.config.HibernateListenerRegistrar;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.Serializable;
+
+/**
+ * 엔티티 단위 변경이 커밋되면 변경 로그에 추가한다. 롤백된 변경은 기록하지 않는다.
+ * 벌크 연산은 영속성 컨텍스트를 거치지 않으므로 BulkChangeCapture로 아이디를 기록하거나,
+ * 그냥 실행하면 BulkStatementCapture가 테이블 단위로 기록한다.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "jpabook.cdc.enabled", havingValue = "true", matchIfMissing = true)
+public class ChangeCaptureListener implements HibernateListenerRegistrar, PostCommitInsertEventListener,
+        PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+    private final ChangeLog changeLog;
+
+    @Override
+    public void register(EventListenerRegistry registry) {
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        changed(ChangeType.INSERT, event.getPersister(), event.getId());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        changed(ChangeType.UPDATE, event.getPersister(), event.getId());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        changed(ChangeType.DELETE, event.getPersister(), event.getId());
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return CdcEntity.of(persister.getMappedClass()) != null;
+    }
+
+    private void changed(ChangeType type, EntityPersister persister, Serializable id) {
+        CdcEntity entity = CdcEntity.of(persister.getMappedClass());
+        if (entity != null && id instanceof Number) {
+            changeLog.append(type, entity, ((Number) id).longValue());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package jpabook.example.cdc;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 변경 로그를 따라가며 읽는 소비자. 위치(다음에 읽을 순서 번호)는 소비자가 들고 있으므로
+ * 처리한 위치를 저장해 두었다가 seek으로 그 지점부터 다시 받을 수 있다.
+ * 한 스레드에서만 사용한다.
+ */
+public class ChangeConsumer {
+
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final ChangeLog log;
+    private long position;
+
+    ChangeConsumer(ChangeLog log, long fromSequence) {
+        this.log = log;
+        this.position = fromSequence;
+    }
+
+    /**
+     * 지금 있는 변경을 최대 maxBatch건 가져온다. 없으면 빈 목록
+     */
+    public List<ChangeEvent> poll(int maxBatch) {
+        if (position > log.getLastSequence()) {
+            return Collections.emptyList();
+        }
+        List<ChangeEvent> batch = new ArrayList<>(Math.min(maxBatch, 1024));
+        position += log.read(position, maxBatch, batch);
+        return batch;
+    }
+
+    /**
+     * 변경이 생길 때까지 최대 timeout 동안 기다린다. 대기 간격은 짧게 시작해서 늘려 간다.
+     */
+    public List<ChangeEvent> poll(int maxBatch, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        long parkNanos = MIN_PARK_NANOS;
+        while (true) {
+            List<ChangeEvent> batch = poll(maxBatch);
+            long remaining = deadline - System.nanoTime();
+            if (!batch.isEmpty() || remaining <= 0 || isClosed() || Thread.currentThread().isInterrupted()) {
+                return batch;
+            }
+            LockSupport.parkNanos(Math.min(parkNanos, remaining));
+            parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+        }
+    }
+
+    /**
+     * 다음에 읽을 순서 번호
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    public void seek(long sequence) {
+        this.position = sequence;
+    }
+
+    boolean isClosed() {
+        return log.isClosed();
+    }
+
+    public long getLag() {
+        return Math.max(0, log.getLastSequence() - position + 1);
+    }
+}
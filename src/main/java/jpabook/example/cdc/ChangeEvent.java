@@ -0,0 +1,31 @@
+package jpabook.example.cdc;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Instant;
+
+@Getter
+@ToString
+@EqualsAndHashCode
+public class ChangeEvent {
+
+    private final long sequence;
+    private final long timestampMillis;
+    private final ChangeType type;
+    private final CdcEntity entity;
+    private final long entityId;
+
+    public ChangeEvent(long sequence, long timestampMillis, ChangeType type, CdcEntity entity, long entityId) {
+        this.sequence = sequence;
+        this.timestampMillis = timestampMillis;
+        this.type = type;
+        this.entity = entity;
+        this.entityId = entityId;
+    }
+
+    public Instant getTimestamp() {
+        return Instant.ofEpochMilli(timestampMillis);
+    }
+}
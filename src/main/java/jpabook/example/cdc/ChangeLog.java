@@ -0,0 +1,352 @@
+package jpabook.example.cdc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+
+/**
+ * 엔티티 변경을 순서 번호와 함께 추가만 하는 로그. 세그먼트 파일을 메모리 매핑해서 쓴다.
+ *
+ * 세그먼트: 헤더(MAGIC, VERSION, 첫 순서 번호) | 32바이트 고정 폭 레코드
+ * 레코드: 순서 번호(8) | 시각(8) | 엔티티 아이디(8) | 엔티티 코드(4) | 변경 종류(1) | 패딩(3)
+ * 레코드 크기가 고정이므로 순서 번호만으로 위치를 계산해서 어느 지점에서든 다시 읽을 수 있다.
+ * 순서 번호를 마지막에 쓰기 때문에 재시작할 때 번호가 이어지는 곳까지만 유효한 레코드로 본다.
+ *
+ * 쓰는 쪽은 디렉터리마다 하나여야 하므로 다른 프로세스는 잠금 파일로 막고,
+ * 같은 프로세스에서 같은 디렉터리를 다시 열면 이미 열린 로그를 공유한다.
+ */
+public final class ChangeLog implements Closeable {
+
+    static final int MAGIC = 0x4A504344;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 32;
+
+    private static final String PREFIX = "changes-";
+    private static final String SUFFIX = ".log";
+    private static final String LOCK_FILE = "changes.lock";
+    private static final Map<Path, ChangeLog> OPEN = new HashMap<>();
+
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final int retainSegments;
+    private final boolean force;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+    private FileChannel lockChannel;
+    private int references;
+    private Segment active;
+    private volatile long lastSequence;
+    private volatile boolean closed;
+
+    private ChangeLog(Path directory, int recordsPerSegment, int retainSegments, boolean force) {
+        this.directory = directory;
+        this.recordsPerSegment = recordsPerSegment;
+        this.retainSegments = retainSegments;
+        this.force = force;
+    }
+
+    /**
+     * 디렉터리에 남아 있는 세그먼트를 이어서 쓰거나, 없으면 순서 번호 1부터 시작한다.
+     *
+     * @param segmentSize 세그먼트 파일 하나의 크기(바이트)
+     * @param retainSegments 보관할 세그먼트 수. 넘치면 오래된 세그먼트부터 지운다.
+     * @param force 추가할 때마다 디스크에 내려쓸지 여부
+     */
+    public static ChangeLog open(Path directory, int segmentSize, int retainSegments, boolean force) throws IOException {
+        if (segmentSize < HEADER_SIZE + RECORD_SIZE) {
+            throw new IllegalArgumentException("segmentSize too small: " + segmentSize);
+        }
+        if (retainSegments < 1) {
+            throw new IllegalArgumentException("retainSegments must be positive: " + retainSegments);
+        }
+        Path key = Files.createDirectories(directory).toRealPath();
+        synchronized (OPEN) {
+            ChangeLog log = OPEN.get(key);
+            if (log == null) {
+                log = new ChangeLog(key, (segmentSize - HEADER_SIZE) / RECORD_SIZE, retainSegments, force);
+                log.lock();
+                log.recover();
+                OPEN.put(key, log);
+            }
+            log.references++;
+            return log;
+        }
+    }
+
+    public synchronized long append(ChangeType type, CdcEntity entity, long entityId) {
+        long sequence = write(type, entity, entityId, System.currentTimeMillis());
+        flush();
+        lastSequence = sequence;
+        return sequence;
+    }
+
+    /**
+     * 같은 종류의 변경 여러 건을 한 번의 잠금으로 추가한다. 마지막 순서 번호를 반환한다.
+     */
+    public synchronized long appendAll(ChangeType type, CdcEntity entity, Collection<Long> entityIds) {
+        long timestamp = System.currentTimeMillis();
+        long sequence = lastSequence;
+        for (Long entityId : entityIds) {
+            sequence = write(type, entity, entityId, timestamp);
+        }
+        flush();
+        lastSequence = sequence;
+        return sequence;
+    }
+
+    /**
+     * fromSequence부터 최대 max건을 out에 담고 담은 건수를 반환한다. 잠금 없이 읽는다.
+     *
+     * @throws IllegalArgumentException fromSequence가 이미 지워진 세그먼트에 있을 때
+     */
+    public int read(long fromSequence, int max, List<ChangeEvent> out) {
+        long last = lastSequence;
+        if (fromSequence > last) {
+            return 0;
+        }
+        Map.Entry<Long, Segment> entry = segments.floorEntry(fromSequence);
+        if (entry == null) {
+            throw new IllegalArgumentException("sequence " + fromSequence
+                    + " is no longer retained; first available is " + getFirstSequence());
+        }
+        Segment segment = entry.getValue();
+        long sequence = fromSequence;
+        int count = 0;
+        while (count < max && sequence <= last) {
+            if (!segment.contains(sequence)) {
+                segment = segments.get(sequence);
+                if (segment == null) {
+                    break;
+                }
+            }
+            out.add(segment.read(sequence));
+            sequence++;
+            count++;
+        }
+        return count;
+    }
+
+    public ChangeConsumer tail(long fromSequence) {
+        return new ChangeConsumer(this, fromSequence);
+    }
+
+    /**
+     * 별도 데몬 스레드에서 fromSequence부터 변경을 읽어 최대 maxBatch건씩 handler에 넘긴다.
+     */
+    public ChangeSubscription subscribe(long fromSequence, int maxBatch, Consumer<List<ChangeEvent>> handler) {
+        return new ChangeSubscription(tail(fromSequence), maxBatch, handler);
+    }
+
+    /**
+     * 보관 중인 가장 오래된 순서 번호
+     */
+    public long getFirstSequence() {
+        return segments.firstKey();
+    }
+
+    /**
+     * 마지막으로 추가한 순서 번호. 아무것도 없으면 첫 순서 번호 - 1
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 공유 중인 마지막 사용자가 닫을 때 실제로 닫는다.
+     */
+    @Override
+    public void close() {
+        synchronized (OPEN) {
+            if (closed || --references > 0) {
+                return;
+            }
+            OPEN.remove(directory);
+            synchronized (this) {
+                closed = true;
+                for (Segment segment : segments.values()) {
+                    segment.close();
+                }
+                try {
+                    lockChannel.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    private long write(ChangeType type, CdcEntity entity, long entityId, long timestamp) {
+        if (closed) {
+            throw new IllegalStateException("change log is closed: " + directory);
+        }
+        long sequence = active == null ? lastSequence + 1 : active.next;
+        if (active == null || !active.contains(sequence)) {
+            roll(sequence);
+        }
+        active.write(sequence, timestamp, entityId, entity.getCode(), (byte) type.ordinal());
+        return sequence;
+    }
+
+    private void flush() {
+        if (force && active != null) {
+            active.buffer.force();
+        }
+    }
+
+    private void roll(long firstSequence) {
+        try {
+            active = Segment.create(directory.resolve(fileName(firstSequence)), firstSequence, recordsPerSegment);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        segments.put(firstSequence, active);
+        while (segments.size() > retainSegments) {
+            Segment oldest = segments.pollFirstEntry().getValue();
+            oldest.close();
+            try {
+                Files.deleteIfExists(oldest.path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void lock() throws IOException {
+        lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        if (lockChannel.tryLock() == null) {
+            lockChannel.close();
+            throw new IllegalStateException("change log is in use by another process: " + directory);
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        for (Path file : files) {
+            Segment segment = Segment.open(file);
+            segments.put(segment.firstSequence, segment);
+        }
+        if (segments.isEmpty()) {
+            roll(1);
+            lastSequence = 0;
+        } else {
+            active = segments.lastEntry().getValue();
+            lastSequence = active.next - 1;
+        }
+    }
+
+    private static String fileName(long firstSequence) {
+        return String.format("%s%020d%s", PREFIX, firstSequence, SUFFIX);
+    }
+
+    private static final class Segment {
+
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final long firstSequence;
+        private final int capacity;
+        private long next;
+
+        private Segment(Path path, FileChannel channel, MappedByteBuffer buffer, long firstSequence, int capacity) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.firstSequence = firstSequence;
+            this.capacity = capacity;
+            this.next = firstSequence;
+        }
+
+        static Segment create(Path path, long firstSequence, int capacity) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(0, MAGIC)
+                    .putInt(4, VERSION)
+                    .putLong(8, firstSequence);
+            return new Segment(path, channel, buffer, firstSequence, capacity);
+        }
+
+        static Segment open(Path path) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                channel.close();
+                throw new IllegalStateException("Not a change log segment: " + path);
+            }
+            Segment segment = new Segment(path, channel, buffer, buffer.getLong(8),
+                    (buffer.capacity() - HEADER_SIZE) / RECORD_SIZE);
+            while (segment.contains(segment.next) && buffer.getLong(segment.offset(segment.next)) == segment.next) {
+                segment.next++;
+            }
+            return segment;
+        }
+
+        boolean contains(long sequence) {
+            return sequence >= firstSequence && sequence - firstSequence < capacity;
+        }
+
+        void write(long sequence, long timestamp, long entityId, int entityCode, byte type) {
+            int offset = offset(sequence);
+            buffer.putLong(offset + 8, timestamp)
+                    .putLong(offset + 16, entityId)
+                    .putInt(offset + 24, entityCode)
+                    .put(offset + 28, type)
+                    .putLong(offset, sequence);
+            next = sequence + 1;
+        }
+
+        ChangeEvent read(long sequence) {
+            int offset = offset(sequence);
+            return new ChangeEvent(buffer.getLong(offset), buffer.getLong(offset + 8),
+                    ChangeType.ofCode(buffer.get(offset + 28)), CdcEntity.ofCode(buffer.getInt(offset + 24)),
+                    buffer.getLong(offset + 16));
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private int offset(long sequence) {
+            return HEADER_SIZE + (int) (sequence - firstSequence) * RECORD_SIZE;
+        }
+    }
+}
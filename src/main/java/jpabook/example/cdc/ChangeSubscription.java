@@ -0,0 +1,76 @@
+package jpabook.example.cdc;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 데몬 스레드 하나로 변경 로그를 따라가며 모인 변경을 묶어서 전달한다.
+ * handler가 예외를 던지면 같은 묶음을 다시 전달하지 않고 위치를 그대로 유지한 채 구독을 멈춘다.
+ */
+@Slf4j
+public class ChangeSubscription implements AutoCloseable {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(100);
+
+    private final ChangeConsumer consumer;
+    private final int maxBatch;
+    private final Consumer<List<ChangeEvent>> handler;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile long delivered;
+
+    ChangeSubscription(ChangeConsumer consumer, int maxBatch, Consumer<List<ChangeEvent>> handler) {
+        this.consumer = consumer;
+        this.maxBatch = maxBatch;
+        this.handler = handler;
+        this.delivered = consumer.getPosition() - 1;
+        this.thread = new Thread(this::run, "cdc-subscriber");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * handler가 처리를 마친 마지막 순서 번호
+     */
+    public long getDeliveredSequence() {
+        return delivered;
+    }
+
+    public boolean isRunning() {
+        return running && thread.isAlive();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(POLL_TIMEOUT.toMillis() * 10);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            List<ChangeEvent> batch = consumer.poll(maxBatch, POLL_TIMEOUT);
+            if (batch.isEmpty()) {
+                if (Thread.interrupted() || consumer.isClosed()) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                handler.accept(batch);
+                delivered = batch.get(batch.size() - 1).getSequence();
+            } catch (RuntimeException e) {
+                consumer.seek(batch.get(0).getSequence());
+                log.warn("change subscriber stopped at sequence {}", batch.get(0).getSequence(), e);
+                running = false;
+            }
+        }
+    }
+}
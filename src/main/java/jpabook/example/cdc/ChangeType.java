@@ -0,0 +1,17 @@
+package jpabook.example.cdc;
+
+public enum ChangeType {
+    INSERT,
+    UPDATE,
+    DELETE,
+    /**
+     * 어떤 행이 바뀌었는지 모르는 테이블 단위 변경. 엔티티 아이디는 0이다. (BulkStatementCapture)
+     */
+    TABLE;
+
+    private static final ChangeType[] VALUES = values();
+
+    static ChangeType ofCode(int code) {
+        return VALUES[code];
+    }
+}
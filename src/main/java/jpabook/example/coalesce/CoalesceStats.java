@@ -0,0 +1,40 @@
+package jpabook.example.coalesce;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.util.Map;
+
+@Getter
+@ToString
+@RequiredArgsConstructor
+public class CoalesceStats {
+
+    /**
+     * 실제로 실행한 쿼리 수
+     */
+    private final long executions;
+    /**
+     * 실행 중인 쿼리에 합류해서 결과를 받은 호출 수
+     */
+    private final long coalescedCallers;
+    /**
+     * 합류했지만 제한 시간 안에 결과를 받지 못한 호출 수
+     */
+    private final long timeouts;
+    private final long failures;
+    /**
+     * 등록된 지문이지만 영속성 컨텍스트에 반영되지 않은 변경이 있어 직접 실행한 호출 수
+     */
+    private final long bypassed;
+    private final int inFlight;
+    private final Map<String, Long> coalescedByFingerprint;
+
+    /**
+     * 실행 한 번이 대신한 평균 호출 수
+     */
+    public double getCallersPerExecution() {
+        return executions == 0 ? 0 : (double) (executions + coalescedCallers) / executions;
+    }
+}
@@ -0,0 +1,287 @@
+package jpabook.example.coalesce;
+
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.Projections;
+import com.querydsl.jpa.JPQLSerializer;
+import com.querydsl.jpa.impl.JPAProvider;
+import com.querydsl.jpa.impl.JPAQuery;
+import jpabook.example.cache.QueryCacheKey;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.QueryTimeoutException;
+import javax.persistence.metamodel.ManagedType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 같은 지문(JPQL)과 파라미터의 조회가 동시에 들어오면 먼저 온 호출만 실행하고, 나머지는 그 결과를 복사해서 받는다.
+ * 트랜잭션 밖의 호출은 커넥션을 실행 중인 쿼리 수만큼만 사용한다.
+ *
+ * enable()로 등록한 지문만 합치고 나머지는 그대로 실행한다. 결과는 실행을 시작한 시점의 데이터이므로
+ * 합류한 호출은 자신이 호출하기 직전에 커밋된 변경을 보지 못할 수 있다.
+ * 엔티티는 실행한 호출의 영속성 컨텍스트에 속하므로 DTO, Tuple, 값 프로젝션만 받는다.
+ * 공유하는 것은 프로젝션의 인자 값뿐이고 DTO, Tuple은 호출마다 새로 만든다. 그래서 인자 값은 String, 숫자, enum,
+ * java.time처럼 변경할 수 없는 타입만 받는다.
+ * 읽기 전용이 아닌 트랜잭션 안의 호출은 합치지 않는다. 커밋되지 않은 쓰기가 다른 호출에 전달될 수 있다.
+ * 읽기 전용 트랜잭션 안의 호출은 합치지만, 트랜잭션을 시작할 때 이미 커넥션을 받았으므로 기다리는 동안에도
+ * 커넥션을 잡고 있다. 이때 줄어드는 것은 DB가 실행하는 쿼리 수이고 사용하는 커넥션 수는 줄지 않는다.
+ */
+@Slf4j
+@Component
+public class QueryCoalescer {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    private static final Set<Class<?>> IMMUTABLE_VALUES = Set.of(String.class, Boolean.class, Character.class,
+            Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class, BigDecimal.class,
+            BigInteger.class, UUID.class);
+
+    private final Duration timeout;
+
+    private final Set<String> fingerprints = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<QueryCacheKey, CompletableFuture<List<?>>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder bypassed = new LongAdder();
+    private final ConcurrentHashMap<String, LongAdder> coalescedByFingerprint = new ConcurrentHashMap<>();
+
+    public QueryCoalescer(@Value("${jpabook.coalesce.timeout:5s}") Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * 쿼리의 지문을 등록한다. 같은 모양의 쿼리는 파라미터가 달라도 같은 지문이다.
+     */
+    public String enable(JPAQuery<?> query) {
+        String fingerprint = fingerprint(query);
+        enable(fingerprint);
+        return fingerprint;
+    }
+
+    public void enable(String fingerprint) {
+        fingerprints.add(fingerprint);
+    }
+
+    public void disable(String fingerprint) {
+        fingerprints.remove(fingerprint);
+    }
+
+    public boolean isEnabled(String fingerprint) {
+        return fingerprints.contains(fingerprint);
+    }
+
+    public String fingerprint(JPAQuery<?> query) {
+        return serialize(query.getMetadata()).toString();
+    }
+
+    public <T> List<T> fetch(JPAQuery<T> query) {
+        return fetch(query, timeout);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> List<T> fetch(JPAQuery<T> query, Duration timeout) {
+        QueryMetadata metadata = query.getMetadata();
+        JPQLSerializer serializer = serialize(metadata);
+        String fingerprint = serializer.toString();
+        if (!fingerprints.contains(fingerprint)) {
+            return query.fetch();
+        }
+        Expression<T> projection = (Expression<T>) metadata.getProjection();
+        checkProjection(projection);
+        if (!isShareable()) {
+            bypassed.increment();
+            return query.fetch();
+        }
+        if (!(projection instanceof FactoryExpression)) {
+            return execute(key(fingerprint, serializer, metadata), timeout, query::fetch);
+        }
+        List<Expression<?>> columns = new ArrayList<>();
+        collectColumns(projection, columns);
+        List<Object[]> rows = execute(key(fingerprint, serializer, metadata), timeout,
+                () -> query.clone().select(Projections.array(Object[].class, columns.toArray(new Expression[0]))).fetch());
+        List<T> result = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            result.add(type(projection).cast(newInstance(projection, row, new int[1])));
+        }
+        return result;
+    }
+
+    /**
+     * key가 같은 호출이 실행 중이면 그 결과를 기다리고, 아니면 loader를 실행한다.
+     * 기다리다가 timeout이 지나면 QueryTimeoutException을 던진다. 실행한 호출은 기다리지 않으므로 제한 시간이 없다.
+     * 리스트는 호출마다 새로 만들지만 원소는 모든 호출이 공유하므로 loader는 변경할 수 없는 원소만 반환해야 한다.
+     */
+    public <T> List<T> execute(QueryCacheKey key, Duration timeout, Supplier<List<T>> loader) {
+        CompletableFuture<List<?>> flight = new CompletableFuture<>();
+        CompletableFuture<List<?>> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            return join(key, running, timeout);
+        }
+
+        executions.increment();
+        try {
+            List<T> result = loader.get();
+            inFlight.remove(key, flight);
+            flight.complete(result);
+            return new ArrayList<>(result);
+        } catch (RuntimeException | Error e) {
+            failures.increment();
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public CoalesceStats getStats() {
+        Map<String, Long> byFingerprint = new TreeMap<>();
+        coalescedByFingerprint.forEach((fingerprint, count) -> byFingerprint.put(fingerprint, count.sum()));
+        return new CoalesceStats(executions.sum(), coalesced.sum(), timeouts.sum(), failures.sum(), bypassed.sum(),
+                inFlight.size(), Collections.unmodifiableMap(byFingerprint));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<T> join(QueryCacheKey key, CompletableFuture<List<?>> running, Duration timeout) {
+        coalesced.increment();
+        coalescedByFingerprint.computeIfAbsent(key.getFingerprint(), fingerprint -> new LongAdder()).increment();
+        try {
+            return new ArrayList<>((List<T>) running.get(timeout.toNanos(), TimeUnit.NANOSECONDS));
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            throw new QueryTimeoutException("coalesced query did not finish within " + timeout + ": "
+                    + key.getFingerprint());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QueryTimeoutException("interrupted while waiting for coalesced query: " + key.getFingerprint());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private JPQLSerializer serialize(QueryMetadata metadata) {
+        JPQLSerializer serializer = new JPQLSerializer(JPAProvider.getTemplates(em), em);
+        serializer.serialize(metadata, false, null);
+        return serializer;
+    }
+
+    private static QueryCacheKey key(String fingerprint, JPQLSerializer serializer, QueryMetadata metadata) {
+        List<Object> parameters = new ArrayList<>();
+        serializer.getConstantToAllLabels().entrySet().stream()
+                .sorted(Map.Entry.comparingByValue(Comparator.comparingInt(String::length)
+                        .thenComparing(Comparator.naturalOrder())))
+                .forEach(entry -> parameters.add(entry.getKey()));
+        metadata.getParams().entrySet().stream()
+                .sorted(Comparator.comparing(entry -> entry.getKey().getName()))
+                .forEach(entry -> parameters.add(entry.getValue()));
+        // 같은 JPQL이라도 limit, offset이 다르면 결과가 다르다.
+        parameters.add(metadata.getModifiers().getLimit());
+        parameters.add(metadata.getModifiers().getOffset());
+        return new QueryCacheKey(fingerprint, parameters.toArray());
+    }
+
+    private void checkProjection(Expression<?> projection) {
+        if (projection instanceof FactoryExpression) {
+            for (Expression<?> arg : ((FactoryExpression<?>) projection).getArgs()) {
+                checkProjection(arg);
+            }
+            return;
+        }
+        if (projection == null || isManaged(projection.getType())) {
+            throw new IllegalArgumentException("only DTO, tuple or value projections can be coalesced: " + projection);
+        }
+        if (!isImmutable(projection.getType())) {
+            throw new IllegalArgumentException("values of a mutable type cannot be shared between callers: "
+                    + projection + " (" + projection.getType().getName() + ")");
+        }
+    }
+
+    private static boolean isImmutable(Class<?> type) {
+        return type.isPrimitive() || type.isEnum() || IMMUTABLE_VALUES.contains(type)
+                || type.getName().startsWith("java.time.");
+    }
+
+    /**
+     * 프로젝션 인자를 중첩된 것까지 펼쳐서 SELECT 절 순서대로 모은다.
+     */
+    private static void collectColumns(Expression<?> expression, List<Expression<?>> columns) {
+        if (expression instanceof FactoryExpression) {
+            for (Expression<?> arg : ((FactoryExpression<?>) expression).getArgs()) {
+                collectColumns(arg, columns);
+            }
+        } else {
+            columns.add(expression);
+        }
+    }
+
+    /**
+     * 공유하는 행에서 호출마다 프로젝션 객체를 새로 만든다. 중첩된 프로젝션도 새로 만든다.
+     */
+    private static Object newInstance(Expression<?> expression, Object[] row, int[] position) {
+        if (!(expression instanceof FactoryExpression)) {
+            return row[position[0]++];
+        }
+        List<Expression<?>> args = ((FactoryExpression<?>) expression).getArgs();
+        Object[] values = new Object[args.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = newInstance(args.get(i), row, position);
+        }
+        return ((FactoryExpression<?>) expression).newInstance(values);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Class<T> type(Expression<T> expression) {
+        return (Class<T>) expression.getType();
+    }
+
+    private boolean isManaged(Class<?> type) {
+        for (ManagedType<?> managedType : em.getMetamodel().getManagedTypes()) {
+            if (managedType.getJavaType().isAssignableFrom(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 읽기 전용이 아닌 트랜잭션은 이미 flush한 쓰기나 조회 전에 자동 flush될 변경을 볼 수 있다.
+     * 실행하면 그 결과가 다른 호출에 전달되고, 합류하면 자기 변경이 빠진 결과를 받는다.
+     * 영속성 컨텍스트를 더티 체크하지 않고 트랜잭션 속성만 본다.
+     */
+    private static boolean isShareable() {
+        return !TransactionSynchronizationManager.isActualTransactionActive()
+                || TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+}
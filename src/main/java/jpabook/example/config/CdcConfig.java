@@ -0,0 +1,27 @@
+package jpabook.example.config;
+
+import jpabook.example.cdc.ChangeLog;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * 변경 로그 디렉터리는 쓰는 프로세스가 하나여야 하므로(ChangeLog의 잠금 파일) 기본값에 인스턴스마다 다른
+ * 주문 id 노드 번호를 넣는다. 같은 인스턴스가 다시 시작하면 같은 디렉터리를 이어서 쓴다.
+ */
+@Configuration
+@ConditionalOnProperty(name = "jpabook.cdc.enabled", havingValue = "true", matchIfMissing = true)
+public class CdcConfig {
+
+    @Bean(destroyMethod = "close")
+    public ChangeLog changeLog(@Value("${jpabook.cdc.directory:${java.io.tmpdir}/jpabook-cdc-${spring.jpa.properties.jpabook.order-id.node}}") String directory,
+                               @Value("${jpabook.cdc.segment-size:67108864}") int segmentSize,
+                               @Value("${jpabook.cdc.retain-segments:8}") int retainSegments,
+                               @Value("${jpabook.cdc.force:false}") boolean force) throws IOException {
+        return ChangeLog.open(Paths.get(directory), segmentSize, retainSegments, force);
+    }
+}
@@ -0,0 +1,51 @@
+package jpabook.example.config;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HibernateListenerRegistrar 빈들의 리스너를 SessionFactory를 만드는 과정에서 등록한다.
+ *
+ * 등록이 EntityManagerFactory를 만드는 스레드에서 끝나므로, 백그라운드 부트스트랩에서도 메인 스레드가
+ * 리스너 등록 때문에 EntityManagerFactory를 기다리지 않고, 첫 세션부터 리스너가 적용된다.
+ * 등록할 빈은 EntityManagerFactory를 만들기 전에 메인 스레드에서 모두 생성해 둔다.
+ * 부트스트랩 스레드에서 빈을 조회하면 빈 팩토리 잠금을 기다리게 되기 때문이다.
+ */
+@Component
+public class HibernateListenerIntegrator implements HibernatePropertiesCustomizer, Integrator {
+
+    private final List<HibernateListenerRegistrar> registrars;
+
+    public HibernateListenerIntegrator(List<HibernateListenerRegistrar> registrars) {
+        this.registrars = List.copyOf(registrars);
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        IntegratorProvider provider = () -> List.of(this);
+        hibernateProperties.put(EntityManagerFactoryBuilderImpl.INTEGRATOR_PROVIDER, provider);
+    }
+
+    @Override
+    public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory,
+                          SessionFactoryServiceRegistry serviceRegistry) {
+        EventListenerRegistry registry = serviceRegistry.getService(EventListenerRegistry.class);
+        for (HibernateListenerRegistrar registrar : registrars) {
+            registrar.register(registry);
+        }
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+}
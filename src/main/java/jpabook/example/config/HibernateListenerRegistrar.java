@@ -0,0 +1,12 @@
+package jpabook.example.config;
+
+import org.hibernate.event.service.spi.EventListenerRegistry;
+
+/**
+ * SessionFactory가 만들어질 때 하이버네이트 이벤트 리스너를 등록한다.
+ * EntityManagerFactory를 만드는 중에 생성되므로 구현 빈은 EntityManagerFactory에 의존하면 안 된다.
+ */
+public interface HibernateListenerRegistrar {
+
+    void register(EventListenerRegistry registry);
+}
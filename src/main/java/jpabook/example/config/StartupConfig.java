@@ -0,0 +1,32 @@
+package jpabook.example.config;
+
+import jpabook.example.startup.StartupTimeline;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+@Configuration
+public class StartupConfig {
+
+    /**
+     * EntityManagerFactory를 백그라운드 스레드에서 만든다.
+     * 다른 빈은 기다리지 않고 초기화되고, EntityManagerFactory를 처음 사용할 때 완료를 기다린다.
+     * 하이버네이트 이벤트 리스너는 HibernateListenerIntegrator가 이 스레드에서 등록한다.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "jpabook.startup.background-bootstrap", havingValue = "true")
+    public EntityManagerFactoryBuilderCustomizer backgroundBootstrapCustomizer(ObjectProvider<StartupTimeline> startupTimeline) {
+        StartupTimeline timeline = startupTimeline.getIfAvailable();
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("jpa-bootstrap-");
+        executor.setTaskDecorator(task -> () -> {
+            task.run();
+            if (timeline != null) {
+                timeline.mark(StartupTimeline.JPA_BOOTSTRAPPED);
+            }
+        });
+        return builder -> builder.setBootstrapExecutor(executor);
+    }
+}
@@ -0,0 +1,53 @@
+package jpabook.example.config;
+
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hibernate에는 StatementInspector를 하나만 지정할 수 있으므로 StatementInspector 빈들을 차례로 호출하는 하나로 묶는다.
+ * 앞의 inspector가 바꾼 SQL을 다음 inspector가 받는다.
+ * StatelessSession은 STATEMENT_INSPECTOR를 쓰지 않고 세션 팩토리 Interceptor의 onPrepareStatement()만 호출하므로
+ * 같은 체인을 Interceptor로도 등록한다. 일반 세션은 STATEMENT_INSPECTOR만 호출하므로 두 번 불리지 않는다.
+ */
+@Component
+public class StatementInspectorChain implements HibernatePropertiesCustomizer {
+
+    private final List<StatementInspector> inspectors;
+
+    public StatementInspectorChain(List<StatementInspector> inspectors) {
+        this.inspectors = List.copyOf(inspectors);
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        StatementInspector chain = sql -> {
+            String inspected = sql;
+            for (StatementInspector inspector : inspectors) {
+                inspected = inspector.inspect(inspected);
+            }
+            return inspected;
+        };
+        hibernateProperties.put(AvailableSettings.STATEMENT_INSPECTOR, chain);
+        hibernateProperties.put(AvailableSettings.INTERCEPTOR, new StatelessInspection(chain));
+    }
+
+    private static class StatelessInspection extends EmptyInterceptor {
+
+        private final transient StatementInspector chain;
+
+        StatelessInspection(StatementInspector chain) {
+            this.chain = chain;
+        }
+
+        @Override
+        public String onPrepareStatement(String sql) {
+            return chain.inspect(sql);
+        }
+    }
+}
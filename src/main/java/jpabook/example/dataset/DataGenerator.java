@@ -0,0 +1,551 @@
+package jpabook.example.dataset;
+
+import com.github.gavlyukovskiy.boot.jdbc.decorator.DecoratedDataSource;
+import jpabook.example.cache.QueryResultCache;
+import jpabook.example.catalog.CatalogSnapshotStore;
+import jpabook.example.search.MemberNameIndex;
+import jpabook.example.shard.SnowflakeIdAllocator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 성능 테스트용 Team, Item, Member, Order 데이터를 만든다.
+ *
+ * 행은 chunk-size 단위 작업으로 나누어 여러 스레드에서 넣는다. 작업마다 시드와 작업 번호로 만든
+ * SplittableRandom을 쓰므로 스레드 수나 실행 순서와 관계없이 같은 시드면 같은 데이터가 된다.
+ * 대량으로 넣는 동안 SQL 로그와 커넥션 계측을 거치지 않도록 p6spy, 계측 래퍼 아래의 커넥션 풀을 직접 사용한다.
+ *
+ * Team, Item, Member 아이디는 hibernate_sequence에서 한꺼번에 예약하고, 주문 아이디는 주문 시각과
+ * 전용 노드 번호로 만든다. 그래서 애플리케이션이 이후에 만드는 엔티티와 겹치지 않는다.
+ * 주문 아이디는 스펙의 기간으로 정해지므로 기간이 겹치는 데이터셋은 한 DB에 함께 둘 수 없다.
+ * 영속성 컨텍스트와 엔티티 리스너를 거치지 않으므로 만든 뒤에 쿼리 결과 캐시, 카탈로그 스냅샷, 회원 이름 색인을
+ * 직접 갱신한다.
+ *
+ * 스냅샷은 H2 CSVWRITE, CSVREAD로 DB 서버의 파일 시스템에 쓰고 읽는다. 한 트랜잭션이 너무 커지지 않도록
+ * 테이블을 아이디 범위로 나누어 chunk-size 행 정도씩 파일을 만들고, 복원할 때도 파일마다 따로 커밋한다.
+ * 스냅샷의 Team, Item, Member 아이디는 다른 DB에서 예약한 것일 수 있으므로, 복원할 때 이 DB에서 다시 예약하고
+ * 그 차이만큼 아이디와 참조를 옮겨서 넣는다. 주문 아이디는 그대로 쓰므로 기간이 겹치는 주문이 있으면 복원하지 않는다.
+ * 기존 행을 지우지 않으므로 이미 복원한 데이터셋을 다시 복원하려면 먼저 remove()해야 한다.
+ */
+@Slf4j
+@Component
+public class DataGenerator {
+
+    /**
+     * 만든 주문 아이디에 쓰는 노드 번호. 운영 노드(jpabook.order-id.node)와 겹치지 않게 가장 큰 값을 쓴다.
+     */
+    public static final int ORDER_NODE = SnowflakeIdAllocator.MAX_NODE;
+
+    private static final String SNAPSHOT_PROPERTIES = "dataset.properties";
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final QueryResultCache queryResultCache;
+    private final CatalogSnapshotStore catalogSnapshotStore;
+    private final ObjectProvider<MemberNameIndex> memberNameIndex;
+    private final int parallelism;
+    private final int chunkSize;
+    private final int batchSize;
+    private final Path snapshotDirectory;
+
+    public DataGenerator(DataSource dataSource,
+                         QueryResultCache queryResultCache,
+                         CatalogSnapshotStore catalogSnapshotStore,
+                         ObjectProvider<MemberNameIndex> memberNameIndex,
+                         @Value("${jpabook.dataset.parallelism:4}") int parallelism,
+                         @Value("${jpabook.dataset.chunk-size:50000}") int chunkSize,
+                         @Value("${jpabook.dataset.batch-size:1000}") int batchSize,
+                         @Value("${jpabook.dataset.snapshot-directory:${java.io.tmpdir}/jpabook-dataset}")
+                                 String snapshotDirectory) {
+        if (parallelism <= 0 || chunkSize <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("parallelism, chunkSize and batchSize must be positive");
+        }
+        this.dataSource = unwrap(dataSource);
+        this.jdbcTemplate = new JdbcTemplate(this.dataSource);
+        this.queryResultCache = queryResultCache;
+        this.catalogSnapshotStore = catalogSnapshotStore;
+        this.memberNameIndex = memberNameIndex;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+        this.batchSize = batchSize;
+        this.snapshotDirectory = Paths.get(snapshotDirectory);
+    }
+
+    /**
+     * 같은 스펙의 스냅샷이 있으면 복원하고, 없으면 만든 뒤 스냅샷을 남긴다.
+     */
+    public Dataset load(DatasetSpec spec) {
+        Optional<Dataset> restored = restore(spec);
+        if (restored.isPresent()) {
+            return restored.get();
+        }
+        Dataset dataset = generate(spec);
+        snapshot(dataset);
+        return dataset;
+    }
+
+    public Dataset generate(DatasetSpec spec) {
+        spec.validate();
+        long start = System.nanoTime();
+        long firstTeamId = reserveIds((long) spec.getTeams() + spec.getItems() + spec.getMembers());
+        long firstItemId = firstTeamId + spec.getTeams();
+        long firstMemberId = firstItemId + spec.getItems();
+        boolean noOrders = spec.getOrders() == 0;
+        Dataset dataset = new Dataset(spec, firstTeamId, firstItemId, firstMemberId,
+                noOrders ? 1 : orderId(spec, 0), noOrders ? 0 : orderId(spec, spec.getOrders() - 1),
+                false, Duration.ZERO);
+        checkOrderRange(dataset);
+
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            tasks.addAll(insert(spec, 1, spec.getTeams(), "insert into team (team_id, name)",
+                    (i, random, row) -> {
+                        row[0] = firstTeamId + i;
+                        row[1] = "team" + i;
+                    }));
+            tasks.addAll(insert(spec, 2, spec.getItems(), "insert into item (item_id, name)",
+                    (i, random, row) -> {
+                        row[0] = firstItemId + i;
+                        row[1] = "item" + i;
+                    }));
+            run(tasks);
+
+            Zipf teams = new Zipf(spec.getTeams(), spec.getMemberSkew());
+            run(insert(spec, 3, spec.getMembers(), "insert into member (member_id, name, age, team_id)",
+                    (i, random, row) -> {
+                        row[0] = firstMemberId + i;
+                        row[1] = "member" + i;
+                        row[2] = 10 + random.nextInt(60);
+                        row[3] = firstTeamId + teams.sample(random);
+                    }));
+
+            if (!noOrders) {
+                Zipf members = new Zipf(spec.getMembers(), spec.getOrderSkew());
+                Zipf items = new Zipf(spec.getItems(), spec.getItemSkew());
+                run(insert(spec, 4, spec.getOrders(), "insert into orders (order_id, member_id, item_id, quantity)",
+                        (i, random, row) -> {
+                            row[0] = orderId(spec, i);
+                            row[1] = firstMemberId + members.sample(random);
+                            row[2] = firstItemId + items.sample(random);
+                            row[3] = 1 + random.nextInt(5);
+                        }));
+            }
+        } catch (RuntimeException e) {
+            remove(dataset);
+            throw e;
+        }
+        changed();
+        Dataset generated = dataset.withElapsed(false, Duration.ofNanos(System.nanoTime() - start));
+        log.info("dataset generated: {} rows in {} ms ({} rows/s)", generated.getRowCount(),
+                generated.getElapsed().toMillis(), (long) generated.getRowsPerSecond());
+        return generated;
+    }
+
+    /**
+     * 스냅샷 디렉터리에 테이블별 CSV와 데이터셋 정보를 쓴다. 임시 디렉터리에 쓴 뒤 이름을 바꾼다.
+     */
+    public Path snapshot(Dataset dataset) {
+        Path target = snapshotPath(dataset.getSpec());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            FileSystemUtils.deleteRecursively(temp);
+            Files.createDirectories(temp);
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (Table table : tables(dataset)) {
+                List<long[]> ranges = table.ranges(chunkSize);
+                for (int i = 0; i < ranges.size(); i++) {
+                    String file = temp.resolve(String.format("%s-%05d.csv", table.name, i)).toString();
+                    long[] range = ranges.get(i);
+                    tasks.add(() -> {
+                        jdbcTemplate.queryForObject("call csvwrite(?, ?)", Integer.class, file,
+                                "select " + table.columns + " from " + table.name + " where " + table.idColumn
+                                        + " between " + range[0] + " and " + range[1]);
+                        return null;
+                    });
+                }
+            }
+            run(tasks);
+            try (Writer writer = Files.newBufferedWriter(temp.resolve(SNAPSHOT_PROPERTIES))) {
+                toProperties(dataset).store(writer, dataset.getSpec().toString());
+            }
+            FileSystemUtils.deleteRecursively(target);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            return target;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Optional<Dataset> restore(DatasetSpec spec) {
+        Path source = snapshotPath(spec);
+        Path properties = source.resolve(SNAPSHOT_PROPERTIES);
+        if (!Files.exists(properties)) {
+            return Optional.empty();
+        }
+        long start = System.nanoTime();
+        Dataset saved;
+        try (Reader reader = Files.newBufferedReader(properties)) {
+            Properties values = new Properties();
+            values.load(reader);
+            saved = fromProperties(spec, values);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        long offset = reserveIds((long) spec.getTeams() + spec.getItems() + spec.getMembers()) - saved.getFirstTeamId();
+        Dataset dataset = new Dataset(spec, saved.getFirstTeamId() + offset, saved.getFirstItemId() + offset,
+                saved.getFirstMemberId() + offset, saved.getFirstOrderId(), saved.getLastOrderId(), true, Duration.ZERO);
+        checkOrderRange(dataset);
+        try {
+            // 회원은 팀을, 주문은 회원과 상품을 참조하므로 테이블 순서대로 넣는다.
+            for (Table table : tables(dataset)) {
+                String select = table.shifted(offset);
+                List<Callable<Void>> tasks = new ArrayList<>();
+                for (Path file : snapshotFiles(source, table)) {
+                    // H2는 테이블 함수 인자에 파라미터를 받지 않으므로 파일 이름을 문자열 상수로 넣는다.
+                    String name = file.toString().replace("'", "''");
+                    tasks.add(() -> {
+                        jdbcTemplate.update("insert into " + table.name + " (" + table.columns + ") select "
+                                + select + " from csvread('" + name + "')");
+                        return null;
+                    });
+                }
+                run(tasks);
+            }
+        } catch (RuntimeException e) {
+            // 아이디는 이 DB에서 예약했고 주문 기간은 비어 있었으므로 넣은 행만 지워진다.
+            remove(dataset);
+            throw e;
+        }
+        changed();
+        Dataset restored = dataset.withElapsed(true, Duration.ofNanos(System.nanoTime() - start));
+        log.info("dataset restored from {}: {} rows in {} ms", source, restored.getRowCount(),
+                restored.getElapsed().toMillis());
+        return Optional.of(restored);
+    }
+
+    /**
+     * 데이터셋 아이디 범위의 행을 지운다. 참조하는 쪽 테이블부터 지운다.
+     */
+    public void remove(Dataset dataset) {
+        List<Table> tables = tables(dataset);
+        for (int t = tables.size() - 1; t >= 0; t--) {
+            Table table = tables.get(t);
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (long[] range : table.ranges(chunkSize)) {
+                tasks.add(() -> {
+                    jdbcTemplate.update("delete from " + table.name + " where " + table.idColumn
+                            + " between ? and ?", range[0], range[1]);
+                    return null;
+                });
+            }
+            run(tasks);
+        }
+        changed();
+    }
+
+    public Path snapshotPath(DatasetSpec spec) {
+        return snapshotDirectory.resolve("dataset-" + spec.getKey()).toAbsolutePath();
+    }
+
+    /**
+     * i번째 주문 아이디. 시각이 같은 주문은 순번으로 구분하므로 1ms에 4096건을 넘으면 안 된다.
+     */
+    static long orderId(DatasetSpec spec, long index) {
+        long from = spec.getOrdersFrom().toEpochMilli();
+        long span = spec.getOrdersTo().toEpochMilli() - from;
+        if (spec.getOrders() > span * 4096) {
+            throw new IllegalArgumentException("too many orders for the period: " + spec);
+        }
+        long millis = from + (long) ((double) index * span / spec.getOrders());
+        return SnowflakeIdAllocator.idOf(Instant.ofEpochMilli(millis), ORDER_NODE, (int) index);
+    }
+
+    /**
+     * 주문 id는 기간으로 정해지므로 기간이 겹치는 데이터셋을 함께 둘 수 없다.
+     */
+    private void checkOrderRange(Dataset dataset) {
+        Long existing = jdbcTemplate.queryForObject("select count(*) from orders where order_id between ? and ?",
+                Long.class, dataset.getFirstOrderId(), dataset.getLastOrderId());
+        if (existing > 0) {
+            throw new IllegalStateException(existing + " orders already exist in the period of " + dataset.getSpec()
+                    + "; remove the previous dataset or use another period");
+        }
+    }
+
+    /**
+     * index번째 행의 컬럼 값을 row에 채운다. row 길이는 insert 문의 컬럼 수와 같다.
+     */
+    interface RowWriter {
+
+        void write(long index, SplittableRandom random, Object[] row);
+    }
+
+    private List<Callable<Void>> insert(DatasetSpec spec, int table, long rows, String insert, RowWriter writer) {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (long from = 0, chunk = 0; from < rows; from += chunkSize, chunk++) {
+            long start = from;
+            long end = Math.min(rows, from + chunkSize);
+            long seed = mix(spec.getSeed(), table, chunk);
+            tasks.add(() -> {
+                writeChunk(insert, start, end, new SplittableRandom(seed), writer);
+                return null;
+            });
+        }
+        return tasks;
+    }
+
+    /**
+     * H2 클라이언트는 JDBC 배치를 행마다 따로 보내므로 batch-size 행을 여러 행 VALUES 한 문장으로 보낸다.
+     */
+    private void writeChunk(String insert, long from, long to, SplittableRandom random, RowWriter writer)
+            throws SQLException {
+        int columns = insert.substring(insert.indexOf('(')).split(",").length;
+        Object[] row = new Object[columns];
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                long i = from;
+                if (to - from >= batchSize) {
+                    try (PreparedStatement statement = connection.prepareStatement(values(insert, columns, batchSize))) {
+                        for (; to - i >= batchSize; i += batchSize) {
+                            bind(statement, i, batchSize, random, writer, row);
+                            statement.executeUpdate();
+                        }
+                    }
+                }
+                int rest = (int) (to - i);
+                if (rest > 0) {
+                    try (PreparedStatement statement = connection.prepareStatement(values(insert, columns, rest))) {
+                        bind(statement, i, rest, random, writer, row);
+                        statement.executeUpdate();
+                    }
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement statement, long from, int rows, SplittableRandom random,
+                             RowWriter writer, Object[] row) throws SQLException {
+        int parameter = 1;
+        for (long i = from; i < from + rows; i++) {
+            writer.write(i, random, row);
+            for (Object value : row) {
+                statement.setObject(parameter++, value);
+            }
+        }
+    }
+
+    private static String values(String insert, int columns, int rows) {
+        StringBuilder sql = new StringBuilder(insert).append(" values ");
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "(" : ", (");
+            for (int c = 0; c < columns; c++) {
+                sql.append(c == 0 ? "?" : ", ?");
+            }
+            sql.append(')');
+        }
+        return sql.toString();
+    }
+
+    /**
+     * 작업을 parallelism개 스레드로 실행하고 모두 끝날 때까지 기다린다. 하나라도 실패하면 나머지를 취소한다.
+     */
+    private void run(List<Callable<Void>> tasks) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()), runnable -> {
+            Thread thread = new Thread(runnable, "dataset-worker-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (Callable<Void> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("dataset task interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("dataset task failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 증가 폭을 count로 바꾼 상태에서 next value 한 번으로 count개를 가져간다. 그 사이 애플리케이션이 받은 값도
+     * 같은 폭으로 건너뛰므로 예약한 범위와 겹치지 않는다. 읽은 뒤 restart로 되돌리면 그 사이 받은 값과 겹칠 수 있다.
+     */
+    private synchronized long reserveIds(long count) {
+        jdbcTemplate.execute("alter sequence hibernate_sequence increment by " + Math.max(1, count));
+        try {
+            return jdbcTemplate.queryForObject("select next value for hibernate_sequence", Long.class);
+        } finally {
+            jdbcTemplate.execute("alter sequence hibernate_sequence increment by 1");
+        }
+    }
+
+    private void changed() {
+        for (String table : new String[]{"team", "item", "member", "orders"}) {
+            queryResultCache.invalidateTable(table);
+        }
+        catalogSnapshotStore.scheduleRefresh();
+        memberNameIndex.ifAvailable(MemberNameIndex::invalidate);
+    }
+
+    private static List<Path> snapshotFiles(Path directory, Table table) {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, table.name + "-*.csv")) {
+            stream.forEach(files::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * 참조되는 테이블부터 나열한다.
+     */
+    private static List<Table> tables(Dataset dataset) {
+        DatasetSpec spec = dataset.getSpec();
+        return Arrays.asList(
+                new Table("team", "team_id", "team_id, name", "team_id",
+                        dataset.getFirstTeamId(), dataset.getLastTeamId(), spec.getTeams()),
+                new Table("item", "item_id", "item_id, name", "item_id",
+                        dataset.getFirstItemId(), dataset.getLastItemId(), spec.getItems()),
+                new Table("member", "member_id", "member_id, name, age, team_id", "member_id, team_id",
+                        dataset.getFirstMemberId(), dataset.getLastMemberId(), spec.getMembers()),
+                new Table("orders", "order_id", "order_id, member_id, item_id, quantity", "member_id, item_id",
+                        dataset.getFirstOrderId(), dataset.getLastOrderId(), spec.getOrders()));
+    }
+
+    private static final class Table {
+
+        final String name;
+        final String idColumn;
+        final String columns;
+        final List<String> sequenceColumns;
+        final long firstId;
+        final long lastId;
+        final long rows;
+
+        /**
+         * @param sequenceColumns hibernate_sequence에서 받은 아이디를 담는 컬럼(자기 아이디, 참조)
+         */
+        Table(String name, String idColumn, String columns, String sequenceColumns, long firstId, long lastId,
+              long rows) {
+            this.name = name;
+            this.idColumn = idColumn;
+            this.columns = columns;
+            this.sequenceColumns = Arrays.asList(sequenceColumns.split(", "));
+            this.firstId = firstId;
+            this.lastId = lastId;
+            this.rows = rows;
+        }
+
+        /**
+         * CSV에서 읽을 select 목록. 시퀀스 아이디 컬럼은 offset만큼 옮긴다.
+         */
+        String shifted(long offset) {
+            List<String> select = new ArrayList<>();
+            for (String column : columns.split(", ")) {
+                select.add(sequenceColumns.contains(column) ? "cast(" + column + " as bigint) + " + offset : column);
+            }
+            return String.join(", ", select);
+        }
+
+        /**
+         * 범위마다 행이 chunkSize 정도 들어가도록 아이디 범위를 나눈다.
+         * 주문 아이디처럼 띄엄띄엄 있어도 고르게 퍼져 있다고 본다.
+         */
+        List<long[]> ranges(int chunkSize) {
+            List<long[]> ranges = new ArrayList<>();
+            if (rows == 0) {
+                return ranges;
+            }
+            long chunks = (rows + chunkSize - 1) / chunkSize;
+            long step = (lastId - firstId) / chunks + 1;
+            for (long from = firstId; from <= lastId; from += step) {
+                ranges.add(new long[]{from, Math.min(lastId, from + step - 1)});
+            }
+            return ranges;
+        }
+    }
+
+    private static Properties toProperties(Dataset dataset) {
+        Properties properties = new Properties();
+        properties.setProperty("firstTeamId", Long.toString(dataset.getFirstTeamId()));
+        properties.setProperty("firstItemId", Long.toString(dataset.getFirstItemId()));
+        properties.setProperty("firstMemberId", Long.toString(dataset.getFirstMemberId()));
+        properties.setProperty("firstOrderId", Long.toString(dataset.getFirstOrderId()));
+        properties.setProperty("lastOrderId", Long.toString(dataset.getLastOrderId()));
+        return properties;
+    }
+
+    private static Dataset fromProperties(DatasetSpec spec, Properties properties) {
+        return new Dataset(spec,
+                Long.parseLong(properties.getProperty("firstTeamId")),
+                Long.parseLong(properties.getProperty("firstItemId")),
+                Long.parseLong(properties.getProperty("firstMemberId")),
+                Long.parseLong(properties.getProperty("firstOrderId")),
+                Long.parseLong(properties.getProperty("lastOrderId")),
+                true, Duration.ZERO);
+    }
+
+    private static long mix(long seed, int table, long chunk) {
+        long h = seed * 0x9E3779B97F4A7C15L + table;
+        h = (h ^ (h >>> 31)) * 0xBF58476D1CE4E5B9L + chunk;
+        return h ^ (h >>> 29);
+    }
+
+    private static DataSource unwrap(DataSource dataSource) {
+        return dataSource instanceof DecoratedDataSource ? ((DecoratedDataSource) dataSource).getRealDataSource()
+                : dataSource;
+    }
+}
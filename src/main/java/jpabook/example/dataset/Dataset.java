@@ -0,0 +1,60 @@
+package jpabook.example.dataset;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Duration;
+
+/**
+ * 만들어진 데이터의 아이디 범위. 범위는 양 끝을 포함하고, 비어 있으면 first > last다.
+ */
+@Getter
+@ToString
+public class Dataset {
+
+    private final DatasetSpec spec;
+    private final long firstTeamId;
+    private final long firstItemId;
+    private final long firstMemberId;
+    private final long firstOrderId;
+    private final long lastOrderId;
+    private final boolean restored;
+    private final Duration elapsed;
+
+    Dataset(DatasetSpec spec, long firstTeamId, long firstItemId, long firstMemberId,
+            long firstOrderId, long lastOrderId, boolean restored, Duration elapsed) {
+        this.spec = spec;
+        this.firstTeamId = firstTeamId;
+        this.firstItemId = firstItemId;
+        this.firstMemberId = firstMemberId;
+        this.firstOrderId = firstOrderId;
+        this.lastOrderId = lastOrderId;
+        this.restored = restored;
+        this.elapsed = elapsed;
+    }
+
+    public long getLastTeamId() {
+        return firstTeamId + spec.getTeams() - 1;
+    }
+
+    public long getLastItemId() {
+        return firstItemId + spec.getItems() - 1;
+    }
+
+    public long getLastMemberId() {
+        return firstMemberId + spec.getMembers() - 1;
+    }
+
+    public long getRowCount() {
+        return spec.getTeams() + spec.getItems() + spec.getMembers() + spec.getOrders();
+    }
+
+    public double getRowsPerSecond() {
+        return elapsed.isZero() ? 0 : getRowCount() * 1e9 / elapsed.toNanos();
+    }
+
+    Dataset withElapsed(boolean restored, Duration elapsed) {
+        return new Dataset(spec, firstTeamId, firstItemId, firstMemberId, firstOrderId, lastOrderId, restored,
+                elapsed);
+    }
+}
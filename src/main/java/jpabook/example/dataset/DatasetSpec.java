@@ -0,0 +1,69 @@
+package jpabook.example.dataset;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Objects;
+
+/**
+ * 만들 데이터의 크기와 분포. 같은 값이면 같은 데이터가 만들어진다(아이디 시작 값 제외).
+ *
+ * memberSkew: 팀별 회원 수의 Zipf 지수, itemSkew: 주문 상품의 Zipf 지수, orderSkew: 회원별 주문 수의 Zipf 지수
+ * 0이면 균등, 1 전후가 흔히 보는 인기 편중이다.
+ * 주문 시각은 ordersFrom ~ ordersTo에 고르게 퍼지고 주문 id에 그대로 들어간다.
+ * 기본 기간은 만든 날을 기준으로 하므로 날짜가 바뀌어도 같은 데이터가 필요하면 기간을 지정한다.
+ */
+@Getter @Setter
+@ToString
+public class DatasetSpec {
+
+    private long seed = 42;
+    private int teams = 1_000;
+    private int members = 100_000;
+    private int items = 10_000;
+    private long orders = 200_000;
+    private double memberSkew = 0.8;
+    private double itemSkew = 1.0;
+    private double orderSkew = 0.6;
+    private Instant ordersFrom;
+    private Instant ordersTo;
+
+    public DatasetSpec() {
+        Instant today = LocalDate.now(ZoneOffset.UTC).atStartOfDay(ZoneOffset.UTC).toInstant();
+        this.ordersTo = today;
+        this.ordersFrom = today.minusSeconds(730L * 24 * 60 * 60);
+    }
+
+    public DatasetSpec(long seed, int teams, int members, int items, long orders) {
+        this();
+        this.seed = seed;
+        this.teams = teams;
+        this.members = members;
+        this.items = items;
+        this.orders = orders;
+    }
+
+    /**
+     * 스냅샷 파일 이름에 쓰는 값. 분포에 영향을 주는 값이 모두 들어간다.
+     */
+    public String getKey() {
+        return Integer.toHexString(Objects.hash(seed, teams, members, items, orders, memberSkew, itemSkew,
+                orderSkew, ordersFrom, ordersTo));
+    }
+
+    void validate() {
+        if (teams <= 0 || members < 0 || items <= 0 || orders < 0) {
+            throw new IllegalArgumentException("invalid dataset size: " + this);
+        }
+        if (orders > 0 && members == 0) {
+            throw new IllegalArgumentException("orders need members: " + this);
+        }
+        if (!ordersFrom.isBefore(ordersTo)) {
+            throw new IllegalArgumentException("ordersFrom must be before ordersTo: " + this);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package jpabook.example.dataset;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * 0 ~ n-1 중에서 순위 k가 1 / (k + 1)^exponent에 비례하는 확률로 뽑는다. exponent가 0이면 균등 분포다.
+ * 누적 분포를 미리 만들어 두고 이진 탐색하므로 n이 수백만이어도 한 번 뽑는 비용은 O(log n)이다.
+ * 자주 뽑히는 값이 앞쪽 아이디에 몰리지 않도록 순위를 n과 서로소인 수를 곱해 섞는다.
+ */
+final class Zipf {
+
+    private final int n;
+    private final double[] cdf;
+    private final long stride;
+
+    Zipf(int n, double exponent) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive: " + n);
+        }
+        this.n = n;
+        if (exponent == 0) {
+            this.cdf = null;
+        } else {
+            this.cdf = new double[n];
+            double sum = 0;
+            for (int k = 0; k < n; k++) {
+                sum += 1 / Math.pow(k + 1, exponent);
+                cdf[k] = sum;
+            }
+            for (int k = 0; k < n; k++) {
+                cdf[k] /= sum;
+            }
+        }
+        this.stride = coprimeStride(n);
+    }
+
+    /**
+     * 순위를 섞은 0 ~ n-1 값
+     */
+    int sample(SplittableRandom random) {
+        return (int) (rank(random) * stride % n);
+    }
+
+    int rank(SplittableRandom random) {
+        if (cdf == null) {
+            return random.nextInt(n);
+        }
+        int index = Arrays.binarySearch(cdf, random.nextDouble());
+        return Math.min(n - 1, index >= 0 ? index : -index - 1);
+    }
+
+    private static long coprimeStride(int n) {
+        long stride = 2_654_435_761L % n;
+        while (stride <= 1 && n > 2 || gcd(stride, n) != 1) {
+            stride++;
+        }
+        return Math.max(1, stride);
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
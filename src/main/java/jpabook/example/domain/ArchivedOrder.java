@@ -0,0 +1,32 @@
+package jpabook.example.domain;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.Immutable;
+
+import javax.persistence.*;
+
+/**
+ * OrderArchiver가 orders에서 옮겨 온 오래된 주문. 다시 수정하지 않으므로 연관관계 없이 id만 보관한다.
+ */
+@Getter
+@NoArgsConstructor
+@ToString
+@Entity
+@Immutable
+@Table(name = "orders_archive", indexes = @Index(name = "idx_orders_archive_member_id", columnList = "member_id"))
+public class ArchivedOrder {
+
+    @Id
+    @Column(name = "order_id")
+    private Long id;
+
+    @Column(name = "member_id")
+    private Long memberId;
+
+    @Column(name = "item_id")
+    private Long itemId;
+
+    private int quantity;
+}
@@ -0,0 +1,39 @@
+package jpabook.example.domain;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.Immutable;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * InListRewriter가 큰 IN 목록을 옮겨 담는 테이블. 값은 트랜잭션이 끝나기 전에 지운다.
+ */
+@Getter
+@NoArgsConstructor
+@ToString
+@Entity
+@Immutable
+@IdClass(InListValue.Key.class)
+@Table(name = "in_list_value")
+public class InListValue {
+
+    @Id
+    @Column(name = "list_id")
+    private Long listId;
+
+    @Id
+    @Column(name = "list_value")
+    private Long value;
+
+    @Getter
+    @NoArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private Long listId;
+        private Long value;
+    }
+}
@@ -13,6 +13,10 @@ import static javax.persistence.FetchType.*;
 @NoArgsConstructor
 @ToString(exclude = "team")
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_member_name", columnList = "name"),
+        @Index(name = "idx_member_age_name", columnList = "age, name")
+})
 @NamedNativeQueries({
         @NamedNativeQuery(
                 name = "Member.memberSQL",
@@ -4,6 +4,7 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
+import org.hibernate.annotations.GenericGenerator;
 
 import javax.persistence.*;
 
@@ -11,7 +12,7 @@ import javax.persistence.*;
 @NoArgsConstructor
 @ToString(of = {"id", "quantity"})
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = @Index(name = "idx_orders_member_id", columnList = "member_id"))
 @SqlResultSetMapping(name = "OrderResults",
         entities = {
         @EntityResult(entityClass = Order.class, fields = {
@@ -23,10 +24,17 @@ import javax.persistence.*;
 )
 public class Order {
 
-    @Id @GeneratedValue
+    /**
+     * 샤드가 여러 개여도 겹치지 않도록 시간 기반 id를 사용한다. (OrderIdGenerator)
+     * 샤딩을 쓰지 않을 때도 같다. 주문 보관(OrderPartition)과 데이터 생성기가 id로 주문 시각 범위를 정하고,
+     * 시퀀스를 조회하는 왕복도 없다. 노드 번호(jpabook.order-id.node)는 인스턴스마다 지정해야 한다.
+     */
+    @Id @GeneratedValue(generator = "order_id")
+    @GenericGenerator(name = "order_id", strategy = "jpabook.example.shard.OrderIdGenerator")
     @Column(name = "order_id")
     private Long id;
 
+    // 샤드에는 member, item 테이블이 없으므로 샤드 스키마에서만 외래 키를 빼고 만든다. (OrderShards)
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "member_id")
     private Member member;
@@ -0,0 +1,479 @@
+package jpabook.example.evaluate;
+
+import com.querydsl.core.types.Constant;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.ExpressionUtils;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Operator;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.PathMetadata;
+import com.querydsl.core.types.PathType;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.jpa.JPQLTemplates;
+import jpabook.example.search.NameMatch;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Querydsl Predicate, OrderSpecifier를 메모리에 있는 엔티티나 DTO에 바로 적용하는 함수로 컴파일한다.
+ *
+ * 식 트리는 한 번만 해석해서 람다를 조합한 트리로 바꾸고, 프로퍼티는 PropertyAccessor로 읽는다.
+ * SQL과 같은 결과를 내도록 null은 3값 논리로 다룬다. null과 비교한 결과는 알 수 없음(null)이고,
+ * 최종 결과가 알 수 없음이면 조건에 맞지 않는 것으로 본다.
+ * LIKE는 JPQL처럼 '!'를 기본 이스케이프 문자로 쓰고, 정렬에서 null은 H2 기본값과 같이 가장 작은 값으로 본다.
+ * 컴파일한 결과는 대상 타입과 식을 키로 LRU 캐시에 보관한다.
+ */
+public class ExpressionCompiler {
+
+    private final int cacheSize;
+    private final LinkedHashMap<List<Object>, Object> cache;
+
+    public ExpressionCompiler(int cacheSize) {
+        this.cacheSize = cacheSize;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * null인 조건은 무시하고 나머지를 AND로 묶는다. Querydsl의 where와 같다.
+     */
+    public <T> java.util.function.Predicate<T> predicate(Class<T> type, Predicate... where) {
+        Predicate combined = ExpressionUtils.allOf(where);
+        if (combined == null) {
+            return row -> true;
+        }
+        return cached(List.of(type, combined), () -> {
+            Evaluator evaluator = new Compilation(type).compile(combined);
+            return row -> evaluator.evaluate(row) == Boolean.TRUE;
+        });
+    }
+
+    public <T> Comparator<T> comparator(Class<T> type, OrderSpecifier<?>... orders) {
+        if (orders.length == 0) {
+            return (left, right) -> 0;
+        }
+        return cached(List.of(type, Arrays.asList(orders)), () -> {
+            Compilation compilation = new Compilation(type);
+            Comparator<T> comparator = null;
+            for (OrderSpecifier<?> order : orders) {
+                Evaluator key = compilation.compile(order.getTarget());
+                boolean ascending = order.isAscending();
+                boolean nullsFirst = order.getNullHandling() == OrderSpecifier.NullHandling.NullsFirst
+                        || order.getNullHandling() == OrderSpecifier.NullHandling.Default && ascending;
+                Comparator<T> next = (left, right) ->
+                        compareKeys(key.evaluate(left), key.evaluate(right), ascending, nullsFirst);
+                comparator = comparator == null ? next : comparator.thenComparing(next);
+            }
+            return comparator;
+        });
+    }
+
+    public synchronized int getCacheSize() {
+        return cache.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> R cached(List<Object> key, Supplier<R> compiler) {
+        synchronized (this) {
+            Object compiled = cache.get(key);
+            if (compiled != null) {
+                return (R) compiled;
+            }
+        }
+        R compiled = compiler.get();
+        synchronized (this) {
+            cache.put(key, compiled);
+            if (cache.size() > cacheSize) {
+                cache.remove(cache.keySet().iterator().next());
+            }
+        }
+        return compiled;
+    }
+
+    interface Evaluator {
+
+        Object evaluate(Object row);
+    }
+
+    /**
+     * 한 식을 컴파일하는 동안 루트 경로가 하나인지 확인한다.
+     */
+    private static final class Compilation {
+
+        private final Class<?> rootType;
+        private Path<?> root;
+
+        Compilation(Class<?> rootType) {
+            this.rootType = rootType;
+        }
+
+        Evaluator compile(Expression<?> expression) {
+            if (expression instanceof Constant) {
+                Object value = ((Constant<?>) expression).getConstant();
+                return row -> value;
+            }
+            if (expression instanceof Path) {
+                return path((Path<?>) expression);
+            }
+            if (expression instanceof Operation) {
+                return operation((Operation<?>) expression);
+            }
+            throw unsupported(expression.toString());
+        }
+
+        private Evaluator path(Path<?> path) {
+            PathMetadata metadata = path.getMetadata();
+            if (metadata.isRoot()) {
+                if (root == null) {
+                    root = path;
+                } else if (!root.equals(path)) {
+                    throw new IllegalArgumentException("only one root path is supported: " + root + ", " + path);
+                }
+                return row -> row;
+            }
+            Evaluator parent = path(metadata.getParent());
+            if (metadata.getPathType() == PathType.DELEGATE) {
+                return parent;
+            }
+            if (metadata.getPathType() != PathType.PROPERTY) {
+                throw unsupported(path.toString());
+            }
+            PropertyAccessor accessor = PropertyAccessor.of(typeOf(metadata.getParent()), metadata.getName());
+            return row -> {
+                Object owner = parent.evaluate(row);
+                return owner == null ? null : accessor.get(owner);
+            };
+        }
+
+        private Class<?> typeOf(Path<?> path) {
+            PathMetadata metadata = path.getMetadata();
+            if (metadata.isRoot()) {
+                return rootType;
+            }
+            if (metadata.getPathType() == PathType.DELEGATE) {
+                return typeOf(metadata.getParent());
+            }
+            return PropertyAccessor.of(typeOf(metadata.getParent()), metadata.getName()).getType();
+        }
+
+        private Evaluator operation(Operation<?> operation) {
+            Operator operator = operation.getOperator();
+            List<Expression<?>> args = operation.getArgs();
+
+            if (operator == Ops.IN || operator == Ops.NOT_IN) {
+                return in(operation, operator == Ops.NOT_IN);
+            }
+            if (operator == Ops.LIKE || operator == Ops.LIKE_IC || operator == Ops.LIKE_ESCAPE
+                    || operator == Ops.LIKE_ESCAPE_IC) {
+                return like(operation);
+            }
+
+            Evaluator[] operands = new Evaluator[args.size()];
+            for (int i = 0; i < operands.length; i++) {
+                operands[i] = compile(args.get(i));
+            }
+            Evaluator a = operands[0];
+            Evaluator b = operands.length > 1 ? operands[1] : null;
+            Evaluator c = operands.length > 2 ? operands[2] : null;
+
+            if (operator == Ops.AND) {
+                return row -> and(a, b, row);
+            } else if (operator == Ops.OR) {
+                return row -> or(a, b, row);
+            } else if (operator == Ops.NOT) {
+                return row -> not(a.evaluate(row));
+            } else if (operator == Ops.IS_NULL) {
+                return row -> a.evaluate(row) == null;
+            } else if (operator == Ops.IS_NOT_NULL) {
+                return row -> a.evaluate(row) != null;
+            } else if (operator == Ops.EQ) {
+                return row -> equal(a.evaluate(row), b.evaluate(row));
+            } else if (operator == Ops.NE) {
+                return row -> not(equal(a.evaluate(row), b.evaluate(row)));
+            } else if (operator == Ops.EQ_IGNORE_CASE) {
+                return row -> equal(lower(a.evaluate(row)), lower(b.evaluate(row)));
+            } else if (operator == Ops.LT) {
+                return row -> test(a.evaluate(row), b.evaluate(row), cmp -> cmp < 0);
+            } else if (operator == Ops.GT) {
+                return row -> test(a.evaluate(row), b.evaluate(row), cmp -> cmp > 0);
+            } else if (operator == Ops.LOE) {
+                return row -> test(a.evaluate(row), b.evaluate(row), cmp -> cmp <= 0);
+            } else if (operator == Ops.GOE) {
+                return row -> test(a.evaluate(row), b.evaluate(row), cmp -> cmp >= 0);
+            } else if (operator == Ops.BETWEEN) {
+                return row -> {
+                    Object value = a.evaluate(row);
+                    return and(test(value, b.evaluate(row), cmp -> cmp >= 0),
+                            test(value, c.evaluate(row), cmp -> cmp <= 0));
+                };
+            } else if (operator == Ops.STARTS_WITH || operator == Ops.STARTS_WITH_IC) {
+                boolean ignoreCase = operator == Ops.STARTS_WITH_IC;
+                return row -> strings(a.evaluate(row), b.evaluate(row), ignoreCase, String::startsWith);
+            } else if (operator == Ops.ENDS_WITH || operator == Ops.ENDS_WITH_IC) {
+                boolean ignoreCase = operator == Ops.ENDS_WITH_IC;
+                return row -> strings(a.evaluate(row), b.evaluate(row), ignoreCase, String::endsWith);
+            } else if (operator == Ops.STRING_CONTAINS || operator == Ops.STRING_CONTAINS_IC) {
+                boolean ignoreCase = operator == Ops.STRING_CONTAINS_IC;
+                return row -> strings(a.evaluate(row), b.evaluate(row), ignoreCase, String::contains);
+            } else if (operator == Ops.STRING_IS_EMPTY) {
+                return row -> {
+                    Object value = a.evaluate(row);
+                    return value == null ? null : ((String) value).isEmpty();
+                };
+            } else if (operator == Ops.STRING_LENGTH) {
+                return row -> {
+                    Object value = a.evaluate(row);
+                    return value == null ? null : ((String) value).length();
+                };
+            } else if (operator == Ops.LOWER) {
+                return row -> lower(a.evaluate(row));
+            } else if (operator == Ops.UPPER) {
+                return row -> {
+                    Object value = a.evaluate(row);
+                    return value == null ? null : ((String) value).toUpperCase(Locale.ROOT);
+                };
+            } else if (operator == Ops.TRIM) {
+                return row -> {
+                    Object value = a.evaluate(row);
+                    return value == null ? null : ((String) value).trim();
+                };
+            } else if (operator == Ops.CONCAT) {
+                return row -> {
+                    Object left = a.evaluate(row);
+                    Object right = b.evaluate(row);
+                    return left == null || right == null ? null : left.toString() + right;
+                };
+            } else if (operator == Ops.ADD || operator == Ops.SUB || operator == Ops.MULT || operator == Ops.DIV
+                    || operator == Ops.MOD) {
+                return row -> arithmetic(operator, a.evaluate(row), b.evaluate(row));
+            } else if (operator == Ops.NEGATE) {
+                return row -> arithmetic(Ops.SUB, 0L, a.evaluate(row));
+            } else if (operator == Ops.COL_SIZE) {
+                return row -> {
+                    Object value = a.evaluate(row);
+                    return value == null ? null : ((Collection<?>) value).size();
+                };
+            } else if (operator == Ops.COL_IS_EMPTY) {
+                return row -> {
+                    Object value = a.evaluate(row);
+                    return value == null || ((Collection<?>) value).isEmpty();
+                };
+            }
+            throw unsupported(operator.toString());
+        }
+
+        private Evaluator in(Operation<?> operation, boolean negate) {
+            Evaluator a = compile(operation.getArg(0));
+            Expression<?> right = operation.getArg(1);
+            if (!(right instanceof Constant) || !(((Constant<?>) right).getConstant() instanceof Collection)) {
+                throw unsupported(operation.toString());
+            }
+            Set<Object> values = new HashSet<>();
+            boolean hasNull = false;
+            for (Object value : (Collection<?>) ((Constant<?>) right).getConstant()) {
+                if (value == null) {
+                    hasNull = true;
+                } else {
+                    values.add(normalize(value));
+                }
+            }
+            boolean unknownIfMissing = hasNull;
+            return row -> {
+                Object value = a.evaluate(row);
+                if (value == null) {
+                    return null;
+                }
+                Boolean found = values.contains(normalize(value)) ? Boolean.TRUE
+                        : unknownIfMissing ? null : Boolean.FALSE;
+                return negate ? not(found) : found;
+            };
+        }
+
+        private Evaluator like(Operation<?> operation) {
+            Operator operator = operation.getOperator();
+            boolean ignoreCase = operator == Ops.LIKE_IC || operator == Ops.LIKE_ESCAPE_IC;
+            char escape = JPQLTemplates.DEFAULT.getEscapeChar();
+            if (operation.getArgs().size() > 2) {
+                escape = (Character) ((Constant<?>) operation.getArg(2)).getConstant();
+            }
+            Evaluator a = compile(operation.getArg(0));
+            Expression<?> pattern = operation.getArg(1);
+            if (pattern instanceof Constant) {
+                NameMatch match = NameMatch.like((String) ((Constant<?>) pattern).getConstant(), escape, ignoreCase);
+                return row -> {
+                    Object value = a.evaluate(row);
+                    return value == null ? null : match.matches((String) value);
+                };
+            }
+            Evaluator b = compile(pattern);
+            char escapeChar = escape;
+            return row -> {
+                Object value = a.evaluate(row);
+                Object like = b.evaluate(row);
+                return value == null || like == null ? null
+                        : NameMatch.like((String) like, escapeChar, ignoreCase).matches((String) value);
+            };
+        }
+
+        private static IllegalArgumentException unsupported(String expression) {
+            return new IllegalArgumentException("cannot evaluate in memory: " + expression);
+        }
+    }
+
+    private static Boolean and(Evaluator a, Evaluator b, Object row) {
+        Object left = a.evaluate(row);
+        if (left == Boolean.FALSE) {
+            return Boolean.FALSE;
+        }
+        return and(left, b.evaluate(row));
+    }
+
+    private static Boolean and(Object left, Object right) {
+        if (left == Boolean.FALSE || right == Boolean.FALSE) {
+            return Boolean.FALSE;
+        }
+        return left == null || right == null ? null : Boolean.TRUE;
+    }
+
+    private static Boolean or(Evaluator a, Evaluator b, Object row) {
+        Object left = a.evaluate(row);
+        if (left == Boolean.TRUE) {
+            return Boolean.TRUE;
+        }
+        Object right = b.evaluate(row);
+        if (right == Boolean.TRUE) {
+            return Boolean.TRUE;
+        }
+        return left == null || right == null ? null : Boolean.FALSE;
+    }
+
+    private static Boolean not(Object value) {
+        return value == null ? null : !(Boolean) value;
+    }
+
+    private static Boolean equal(Object left, Object right) {
+        if (left == null || right == null) {
+            return null;
+        }
+        if (left instanceof Number && right instanceof Number) {
+            return compareNumbers((Number) left, (Number) right) == 0;
+        }
+        return left.equals(right);
+    }
+
+    private static Boolean test(Object left, Object right, java.util.function.IntPredicate condition) {
+        if (left == null || right == null) {
+            return null;
+        }
+        return condition.test(compareValues(left, right));
+    }
+
+    private static Boolean strings(Object left, Object right, boolean ignoreCase,
+                                   java.util.function.BiPredicate<String, String> condition) {
+        if (left == null || right == null) {
+            return null;
+        }
+        return ignoreCase ? condition.test(lower(left), lower(right))
+                : condition.test((String) left, (String) right);
+    }
+
+    private static String lower(Object value) {
+        return value == null ? null : ((String) value).toLowerCase(Locale.ROOT);
+    }
+
+    private static int compareKeys(Object left, Object right, boolean ascending, boolean nullsFirst) {
+        if (left == null || right == null) {
+            if (left == right) {
+                return 0;
+            }
+            return (left == null) == nullsFirst ? -1 : 1;
+        }
+        int cmp = compareValues(left, right);
+        return ascending ? cmp : -cmp;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareValues(Object left, Object right) {
+        if (left instanceof Number && right instanceof Number) {
+            return compareNumbers((Number) left, (Number) right);
+        }
+        if (left instanceof Comparable) {
+            return ((Comparable) left).compareTo(right);
+        }
+        throw new IllegalArgumentException("not comparable: " + left.getClass().getName());
+    }
+
+    private static int compareNumbers(Number left, Number right) {
+        if (isIntegral(left) && isIntegral(right)) {
+            return Long.compare(left.longValue(), right.longValue());
+        }
+        if (left instanceof BigDecimal || right instanceof BigDecimal
+                || left instanceof BigInteger || right instanceof BigInteger) {
+            return new BigDecimal(left.toString()).compareTo(new BigDecimal(right.toString()));
+        }
+        return Double.compare(left.doubleValue(), right.doubleValue());
+    }
+
+    private static Object arithmetic(Operator operator, Object left, Object right) {
+        if (left == null || right == null) {
+            return null;
+        }
+        Number x = (Number) left;
+        Number y = (Number) right;
+        if (isIntegral(x) && isIntegral(y)) {
+            long l = x.longValue();
+            long r = y.longValue();
+            if (operator == Ops.ADD) {
+                return l + r;
+            } else if (operator == Ops.SUB) {
+                return l - r;
+            } else if (operator == Ops.MULT) {
+                return l * r;
+            } else if (operator == Ops.DIV) {
+                return l / r;
+            }
+            return l % r;
+        }
+        double l = x.doubleValue();
+        double r = y.doubleValue();
+        if (operator == Ops.ADD) {
+            return l + r;
+        } else if (operator == Ops.SUB) {
+            return l - r;
+        } else if (operator == Ops.MULT) {
+            return l * r;
+        } else if (operator == Ops.DIV) {
+            return l / r;
+        }
+        return l % r;
+    }
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Long || number instanceof Integer || number instanceof Short
+                || number instanceof Byte;
+    }
+
+    private static Object normalize(Object value) {
+        if (value instanceof Number && isIntegral((Number) value)) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Float) {
+            return ((Float) value).doubleValue();
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).stripTrailingZeros();
+        }
+        return value;
+    }
+}
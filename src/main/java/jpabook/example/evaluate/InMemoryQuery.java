@@ -0,0 +1,99 @@
+package jpabook.example.evaluate;
+
+import com.querydsl.core.NonUniqueResultException;
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.Predicate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 메모리에 있는 컬렉션에 JPAQuery와 같은 방식으로 조건, 정렬, 페이징을 적용한다.
+ */
+public class InMemoryQuery<T> {
+
+    private final ExpressionCompiler compiler;
+    private final Class<T> type;
+    private final Iterable<? extends T> source;
+    private final List<Predicate> where = new ArrayList<>();
+    private final List<OrderSpecifier<?>> orderBy = new ArrayList<>();
+    private long offset;
+    private long limit = Long.MAX_VALUE;
+
+    InMemoryQuery(ExpressionCompiler compiler, Class<T> type, Iterable<? extends T> source) {
+        this.compiler = compiler;
+        this.type = type;
+        this.source = source;
+    }
+
+    /**
+     * null인 조건은 무시한다.
+     */
+    public InMemoryQuery<T> where(Predicate... predicates) {
+        where.addAll(Arrays.asList(predicates));
+        return this;
+    }
+
+    public InMemoryQuery<T> orderBy(OrderSpecifier<?>... orders) {
+        orderBy.addAll(Arrays.asList(orders));
+        return this;
+    }
+
+    public InMemoryQuery<T> offset(long offset) {
+        this.offset = offset;
+        return this;
+    }
+
+    public InMemoryQuery<T> limit(long limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    public List<T> fetch() {
+        java.util.function.Predicate<T> filter = compiler.predicate(type, where.toArray(new Predicate[0]));
+        List<T> result = new ArrayList<>();
+        for (T row : source) {
+            if (filter.test(row)) {
+                result.add(row);
+            }
+        }
+        if (!orderBy.isEmpty()) {
+            Comparator<T> comparator = compiler.comparator(type, orderBy.toArray(new OrderSpecifier<?>[0]));
+            result.sort(comparator);
+        }
+        if (offset == 0 && limit >= result.size()) {
+            return result;
+        }
+        if (offset >= result.size()) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(result.subList((int) offset, (int) Math.min(result.size(), offset + limit)));
+    }
+
+    public T fetchFirst() {
+        List<T> result = limit(1).fetch();
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    public T fetchOne() {
+        List<T> result = limit(2).fetch();
+        if (result.size() > 1) {
+            throw new NonUniqueResultException();
+        }
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    public long fetchCount() {
+        java.util.function.Predicate<T> filter = compiler.predicate(type, where.toArray(new Predicate[0]));
+        long count = 0;
+        for (T row : source) {
+            if (filter.test(row)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,39 @@
+package jpabook.example.evaluate;
+
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.Predicate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+
+/**
+ * 이미 메모리에 있는 엔티티나 DTO에 Querydsl 조건을 그대로 적용한다.
+ * 조회 결과 캐시, 배치 로딩한 Team.members처럼 DB에 다시 묻지 않아도 되는 데이터에 사용한다.
+ * 지연 로딩 프록시를 따라가는 경로는 준영속 상태에서 LazyInitializationException이 날 수 있다.
+ */
+@Component
+public class InMemoryQueryFactory {
+
+    private final ExpressionCompiler compiler;
+
+    public InMemoryQueryFactory(@Value("${jpabook.evaluate.cache-size:1000}") int cacheSize) {
+        this.compiler = new ExpressionCompiler(cacheSize);
+    }
+
+    public <T> InMemoryQuery<T> selectFrom(Class<T> type, Iterable<? extends T> source) {
+        return new InMemoryQuery<>(compiler, type, source);
+    }
+
+    public <T> java.util.function.Predicate<T> predicate(Class<T> type, Predicate... where) {
+        return compiler.predicate(type, where);
+    }
+
+    public <T> Comparator<T> comparator(Class<T> type, OrderSpecifier<?>... orders) {
+        return compiler.comparator(type, orders);
+    }
+
+    public ExpressionCompiler getCompiler() {
+        return compiler;
+    }
+}
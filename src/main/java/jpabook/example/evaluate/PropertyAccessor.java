@@ -0,0 +1,92 @@
+package jpabook.example.evaluate;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 프로퍼티 값을 읽는 함수. public getter는 LambdaMetafactory로 만든 람다로 호출하므로
+ * 행마다 리플렉션을 거치지 않고 JIT가 일반 메서드 호출처럼 인라인할 수 있다.
+ * getter가 없으면 public 필드를 MethodHandle로 읽는다.
+ */
+final class PropertyAccessor {
+
+    private static final Map<Class<?>, Map<String, PropertyAccessor>> CACHE = new ConcurrentHashMap<>();
+
+    private final Function<Object, Object> getter;
+    private final Class<?> type;
+
+    private PropertyAccessor(Function<Object, Object> getter, Class<?> type) {
+        this.getter = getter;
+        this.type = type;
+    }
+
+    static PropertyAccessor of(Class<?> owner, String property) {
+        return CACHE.computeIfAbsent(owner, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(property, key -> create(owner, property));
+    }
+
+    Object get(Object target) {
+        return getter.apply(target);
+    }
+
+    Class<?> getType() {
+        return type;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PropertyAccessor create(Class<?> owner, String property) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        Method method = findGetter(owner, property);
+        try {
+            if (method != null) {
+                MethodHandle handle = lookup.unreflect(method);
+                Class<?> returnType = MethodType.methodType(method.getReturnType()).wrap().returnType();
+                CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+                        MethodType.methodType(Function.class),
+                        MethodType.methodType(Object.class, Object.class),
+                        handle,
+                        MethodType.methodType(returnType, owner));
+                return new PropertyAccessor((Function<Object, Object>) site.getTarget().invokeExact(),
+                        method.getReturnType());
+            }
+            Field field = owner.getField(property);
+            MethodHandle handle = lookup.unreflectGetter(field)
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            return new PropertyAccessor(target -> {
+                try {
+                    return handle.invokeExact(target);
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e);
+                }
+            }, field.getType());
+        } catch (NoSuchFieldException e) {
+            throw new IllegalArgumentException("no public getter or field '" + property + "' on " + owner.getName());
+        } catch (Throwable e) {
+            throw new IllegalStateException("cannot access '" + property + "' on " + owner.getName(), e);
+        }
+    }
+
+    private static Method findGetter(Class<?> owner, String property) {
+        String suffix = Character.toUpperCase(property.charAt(0)) + property.substring(1);
+        for (String name : new String[]{"get" + suffix, "is" + suffix}) {
+            try {
+                Method method = owner.getMethod(name);
+                if (!Modifier.isStatic(method.getModifiers()) && method.getReturnType() != void.class
+                        && Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+                    return method;
+                }
+            } catch (NoSuchMethodException ignored) {
+            }
+        }
+        return null;
+    }
+}
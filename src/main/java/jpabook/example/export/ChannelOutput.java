@@ -0,0 +1,82 @@
+package jpabook.example.export;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * 재사용하는 direct ByteBuffer를 채워서 FileChannel에 쓴다. 이미 내보낸 위치의 값은 위치 지정 쓰기로 고친다.
+ */
+final class ChannelOutput {
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final ByteBuffer patch = ByteBuffer.allocateDirect(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private long written;
+
+    ChannelOutput(FileChannel channel, ByteBuffer buffer) {
+        this.channel = channel;
+        this.buffer = buffer;
+        buffer.clear();
+    }
+
+    /**
+     * 최소 bytes만큼 쓸 공간이 남은 버퍼
+     */
+    ByteBuffer ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+            if (buffer.remaining() < bytes) {
+                throw new IllegalArgumentException("buffer too small: " + bytes + " > " + buffer.capacity());
+            }
+        }
+        return buffer;
+    }
+
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * 파일 안에서 다음에 쓸 위치
+     */
+    long position() {
+        return written + buffer.position();
+    }
+
+    void putInt(long position, int value) throws IOException {
+        if (position >= written) {
+            buffer.putInt((int) (position - written), value);
+            return;
+        }
+        patch.clear();
+        patch.putInt(value).flip();
+        writeFully(patch, position);
+    }
+
+    void putLong(long position, long value) throws IOException {
+        if (position >= written) {
+            buffer.putLong((int) (position - written), value);
+            return;
+        }
+        patch.clear();
+        patch.putLong(value).flip();
+        writeFully(patch, position);
+    }
+
+    void flush() throws IOException {
+        buffer.flip();
+        written += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer source, long position) throws IOException {
+        while (source.hasRemaining()) {
+            position += channel.write(source, position);
+        }
+    }
+}
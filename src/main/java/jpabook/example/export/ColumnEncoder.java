@@ -0,0 +1,31 @@
+package jpabook.example.export;
+
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 열 하나의 값을 바이트로 바꾼다. 열 파일을 쓰는 스레드마다 따로 만들므로 상태를 가져도 된다.
+ *
+ * encode()는 행마다 호출되므로 객체를 만들지 않아야 한다.
+ */
+public interface ColumnEncoder {
+
+    /**
+     * 파일 머리글에 기록하는 이름. ColumnarReader는 이 이름으로 디코더를 만든다.
+     */
+    String getName();
+
+    /**
+     * 블록을 시작할 때 호출한다. 앞 값에 의존하는 상태가 있으면 지운다.
+     */
+    default void reset() {
+    }
+
+    /**
+     * 현재 행의 값을 out에 쓴다. 남은 공간이 모자라면 아무것도 쓰지 않고 false를 반환한다.
+     */
+    boolean encode(ResultSet rs, int column, ByteBuffer out) throws SQLException;
+
+    Object decode(ByteBuffer in);
+}
@@ -0,0 +1,145 @@
+package jpabook.example.export;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 기본 열 인코더
+ *
+ * 정수는 zigzag 가변 길이, 문자열은 길이를 앞에 붙인 UTF-8이다. null은 0, 값은 (인코딩 + 1)로 써서 구분한다.
+ */
+public final class ColumnEncoders {
+
+    public static final String VARLONG = "varlong";
+    public static final String DELTA = "delta";
+    public static final String UTF8 = "utf8";
+
+    private ColumnEncoders() {
+    }
+
+    public static ColumnEncoder varLong() {
+        return new VarLongEncoder(false);
+    }
+
+    /**
+     * 앞 값과의 차이를 쓴다. 정렬된 아이디처럼 이웃한 값이 가까우면 1~2바이트가 된다.
+     */
+    public static ColumnEncoder delta() {
+        return new VarLongEncoder(true);
+    }
+
+    public static ColumnEncoder utf8() {
+        return new Utf8Encoder();
+    }
+
+    public static ColumnEncoder forName(String name) {
+        switch (name) {
+            case VARLONG:
+                return varLong();
+            case DELTA:
+                return delta();
+            case UTF8:
+                return utf8();
+            default:
+                throw new IllegalArgumentException("unknown column encoder: " + name);
+        }
+    }
+
+    private static final class VarLongEncoder implements ColumnEncoder {
+
+        private final boolean delta;
+        private long previous;
+
+        VarLongEncoder(boolean delta) {
+            this.delta = delta;
+        }
+
+        @Override
+        public String getName() {
+            return delta ? DELTA : VARLONG;
+        }
+
+        @Override
+        public void reset() {
+            previous = 0;
+        }
+
+        @Override
+        public boolean encode(ResultSet rs, int column, ByteBuffer out) throws SQLException {
+            if (out.remaining() < Bytes.MAX_VARLONG_LENGTH) {
+                return false;
+            }
+            long value = rs.getLong(column);
+            if (rs.wasNull()) {
+                out.put((byte) 0);
+                return true;
+            }
+            long zigzag = zigzag(delta ? value - previous : value);
+            if (zigzag == -1L) {
+                throw new IllegalArgumentException("value out of range: " + value);
+            }
+            Bytes.putVarLong(out, zigzag + 1);
+            previous = value;
+            return true;
+        }
+
+        @Override
+        public Object decode(ByteBuffer in) {
+            long encoded = Bytes.getVarLong(in);
+            if (encoded == 0) {
+                return null;
+            }
+            long zigzag = encoded - 1;
+            long value = (zigzag >>> 1) ^ -(zigzag & 1);
+            if (delta) {
+                value += previous;
+            }
+            previous = value;
+            return value;
+        }
+
+        private static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+    }
+
+    private static final class Utf8Encoder implements ColumnEncoder {
+
+        @Override
+        public String getName() {
+            return UTF8;
+        }
+
+        @Override
+        public boolean encode(ResultSet rs, int column, ByteBuffer out) throws SQLException {
+            String value = rs.getString(column);
+            if (value == null) {
+                if (!out.hasRemaining()) {
+                    return false;
+                }
+                out.put((byte) 0);
+                return true;
+            }
+            int length = Bytes.utf8Length(value);
+            if (out.remaining() < Bytes.varLongLength(length + 1L) + length) {
+                return false;
+            }
+            Bytes.putVarLong(out, length + 1L);
+            Bytes.putUtf8(out, value, 0, value.length());
+            return true;
+        }
+
+        @Override
+        public Object decode(ByteBuffer in) {
+            long encoded = Bytes.getVarLong(in);
+            if (encoded == 0) {
+                return null;
+            }
+            byte[] bytes = new byte[(int) (encoded - 1)];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package jpabook.example.export;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * 열 파일을 쓴다. 모든 정수는 리틀 엔디언이다.
+ *
+ * 머리글: MAGIC | VERSION | 열 수 | 전체 행 수(long) | 열마다 (이름 길이, 이름, 인코더 이름 길이, 인코더 이름)
+ * 블록: 행 수 | 열마다 (인코딩한 길이, 압축한 길이, Deflate 데이터)
+ * 행 수가 0인 블록으로 끝난다.
+ *
+ * 열마다 블록 버퍼에 값을 인코딩하다가 어느 한 열이라도 버퍼가 차면 그 행 앞에서 블록을 끊는다.
+ */
+final class ColumnarFileWriter {
+
+    static final int MAGIC = 0x4A50434F;
+    static final int VERSION = 1;
+    static final int MAX_BLOCK_ROWS = 1 << 16;
+
+    /**
+     * 한 번의 deflate()에 확보하는 최소 출력 공간
+     */
+    private static final int DEFLATE_CHUNK = 256;
+
+    private final ChannelOutput output;
+    private final ColumnEncoder[] encoders;
+    private final ByteBuffer[] blocks;
+    private final Deflater deflater;
+    private final int[] rowStart;
+    private long rowCountPosition;
+    private int blockRows;
+    private long rows;
+
+    ColumnarFileWriter(ChannelOutput output, ColumnEncoder[] encoders, ByteBuffer[] blocks, Deflater deflater) {
+        this.output = output;
+        this.encoders = encoders;
+        this.blocks = blocks;
+        this.deflater = deflater;
+        this.rowStart = new int[encoders.length];
+        for (int i = 0; i < encoders.length; i++) {
+            blocks[i].clear();
+            encoders[i].reset();
+        }
+    }
+
+    void writeHeader(List<String> columns) throws IOException {
+        output.ensure(20).putInt(MAGIC).putInt(VERSION).putInt(columns.size());
+        rowCountPosition = output.position();
+        output.buffer().putLong(0);
+        for (int i = 0; i < columns.size(); i++) {
+            putName(columns.get(i));
+            putName(encoders[i].getName());
+        }
+    }
+
+    void writeRow(ResultSet rs) throws SQLException, IOException {
+        if (!encodeRow(rs)) {
+            flushBlock();
+            if (!encodeRow(rs)) {
+                throw new IllegalStateException("row does not fit in an empty block of " + blocks[0].capacity()
+                        + " bytes");
+            }
+        }
+        blockRows++;
+        rows++;
+        if (blockRows == MAX_BLOCK_ROWS) {
+            flushBlock();
+        }
+    }
+
+    long finish() throws IOException {
+        flushBlock();
+        output.ensure(4).putInt(0);
+        output.putLong(rowCountPosition, rows);
+        output.flush();
+        return rows;
+    }
+
+    private boolean encodeRow(ResultSet rs) throws SQLException {
+        for (int i = 0; i < encoders.length; i++) {
+            rowStart[i] = blocks[i].position();
+            if (!encoders[i].encode(rs, i + 1, blocks[i])) {
+                // 이미 쓴 열을 이 행 앞으로 되돌린다.
+                for (int j = 0; j <= i; j++) {
+                    blocks[j].position(rowStart[j]);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void flushBlock() throws IOException {
+        if (blockRows == 0) {
+            return;
+        }
+        output.ensure(4).putInt(blockRows);
+        for (int i = 0; i < blocks.length; i++) {
+            ByteBuffer block = blocks[i];
+            block.flip();
+            output.ensure(8).putInt(block.remaining());
+            long compressedLengthPosition = output.position();
+            output.buffer().putInt(0);
+
+            long start = output.position();
+            deflater.reset();
+            deflater.setInput(block);
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflater.deflate(output.ensure(DEFLATE_CHUNK));
+            }
+            output.putInt(compressedLengthPosition, (int) (output.position() - start));
+
+            block.clear();
+            encoders[i].reset();
+        }
+        blockRows = 0;
+    }
+
+    private void putName(String name) throws IOException {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        output.ensure(2 + bytes.length).putShort((short) bytes.length).put(bytes);
+    }
+}
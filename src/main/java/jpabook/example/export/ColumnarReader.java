@@ -0,0 +1,113 @@
+package jpabook.example.export;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * ColumnarFileWriter가 쓴 파일을 행으로 읽는다. 확인과 작은 파일을 위한 것이라 파일 전체를 메모리에 올린다.
+ */
+public final class ColumnarReader {
+
+    private ColumnarReader() {
+    }
+
+    public static ColumnarTable read(Path path) throws IOException {
+        return read(path, ColumnEncoders::forName);
+    }
+
+    /**
+     * encoders로 머리글의 인코더 이름에 맞는 디코더를 만든다. 직접 만든 ColumnEncoder를 쓴 파일을 읽을 때 사용한다.
+     */
+    public static ColumnarTable read(Path path, Function<String, ColumnEncoder> encoders) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            in = ByteBuffer.allocate(Math.toIntExact(channel.size())).order(ByteOrder.LITTLE_ENDIAN);
+            while (in.hasRemaining()) {
+                if (channel.read(in) < 0) {
+                    throw new IOException("unexpected end of file: " + path);
+                }
+            }
+            in.flip();
+        }
+
+        if (in.getInt() != ColumnarFileWriter.MAGIC) {
+            throw new IOException("not a columnar export file: " + path);
+        }
+        int version = in.getInt();
+        if (version != ColumnarFileWriter.VERSION) {
+            throw new IOException("unsupported columnar export version " + version + ": " + path);
+        }
+        int columnCount = in.getInt();
+        long rowCount = in.getLong();
+        List<String> columns = new ArrayList<>(columnCount);
+        List<String> encoderNames = new ArrayList<>(columnCount);
+        ColumnEncoder[] decoders = new ColumnEncoder[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            columns.add(getName(in));
+            encoderNames.add(getName(in));
+            decoders[i] = encoders.apply(encoderNames.get(i));
+        }
+
+        List<Object[]> rows = new ArrayList<>((int) Math.min(rowCount, Integer.MAX_VALUE));
+        Inflater inflater = new Inflater();
+        try {
+            int blockRows;
+            while ((blockRows = in.getInt()) > 0) {
+                Object[][] block = new Object[blockRows][columnCount];
+                for (int column = 0; column < columnCount; column++) {
+                    ByteBuffer values = inflate(in, inflater);
+                    decoders[column].reset();
+                    for (int row = 0; row < blockRows; row++) {
+                        block[row][column] = decoders[column].decode(values);
+                    }
+                }
+                for (Object[] row : block) {
+                    rows.add(row);
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt columnar export file: " + path, e);
+        } finally {
+            inflater.end();
+        }
+        if (rows.size() != rowCount) {
+            throw new IOException("expected " + rowCount + " rows but read " + rows.size() + ": " + path);
+        }
+        return new ColumnarTable(columns, encoderNames, rows);
+    }
+
+    private static ByteBuffer inflate(ByteBuffer in, Inflater inflater) throws DataFormatException {
+        int length = in.getInt();
+        int compressedLength = in.getInt();
+        ByteBuffer compressed = in.slice();
+        compressed.limit(compressedLength);
+        in.position(in.position() + compressedLength);
+
+        ByteBuffer values = ByteBuffer.allocate(length);
+        inflater.reset();
+        inflater.setInput(compressed);
+        while (values.hasRemaining() && !inflater.finished()) {
+            if (inflater.inflate(values) == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                throw new DataFormatException("truncated column data");
+            }
+        }
+        values.flip();
+        return values;
+    }
+
+    private static String getName(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
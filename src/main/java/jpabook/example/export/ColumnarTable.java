@@ -0,0 +1,17 @@
+package jpabook.example.export;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.util.List;
+
+@Getter
+@ToString(exclude = "rows")
+@RequiredArgsConstructor
+public class ColumnarTable {
+
+    private final List<String> columns;
+    private final List<String> encoders;
+    private final List<Object[]> rows;
+}
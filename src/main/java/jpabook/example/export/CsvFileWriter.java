@@ -0,0 +1,104 @@
+package jpabook.example.export;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * ResultSet의 행을 CSV로 쓴다. 숫자는 getLong()으로 읽어서 바로 숫자 문자로, 문자열은 UTF-8로 바꾼다.
+ * RFC 4180에 따라 행은 CRLF로 끝낸다. NULL은 빈 칸으로, 빈 문자열은 ""로 써서 구분한다.
+ */
+final class CsvFileWriter {
+
+    /**
+     * 한 번에 버퍼에 쓰는 문자 수. 긴 문자열은 나눠서 쓴다.
+     */
+    private static final int CHARS_PER_WRITE = 1024;
+
+    private final ChannelOutput output;
+    private final boolean[] numeric;
+
+    CsvFileWriter(ChannelOutput output, boolean[] numeric) {
+        this.output = output;
+        this.numeric = numeric;
+    }
+
+    void writeHeader(List<String> columns) throws IOException {
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                output.ensure(1).put((byte) ',');
+            }
+            writeString(columns.get(i));
+        }
+        endRow();
+    }
+
+    void writeRow(ResultSet rs) throws SQLException, IOException {
+        for (int i = 0; i < numeric.length; i++) {
+            if (i > 0) {
+                output.ensure(1).put((byte) ',');
+            }
+            if (numeric[i]) {
+                long value = rs.getLong(i + 1);
+                if (!rs.wasNull()) {
+                    Bytes.putDecimal(output.ensure(Bytes.MAX_DECIMAL_LENGTH), value);
+                }
+            } else {
+                String value = rs.getString(i + 1);
+                if (value != null) {
+                    writeString(value);
+                }
+            }
+        }
+        endRow();
+    }
+
+    private void endRow() throws IOException {
+        output.ensure(2).put((byte) '\r').put((byte) '\n');
+    }
+
+    private void writeString(String value) throws IOException {
+        if (!needsQuotes(value)) {
+            writeChars(value, 0, value.length());
+            return;
+        }
+        output.ensure(1).put((byte) '"');
+        int from = 0;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == '"') {
+                writeChars(value, from, i + 1);
+                from = i;
+            }
+        }
+        writeChars(value, from, value.length());
+        output.ensure(1).put((byte) '"');
+    }
+
+    private void writeChars(String value, int from, int to) throws IOException {
+        while (from < to) {
+            int end = Math.min(to, from + CHARS_PER_WRITE);
+            // 서로게이트 쌍을 나누지 않는다.
+            if (end < to && Character.isHighSurrogate(value.charAt(end - 1))) {
+                end--;
+            }
+            ByteBuffer buffer = output.ensure((end - from) * 3);
+            Bytes.putUtf8(buffer, value, from, end);
+            from = end;
+        }
+    }
+
+    private static boolean needsQuotes(String value) {
+        if (value.isEmpty()) {
+            return true;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,22 @@
+package jpabook.example.export;
+
+public enum ExportFormat {
+    /**
+     * 머리글이 있는 RFC 4180 CSV. null은 빈 값으로 쓴다.
+     */
+    CSV("csv"),
+    /**
+     * 블록마다 열을 따로 인코딩하고 Deflate로 압축한 파일. ColumnarReader로 읽는다.
+     */
+    COLUMNAR("col");
+
+    private final String suffix;
+
+    ExportFormat(String suffix) {
+        this.suffix = suffix;
+    }
+
+    public String getSuffix() {
+        return suffix;
+    }
+}
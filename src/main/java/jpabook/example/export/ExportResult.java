@@ -0,0 +1,34 @@
+package jpabook.example.export;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+@Getter
+@ToString
+@RequiredArgsConstructor
+public class ExportResult {
+
+    private final ExportSource source;
+    private final ExportFormat format;
+    private final List<Path> files;
+    private final long rows;
+    private final long bytes;
+    /**
+     * 작업 스레드가 힙에 할당한 바이트 수. JVM이 지원하지 않으면 -1
+     */
+    private final long allocatedBytes;
+    private final Duration elapsed;
+
+    public double getRowsPerSecond() {
+        return elapsed.isZero() ? 0 : rows * 1_000_000_000.0 / elapsed.toNanos();
+    }
+
+    public double getAllocatedBytesPerRow() {
+        return rows == 0 || allocatedBytes < 0 ? 0 : (double) allocatedBytes / rows;
+    }
+}
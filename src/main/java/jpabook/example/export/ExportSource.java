@@ -0,0 +1,19 @@
+package jpabook.example.export;
+
+/**
+ * 내보낼 주문 테이블. 보관된 주문(orders_archive)도 같은 열을 가진다.
+ */
+public enum ExportSource {
+    ORDERS("orders"),
+    ARCHIVE("orders_archive");
+
+    private final String table;
+
+    ExportSource(String table) {
+        this.table = table;
+    }
+
+    public String getTable() {
+        return table;
+    }
+}
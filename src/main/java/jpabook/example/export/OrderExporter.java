@@ -0,0 +1,283 @@
+package jpabook.example.export;
+
+import com.github.gavlyukovskiy.boot.jdbc.decorator.DecoratedDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
+
+/**
+ * 주문을 회원, 상품 이름과 함께(Order의 OrderResults 매핑과 같은 열) 파일로 내보낸다.
+ *
+ * 엔티티를 만들지 않고 JDBC 커서에서 읽은 값을 재사용하는 direct ByteBuffer에 바로 쓰고 FileChannel로 내보낸다.
+ * 행마다 새로 만드는 객체는 드라이버가 만드는 값(문자열 등)뿐이라 행 수와 상관없이 행당 할당량이 같다.
+ *
+ * 주문 아이디를 행 수가 비슷한 구간으로 나눠 구간마다 파일 하나를 병렬로 쓴다. 파일 이름은 테이블-순번.확장자다.
+ * 구간 경계는 내보내기 시작할 때 정하므로 그 사이에 추가된 주문은 마지막 구간에 들어간다.
+ */
+@Slf4j
+@Component
+public class OrderExporter {
+
+    public static final List<String> COLUMNS = Collections.unmodifiableList(Arrays.asList(
+            "order_id", "member_id", "member_name", "item_id", "item_name", "quantity"));
+
+    private static final String SELECT = "select o.order_id, o.member_id, m.name, o.item_id, i.name, o.quantity"
+            + " from %s o"
+            + " left join member m on m.member_id = o.member_id"
+            + " left join item i on i.item_id = o.item_id"
+            + " where o.order_id between ? and ?"
+            + " order by o.order_id";
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final int parallelism;
+    private final int bufferSize;
+    private final int fetchSize;
+    private final int minRowsPerFile;
+    private final int compressionLevel;
+
+    public OrderExporter(DataSource dataSource,
+                         @Value("${jpabook.export.parallelism:4}") int parallelism,
+                         @Value("${jpabook.export.buffer-size:1048576}") int bufferSize,
+                         @Value("${jpabook.export.fetch-size:1000}") int fetchSize,
+                         @Value("${jpabook.export.min-rows-per-file:10000}") int minRowsPerFile,
+                         @Value("${jpabook.export.compression-level:1}") int compressionLevel) {
+        if (parallelism <= 0 || bufferSize < 4096 || fetchSize <= 0 || minRowsPerFile <= 0) {
+            throw new IllegalArgumentException(
+                    "parallelism, fetchSize and minRowsPerFile must be positive and bufferSize at least 4096");
+        }
+        // 행마다 p6spy를 거치지 않도록 원래 DataSource를 쓴다.
+        this.dataSource = dataSource instanceof DecoratedDataSource
+                ? ((DecoratedDataSource) dataSource).getRealDataSource() : dataSource;
+        this.jdbcTemplate = new JdbcTemplate(this.dataSource);
+        this.parallelism = parallelism;
+        this.bufferSize = bufferSize;
+        this.fetchSize = fetchSize;
+        this.minRowsPerFile = minRowsPerFile;
+        this.compressionLevel = compressionLevel;
+    }
+
+    public ExportResult export(ExportSource source, ExportFormat format, Path directory) {
+        if (format == ExportFormat.CSV) {
+            return export(source, format, directory, null);
+        }
+        List<Supplier<ColumnEncoder>> encoders = Arrays.asList(ColumnEncoders::delta, ColumnEncoders::varLong,
+                ColumnEncoders::utf8, ColumnEncoders::varLong, ColumnEncoders::utf8, ColumnEncoders::varLong);
+        return export(source, format, directory, encoders);
+    }
+
+    /**
+     * 열마다 인코더를 지정해서 열 파일로 내보낸다. 인코더는 파일마다 새로 만든다.
+     */
+    public ExportResult exportColumnar(ExportSource source, Path directory, List<Supplier<ColumnEncoder>> encoders) {
+        if (encoders.size() != COLUMNS.size()) {
+            throw new IllegalArgumentException("expected " + COLUMNS.size() + " encoders: " + encoders.size());
+        }
+        return export(source, ExportFormat.COLUMNAR, directory, encoders);
+    }
+
+    private ExportResult export(ExportSource source, ExportFormat format, Path directory,
+                                List<Supplier<ColumnEncoder>> encoders) {
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(directory);
+            deleteFiles(source, format, directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        List<long[]> ranges = ranges(source);
+        List<Path> files = new ArrayList<>();
+        List<Callable<long[]>> tasks = new ArrayList<>();
+        for (int i = 0; i < ranges.size(); i++) {
+            Path file = directory.resolve(String.format("%s-%05d.%s", source.getTable(), i, format.getSuffix()));
+            long[] range = ranges.get(i);
+            files.add(file);
+            tasks.add(() -> write(source, format, file, range[0], range[1], encoders));
+        }
+
+        long rows = 0;
+        long bytes = 0;
+        long allocated = 0;
+        for (long[] written : run(tasks)) {
+            rows += written[0];
+            bytes += written[1];
+            allocated = allocated < 0 || written[2] < 0 ? -1 : allocated + written[2];
+        }
+        ExportResult result = new ExportResult(source, format, Collections.unmodifiableList(files), rows, bytes,
+                allocated, Duration.ofNanos(System.nanoTime() - start));
+        log.info("exported {}", result);
+        return result;
+    }
+
+    /**
+     * 행 수가 비슷하도록 나눈 아이디 구간. 행이 없어도 빈 파일 하나를 만들도록 구간 하나를 돌려준다.
+     */
+    private List<long[]> ranges(ExportSource source) {
+        Long rows = jdbcTemplate.queryForObject("select count(*) from " + source.getTable(), Long.class);
+        int parts = (int) Math.max(1, Math.min(parallelism, rows / minRowsPerFile));
+        List<long[]> ranges = new ArrayList<>();
+        long from = Long.MIN_VALUE;
+        for (int i = 1; i < parts; i++) {
+            Long boundary = jdbcTemplate.queryForObject("select order_id from " + source.getTable()
+                    + " order by order_id offset ? rows fetch next 1 rows only", Long.class, rows * i / parts);
+            ranges.add(new long[]{from, boundary - 1});
+            from = boundary;
+        }
+        ranges.add(new long[]{from, Long.MAX_VALUE});
+        return ranges;
+    }
+
+    /**
+     * 구간 하나를 파일로 쓴다. {행 수, 파일 크기, 할당한 바이트}
+     */
+    private long[] write(ExportSource source, ExportFormat format, Path file, long from, long to,
+                         List<Supplier<ColumnEncoder>> encoders) throws SQLException, IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer[] blocks = null;
+        ColumnEncoder[] columnEncoders = null;
+        Deflater deflater = null;
+        if (format == ExportFormat.COLUMNAR) {
+            blocks = new ByteBuffer[COLUMNS.size()];
+            columnEncoders = new ColumnEncoder[COLUMNS.size()];
+            for (int i = 0; i < blocks.length; i++) {
+                blocks[i] = ByteBuffer.allocateDirect(bufferSize);
+                columnEncoders[i] = encoders.get(i).get();
+            }
+            deflater = new Deflater(compressionLevel);
+        }
+
+        long allocatedBefore = allocatedBytes();
+        long rows = 0;
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = connection.prepareStatement(String.format(SELECT, source.getTable()),
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+             FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            ps.setFetchSize(fetchSize);
+            ps.setLong(1, from);
+            ps.setLong(2, to);
+            ChannelOutput output = new ChannelOutput(channel, buffer);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (format == ExportFormat.CSV) {
+                    CsvFileWriter writer = new CsvFileWriter(output, numericColumns(rs.getMetaData()));
+                    writer.writeHeader(COLUMNS);
+                    while (rs.next()) {
+                        writer.writeRow(rs);
+                        rows++;
+                    }
+                    output.flush();
+                } else {
+                    ColumnarFileWriter writer = new ColumnarFileWriter(output, columnEncoders, blocks, deflater);
+                    writer.writeHeader(COLUMNS);
+                    while (rs.next()) {
+                        writer.writeRow(rs);
+                    }
+                    rows = writer.finish();
+                }
+            }
+            long allocated = allocatedBefore < 0 ? -1 : allocatedBytes() - allocatedBefore;
+            return new long[]{rows, channel.size(), allocated};
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    private static boolean[] numericColumns(ResultSetMetaData metaData) throws SQLException {
+        boolean[] numeric = new boolean[metaData.getColumnCount()];
+        for (int i = 0; i < numeric.length; i++) {
+            switch (metaData.getColumnType(i + 1)) {
+                case Types.BIGINT:
+                case Types.INTEGER:
+                case Types.SMALLINT:
+                case Types.TINYINT:
+                    numeric[i] = true;
+                    break;
+                default:
+                    numeric[i] = false;
+            }
+        }
+        return numeric;
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+        return allocation.isThreadAllocatedMemoryEnabled()
+                ? allocation.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+
+    private static void deleteFiles(ExportSource source, ExportFormat format, Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                source.getTable() + "-*." + format.getSuffix())) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private List<long[]> run(List<Callable<long[]>> tasks) {
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()), runnable -> {
+            Thread thread = new Thread(runnable, "export-worker-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (Callable<long[]> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            List<long[]> results = new ArrayList<>();
+            for (Future<long[]> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("export interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("export failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
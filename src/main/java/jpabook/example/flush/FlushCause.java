@@ -0,0 +1,23 @@
+package jpabook.example.flush;
+
+/**
+ * 플러시가 일어난 이유
+ */
+public enum FlushCause {
+    /**
+     * flush() 호출이나 커밋
+     */
+    EXPLICIT,
+    /**
+     * 쿼리 전 자동 플러시에서 실제로 SQL을 실행한 경우
+     */
+    AUTO,
+    /**
+     * 쿼리 전 자동 플러시에서 전체 변경 감지를 했지만 쿼리와 관련된 변경이 없었던 경우
+     */
+    AUTO_NOT_NEEDED,
+    /**
+     * 쿼리 테이블과 겹치는 변경이 없어서 변경 감지를 건너뛴 경우
+     */
+    AUTO_SKIPPED
+}
@@ -0,0 +1,23 @@
+package jpabook.example.flush;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+@Getter
+@ToString
+@RequiredArgsConstructor
+public class FlushStats {
+
+    private final FlushCause cause;
+    private final long count;
+    /**
+     * 전체 변경 감지 대상이었던 엔티티 수의 합
+     */
+    private final long entitiesChecked;
+    private final long totalNanos;
+
+    public double getAverageMicros() {
+        return count == 0 ? 0 : totalNanos / 1000.0 / count;
+    }
+}
@@ -0,0 +1,199 @@
+package jpabook.example.flush;
+
+import jpabook.example.config.HibernateListenerRegistrar;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.FlushMode;
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.engine.spi.CollectionEntry;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SelfDirtinessTracker;
+import org.hibernate.engine.spi.Status;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AutoFlushEvent;
+import org.hibernate.event.spi.AutoFlushEventListener;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.FlushEvent;
+import org.hibernate.event.spi.FlushEventListener;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 쿼리 전 자동 플러시를 쿼리가 읽는 테이블과 겹치는 변경이 있을 때만 한다.
+ *
+ * 하이버네이트는 쿼리마다 영속성 컨텍스트 전체를 변경 감지한 뒤에 쿼리 테이블과 겹치는지 본다.
+ * 여기서는 그 전에 대기 중인 insert/delete와 바이트코드 향상 엔티티의 변경 추적 정보만 보고,
+ * 겹치는 변경이 없으면 변경 감지를 건너뛴다. 다음 경우에는 판단하지 않고 원래 리스너에 맡긴다.
+ * - 쿼리 테이블을 알 수 없는 경우(테이블을 지정하지 않은 네이티브 쿼리)
+ * - 변경 추적을 하지 않는 엔티티가 영속성 컨텍스트에 있는 경우
+ * - 쿼리 테이블과 겹치는 엔티티에 가변 속성(Date, 배열 등)이 있는 경우
+ * - 변경된 엔티티나 컬렉션에 cascade가 있어서 플러시 중에 다른 엔티티가 저장될 수 있는 경우
+ *
+ * 원인별 플러시 횟수, 변경 감지한 엔티티 수, 시간을 기록한다.
+ */
+@Slf4j
+@Component
+public class QuerySpaceFlushListener implements HibernateListenerRegistrar, AutoFlushEventListener,
+        FlushEventListener {
+
+    private final boolean querySpaceAware;
+
+    private final List<AutoFlushEventListener> autoFlushListeners = new ArrayList<>();
+    private final List<FlushEventListener> flushListeners = new ArrayList<>();
+    private final Map<FlushCause, Counter> counters = new EnumMap<>(FlushCause.class);
+
+    public QuerySpaceFlushListener(@Value("${jpabook.flush.query-space-aware:true}") boolean querySpaceAware) {
+        this.querySpaceAware = querySpaceAware;
+        for (FlushCause cause : FlushCause.values()) {
+            counters.put(cause, new Counter());
+        }
+    }
+
+    @Override
+    public void register(EventListenerRegistry registry) {
+        // 기존 리스너를 감싸서 대신 등록한다.
+        registry.getEventListenerGroup(EventType.AUTO_FLUSH).listeners().forEach(autoFlushListeners::add);
+        registry.getEventListenerGroup(EventType.FLUSH).listeners().forEach(flushListeners::add);
+        registry.setListeners(EventType.AUTO_FLUSH, this);
+        registry.setListeners(EventType.FLUSH, this);
+    }
+
+    @Override
+    public void onAutoFlush(AutoFlushEvent event) {
+        EventSource session = event.getSession();
+        PersistenceContext context = session.getPersistenceContextInternal();
+        int entities = context.getNumberOfManagedEntities();
+        if (session.getHibernateFlushMode().lessThan(FlushMode.AUTO) || session.getDontFlushFromFind() != 0
+                || (entities == 0 && context.getCollectionEntriesSize() == 0)) {
+            // 원래 리스너도 아무것도 하지 않는다.
+            delegate(event);
+            return;
+        }
+
+        long start = System.nanoTime();
+        if (querySpaceAware && session.getHibernateFlushMode() == FlushMode.AUTO && !mayAffect(event)) {
+            event.setFlushRequired(false);
+            counters.get(FlushCause.AUTO_SKIPPED).record(0, System.nanoTime() - start);
+            return;
+        }
+        delegate(event);
+        counters.get(event.isFlushRequired() ? FlushCause.AUTO : FlushCause.AUTO_NOT_NEEDED)
+                .record(entities, System.nanoTime() - start);
+    }
+
+    @Override
+    public void onFlush(FlushEvent event) {
+        int entities = event.getSession().getPersistenceContextInternal().getNumberOfManagedEntities();
+        long start = System.nanoTime();
+        for (FlushEventListener listener : flushListeners) {
+            listener.onFlush(event);
+        }
+        counters.get(FlushCause.EXPLICIT).record(entities, System.nanoTime() - start);
+    }
+
+    public Map<FlushCause, FlushStats> getStats() {
+        Map<FlushCause, FlushStats> stats = new EnumMap<>(FlushCause.class);
+        counters.forEach((cause, counter) -> stats.put(cause, counter.snapshot(cause)));
+        return stats;
+    }
+
+    public void reset() {
+        counters.values().forEach(Counter::reset);
+    }
+
+    private void delegate(AutoFlushEvent event) {
+        for (AutoFlushEventListener listener : autoFlushListeners) {
+            listener.onAutoFlush(event);
+        }
+    }
+
+    /**
+     * 플러시했을 때 쿼리 결과가 달라질 수 있는지 본다. 확실하지 않으면 true.
+     */
+    @SuppressWarnings("unchecked")
+    private static boolean mayAffect(AutoFlushEvent event) {
+        Set<Serializable> querySpaces = event.getQuerySpaces();
+        EventSource session = event.getSession();
+        if (querySpaces.isEmpty() || session.getActionQueue().areTablesToBeUpdated(querySpaces)) {
+            return true;
+        }
+
+        PersistenceContext context = session.getPersistenceContextInternal();
+        for (Map.Entry<Object, EntityEntry> entry : context.reentrantSafeEntityEntries()) {
+            EntityEntry entityEntry = entry.getValue();
+            Status status = entityEntry.getStatus();
+            if (status == Status.READ_ONLY || status == Status.DELETED || status == Status.GONE) {
+                // 삭제는 이미 ActionQueue에 있다.
+                continue;
+            }
+            if (status != Status.MANAGED || !(entry.getKey() instanceof SelfDirtinessTracker)) {
+                return true;
+            }
+            // 가변 속성은 값 안을 바꾸면 변경 추적에 잡히지 않는다.
+            if ((((SelfDirtinessTracker) entry.getKey()).$$_hibernate_hasDirtyAttributes()
+                    || entityEntry.getPersister().hasMutableProperties())
+                    && overlaps(entityEntry.getPersister(), querySpaces)) {
+                return true;
+            }
+        }
+
+        Map<PersistentCollection, CollectionEntry> collections = context.getCollectionEntries();
+        for (Map.Entry<PersistentCollection, CollectionEntry> entry : collections.entrySet()) {
+            CollectionPersister persister = entry.getValue().getLoadedPersister();
+            if (persister == null) {
+                return true;
+            }
+            if (entry.getKey().isDirty() && (persister.getOwnerEntityPersister().hasCascades()
+                    || intersects(persister.getCollectionSpaces(), querySpaces))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean overlaps(EntityPersister persister, Set<Serializable> querySpaces) {
+        return persister.hasCascades() || intersects(persister.getQuerySpaces(), querySpaces);
+    }
+
+    private static boolean intersects(Serializable[] spaces, Set<Serializable> querySpaces) {
+        for (Serializable space : spaces) {
+            if (querySpaces.contains(space)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Counter {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder entities = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        void record(int entitiesChecked, long elapsedNanos) {
+            count.increment();
+            entities.add(entitiesChecked);
+            nanos.add(elapsedNanos);
+        }
+
+        FlushStats snapshot(FlushCause cause) {
+            return new FlushStats(cause, count.sum(), entities.sum(), nanos.sum());
+        }
+
+        void reset() {
+            count.reset();
+            entities.reset();
+            nanos.reset();
+        }
+    }
+}
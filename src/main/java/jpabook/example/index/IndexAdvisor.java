@@ -0,0 +1,237 @@
+package jpabook.example.index;
+
+import jpabook.example.query.CapturedQuery;
+import jpabook.example.query.QueryCapture;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * H2의 EXPLAIN 결과를 읽어서 tableScan이 발생하는 테이블에 인덱스를 추천한다.
+ *
+ * 등치 조건 컬럼을 앞에, 범위 조건 컬럼을 뒤에 두는 복합 인덱스를 만들고,
+ * 조회 컬럼이 적으면 조회 컬럼까지 포함하는 커버링 인덱스를 추천한다.
+ */
+@Component
+@RequiredArgsConstructor
+public class IndexAdvisor {
+
+    private static final int MAX_COVERING_COLUMNS = 4;
+
+    private static final Pattern TABLE = Pattern.compile("\"PUBLIC\"\\.\"(\\w+)\"(?:\\s+\"(\\w+)\")?");
+    private static final Pattern TABLE_SCAN = Pattern.compile("/\\*\\s*PUBLIC\\.(\\w+)\\.tableScan");
+    private static final Pattern LEFT_PREDICATE = Pattern.compile(
+            "((?:\"\\w+\"\\.)*)\"(\\w+)\"\\s*(=|>=|<=|<>|>|<|\\bBETWEEN\\b|\\bIN\\b|\\bLIKE\\b)");
+    private static final Pattern RIGHT_PREDICATE = Pattern.compile(
+            "(=|>=|<=|>|<)\\s*((?:\"\\w+\"\\.)*)\"(\\w+)\"");
+    private static final Pattern COLUMN = Pattern.compile("((?:\"\\w+\"\\.)*)\"(\\w+)\"");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final QueryCapture queryCapture;
+
+    public String explain(String sql) {
+        return jdbcTemplate.queryForObject("explain " + sql, String.class);
+    }
+
+    /**
+     * 수집된 쿼리 지문 전체를 다시 실행 계획으로 확인한다.
+     */
+    public Map<String, List<IndexRecommendation>> adviseCaptured() {
+        Map<String, List<IndexRecommendation>> result = new LinkedHashMap<>();
+        for (CapturedQuery query : queryCapture.getSlowest(Integer.MAX_VALUE)) {
+            List<IndexRecommendation> recommendations = advise(query.getSampleSql());
+            if (!recommendations.isEmpty()) {
+                result.put(query.getFingerprint(), recommendations);
+            }
+        }
+        return result;
+    }
+
+    public List<IndexRecommendation> advise(String sql) {
+        String plan = explain(sql);
+
+        Set<String> scannedTables = new LinkedHashSet<>();
+        Matcher scan = TABLE_SCAN.matcher(plan);
+        while (scan.find()) {
+            scannedTables.add(scan.group(1));
+        }
+        if (scannedTables.isEmpty()) {
+            return List.of();
+        }
+
+        int fromIndex = plan.indexOf("FROM");
+        String selectClause = fromIndex < 0 ? "" : plan.substring(0, fromIndex);
+        String fromClause = fromIndex < 0 ? plan : plan.substring(fromIndex);
+
+        Map<String, String> aliasToTable = new HashMap<>();
+        Matcher table = TABLE.matcher(fromClause);
+        while (table.find()) {
+            aliasToTable.put(table.group(1), table.group(1));
+            if (table.group(2) != null) {
+                aliasToTable.put(table.group(2), table.group(1));
+            }
+        }
+        String singleTable = scannedTables.size() == 1 && aliasToTable.size() <= 2 ? scannedTables.iterator().next() : null;
+
+        Map<String, Set<String>> equalityColumns = new HashMap<>();
+        Map<String, Set<String>> rangeColumns = new HashMap<>();
+        Matcher left = LEFT_PREDICATE.matcher(fromClause);
+        while (left.find()) {
+            String owner = owner(left.group(1), aliasToTable, singleTable);
+            if (owner != null) {
+                Map<String, Set<String>> target = isEquality(left.group(3)) ? equalityColumns : rangeColumns;
+                target.computeIfAbsent(owner, key -> new LinkedHashSet<>()).add(left.group(2));
+            }
+        }
+        Matcher right = RIGHT_PREDICATE.matcher(fromClause);
+        while (right.find()) {
+            String owner = owner(right.group(2), aliasToTable, singleTable);
+            if (owner != null) {
+                Map<String, Set<String>> target = isEquality(right.group(1)) ? equalityColumns : rangeColumns;
+                target.computeIfAbsent(owner, key -> new LinkedHashSet<>()).add(right.group(3));
+            }
+        }
+
+        Map<String, Set<String>> selectedColumns = new HashMap<>();
+        Matcher column = COLUMN.matcher(selectClause);
+        while (column.find()) {
+            String owner = owner(column.group(1), aliasToTable, singleTable);
+            if (owner != null) {
+                selectedColumns.computeIfAbsent(owner, key -> new LinkedHashSet<>()).add(column.group(2));
+            }
+        }
+
+        List<IndexRecommendation> recommendations = new ArrayList<>();
+        for (String scanned : scannedTables) {
+            Set<String> columns = new LinkedHashSet<>(equalityColumns.getOrDefault(scanned, Set.of()));
+            Set<String> ranges = rangeColumns.getOrDefault(scanned, Set.of());
+            if (!ranges.isEmpty()) {
+                columns.add(ranges.iterator().next());
+            }
+            if (columns.isEmpty() || isCoveredByExistingIndex(scanned, new ArrayList<>(columns))) {
+                continue;
+            }
+
+            Set<String> covering = new LinkedHashSet<>(columns);
+            covering.addAll(selectedColumns.getOrDefault(scanned, Set.of()));
+            covering.removeAll(primaryKeyColumns(scanned));
+            boolean isCovering = covering.size() > columns.size() && covering.size() <= MAX_COVERING_COLUMNS;
+
+            recommendations.add(new IndexRecommendation(
+                    scanned,
+                    new ArrayList<>(isCovering ? covering : columns),
+                    isCovering,
+                    "tableScan on " + scanned + " filtered by " + columns));
+        }
+        return recommendations;
+    }
+
+    /**
+     * 인덱스 생성 전후의 실행 시간을 비교한다.
+     * DDL은 트랜잭션을 커밋하므로 트랜잭션 밖에서 호출해야 한다.
+     */
+    public IndexReport apply(String sql, IndexRecommendation recommendation, int iterations) {
+        String planBefore = explain(sql);
+        long beforeNanos = measure(sql, iterations);
+
+        jdbcTemplate.execute(recommendation.toDdl());
+
+        String planAfter = explain(sql);
+        long afterNanos = measure(sql, iterations);
+        return new IndexReport(sql, recommendation, planBefore, planAfter, beforeNanos, afterNanos);
+    }
+
+    public void drop(IndexRecommendation recommendation) {
+        jdbcTemplate.execute("drop index if exists " + recommendation.getIndexName());
+    }
+
+    private long measure(String sql, int iterations) {
+        for (int i = 0; i < Math.min(iterations, 10); i++) {
+            readAll(sql);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            readAll(sql);
+        }
+        return (System.nanoTime() - start) / Math.max(iterations, 1);
+    }
+
+    private int readAll(String sql) {
+        // 결과를 끝까지 읽어야 실제 조회 비용이 측정된다.
+        Integer rows = jdbcTemplate.query(sql, (ResultSetExtractor<Integer>) rs -> {
+            int count = 0;
+            while (rs.next()) {
+                count++;
+            }
+            return count;
+        });
+        return rows == null ? 0 : rows;
+    }
+
+    private Set<String> primaryKeyColumns(String table) {
+        return jdbcTemplate.execute((ConnectionCallback<Set<String>>) connection -> {
+            Set<String> columns = new LinkedHashSet<>();
+            try (ResultSet rs = connection.getMetaData().getPrimaryKeys(null, "PUBLIC", table)) {
+                while (rs.next()) {
+                    columns.add(rs.getString("COLUMN_NAME"));
+                }
+            }
+            return columns;
+        });
+    }
+
+    /**
+     * 이미 같은 컬럼으로 시작하는 인덱스가 있으면 조인의 바깥 테이블이라 스캔이 불가피한 경우다.
+     */
+    private boolean isCoveredByExistingIndex(String table, List<String> columns) {
+        Map<String, List<String>> indexes = jdbcTemplate.execute((ConnectionCallback<Map<String, List<String>>>) connection -> {
+            Map<String, List<String>> result = new HashMap<>();
+            try (ResultSet rs = connection.getMetaData().getIndexInfo(null, "PUBLIC", table, false, true)) {
+                while (rs.next()) {
+                    String indexName = rs.getString("INDEX_NAME");
+                    String columnName = rs.getString("COLUMN_NAME");
+                    if (indexName != null && columnName != null) {
+                        result.computeIfAbsent(indexName, key -> new ArrayList<>()).add(columnName);
+                    }
+                }
+            }
+            return result;
+        });
+        if (indexes == null) {
+            return false;
+        }
+        for (List<String> indexColumns : indexes.values()) {
+            if (indexColumns.size() >= columns.size()
+                    && indexColumns.subList(0, columns.size()).equals(columns)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String owner(String qualifier, Map<String, String> aliasToTable, String singleTable) {
+        if (qualifier == null || qualifier.isEmpty()) {
+            return singleTable;
+        }
+        String[] parts = qualifier.split("\\.");
+        String last = parts[parts.length - 1].replace("\"", "");
+        return aliasToTable.getOrDefault(last, singleTable);
+    }
+
+    private static boolean isEquality(String operator) {
+        return "=".equals(operator) || "IN".equalsIgnoreCase(operator);
+    }
+}
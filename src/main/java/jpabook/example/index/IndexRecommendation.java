@@ -0,0 +1,39 @@
+package jpabook.example.index;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Locale;
+
+@Getter
+@EqualsAndHashCode(of = {"table", "columns"})
+public class IndexRecommendation {
+
+    private final String table;
+    private final List<String> columns;
+    private final boolean covering;
+    private final String reason;
+
+    public IndexRecommendation(String table, List<String> columns, boolean covering, String reason) {
+        this.table = table;
+        this.columns = List.copyOf(columns);
+        this.covering = covering;
+        this.reason = reason;
+    }
+
+    public String getIndexName() {
+        return ("idx_" + table + "_" + String.join("_", columns)).toLowerCase(Locale.ROOT);
+    }
+
+    public String toDdl() {
+        return "create index if not exists " + getIndexName()
+                + " on " + table.toLowerCase(Locale.ROOT)
+                + " (" + String.join(", ", columns).toLowerCase(Locale.ROOT) + ")";
+    }
+
+    @Override
+    public String toString() {
+        return toDdl() + (covering ? " -- covering" : "") + " -- " + reason;
+    }
+}
@@ -0,0 +1,41 @@
+package jpabook.example.index;
+
+import lombok.Getter;
+
+@Getter
+public class IndexReport {
+
+    private final String sql;
+    private final IndexRecommendation recommendation;
+    private final String planBefore;
+    private final String planAfter;
+    private final long beforeNanos;
+    private final long afterNanos;
+
+    public IndexReport(String sql, IndexRecommendation recommendation,
+                       String planBefore, String planAfter, long beforeNanos, long afterNanos) {
+        this.sql = sql;
+        this.recommendation = recommendation;
+        this.planBefore = planBefore;
+        this.planAfter = planAfter;
+        this.beforeNanos = beforeNanos;
+        this.afterNanos = afterNanos;
+    }
+
+    public boolean isIndexUsed() {
+        return planAfter.contains(recommendation.getIndexName().toUpperCase());
+    }
+
+    public double getSpeedup() {
+        return afterNanos == 0 ? 0 : (double) beforeNanos / afterNanos;
+    }
+
+    @Override
+    public String toString() {
+        return recommendation.toDdl()
+                + "\n  sql    = " + sql
+                + "\n  before = " + beforeNanos / 1_000 + "us"
+                + "\n  after  = " + afterNanos / 1_000 + "us"
+                + "\n  speedup = " + String.format("%.2f", getSpeedup()) + "x";
+    }
+}
@@ -0,0 +1,142 @@
+package jpabook.example.inlist;
+
+import com.querydsl.core.types.Constant;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.ExpressionUtils;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Operator;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.jpa.JPAExpressions;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static jpabook.example.domain.QInListValue.inListValue;
+
+/**
+ * max-size보다 긴 정수 IN 목록을 in_list_value 테이블에 넣고 서브쿼리 조인으로 바꾼다.
+ *
+ * 패딩(in_clause_parameter_padding)으로 목록 길이마다 SQL이 생기는 것은 막을 수 있지만, 목록이 아주 길면
+ * 파라미터 수만큼 SQL이 커지고 파싱 비용도 커진다. 값은 배열 파라미터 하나로 한 번에 넣으므로 SQL은 목록 길이와 상관없이
+ * 두 개(insert, 조회)뿐이다. 넣은 값은 커밋 직전에 지우고, 롤백하면 함께 사라진다.
+ * 트랜잭션에 묶이지 않은 커넥션으로 넣었으면 이미 커밋됐으므로 트랜잭션이 끝난 뒤에 지운다.
+ *
+ * 값을 넣은 트랜잭션 안에서만 조회할 수 있으므로 실제 트랜잭션이 없으면(SUPPORTS 등) 바꾸지 않는다.
+ */
+@Slf4j
+@Component
+public class InListRewriter {
+
+    private static final String INSERT = "insert into in_list_value (list_id, list_value) select ?, x from table(x bigint = ?)";
+    private static final String DELETE = "delete from in_list_value where list_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxSize;
+
+    public InListRewriter(JdbcTemplate jdbcTemplate, @Value("${jpabook.in-list.max-size:1000}") int maxSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxSize = maxSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * AND, OR, NOT 아래에 있는 in, notIn 조건까지 바꾼다.
+     */
+    public Predicate rewrite(Predicate where) {
+        if (where == null || !TransactionSynchronizationManager.isActualTransactionActive()
+                || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return where;
+        }
+        return (Predicate) rewriteExpression(where);
+    }
+
+    private Expression<?> rewriteExpression(Expression<?> expression) {
+        if (!(expression instanceof Operation)) {
+            return expression;
+        }
+        Operation<?> operation = (Operation<?>) expression;
+        Operator operator = operation.getOperator();
+        if (operator == Ops.AND || operator == Ops.OR || operator == Ops.NOT) {
+            List<Expression<?>> args = new ArrayList<>();
+            for (Expression<?> arg : operation.getArgs()) {
+                args.add(rewriteExpression(arg));
+            }
+            return args.equals(operation.getArgs()) ? expression : ExpressionUtils.predicate(operator, args.toArray(new Expression<?>[0]));
+        }
+        if (operator != Ops.IN && operator != Ops.NOT_IN) {
+            return expression;
+        }
+        Long[] values = longValues(operation.getArg(1));
+        if (values == null) {
+            return expression;
+        }
+        long listId = insert(values);
+        return ExpressionUtils.predicate(operator, operation.getArg(0),
+                JPAExpressions.select(inListValue.value).from(inListValue).where(inListValue.listId.eq(listId)));
+    }
+
+    /**
+     * max-size보다 긴 정수 목록이면 중복을 뺀 값, 아니면 null
+     */
+    private Long[] longValues(Expression<?> arg) {
+        if (!(arg instanceof Constant) || !(((Constant<?>) arg).getConstant() instanceof Collection)) {
+            return null;
+        }
+        Collection<?> collection = (Collection<?>) ((Constant<?>) arg).getConstant();
+        if (collection.size() <= maxSize) {
+            return null;
+        }
+        Set<Long> values = new LinkedHashSet<>();
+        for (Object value : collection) {
+            if (!(value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)) {
+                return null;
+            }
+            values.add(((Number) value).longValue());
+        }
+        return values.toArray(new Long[0]);
+    }
+
+    private long insert(Long[] values) {
+        long listId = ThreadLocalRandom.current().nextLong();
+        // insert 뒤에는 DataSourceUtils가 커넥션을 묶어 두므로 먼저 확인한다.
+        boolean transactional = TransactionSynchronizationManager.hasResource(jdbcTemplate.getDataSource());
+        jdbcTemplate.update(INSERT, listId, values);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                if (transactional) {
+                    jdbcTemplate.update(DELETE, listId);
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (transactional) {
+                    return;
+                }
+                // 동기화가 끝난 뒤라 새 커넥션을 자동 커밋으로 쓴다.
+                try {
+                    jdbcTemplate.update(DELETE, listId);
+                } catch (RuntimeException e) {
+                    log.warn("failed to remove in_list_value {}", listId, e);
+                }
+            }
+        });
+        log.debug("moved {} in-list values to in_list_value {}", values.length, listId);
+        return listId;
+    }
+}
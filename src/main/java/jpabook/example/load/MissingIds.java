@@ -0,0 +1,15 @@
+package jpabook.example.load;
+
+/**
+ * MultiLoader가 찾지 못한 아이디를 결과에 어떻게 남길지 정한다.
+ */
+public enum MissingIds {
+    /**
+     * 결과에서 뺀다. 결과 크기가 입력보다 작을 수 있다.
+     */
+    SKIP,
+    /**
+     * 그 자리에 null을 넣는다. 결과의 i번째가 입력의 i번째 아이디에 대응한다.
+     */
+    NULL
+}
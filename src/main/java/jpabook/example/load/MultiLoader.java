@@ -0,0 +1,134 @@
+package jpabook.example.load;
+
+import jpabook.example.domain.Item;
+import jpabook.example.domain.Member;
+import jpabook.example.domain.Order;
+import jpabook.example.domain.Team;
+import org.hibernate.Hibernate;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.type.AbstractStandardBasicType;
+import org.hibernate.type.Type;
+import org.hibernate.type.descriptor.java.JavaTypeDescriptor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 아이디 목록으로 엔티티를 한꺼번에 읽는다. 결과는 입력 순서를 따른다.
+ *
+ * Hibernate의 MultiIdentifierLoadAccess(session.byMultipleIds())에 맡기고 엔티티별 타입과 MissingIds 처리만 더한다.
+ * 영속성 컨텍스트와 2차 캐시에 있는 엔티티는 쿼리 없이 돌려주고, 나머지 아이디만 chunk-size 단위의 IN 쿼리로 읽는다.
+ * 초기화하지 않은 바이트코드 향상 프록시는 따로 한 번 더 읽어서 초기화한다.
+ * em.find()처럼 삭제 예정인 엔티티는 찾지 못한 것으로 보고, 조회 전에 flush하지 않는다.
+ */
+@Component
+public class MultiLoader {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    private final int chunkSize;
+
+    public MultiLoader(@Value("${jpabook.load.chunk-size:500}") int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public List<Member> members(Collection<Long> ids) {
+        return load(Member.class, ids, MissingIds.SKIP);
+    }
+
+    public List<Member> members(Collection<Long> ids, MissingIds missing) {
+        return load(Member.class, ids, missing);
+    }
+
+    public List<Order> orders(Collection<Long> ids) {
+        return load(Order.class, ids, MissingIds.SKIP);
+    }
+
+    public List<Order> orders(Collection<Long> ids, MissingIds missing) {
+        return load(Order.class, ids, missing);
+    }
+
+    public List<Item> items(Collection<Long> ids) {
+        return load(Item.class, ids, MissingIds.SKIP);
+    }
+
+    public List<Item> items(Collection<Long> ids, MissingIds missing) {
+        return load(Item.class, ids, missing);
+    }
+
+    public List<Team> teams(Collection<Long> ids) {
+        return load(Team.class, ids, MissingIds.SKIP);
+    }
+
+    public List<Team> teams(Collection<Long> ids, MissingIds missing) {
+        return load(Team.class, ids, missing);
+    }
+
+    public <T> List<T> load(Class<T> type, Collection<? extends Serializable> ids, MissingIds missing) {
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        JavaTypeDescriptor<?> idType = idType(session, type);
+        List<Serializable> keys = new ArrayList<>(ids.size());
+        for (Serializable id : ids) {
+            if (id == null) {
+                throw new IllegalArgumentException("id must not be null");
+            }
+            keys.add((Serializable) idType.wrap(id, session));
+        }
+
+        List<T> loaded = session.byMultipleIds(type)
+                .enableSessionCheck(true)
+                .enableOrderedReturn(true)
+                .withBatchSize(chunkSize)
+                .multiLoad(keys);
+        initialize(session, type, loaded);
+
+        List<T> result = new ArrayList<>(loaded.size());
+        for (T entity : loaded) {
+            if (entity != null) {
+                result.add(entity);
+            } else if (missing == MissingIds.NULL) {
+                result.add(null);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 세션 확인은 바이트코드 향상 프록시를 초기화하지 않은 채 돌려준다. 그런 엔티티만 모아서 세션을 건너뛰고 한 번 더 읽으면
+     * 로더가 영속성 컨텍스트의 그 인스턴스를 채운다.
+     */
+    private <T> void initialize(SessionImplementor session, Class<T> type, List<T> loaded) {
+        List<Serializable> references = new ArrayList<>();
+        for (T entity : loaded) {
+            if (entity != null && !Hibernate.isInitialized(entity)) {
+                references.add(session.getIdentifier(entity));
+            }
+        }
+        if (!references.isEmpty()) {
+            session.byMultipleIds(type)
+                    .enableSessionCheck(false)
+                    .withBatchSize(chunkSize)
+                    .multiLoad(references);
+        }
+    }
+
+    /**
+     * 호출하는 쪽이 Integer처럼 다른 타입의 아이디를 넘겨도 엔티티의 아이디 타입으로 바꿔서 찾는다.
+     */
+    private static JavaTypeDescriptor<?> idType(SessionImplementor session, Class<?> type) {
+        Type identifierType = session.getFactory().getMetamodel().entityPersister(type)
+                .getIdentifierType();
+        if (!(identifierType instanceof AbstractStandardBasicType)) {
+            throw new IllegalArgumentException("unsupported identifier type of " + type.getName() + ": "
+                    + identifierType.getName());
+        }
+        return ((AbstractStandardBasicType<?>) identifierType).getJavaTypeDescriptor();
+    }
+}
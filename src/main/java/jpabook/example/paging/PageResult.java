@@ -0,0 +1,47 @@
+package jpabook.example.paging;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * 한 페이지의 조회 결과. total은 totalMode가 NONE이면 -1이다.
+ */
+@Getter
+@ToString
+public class PageResult<T> {
+
+    private final List<T> content;
+    private final long offset;
+    private final int limit;
+    @Getter(AccessLevel.NONE)
+    private final boolean hasNext;
+    private final long total;
+    private final TotalMode totalMode;
+
+    PageResult(List<T> content, long offset, int limit, boolean hasNext, long total, TotalMode totalMode) {
+        this.content = content;
+        this.offset = offset;
+        this.limit = limit;
+        this.hasNext = hasNext;
+        this.total = total;
+        this.totalMode = totalMode;
+    }
+
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    public boolean hasTotal() {
+        return totalMode != TotalMode.NONE;
+    }
+
+    public long getTotalPages() {
+        if (!hasTotal()) {
+            throw new IllegalStateException("total is unknown");
+        }
+        return (total + limit - 1) / limit;
+    }
+}
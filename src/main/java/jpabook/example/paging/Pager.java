@@ -0,0 +1,364 @@
+package jpabook.example.paging;
+
+import com.querydsl.core.DefaultQueryMetadata;
+import com.querydsl.core.JoinExpression;
+import com.querydsl.core.JoinFlag;
+import com.querydsl.core.JoinType;
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.types.CollectionExpression;
+import com.querydsl.core.types.Constant;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.SubQueryExpression;
+import com.querydsl.core.types.TemplateExpression;
+import com.querydsl.core.types.Visitor;
+import com.querydsl.jpa.JPAQueryMixin;
+import com.querydsl.jpa.JPQLSerializer;
+import com.querydsl.jpa.impl.JPAProvider;
+import com.querydsl.jpa.impl.JPAQuery;
+import jpabook.example.cache.QueryCacheKey;
+import jpabook.example.cache.QueryResultCache;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.persister.entity.Joinable;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+
+/**
+ * fetchResults()처럼 매번 count 쿼리를 실행하지 않는 페이지 조회.
+ *
+ * limit + 1건을 읽어서 다음 페이지가 있는지 판단하고, 마지막 페이지가 limit보다 짧으면 읽은 건수로 전체 건수를 정한다.
+ * 그 밖에는 TotalMode에 따라 count를 생략하거나, 추정하거나, 실행한다.
+ *
+ * count 쿼리는 원래 쿼리에서 order by를 빼고 fetch join을 일반 join으로 바꾼다. 별칭을 다른 곳에서 쓰지 않는
+ * 단일 값 연관의 left fetch join은 건수에 영향이 없으므로 join 자체를 뺀다.
+ * 추정 건수는 조건이 없는 단일 엔티티 조회면 H2 테이블 통계(ROW_COUNT_ESTIMATE)를 쓰고, 그 밖에는 count 결과를
+ * QueryResultCache에 담아 다음 페이지부터 재사용한다. 캐시는 대상 테이블에 쓰기가 커밋되면 무효화된다.
+ */
+@Component
+public class Pager {
+
+    private final QueryResultCache queryResultCache;
+    private final JdbcTemplate jdbcTemplate;
+
+    @PersistenceContext
+    EntityManager em;
+
+    public Pager(QueryResultCache queryResultCache, JdbcTemplate jdbcTemplate) {
+        this.queryResultCache = queryResultCache;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public <T> PageResult<T> fetch(JPAQuery<T> query, long offset, int limit) {
+        return fetch(query, offset, limit, TotalMode.NONE);
+    }
+
+    /**
+     * query에 지정한 offset, limit은 무시한다. query 자체는 바꾸지 않는다.
+     */
+    public <T> PageResult<T> fetch(JPAQuery<T> query, long offset, int limit, TotalMode mode) {
+        if (offset < 0 || limit <= 0) {
+            throw new IllegalArgumentException("offset must not be negative and limit must be positive");
+        }
+        List<T> rows = query.clone().offset(offset).limit(limit + 1L).fetch();
+        boolean hasNext = rows.size() > limit;
+        List<T> content = hasNext ? new ArrayList<>(rows.subList(0, limit)) : rows;
+        long seen = offset + content.size();
+
+        if (!hasNext && (offset == 0 || !content.isEmpty())) {
+            return new PageResult<>(content, offset, limit, false, seen, TotalMode.EXACT);
+        }
+        switch (mode) {
+            case EXACT:
+                return new PageResult<>(content, offset, limit, hasNext, count(query), TotalMode.EXACT);
+            case ESTIMATED:
+                // 추정값이 이미 읽은 건수보다 작으면 읽은 건수를 쓴다.
+                long lowerBound = hasNext ? seen + 1 : 0;
+                long estimate = Math.max(lowerBound, estimateCount(query));
+                return new PageResult<>(content, offset, limit, hasNext, estimate, TotalMode.ESTIMATED);
+            default:
+                return new PageResult<>(content, offset, limit, hasNext, -1, TotalMode.NONE);
+        }
+    }
+
+    /**
+     * order by와 fetch join을 뺀 count 쿼리로 정확한 건수를 센다.
+     */
+    public long count(JPAQuery<?> query) {
+        return count(countMetadata(query.getMetadata()));
+    }
+
+    public long estimateCount(JPAQuery<?> query) {
+        QueryMetadata metadata = countMetadata(query.getMetadata());
+        OptionalLong estimate = tableEstimate(metadata);
+        if (estimate.isPresent()) {
+            return estimate.getAsLong();
+        }
+
+        JPQLSerializer serializer = new JPQLSerializer(JPAProvider.getTemplates(em), em);
+        serializer.serialize(metadata, true, null);
+        String jpql = serializer.toString();
+        List<Object> parameters = new ArrayList<>();
+        serializer.getConstantToAllLabels().entrySet().stream()
+                .sorted(Map.Entry.comparingByValue(Comparator.comparingInt(String::length)
+                        .thenComparing(Comparator.naturalOrder())))
+                .forEach(entry -> parameters.add(entry.getKey()));
+        metadata.getParams().entrySet().stream()
+                .sorted(Comparator.comparing(entry -> entry.getKey().getName()))
+                .forEach(entry -> parameters.add(entry.getValue()));
+
+        QueryCacheKey key = new QueryCacheKey("count|" + jpql, parameters.toArray());
+        List<Long> cached = queryResultCache.get(key, querySpaces(jpql),
+                () -> Collections.singletonList(count(metadata)));
+        return cached.get(0);
+    }
+
+    /**
+     * count에 사용하는 쿼리. order by와 fetch join이 빠져 있다.
+     */
+    public JPAQuery<?> countQuery(JPAQuery<?> query) {
+        return new JPAQuery<>(em, countMetadata(query.getMetadata()));
+    }
+
+    private long count(QueryMetadata metadata) {
+        if (metadata.getGroupBy().isEmpty()) {
+            return new JPAQuery<>(em, metadata).fetchCount();
+        }
+        // group by가 있으면 count가 그룹마다 한 행씩 나오므로 그룹 키를 읽어서 센다.
+        Expression<?>[] keys = metadata.getGroupBy().toArray(new Expression<?>[0]);
+        return new JPAQuery<>(em, metadata).select(keys).fetch().size();
+    }
+
+    static QueryMetadata countMetadata(QueryMetadata source) {
+        List<JoinExpression> joins = source.getJoins();
+        Set<Path<?>> used = new HashSet<>();
+        PathCollector.collect(source.getWhere(), used);
+        PathCollector.collect(source.getHaving(), used);
+        for (Expression<?> groupBy : source.getGroupBy()) {
+            PathCollector.collect(groupBy, used);
+        }
+        if (source.isDistinct()) {
+            PathCollector.collect(source.getProjection(), used);
+        }
+        for (JoinExpression join : joins) {
+            PathCollector.collect(join.getCondition(), used);
+            PathCollector.collect(association(join), used);
+        }
+
+        QueryMetadata count = new DefaultQueryMetadata();
+        count.setValidate(false);
+        for (JoinExpression join : joins) {
+            if (removable(join, used)) {
+                continue;
+            }
+            count.addJoin(join.getType(), join.getTarget());
+            if (join.getCondition() != null) {
+                count.addJoinCondition(join.getCondition());
+            }
+            for (JoinFlag flag : join.getFlags()) {
+                if (!isFetch(flag)) {
+                    count.addJoinFlag(flag);
+                }
+            }
+        }
+        if (source.getWhere() != null) {
+            count.addWhere(source.getWhere());
+        }
+        for (Expression<?> groupBy : source.getGroupBy()) {
+            count.addGroupBy(groupBy);
+        }
+        if (source.getHaving() != null) {
+            count.addHaving(source.getHaving());
+        }
+        copyParams(source, count);
+        if (source.isDistinct()) {
+            count.setDistinct(true);
+            count.setProjection(source.getProjection());
+        }
+        return count;
+    }
+
+    /**
+     * 조건 없는 left fetch join이고 단일 값 연관이며 별칭을 다른 곳에서 쓰지 않으면 건수에 영향이 없다.
+     * 연관 경로 자체는 used에 들어 있으므로 별칭이 없는 join은 빼지 않는다.
+     */
+    private static boolean removable(JoinExpression join, Set<Path<?>> used) {
+        if (join.getType() != JoinType.LEFTJOIN || join.getCondition() != null || !isFetchJoin(join)) {
+            return false;
+        }
+        Expression<?> association = association(join);
+        Expression<?> alias = alias(join);
+        return association instanceof Path && !(association instanceof CollectionExpression)
+                && alias != association && !used.contains(alias);
+    }
+
+    private static boolean isFetchJoin(JoinExpression join) {
+        for (JoinFlag flag : join.getFlags()) {
+            if (isFetch(flag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isFetch(JoinFlag flag) {
+        return flag.equals(JPAQueryMixin.FETCH) || flag.equals(JPAQueryMixin.FETCH_ALL_PROPERTIES);
+    }
+
+    private static Expression<?> association(JoinExpression join) {
+        Expression<?> target = join.getTarget();
+        if (target instanceof Operation && ((Operation<?>) target).getOperator() == Ops.ALIAS) {
+            return ((Operation<?>) target).getArg(0);
+        }
+        return target;
+    }
+
+    private static Expression<?> alias(JoinExpression join) {
+        Expression<?> target = join.getTarget();
+        if (target instanceof Operation && ((Operation<?>) target).getOperator() == Ops.ALIAS) {
+            return ((Operation<?>) target).getArg(1);
+        }
+        return target;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void copyParams(QueryMetadata source, QueryMetadata target) {
+        for (Map.Entry<ParamExpression<?>, Object> entry : source.getParams().entrySet()) {
+            target.setParam((ParamExpression<Object>) entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * 조건 없는 단일 엔티티 조회는 H2가 관리하는 테이블 행 수 추정값을 쓴다.
+     */
+    private OptionalLong tableEstimate(QueryMetadata metadata) {
+        if (metadata.getWhere() != null || metadata.getJoins().size() != 1 || !metadata.getGroupBy().isEmpty()
+                || metadata.isDistinct()) {
+            return OptionalLong.empty();
+        }
+        EntityPersister persister;
+        try {
+            persister = em.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class).getMetamodel()
+                    .entityPersister(association(metadata.getJoins().get(0)).getType());
+        } catch (RuntimeException e) {
+            return OptionalLong.empty();
+        }
+        if (!(persister instanceof Joinable)) {
+            return OptionalLong.empty();
+        }
+        try {
+            List<Long> estimate = jdbcTemplate.queryForList("select row_count_estimate from information_schema.tables"
+                    + " where table_schema = schema() and table_name = upper(?)", Long.class,
+                    ((Joinable) persister).getTableName());
+            return estimate.isEmpty() ? OptionalLong.empty() : OptionalLong.of(estimate.get(0));
+        } catch (DataAccessException e) {
+            return OptionalLong.empty();
+        }
+    }
+
+    private Set<String> querySpaces(String jpql) {
+        SessionFactoryImplementor sessionFactory = em.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class);
+        Set<String> tables = new LinkedHashSet<>();
+        for (Object space : sessionFactory.getQueryPlanCache()
+                .getHQLQueryPlan(jpql, false, Collections.emptyMap())
+                .getQuerySpaces()) {
+            tables.add(space.toString());
+        }
+        return tables;
+    }
+
+    /**
+     * 식에서 사용하는 경로와 그 상위 경로를 모두 모은다.
+     */
+    private static final class PathCollector implements Visitor<Void, Set<Path<?>>> {
+
+        static final PathCollector INSTANCE = new PathCollector();
+
+        static void collect(Expression<?> expression, Set<Path<?>> paths) {
+            if (expression != null) {
+                expression.accept(INSTANCE, paths);
+            }
+        }
+
+        @Override
+        public Void visit(Constant<?> expr, Set<Path<?>> paths) {
+            return null;
+        }
+
+        @Override
+        public Void visit(FactoryExpression<?> expr, Set<Path<?>> paths) {
+            for (Expression<?> arg : expr.getArgs()) {
+                collect(arg, paths);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Operation<?> expr, Set<Path<?>> paths) {
+            for (Expression<?> arg : expr.getArgs()) {
+                collect(arg, paths);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(ParamExpression<?> expr, Set<Path<?>> paths) {
+            return null;
+        }
+
+        @Override
+        public Void visit(Path<?> expr, Set<Path<?>> paths) {
+            for (Path<?> path = expr; path != null; path = path.getMetadata().getParent()) {
+                paths.add(path);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(SubQueryExpression<?> expr, Set<Path<?>> paths) {
+            QueryMetadata metadata = expr.getMetadata();
+            collect(metadata.getProjection(), paths);
+            collect(metadata.getWhere(), paths);
+            collect(metadata.getHaving(), paths);
+            for (Expression<?> groupBy : metadata.getGroupBy()) {
+                collect(groupBy, paths);
+            }
+            for (OrderSpecifier<?> orderBy : metadata.getOrderBy()) {
+                collect(orderBy.getTarget(), paths);
+            }
+            for (JoinExpression join : metadata.getJoins()) {
+                collect(join.getTarget(), paths);
+                collect(join.getCondition(), paths);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(TemplateExpression<?> expr, Set<Path<?>> paths) {
+            for (Object arg : expr.getArgs()) {
+                if (arg instanceof Expression) {
+                    collect((Expression<?>) arg, paths);
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package jpabook.example.paging;
+
+/**
+ * 페이지 조회에서 전체 건수를 어떻게 얻을지 정한다. 결과에서는 전체 건수를 어떻게 얻었는지를 나타낸다.
+ *
+ * NONE이면 count 쿼리를 실행하지 않고 다음 페이지가 있는지만 알려준다.
+ * ESTIMATED면 캐시된 건수나 테이블 통계를 사용하고, 없을 때만 count 쿼리를 실행해 캐시한다.
+ * EXACT면 필요할 때 count 쿼리를 실행한다.
+ * 마지막 페이지가 limit보다 짧으면 어느 모드든 count 없이 정확한 전체 건수를 알 수 있다.
+ */
+public enum TotalMode {
+    NONE,
+    ESTIMATED,
+    EXACT
+}
@@ -0,0 +1,56 @@
+package jpabook.example.pool;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * 빌려 간 커넥션 하나. 반납되기 전까지 ConnectionPoolMetrics가 들고 있다가 누수 검사에 사용한다.
+ */
+@Getter
+public class ConnectionLease {
+
+    private final Thread thread;
+    private final String threadName;
+    private final Instant acquiredAt;
+    private final long acquiredNanos;
+    private final StackTraceElement[] stackTrace;
+    private volatile boolean reported;
+
+    ConnectionLease(Thread thread, Instant acquiredAt, long acquiredNanos, StackTraceElement[] stackTrace) {
+        this.thread = thread;
+        this.threadName = thread.getName();
+        this.acquiredAt = acquiredAt;
+        this.acquiredNanos = acquiredNanos;
+        this.stackTrace = stackTrace;
+    }
+
+    public Duration getHeld() {
+        return Duration.ofNanos(System.nanoTime() - acquiredNanos);
+    }
+
+    /**
+     * 커넥션을 얻은 위치를 예외로 만든다. 로그에 스택 트레이스를 남길 때 사용한다.
+     * 얻을 때 스택 트레이스를 기록하지 않았으면 얻은 위치 대신 들고 있는 스레드의 지금 스택 트레이스를 쓰고,
+     * 메시지에도 그렇게 밝힌다.
+     */
+    public Throwable toThrowable() {
+        String held = " at " + acquiredAt + ", held for " + getHeld().toMillis() + "ms";
+        if (stackTrace.length > 0) {
+            Throwable acquiredBy = new Throwable("Connection acquired by " + threadName + held);
+            acquiredBy.setStackTrace(stackTrace);
+            return acquiredBy;
+        }
+        Throwable heldBy = new Throwable("Connection held by " + threadName + " since acquired" + held
+                + "; acquiring stack trace was not recorded, this is the holding thread's current stack");
+        heldBy.setStackTrace(thread.getStackTrace());
+        return heldBy;
+    }
+
+    boolean markReported() {
+        boolean first = !reported;
+        reported = true;
+        return first;
+    }
+}
@@ -0,0 +1,209 @@
+package jpabook.example.pool;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 풀에서 커넥션을 얻는 시간과 들고 있는 시간을 기록하고, 반납되지 않은 커넥션을 추적한다.
+ *
+ * instrument()가 돌려준 DataSource를 거쳐 얻은 커넥션만 측정한다. 반납 시점은 Connection.close()이다.
+ * 누수 경고에 쓸 획득 위치는 StackWalker로 호출자 쪽 stackTraceDepth개 프레임만 기록한다. 0이면 기록하지 않는다.
+ */
+public class ConnectionPoolMetrics {
+
+    private static final StackTraceElement[] NO_STACK_TRACE = new StackTraceElement[0];
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
+    private final int stackTraceDepth;
+    private final LatencyHistogram acquireTime = new LatencyHistogram();
+    private final LatencyHistogram holdTime = new LatencyHistogram();
+    private final Map<ConnectionLease, Boolean> leases = new ConcurrentHashMap<>();
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder acquireFailures = new LongAdder();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicInteger peakInUse = new AtomicInteger();
+    private volatile long windowStart = System.nanoTime();
+    private volatile DataSource pool;
+
+    public ConnectionPoolMetrics(int stackTraceDepth) {
+        this.stackTraceDepth = stackTraceDepth;
+    }
+
+    public DataSource instrument(DataSource dataSource) {
+        this.pool = dataSource;
+        return new InstrumentedDataSource(dataSource);
+    }
+
+    public PoolSnapshot snapshot() {
+        int maximumPoolSize = -1;
+        int active = -1;
+        int idle = -1;
+        int pending = -1;
+        DataSource dataSource = pool;
+        if (dataSource instanceof HikariDataSource) {
+            HikariDataSource hikari = (HikariDataSource) dataSource;
+            maximumPoolSize = hikari.getMaximumPoolSize();
+            HikariPoolMXBean mxBean = hikari.getHikariPoolMXBean();
+            if (mxBean != null) {
+                active = mxBean.getActiveConnections();
+                idle = mxBean.getIdleConnections();
+                pending = mxBean.getThreadsAwaitingConnection();
+            }
+        }
+        return new PoolSnapshot(maximumPoolSize, active, idle, pending, inUse.get(), peakInUse.get(),
+                acquired.sum(), acquireFailures.sum(), Duration.ofNanos(System.nanoTime() - windowStart),
+                acquireTime.summarize(), holdTime.summarize());
+    }
+
+    public LatencyHistogram getAcquireTime() {
+        return acquireTime;
+    }
+
+    public LatencyHistogram getHoldTime() {
+        return holdTime;
+    }
+
+    /**
+     * threshold보다 오래 반납되지 않은 커넥션. 오래된 순서로 정렬한다.
+     */
+    public List<ConnectionLease> findLeaks(Duration threshold) {
+        long now = System.nanoTime();
+        List<ConnectionLease> leaks = new ArrayList<>();
+        for (ConnectionLease lease : leases.keySet()) {
+            if (now - lease.getAcquiredNanos() >= threshold.toNanos()) {
+                leaks.add(lease);
+            }
+        }
+        leaks.sort(Comparator.comparingLong(ConnectionLease::getAcquiredNanos));
+        return leaks;
+    }
+
+    /**
+     * 히스토그램과 카운터를 비우고 측정 구간을 다시 시작한다. 사용 중인 커넥션은 계속 추적한다.
+     */
+    public void reset() {
+        acquireTime.reset();
+        holdTime.reset();
+        acquired.reset();
+        acquireFailures.reset();
+        peakInUse.set(inUse.get());
+        windowStart = System.nanoTime();
+    }
+
+    private Connection acquire(DataSource target, String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        Connection connection;
+        try {
+            connection = username == null ? target.getConnection() : target.getConnection(username, password);
+        } catch (SQLException | RuntimeException e) {
+            acquireFailures.increment();
+            throw e;
+        }
+        long acquiredNanos = System.nanoTime();
+        acquireTime.record(acquiredNanos - start);
+        acquired.increment();
+        peakInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+
+        Thread thread = Thread.currentThread();
+        ConnectionLease lease = new ConnectionLease(thread, Instant.now(), acquiredNanos,
+                stackTraceDepth > 0 ? captureStackTrace() : NO_STACK_TRACE);
+        leases.put(lease, Boolean.TRUE);
+        return (Connection) Proxy.newProxyInstance(ConnectionPoolMetrics.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new LeaseHandler(connection, lease));
+    }
+
+    /**
+     * 이 클래스의 프레임을 건너뛰고 호출자 쪽 프레임만 정해진 개수까지 기록한다.
+     * Thread.getStackTrace()와 달리 전체 스택을 만들지 않는다.
+     */
+    private StackTraceElement[] captureStackTrace() {
+        String self = ConnectionPoolMetrics.class.getName();
+        return STACK_WALKER.walk(frames -> frames
+                .dropWhile(frame -> frame.getClassName().startsWith(self))
+                .limit(stackTraceDepth)
+                .map(StackWalker.StackFrame::toStackTraceElement)
+                .toArray(StackTraceElement[]::new));
+    }
+
+    private void release(ConnectionLease lease) {
+        if (leases.remove(lease) != null) {
+            holdTime.record(System.nanoTime() - lease.getAcquiredNanos());
+            inUse.decrementAndGet();
+        }
+    }
+
+    private class InstrumentedDataSource extends DelegatingDataSource {
+
+        InstrumentedDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return acquire(obtainTargetDataSource(), null, null);
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return acquire(obtainTargetDataSource(), username, password);
+        }
+    }
+
+    private class LeaseHandler implements InvocationHandler {
+
+        private final Connection target;
+        private final ConnectionLease lease;
+
+        LeaseHandler(Connection target, ConnectionLease lease) {
+            this.target = target;
+            this.lease = lease;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    release(lease);
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(proxy)) {
+                        return proxy;
+                    }
+                    break;
+                case "isWrapperFor":
+                    if (((Class<?>) args[0]).isInstance(proxy)) {
+                        return true;
+                    }
+                    break;
+                default:
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package jpabook.example.pool;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 마이크로초 단위 log2 버킷 히스토그램. 버킷 i는 [2^(i-1), 2^i) us 구간이다.
+ * 기록은 락 없이 카운터만 올리므로 커넥션을 얻고 반납할 때마다 호출해도 된다.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1_000);
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * 해당 백분위가 속한 버킷의 상한. 최대값보다 크게 나오지 않도록 자른다.
+     */
+    public Duration percentile(double percentile) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be in (0, 100]: " + percentile);
+        }
+        long total = count.sum();
+        if (total == 0) {
+            return Duration.ZERO;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                long upperMicros = i == 0 ? 1 : 1L << i;
+                return Duration.ofNanos(Math.min(upperMicros * 1_000, maxNanos.get()));
+            }
+        }
+        return getMax();
+    }
+
+    public Duration getMean() {
+        long total = count.sum();
+        return total == 0 ? Duration.ZERO : Duration.ofNanos(totalNanos.sum() / total);
+    }
+
+    public Duration getMax() {
+        return Duration.ofNanos(maxNanos.get());
+    }
+
+    public long[] getBuckets() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = buckets.get(i);
+        }
+        return copy;
+    }
+
+    public LatencySummary summarize() {
+        return new LatencySummary(getCount(), getMean(), percentile(50), percentile(95), percentile(99), getMax());
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+    }
+}
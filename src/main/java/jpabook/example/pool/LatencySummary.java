@@ -0,0 +1,27 @@
+package jpabook.example.pool;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Duration;
+
+@Getter
+@ToString
+public class LatencySummary {
+
+    private final long count;
+    private final Duration mean;
+    private final Duration p50;
+    private final Duration p95;
+    private final Duration p99;
+    private final Duration max;
+
+    public LatencySummary(long count, Duration mean, Duration p50, Duration p95, Duration p99, Duration max) {
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p95 = p95;
+        this.p99 = p99;
+        this.max = max;
+    }
+}
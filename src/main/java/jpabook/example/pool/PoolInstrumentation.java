@@ -0,0 +1,124 @@
+package jpabook.example.pool;
+
+import com.github.gavlyukovskiy.boot.jdbc.decorator.DataSourceDecorator;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 애플리케이션 DataSource를 ConnectionPoolMetrics로 감싼다.
+ *
+ * p6spy(order 30)보다 먼저 적용되어 풀 바로 바깥에 위치하므로 획득 시간에는 풀 대기 시간만 들어간다.
+ * DataSource가 여럿이면 풀마다 따로 측정한다. 풀 이름은 Hikari 풀 이름이고, 없거나 겹치면 빈 이름이다.
+ * leak-threshold보다 오래 반납되지 않은 커넥션은 한 번 경고하고, 얻은 위치의 스택 트레이스를 남긴다.
+ * 획득할 때마다 기록하므로 stack-trace-depth개 프레임으로 제한한다. 0으로 끄면 경고에는 커넥션을 들고 있는
+ * 스레드의 지금 스택 트레이스가 그렇다고 표시되어 남는다.
+ */
+@Slf4j
+@Component
+public class PoolInstrumentation implements DataSourceDecorator, Ordered {
+
+    private final int stackTraceDepth;
+    private final Duration leakThreshold;
+    private final Map<String, ConnectionPoolMetrics> metrics = new ConcurrentHashMap<>();
+    private volatile String defaultPool;
+    private final ScheduledExecutorService leakDetector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "connection-leak-detector");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public PoolInstrumentation(@Value("${jpabook.pool.leak-threshold:30s}") Duration leakThreshold,
+                               @Value("${jpabook.pool.stack-trace-depth:16}") int stackTraceDepth) {
+        this.stackTraceDepth = stackTraceDepth;
+        this.leakThreshold = leakThreshold;
+        long period = Math.max(1, leakThreshold.toMillis() / 2);
+        leakDetector.scheduleWithFixedDelay(this::reportLeaks, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public DataSource decorate(String beanName, DataSource dataSource) {
+        String poolName = poolName(beanName, dataSource);
+        ConnectionPoolMetrics poolMetrics = new ConnectionPoolMetrics(stackTraceDepth);
+        if (metrics.putIfAbsent(poolName, poolMetrics) != null) {
+            // 같은 이름의 풀이 이미 있으면 빈 이름으로 구분한다.
+            poolName = beanName;
+            metrics.put(poolName, poolMetrics);
+        }
+        if (defaultPool == null) {
+            defaultPool = poolName;
+        }
+        return poolMetrics.instrument(dataSource);
+    }
+
+    @Override
+    public int getOrder() {
+        return 10;
+    }
+
+    public Set<String> getPoolNames() {
+        return Set.copyOf(metrics.keySet());
+    }
+
+    /**
+     * 처음 감싼 DataSource(애플리케이션 기본 DataSource)의 측정값
+     */
+    public ConnectionPoolMetrics getMetrics() {
+        return getMetrics(defaultPool);
+    }
+
+    public ConnectionPoolMetrics getMetrics(String poolName) {
+        ConnectionPoolMetrics poolMetrics = poolName == null ? null : metrics.get(poolName);
+        if (poolMetrics == null) {
+            throw new IllegalArgumentException("unknown pool: " + poolName);
+        }
+        return poolMetrics;
+    }
+
+    public PoolSnapshot snapshot() {
+        return getMetrics().snapshot();
+    }
+
+    public PoolSnapshot snapshot(String poolName) {
+        return getMetrics(poolName).snapshot();
+    }
+
+    public List<ConnectionLease> findLeaks() {
+        return getMetrics().findLeaks(leakThreshold);
+    }
+
+    void reportLeaks() {
+        metrics.forEach((poolName, poolMetrics) -> {
+            for (ConnectionLease lease : poolMetrics.findLeaks(leakThreshold)) {
+                if (lease.markReported()) {
+                    log.warn("connection leak suspected in pool {}", poolName, lease.toThrowable());
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        leakDetector.shutdownNow();
+    }
+
+    private static String poolName(String beanName, DataSource dataSource) {
+        if (dataSource instanceof HikariDataSource && ((HikariDataSource) dataSource).getPoolName() != null) {
+            return ((HikariDataSource) dataSource).getPoolName();
+        }
+        return beanName;
+    }
+}
@@ -0,0 +1,73 @@
+package jpabook.example.pool;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 관측한 부하로 풀 크기를 추천한다.
+ *
+ * 평균 사용 중 커넥션 수는 리틀의 법칙(L = λW)으로 구한다. λ는 초당 커넥션 획득 수, W는 평균 보유 시간이다.
+ * 여기에 순간 부하를 위한 여유분(headroom)을 곱하고, 관측된 최대 동시 사용 수보다 작게 추천하지 않는다.
+ * 상한은 DB 서버 코어 수 * 2 + 1이다. 그보다 큰 풀은 처리량을 늘리지 못하고 문맥 교환만 늘린다.
+ */
+@Component
+public class PoolSizeAdvisor {
+
+    private final PoolInstrumentation instrumentation;
+    private final double headroom;
+    private final int databaseCores;
+    private final Duration saturationWait;
+
+    public PoolSizeAdvisor(PoolInstrumentation instrumentation,
+                           @Value("${jpabook.pool.advisor.headroom:0.25}") double headroom,
+                           @Value("${jpabook.pool.advisor.database-cores:0}") int databaseCores,
+                           @Value("${jpabook.pool.advisor.saturation-wait:1ms}") Duration saturationWait) {
+        this.instrumentation = instrumentation;
+        this.headroom = headroom;
+        this.databaseCores = databaseCores > 0 ? databaseCores : Runtime.getRuntime().availableProcessors();
+        this.saturationWait = saturationWait;
+    }
+
+    public PoolSizeRecommendation recommend() {
+        return recommend(instrumentation.snapshot());
+    }
+
+    public PoolSizeRecommendation recommend(PoolSnapshot snapshot) {
+        return recommend(snapshot, headroom, databaseCores, saturationWait);
+    }
+
+    public static PoolSizeRecommendation recommend(PoolSnapshot snapshot, double headroom, int databaseCores,
+                                                   Duration saturationWait) {
+        int current = snapshot.getMaximumPoolSize();
+        double rate = snapshot.getAcquireRate();
+        Duration meanHold = snapshot.getHoldTime().getMean();
+        double averageInUse = rate * meanHold.toNanos() / 1_000_000_000.0;
+        int peak = snapshot.getPeakInUse();
+        int ceiling = databaseCores * 2 + 1;
+
+        boolean saturated = current > 0 && peak >= current
+                && (snapshot.getPending() > 0
+                || snapshot.getAcquireFailures() > 0
+                || snapshot.getAcquireTime().getP95().compareTo(saturationWait) > 0);
+
+        int recommended = (int) Math.ceil(averageInUse * (1 + headroom));
+        String reason = String.format("L = %.1f/s * %.2fms = %.2f connections, +%.0f%% headroom",
+                rate, meanHold.toNanos() / 1_000_000.0, averageInUse, headroom * 100);
+        if (saturated && recommended <= current) {
+            recommended = current + Math.max(1, (int) Math.ceil(current * headroom));
+            reason = "pool saturated (acquire p95 " + snapshot.getAcquireTime().getP95().toMillis()
+                    + "ms, pending " + snapshot.getPending() + "), grow by headroom";
+        } else if (recommended < peak && !saturated) {
+            recommended = peak;
+            reason += ", raised to observed peak " + peak;
+        }
+        if (recommended > ceiling) {
+            recommended = ceiling;
+            reason += ", capped at database cores * 2 + 1 = " + ceiling;
+        }
+        recommended = Math.max(1, recommended);
+        return new PoolSizeRecommendation(current, recommended, rate, meanHold, averageInUse, peak, saturated, reason);
+    }
+}
@@ -0,0 +1,32 @@
+package jpabook.example.pool;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Duration;
+
+@Getter
+@ToString
+public class PoolSizeRecommendation {
+
+    private final int currentSize;
+    private final int recommendedSize;
+    private final double acquireRate;
+    private final Duration meanHoldTime;
+    private final double averageInUse;
+    private final int peakInUse;
+    private final boolean saturated;
+    private final String reason;
+
+    public PoolSizeRecommendation(int currentSize, int recommendedSize, double acquireRate, Duration meanHoldTime,
+                                  double averageInUse, int peakInUse, boolean saturated, String reason) {
+        this.currentSize = currentSize;
+        this.recommendedSize = recommendedSize;
+        this.acquireRate = acquireRate;
+        this.meanHoldTime = meanHoldTime;
+        this.averageInUse = averageInUse;
+        this.peakInUse = peakInUse;
+        this.saturated = saturated;
+        this.reason = reason;
+    }
+}
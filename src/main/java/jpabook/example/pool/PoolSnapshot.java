@@ -0,0 +1,50 @@
+package jpabook.example.pool;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Duration;
+
+/**
+ * 특정 시점의 풀 상태. active/idle/pending은 Hikari MXBean 값이고, 풀이 아직 시작되지 않았으면 -1이다.
+ */
+@Getter
+@ToString
+public class PoolSnapshot {
+
+    private final int maximumPoolSize;
+    private final int active;
+    private final int idle;
+    private final int pending;
+    private final int inUse;
+    private final int peakInUse;
+    private final long acquired;
+    private final long acquireFailures;
+    private final Duration window;
+    private final LatencySummary acquireTime;
+    private final LatencySummary holdTime;
+
+    public PoolSnapshot(int maximumPoolSize, int active, int idle, int pending, int inUse, int peakInUse,
+                        long acquired, long acquireFailures, Duration window,
+                        LatencySummary acquireTime, LatencySummary holdTime) {
+        this.maximumPoolSize = maximumPoolSize;
+        this.active = active;
+        this.idle = idle;
+        this.pending = pending;
+        this.inUse = inUse;
+        this.peakInUse = peakInUse;
+        this.acquired = acquired;
+        this.acquireFailures = acquireFailures;
+        this.window = window;
+        this.acquireTime = acquireTime;
+        this.holdTime = holdTime;
+    }
+
+    /**
+     * 초당 커넥션 획득 수.
+     */
+    public double getAcquireRate() {
+        long nanos = window.toNanos();
+        return nanos == 0 ? 0 : acquired * 1_000_000_000.0 / nanos;
+    }
+}
@@ -0,0 +1,67 @@
+package jpabook.example.prefetch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 한 작업 단위(요청) 동안 ProxyPrefetcher를 켜 둔다. 같은 스레드에서 열고 닫아야 한다.
+ * 이미 열린 범위 안에서 다시 열면 자기 배치 크기와 집계를 가진 안쪽 범위가 새로 열리고,
+ * 안쪽 범위를 닫으면 바깥 범위가 다시 사용된다. 안쪽 범위의 집계는 바깥 범위에 더해지지 않는다.
+ */
+public class PrefetchScope implements AutoCloseable {
+
+    private final PrefetchScope outer;
+    private final int maxBatchSize;
+    private final Map<String, Integer> queries = new LinkedHashMap<>();
+    private final Map<String, Integer> prefetched = new LinkedHashMap<>();
+    private boolean prefetching;
+
+    PrefetchScope(PrefetchScope outer, int maxBatchSize) {
+        this.outer = outer;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * 엔티티 이름별 미리 읽기 쿼리 수
+     */
+    public Map<String, Integer> getQueries() {
+        return queries;
+    }
+
+    /**
+     * 엔티티 이름별 미리 읽은 엔티티 수
+     */
+    public Map<String, Integer> getPrefetched() {
+        return prefetched;
+    }
+
+    public int getQueryCount() {
+        return queries.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    @Override
+    public void close() {
+        ProxyPrefetcher.close(this, outer);
+    }
+
+    boolean enter() {
+        if (prefetching) {
+            return false;
+        }
+        prefetching = true;
+        return true;
+    }
+
+    void exit() {
+        prefetching = false;
+    }
+
+    void record(String entityName, int count) {
+        queries.merge(entityName, 1, Integer::sum);
+        prefetched.merge(entityName, count, Integer::sum);
+    }
+}
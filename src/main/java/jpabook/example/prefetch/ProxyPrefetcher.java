@@ -0,0 +1,116 @@
+package jpabook.example.prefetch;
+
+import jpabook.example.config.HibernateListenerRegistrar;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.EntityMode;
+import org.hibernate.FlushMode;
+import org.hibernate.engine.spi.BatchFetchQueue;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostLoadEvent;
+import org.hibernate.event.spi.PostLoadEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * 범위가 열려 있는 동안 어떤 엔티티가 로딩되면, 영속성 컨텍스트에 남아 있는 같은 타입의 초기화되지 않은 프록시를
+ * IN 쿼리로 한꺼번에 읽는다. order.getMember().getTeam()처럼 객체 그래프를 따라갈 때
+ * 쿼리 수가 엔티티 수가 아니라 그래프 깊이에 비례한다.
+ *
+ * 초기화할 아이디는 BatchFetchQueue에서 가져오므로 배치 로딩 대상(default_batch_fetch_size > 1)인 엔티티만 해당한다.
+ * 바이트코드 향상 프록시는 로드 이벤트 없이 로더를 직접 호출하므로, 두 프록시 모두 지나가는 POST_LOAD에서 실행한다.
+ * 따라서 처음 건드린 프록시는 기존 배치 크기만큼 읽히고, 나머지를 max-batch-size 단위로 읽는다.
+ * 미리 읽기 쿼리는 flush하지 않는다.
+ */
+@Slf4j
+@Component
+public class ProxyPrefetcher implements HibernateListenerRegistrar, PostLoadEventListener {
+
+    private static final ThreadLocal<PrefetchScope> CURRENT = new ThreadLocal<>();
+
+    private final int maxBatchSize;
+
+    public ProxyPrefetcher(@Value("${jpabook.prefetch.max-batch-size:500}") int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @Override
+    public void register(EventListenerRegistry registry) {
+        registry.appendListeners(EventType.POST_LOAD, this);
+    }
+
+    public PrefetchScope open() {
+        return open(maxBatchSize);
+    }
+
+    public PrefetchScope open(int maxBatchSize) {
+        PrefetchScope scope = new PrefetchScope(CURRENT.get(), maxBatchSize);
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    public <T> T execute(Supplier<T> work) {
+        try (PrefetchScope ignored = open()) {
+            return work.get();
+        }
+    }
+
+    static void close(PrefetchScope scope, PrefetchScope outer) {
+        if (CURRENT.get() != scope) {
+            throw new IllegalStateException("prefetch scope closed out of order or on another thread");
+        }
+        if (outer == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(outer);
+        }
+    }
+
+    @Override
+    public void onPostLoad(PostLoadEvent event) {
+        PrefetchScope scope = CURRENT.get();
+        EntityPersister persister = event.getPersister();
+        if (scope == null || !persister.isBatchLoadable() || !scope.enter()) {
+            return;
+        }
+        try {
+            prefetch(event.getSession(), persister, event.getId(), scope);
+        } finally {
+            scope.exit();
+        }
+    }
+
+    private void prefetch(EventSource session, EntityPersister persister, Serializable loadedId, PrefetchScope scope) {
+        BatchFetchQueue queue = session.getPersistenceContextInternal().getBatchFetchQueue();
+        String hql = "select e from " + persister.getEntityName() + " e where e."
+                + persister.getIdentifierPropertyName() + " in (:ids)";
+        Set<Serializable> requested = new HashSet<>();
+        while (true) {
+            Serializable[] batch = queue.getEntityBatch(persister, loadedId, scope.getMaxBatchSize() + 1,
+                    EntityMode.POJO);
+            List<Serializable> ids = new ArrayList<>();
+            for (int i = 1; i < batch.length; i++) {
+                if (batch[i] != null && requested.add(batch[i])) {
+                    ids.add(batch[i]);
+                }
+            }
+            if (ids.isEmpty()) {
+                return;
+            }
+            session.createQuery(hql)
+                    .setParameterList("ids", ids)
+                    .setHibernateFlushMode(FlushMode.MANUAL)
+                    .list();
+            scope.record(persister.getEntityName(), ids.size());
+            log.debug("prefetched {} {} proxies", ids.size(), persister.getEntityName());
+        }
+    }
+}
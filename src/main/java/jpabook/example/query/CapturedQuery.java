@@ -0,0 +1,41 @@
+package jpabook.example.query;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+@Getter
+public class CapturedQuery {
+
+    private final String fingerprint;
+    private volatile String sampleSql;
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    public CapturedQuery(String fingerprint, String sampleSql) {
+        this.fingerprint = fingerprint;
+        this.sampleSql = sampleSql;
+    }
+
+    void record(String sqlWithValues, long elapsedNanos) {
+        sampleSql = sqlWithValues;
+        executions.increment();
+        totalNanos.add(elapsedNanos);
+    }
+
+    public long getExecutionCount() {
+        return executions.sum();
+    }
+
+    public long getAverageNanos() {
+        long count = executions.sum();
+        return count == 0 ? 0 : totalNanos.sum() / count;
+    }
+
+    @Override
+    public String toString() {
+        return "CapturedQuery(fingerprint=" + fingerprint
+                + ", executions=" + getExecutionCount()
+                + ", averageNanos=" + getAverageNanos() + ")";
+    }
+}
@@ -0,0 +1,87 @@
+package jpabook.example.query;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 쿼리 계획 캐시가 얼마나 자주 새 쿼리를 만나는지 본다.
+ *
+ * 하이버네이트 통계에서 계획 캐시 적중, 실패 수를 읽고, p6spy로 실행한 SQL 문자열을 지문으로 바꾸지 않고 그대로 센다.
+ * IN 목록 길이마다 SQL이 달라지면 서로 다른 문장 수가 실행 수를 따라 늘어난다.
+ * 계획 캐시 수치는 하이버네이트 통계가 켜져 있어야 모이므로 statistics가 true이면 generate_statistics를 켠다.
+ * 통계는 세션 팩토리 전체에 켜지고 세션마다 비용이 들어서 기본값은 false다. 꺼져 있으면 적중, 실패 수는 0이다.
+ * 통계를 켜면 하이버네이트가 세션을 닫을 때마다 INFO로 남기는 Session Metrics 로그는 따로 지정하지 않은 한 끈다.
+ */
+@Component
+public class PlanCacheMetrics extends SimpleJdbcEventListener implements HibernatePropertiesCustomizer {
+
+    private static final int MAX_STATEMENTS = 10_000;
+
+    // p6spy 리스너는 DataSource보다 먼저 만들어지므로 EntityManagerFactory는 나중에 꺼낸다.
+    private final ObjectProvider<EntityManagerFactory> entityManagerFactory;
+    private final boolean statisticsEnabled;
+
+    private final Set<String> statements = ConcurrentHashMap.newKeySet();
+    private final LongAdder executions = new LongAdder();
+    private volatile long planCacheHitsAtReset;
+    private volatile long planCacheMissesAtReset;
+
+    public PlanCacheMetrics(ObjectProvider<EntityManagerFactory> entityManagerFactory,
+                            @Value("${jpabook.plan-cache.statistics:false}") boolean statisticsEnabled) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.statisticsEnabled = statisticsEnabled;
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        if (statisticsEnabled) {
+            hibernateProperties.put(AvailableSettings.GENERATE_STATISTICS, true);
+            hibernateProperties.putIfAbsent(AvailableSettings.LOG_SESSION_METRICS, false);
+        }
+    }
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        String sql = statementInformation.getSql();
+        if (sql == null) {
+            return;
+        }
+        executions.increment();
+        if (statements.size() < MAX_STATEMENTS) {
+            statements.add(sql);
+        }
+    }
+
+    public PlanCacheStats getStats() {
+        Statistics statistics = statistics();
+        return new PlanCacheStats(statistics.getQueryPlanCacheHitCount() - planCacheHitsAtReset,
+                statistics.getQueryPlanCacheMissCount() - planCacheMissesAtReset,
+                executions.sum(), statements.size());
+    }
+
+    public synchronized void reset() {
+        Statistics statistics = statistics();
+        planCacheHitsAtReset = statistics.getQueryPlanCacheHitCount();
+        planCacheMissesAtReset = statistics.getQueryPlanCacheMissCount();
+        executions.reset();
+        statements.clear();
+    }
+
+    private Statistics statistics() {
+        return entityManagerFactory.getObject().unwrap(SessionFactory.class).getStatistics();
+    }
+}
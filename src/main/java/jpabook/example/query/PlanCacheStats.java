@@ -0,0 +1,27 @@
+package jpabook.example.query;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+@Getter
+@ToString
+@RequiredArgsConstructor
+public class PlanCacheStats {
+
+    /**
+     * 하이버네이트 쿼리 계획 캐시 적중, 실패 수
+     */
+    private final long planCacheHits;
+    private final long planCacheMisses;
+    /**
+     * 실행한 문장 수와 그중 서로 다른 SQL 문자열 수. DB와 드라이버의 문장 캐시에 들어가는 키의 수다.
+     */
+    private final long executions;
+    private final int distinctStatements;
+
+    public double getPlanCacheHitRate() {
+        long requests = planCacheHits + planCacheMisses;
+        return requests == 0 ? 0 : (double) planCacheHits / requests;
+    }
+}
@@ -0,0 +1,66 @@
+package jpabook.example.query;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * p6spy가 가로챈 SELECT 문을 지문 단위로 모은다.
+ * 지문마다 실행 횟수, 평균 실행 시간, 실제 값이 바인딩된 마지막 SQL을 보관한다.
+ */
+@Component
+public class QueryCapture extends SimpleJdbcEventListener {
+
+    private static final int MAX_FINGERPRINTS = 1_000;
+
+    private final ConcurrentMap<String, CapturedQuery> queries = new ConcurrentHashMap<>();
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        String sql = statementInformation.getSql();
+        if (e != null || sql == null || !sql.trim().toLowerCase(Locale.ROOT).startsWith("select")) {
+            return;
+        }
+
+        String fingerprint = SqlFingerprint.of(sql);
+        CapturedQuery captured = queries.get(fingerprint);
+        if (captured == null) {
+            if (queries.size() >= MAX_FINGERPRINTS) {
+                return;
+            }
+            captured = queries.computeIfAbsent(fingerprint, key -> new CapturedQuery(key, sql));
+        }
+        captured.record(statementInformation.getSqlWithValues(), timeElapsedNanos);
+    }
+
+    public Collection<CapturedQuery> getQueries() {
+        return new ArrayList<>(queries.values());
+    }
+
+    /**
+     * 모든 지문의 실행 횟수 합. clear() 뒤 실행한 SELECT 문 수를 셀 때 쓴다.
+     */
+    public long getExecutionCount() {
+        return queries.values().stream().mapToLong(CapturedQuery::getExecutionCount).sum();
+    }
+
+    public List<CapturedQuery> getSlowest(int limit) {
+        List<CapturedQuery> result = new ArrayList<>(queries.values());
+        result.sort((a, b) -> Long.compare(
+                b.getAverageNanos() * b.getExecutionCount(),
+                a.getAverageNanos() * a.getExecutionCount()));
+        return result.size() > limit ? result.subList(0, limit) : result;
+    }
+
+    public void clear() {
+        queries.clear();
+    }
+}
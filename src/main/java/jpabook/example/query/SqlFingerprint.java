@@ -0,0 +1,104 @@
+package jpabook.example.query;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 리터럴과 공백을 정규화한 SQL 지문
+ * 파라미터 값만 다른 쿼리는 같은 지문을 가진다.
+ */
+public final class SqlFingerprint {
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern TOKEN = Pattern.compile("[a-z_][a-z0-9_.]*|\\S");
+    private static final Set<String> TABLE_KEYWORDS = Set.of("from", "join", "update", "into");
+    private static final Set<String> CLAUSE_KEYWORDS = Set.of(
+            "where", "group", "order", "having", "union", "intersect", "except", "minus", "limit", "offset",
+            "fetch", "for", "join", "inner", "left", "right", "full", "cross", "natural", "outer", "on",
+            "using", "set", "values", "select", "as");
+
+    private SqlFingerprint() {
+    }
+
+    public static String of(String sql) {
+        String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+        normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+        normalized = IN_LIST.matcher(normalized).replaceAll("(?)");
+        normalized = WHITESPACE.matcher(normalized).replaceAll(" ");
+        return normalized.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * from, join, update, into 뒤에 오는 테이블 이름
+     * from a, b 처럼 쉼표로 나열한 테이블과 서브쿼리 안의 테이블도 포함한다.
+     */
+    public static Set<String> tables(String sql) {
+        List<String> tokens = new ArrayList<>();
+        Matcher matcher = TOKEN.matcher(of(sql));
+        while (matcher.find()) {
+            tokens.add(matcher.group());
+        }
+
+        Set<String> tables = new LinkedHashSet<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            if (TABLE_KEYWORDS.contains(tokens.get(i))) {
+                readTableList(tokens, i + 1, "from".equals(tokens.get(i)), tables);
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * 테이블 이름과 별칭을 읽고, from 절이면 쉼표 뒤의 다음 항목을 이어서 읽는다.
+     * 괄호로 감싼 서브쿼리는 건너뛴다. 그 안의 from은 tables()의 반복에서 따로 읽힌다.
+     */
+    private static void readTableList(List<String> tokens, int position, boolean commaSeparated, Set<String> tables) {
+        int i = position;
+        while (i < tokens.size()) {
+            String token = tokens.get(i);
+            if ("(".equals(token)) {
+                i = skipParentheses(tokens, i);
+            } else if (isIdentifier(token)) {
+                tables.add(token.substring(token.lastIndexOf('.') + 1));
+                i++;
+            } else {
+                return;
+            }
+            if (i < tokens.size() && "as".equals(tokens.get(i))) {
+                i++;
+            }
+            if (i < tokens.size() && isIdentifier(tokens.get(i))) {
+                i++;
+            }
+            if (!commaSeparated || i >= tokens.size() || !",".equals(tokens.get(i))) {
+                return;
+            }
+            i++;
+        }
+    }
+
+    private static int skipParentheses(List<String> tokens, int open) {
+        int depth = 0;
+        for (int i = open; i < tokens.size(); i++) {
+            if ("(".equals(tokens.get(i))) {
+                depth++;
+            } else if (")".equals(tokens.get(i)) && --depth == 0) {
+                return i + 1;
+            }
+        }
+        return tokens.size();
+    }
+
+    private static boolean isIdentifier(String token) {
+        char first = token.charAt(0);
+        return (Character.isLetter(first) || first == '_') && !CLAUSE_KEYWORDS.contains(token);
+    }
+}
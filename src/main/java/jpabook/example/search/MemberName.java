@@ -0,0 +1,17 @@
+package jpabook.example.search;
+
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@ToString
+public class MemberName {
+
+    private final Long id;
+    private final String name;
+
+    public MemberName(Long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+}
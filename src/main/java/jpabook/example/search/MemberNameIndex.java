@@ -0,0 +1,225 @@
+package jpabook.example.search;
+
+import com.querydsl.core.types.Projections;
+import jpabook.example.batch.StatelessBatchTemplate;
+import jpabook.example.cdc.CdcEntity;
+import jpabook.example.cdc.ChangeConsumer;
+import jpabook.example.cdc.ChangeEvent;
+import jpabook.example.cdc.ChangeLog;
+import jpabook.example.cdc.ChangeType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static jpabook.example.domain.QMember.member;
+
+/**
+ * Member.name 검색 색인
+ *
+ * 처음 사용할 때 전체 회원을 읽어 만들고, 이후에는 변경 로그를 따라가며 바뀐 회원의 이름만 다시 읽는다.
+ * 엔티티 변경과 BulkChangeCapture로 한 벌크 변경이 모두 변경 로그에 남으므로 같은 경로로 반영된다.
+ * 벌크 JPQL, Querydsl, StatelessSession처럼 어느 회원이 바뀌었는지 모르는 변경은 테이블 단위 변경(ChangeType.TABLE)으로
+ * 남으므로, 이를 만나면 invalidate()한 것처럼 다시 만들 때까지 색인을 사용하지 않는다.
+ * 검색하기 전에 밀린 변경을 먼저 반영하므로 커밋된 변경은 바로 다음 검색부터 보인다.
+ * 아직 커밋되지 않은 같은 트랜잭션의 변경은 보이지 않는다.
+ * Hibernate를 거치지 않은 JDBC 변경은 invalidate()를 호출할 때까지 보이지 않는다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "jpabook.cdc.enabled", havingValue = "true", matchIfMissing = true)
+public class MemberNameIndex {
+
+    private static final int RELOAD_BATCH = 1000;
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final StatelessBatchTemplate batchTemplate;
+    private final ChangeLog changeLog;
+    private final int maxIds;
+    private final NameIndex index = new NameIndex();
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    private final ExecutorService rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "member-name-indexer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile ChangeConsumer consumer;
+    private volatile long version;
+
+    public MemberNameIndex(EntityManagerFactory entityManagerFactory,
+                           StatelessBatchTemplate batchTemplate,
+                           ChangeLog changeLog,
+                           @Value("${jpabook.search.max-ids:1000}") int maxIds) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.batchTemplate = batchTemplate;
+        this.changeLog = changeLog;
+        this.maxIds = maxIds;
+    }
+
+    /**
+     * 이 개수를 넘게 찾으면 아이디 조건으로 바꾸지 않는다.
+     */
+    public int getMaxIds() {
+        return maxIds;
+    }
+
+    /**
+     * 밀린 변경을 반영하고, 색인이 커밋된 회원 이름을 모두 담고 있는지 반환한다.
+     * invalidate()나 테이블 단위 변경 뒤 아직 다시 만들지 않았으면 백그라운드에서 다시 만들기 시작하고 false를 반환한다.
+     */
+    public boolean isFresh() {
+        if (consumer != null) {
+            catchUp();
+        }
+        if (consumer == null) {
+            scheduleRebuild();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 회원 변경을 반영하거나 다시 만들 때마다 증가한다.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        catchUp();
+        return index.size();
+    }
+
+    /**
+     * 조건에 맞는 회원 아이디. maxIds건을 넘으면 maxIds + 1건을 반환한다.
+     */
+    public long[] find(NameMatch match) {
+        catchUp();
+        return index.find(match, maxIds);
+    }
+
+    /**
+     * 변경 로그에 쌓인 회원 변경을 반영한다. 읽을 위치가 이미 지워졌거나 invalidate()된 상태면 전체를 다시 만든다.
+     * 회원 테이블 단위 변경을 만나면 그 자리에서 다시 만들지 않고 invalidate()한다.
+     */
+    public void catchUp() {
+        ChangeConsumer current = consumer;
+        if (current != null && current.getLag() == 0) {
+            return;
+        }
+        synchronized (this) {
+            if (consumer == null) {
+                rebuild();
+                return;
+            }
+            while (true) {
+                List<ChangeEvent> batch;
+                try {
+                    batch = consumer.poll(RELOAD_BATCH);
+                } catch (IllegalArgumentException e) {
+                    log.warn("member name index fell behind the change log, rebuilding", e);
+                    rebuild();
+                    return;
+                }
+                if (batch.isEmpty()) {
+                    return;
+                }
+                Set<Long> ids = new LinkedHashSet<>();
+                for (ChangeEvent event : batch) {
+                    if (event.getEntity() != CdcEntity.MEMBER) {
+                        continue;
+                    }
+                    if (event.getType() == ChangeType.TABLE) {
+                        log.debug("member table changed in bulk, member name index invalidated");
+                        invalidate();
+                        return;
+                    }
+                    ids.add(event.getEntityId());
+                }
+                if (!ids.isEmpty()) {
+                    reload(ids);
+                }
+            }
+        }
+    }
+
+    /**
+     * 읽기 전의 변경 로그 위치를 기억해 두므로, 읽는 도중 커밋된 변경은 이후 catchUp에서 다시 반영된다.
+     */
+    public synchronized void rebuild() {
+        ChangeConsumer from = changeLog.tail(changeLog.getLastSequence() + 1);
+        index.clear();
+        batchTemplate.read(query -> query.select(Projections.constructor(MemberName.class, member.id, member.name))
+                .from(member), row -> index.put(row.getId(), row.getName()));
+        consumer = from;
+        version++;
+        log.debug("member name index rebuilt: {} members", index.size());
+    }
+
+    /**
+     * JDBC로 회원을 바꾼 뒤 호출한다. 다음에 사용할 때 전체를 다시 읽는다.
+     */
+    public synchronized void invalidate() {
+        consumer = null;
+    }
+
+    /**
+     * 여러 번 호출되어도 대기 중인 재생성은 한 번만 실행한다.
+     */
+    private void scheduleRebuild() {
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            rebuilder.execute(() -> {
+                try {
+                    synchronized (this) {
+                        if (consumer == null) {
+                            rebuild();
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("member name index rebuild failed", e);
+                } finally {
+                    rebuildScheduled.set(false);
+                }
+            });
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        rebuilder.shutdownNow();
+    }
+
+    private void reload(Set<Long> ids) {
+        Map<Long, String> names = new HashMap<>();
+        EntityManager em = entityManagerFactory.createEntityManager();
+        try {
+            for (Object[] row : em.createQuery("select m.id, m.name from Member m where m.id in :ids", Object[].class)
+                    .setParameter("ids", ids)
+                    .getResultList()) {
+                names.put((Long) row[0], (String) row[1]);
+            }
+        } finally {
+            em.close();
+        }
+        for (Long id : ids) {
+            if (names.containsKey(id)) {
+                index.put(id, names.get(id));
+            } else {
+                index.remove(id);
+            }
+        }
+        version++;
+    }
+}
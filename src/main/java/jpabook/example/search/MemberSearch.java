@@ -0,0 +1,190 @@
+package jpabook.example.search;
+
+import com.querydsl.core.types.Constant;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.ExpressionUtils;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Operator;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.jpa.JPQLTemplates;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import jpabook.example.cache.QueryResultCache;
+import jpabook.example.domain.Member;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.bytecode.enhance.spi.interceptor.EnhancementAsProxyLazinessInterceptor;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.PersistentAttributeInterceptable;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.Status;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import static jpabook.example.domain.QMember.member;
+
+/**
+ * member.name의 eq, like, startsWith, endsWith, contains 조건(대소문자 무시 포함)을 MemberNameIndex로 먼저 풀어서
+ * 아이디 조건을 덧붙인다. 원래 조건도 그대로 두므로 DB는 기본 키로 찾은 행만 확인한다.
+ * 찾은 아이디가 max-ids를 넘으면 색인의 이점이 없으므로 원래 조건으로 조회한다.
+ *
+ * 색인에 없는 회원은 결과에서 빠지므로, 색인이 커밋된 이름을 모두 담고 있다고 확인할 수 없으면 원래 조건으로 조회한다.
+ * - invalidate() 뒤, 또는 벌크 연산이나 StatelessSession으로 회원을 바꾼 트랜잭션이 커밋된 뒤 아직 다시 만들지 않았을 때
+ * - 현재 트랜잭션이 member 테이블에 썼거나, 영속성 컨텍스트에 저장 전, 삭제된, 이름이 바뀐 회원이 있을 때
+ * - 조회하는 사이 커밋된 회원 변경이 색인에 반영됐을 때 (다시 조회한다)
+ * Hibernate를 거치지 않은 JDBC 변경은 invalidate()를 호출하기 전까지 알 수 없고,
+ * 커밋과 변경 로그 추가 사이에 조회하면 그 변경이 빠질 수 있으므로 결과가 항상 LIKE와 같지는 않다.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "jpabook.cdc.enabled", havingValue = "true", matchIfMissing = true)
+public class MemberSearch {
+
+    private final JPAQueryFactory queryFactory;
+    private final MemberNameIndex memberNameIndex;
+    private final QueryResultCache queryResultCache;
+    private final EntityManagerFactory entityManagerFactory;
+
+    public List<Member> search(Predicate where) {
+        if (where == null || !memberNameIndex.isFresh() || hasPendingMemberChanges()) {
+            return queryFactory.selectFrom(member).where(where).fetch();
+        }
+        long version = memberNameIndex.getVersion();
+        Predicate rewritten = rewrite(where);
+        List<Member> result = queryFactory.selectFrom(member).where(rewritten).fetch();
+        if (rewritten == where) {
+            return result;
+        }
+        memberNameIndex.catchUp();
+        if (memberNameIndex.getVersion() != version) {
+            return queryFactory.selectFrom(member).where(where).fetch();
+        }
+        return result;
+    }
+
+    /**
+     * AND, OR 아래에 있는 이름 조건까지 바꾼다.
+     * NOT 아래는 바꾸지 않는다. 색인이 놓친 회원이 있으면 부정한 결과에 섞이고, 아이디 조건의 이점도 없다.
+     */
+    public Predicate rewrite(Predicate where) {
+        return where == null ? null : (Predicate) rewriteExpression(where);
+    }
+
+    private Expression<?> rewriteExpression(Expression<?> expression) {
+        if (!(expression instanceof Operation)) {
+            return expression;
+        }
+        Operation<?> operation = (Operation<?>) expression;
+        Operator operator = operation.getOperator();
+        if (operator == Ops.NOT) {
+            return expression;
+        }
+        if (operator == Ops.AND || operator == Ops.OR) {
+            List<Expression<?>> args = new ArrayList<>();
+            for (Expression<?> arg : operation.getArgs()) {
+                args.add(rewriteExpression(arg));
+            }
+            return args.equals(operation.getArgs()) ? expression : ExpressionUtils.predicate(operator, args.toArray(new Expression<?>[0]));
+        }
+        NameMatch match = toNameMatch(operation);
+        if (match == null) {
+            return expression;
+        }
+        long[] ids = memberNameIndex.find(match);
+        if (ids.length > memberNameIndex.getMaxIds()) {
+            return expression;
+        }
+        Path<?> root = ((Path<?>) operation.getArg(0)).getMetadata().getParent();
+        List<Long> idList = Arrays.stream(ids).boxed().collect(Collectors.toList());
+        return ExpressionUtils.and(Expressions.numberPath(Long.class, root, "id").in(idList), (Predicate) expression);
+    }
+
+    /**
+     * 현재 트랜잭션에서 쓴 member 행이나 플러시 전의 회원 변경은 색인에 없다.
+     * 영속성 컨텍스트 전체를 더티 체크하지 않고 회원 엔티티의 이름만 로딩 시점 값과 비교한다.
+     */
+    private boolean hasPendingMemberChanges() {
+        if (queryResultCache.isWrittenInTransaction("member")) {
+            return true;
+        }
+        EntityManagerHolder holder = (EntityManagerHolder) TransactionSynchronizationManager.getResource(entityManagerFactory);
+        if (holder == null) {
+            return false;
+        }
+        SessionImplementor session = holder.getEntityManager().unwrap(SessionImplementor.class);
+        for (Map.Entry<Object, EntityEntry> entry : session.getPersistenceContextInternal().reentrantSafeEntityEntries()) {
+            EntityEntry entityEntry = entry.getValue();
+            if (!Member.class.isAssignableFrom(entityEntry.getPersister().getMappedClass())
+                    || entityEntry.getStatus() == Status.READ_ONLY) {
+                continue;
+            }
+            if (entityEntry.getStatus() != Status.MANAGED || !entityEntry.isExistsInDatabase()) {
+                return true;
+            }
+            // 초기화되지 않은 엔티티는 바뀌었을 수 없고, 이름을 읽으면 초기화된다.
+            if (entityEntry.getLoadedState() != null && !isUninitialized(entry.getKey())
+                    && !Objects.equals(entityEntry.getLoadedValue("name"), ((Member) entry.getKey()).getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isUninitialized(Object entity) {
+        return entity instanceof PersistentAttributeInterceptable
+                && ((PersistentAttributeInterceptable) entity).$$_hibernate_getInterceptor() instanceof EnhancementAsProxyLazinessInterceptor;
+    }
+
+    private static NameMatch toNameMatch(Operation<?> operation) {
+        if (operation.getArgs().size() < 2 || !isMemberName(operation.getArg(0))
+                || !(operation.getArg(1) instanceof Constant)
+                || !(((Constant<?>) operation.getArg(1)).getConstant() instanceof String)) {
+            return null;
+        }
+        String value = (String) ((Constant<?>) operation.getArg(1)).getConstant();
+        Operator operator = operation.getOperator();
+        if (operator == Ops.EQ || operator == Ops.EQ_IGNORE_CASE) {
+            return NameMatch.of(NameMatch.Mode.EQUALS, value, operator == Ops.EQ_IGNORE_CASE);
+        }
+        if (operator == Ops.STARTS_WITH || operator == Ops.STARTS_WITH_IC) {
+            return NameMatch.of(NameMatch.Mode.STARTS_WITH, value, operator == Ops.STARTS_WITH_IC);
+        }
+        if (operator == Ops.ENDS_WITH || operator == Ops.ENDS_WITH_IC) {
+            return NameMatch.of(NameMatch.Mode.ENDS_WITH, value, operator == Ops.ENDS_WITH_IC);
+        }
+        if (operator == Ops.STRING_CONTAINS || operator == Ops.STRING_CONTAINS_IC) {
+            return NameMatch.of(NameMatch.Mode.CONTAINS, value, operator == Ops.STRING_CONTAINS_IC);
+        }
+        if (operator == Ops.LIKE || operator == Ops.LIKE_IC) {
+            return NameMatch.like(value, JPQLTemplates.DEFAULT.getEscapeChar(), operator == Ops.LIKE_IC);
+        }
+        if ((operator == Ops.LIKE_ESCAPE || operator == Ops.LIKE_ESCAPE_IC) && operation.getArgs().size() == 3
+                && operation.getArg(2) instanceof Constant
+                && ((Constant<?>) operation.getArg(2)).getConstant() instanceof Character) {
+            char escape = (Character) ((Constant<?>) operation.getArg(2)).getConstant();
+            return NameMatch.like(value, escape, operator == Ops.LIKE_ESCAPE_IC);
+        }
+        return null;
+    }
+
+    private static boolean isMemberName(Expression<?> expression) {
+        if (!(expression instanceof Path)) {
+            return false;
+        }
+        Path<?> path = (Path<?>) expression;
+        Path<?> parent = path.getMetadata().getParent();
+        return "name".equals(path.getMetadata().getName()) && parent != null && parent.getType() == Member.class
+                && parent.getMetadata().isRoot();
+    }
+}
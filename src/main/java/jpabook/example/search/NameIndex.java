@@ -0,0 +1,298 @@
+package jpabook.example.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 이름의 3-gram 역색인. 대소문자는 구분하지 않고 색인한다.
+ *
+ * 이름은 추가한 순서대로 슬롯에 두고, 각 3-gram은 그 3-gram을 포함한 슬롯 번호를 오름차순으로 가진다.
+ * 수정, 삭제는 기존 슬롯을 비워 두고 새 슬롯에 추가하는 방식이라 목록이 항상 정렬되어 있다.
+ * 빈 슬롯이 살아 있는 슬롯보다 많아지면 다시 만든다.
+ * 검색은 가장 짧은 목록을 순회하면서 다른 목록을 이진 탐색하고, 남은 후보를 NameMatch로 확인한다.
+ * 3글자보다 짧은 조건은 전체 이름을 확인한다.
+ */
+public final class NameIndex {
+
+    static final int GRAM = 3;
+
+    private static final int EMPTY = -1;
+    private static final float LOAD_FACTOR = 0.5f;
+    private static final int MIN_COMPACT_SIZE = 1024;
+
+    private final StampedLock lock = new StampedLock();
+
+    private long[] ids;
+    private String[] names;
+    private int size;
+    private int live;
+    private int[] table;
+    private int entries;
+    private Map<Long, Postings> postings;
+
+    public NameIndex() {
+        this(1024);
+    }
+
+    public NameIndex(int expectedSize) {
+        reset(Math.max(16, expectedSize));
+    }
+
+    public void put(long id, String name) {
+        long stamp = lock.writeLock();
+        try {
+            int entry = entryOf(id);
+            if (entry != EMPTY) {
+                int slot = table[entry];
+                if (names[slot] != null && names[slot].equals(name)) {
+                    return;
+                }
+                kill(slot);
+            }
+            if (name != null) {
+                int slot = append(id, name);
+                if (entry == EMPTY) {
+                    insertEntry(slot);
+                } else {
+                    table[entry] = slot;
+                }
+            }
+            compactIfSparse();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void remove(long id) {
+        long stamp = lock.writeLock();
+        try {
+            int entry = entryOf(id);
+            if (entry != EMPTY) {
+                kill(table[entry]);
+                compactIfSparse();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            reset(16);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return live;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 조건에 맞는 아이디를 색인에 추가된 순서로 반환한다. limit건을 넘으면 limit + 1건에서 멈추므로
+     * 결과 크기로 넘쳤는지 알 수 있다.
+     */
+    public long[] find(NameMatch match, int limit) {
+        long stamp = lock.readLock();
+        try {
+            List<Postings> lists = postingsOf(match);
+            long[] found = new long[Math.min(limit + 1, 1024)];
+            int count = 0;
+            if (lists == null) {
+                for (int slot = 0; slot < size && count <= limit; slot++) {
+                    if (match.matches(names[slot])) {
+                        found = add(found, count++, ids[slot]);
+                    }
+                }
+                return Arrays.copyOf(found, count);
+            }
+            if (lists.isEmpty()) {
+                return new long[0];
+            }
+            Postings smallest = lists.get(0);
+            for (int i = 0; i < smallest.size && count <= limit; i++) {
+                int slot = smallest.slots[i];
+                if (names[slot] != null && containedInAll(lists, slot) && match.matches(names[slot])) {
+                    found = add(found, count++, ids[slot]);
+                }
+            }
+            return Arrays.copyOf(found, count);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 조건의 3-gram 목록을 짧은 순으로 반환한다. 3-gram이 없으면 null, 색인에 없는 3-gram이 있으면 빈 목록
+     */
+    private List<Postings> postingsOf(NameMatch match) {
+        Set<Long> grams = new LinkedHashSet<>();
+        for (String literal : match.getLiterals()) {
+            String lower = NameMatch.lower(literal);
+            for (int i = 0; i + GRAM <= lower.length(); i++) {
+                grams.add(gram(lower, i));
+            }
+        }
+        if (grams.isEmpty()) {
+            return null;
+        }
+        List<Postings> lists = new ArrayList<>(grams.size());
+        for (Long gram : grams) {
+            Postings list = postings.get(gram);
+            if (list == null) {
+                return List.of();
+            }
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(list -> list.size));
+        return lists;
+    }
+
+    private static boolean containedInAll(List<Postings> lists, int slot) {
+        for (int i = 1; i < lists.size(); i++) {
+            Postings list = lists.get(i);
+            if (Arrays.binarySearch(list.slots, 0, list.size, slot) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int append(long id, String name) {
+        if (size == ids.length) {
+            int capacity = ids.length + (ids.length >> 1) + 1;
+            ids = Arrays.copyOf(ids, capacity);
+            names = Arrays.copyOf(names, capacity);
+        }
+        int slot = size++;
+        ids[slot] = id;
+        names[slot] = name;
+        live++;
+        String lower = NameMatch.lower(name);
+        for (int i = 0; i + GRAM <= lower.length(); i++) {
+            postings.computeIfAbsent(gram(lower, i), gram -> new Postings()).add(slot);
+        }
+        return slot;
+    }
+
+    private void kill(int slot) {
+        if (names[slot] != null) {
+            names[slot] = null;
+            live--;
+        }
+    }
+
+    private void compactIfSparse() {
+        if (size < MIN_COMPACT_SIZE || size - live <= live) {
+            return;
+        }
+        long[] oldIds = ids;
+        String[] oldNames = names;
+        int oldSize = size;
+        reset(Math.max(16, live * 2));
+        for (int slot = 0; slot < oldSize; slot++) {
+            if (oldNames[slot] != null) {
+                insertEntry(append(oldIds[slot], oldNames[slot]));
+            }
+        }
+    }
+
+    private void reset(int capacity) {
+        ids = new long[capacity];
+        names = new String[capacity];
+        size = 0;
+        live = 0;
+        table = new int[Integer.highestOneBit(Math.max(4, (int) (capacity / LOAD_FACTOR)) - 1) << 1];
+        Arrays.fill(table, EMPTY);
+        entries = 0;
+        postings = new HashMap<>();
+    }
+
+    private int entryOf(long id) {
+        int mask = table.length - 1;
+        for (int entry = hash(id) & mask; ; entry = (entry + 1) & mask) {
+            int slot = table[entry];
+            if (slot == EMPTY) {
+                return EMPTY;
+            }
+            if (ids[slot] == id) {
+                return entry;
+            }
+        }
+    }
+
+    private void insertEntry(int slot) {
+        if (entries + 1 > table.length * LOAD_FACTOR) {
+            rehash(table.length << 1);
+        }
+        place(slot);
+    }
+
+    private void rehash(int capacity) {
+        int[] old = table;
+        table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        entries = 0;
+        for (int slot : old) {
+            if (slot != EMPTY) {
+                place(slot);
+            }
+        }
+    }
+
+    private void place(int slot) {
+        int mask = table.length - 1;
+        int entry = hash(ids[slot]) & mask;
+        while (table[entry] != EMPTY) {
+            entry = (entry + 1) & mask;
+        }
+        table[entry] = slot;
+        entries++;
+    }
+
+    private static long[] add(long[] found, int index, long id) {
+        if (index == found.length) {
+            found = Arrays.copyOf(found, found.length * 2);
+        }
+        found[index] = id;
+        return found;
+    }
+
+    private static long gram(String lower, int offset) {
+        return (long) lower.charAt(offset) << 32 | (long) lower.charAt(offset + 1) << 16 | lower.charAt(offset + 2);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static final class Postings {
+
+        private int[] slots = new int[4];
+        private int size;
+
+        void add(int slot) {
+            if (size > 0 && slots[size - 1] == slot) {
+                return;
+            }
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package jpabook.example.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * 이름 검색 조건. 후보를 찾을 때 쓸 리터럴 조각과, 후보를 최종 확인하는 matches를 가진다.
+ * LIKE 패턴은 H2와 같이 %, _ 와 이스케이프 문자를 해석한다.
+ */
+public final class NameMatch {
+
+    public enum Mode {
+        EQUALS,
+        STARTS_WITH,
+        ENDS_WITH,
+        CONTAINS,
+        LIKE
+    }
+
+    private final Mode mode;
+    private final String value;
+    private final boolean ignoreCase;
+    private final List<String> literals;
+    private final Pattern pattern;
+
+    private NameMatch(Mode mode, String value, boolean ignoreCase, char escape) {
+        this.mode = mode;
+        this.value = ignoreCase ? lower(value) : value;
+        this.ignoreCase = ignoreCase;
+        if (mode == Mode.LIKE) {
+            this.literals = new ArrayList<>();
+            this.pattern = compileLike(value, escape, ignoreCase, literals);
+        } else {
+            this.literals = List.of(value);
+            this.pattern = null;
+        }
+    }
+
+    public static NameMatch of(Mode mode, String value, boolean ignoreCase) {
+        return new NameMatch(mode, value, ignoreCase, '\\');
+    }
+
+    public static NameMatch like(String pattern, char escape, boolean ignoreCase) {
+        return new NameMatch(Mode.LIKE, pattern, ignoreCase, escape);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    /**
+     * 일치하는 이름이라면 반드시 포함하는 문자열 조각. 후보 검색에만 쓰고 대소문자는 구분하지 않는다.
+     */
+    List<String> getLiterals() {
+        return literals;
+    }
+
+    public boolean matches(String name) {
+        if (name == null) {
+            return false;
+        }
+        switch (mode) {
+            case EQUALS:
+                return ignoreCase ? value.equals(lower(name)) : value.equals(name);
+            case STARTS_WITH:
+                return (ignoreCase ? lower(name) : name).startsWith(value);
+            case ENDS_WITH:
+                return (ignoreCase ? lower(name) : name).endsWith(value);
+            case CONTAINS:
+                return (ignoreCase ? lower(name) : name).contains(value);
+            default:
+                return pattern.matcher(name).matches();
+        }
+    }
+
+    static String lower(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    private static Pattern compileLike(String like, char escape, boolean ignoreCase, List<String> literals) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < like.length(); i++) {
+            char c = like.charAt(i);
+            if (c == escape && i + 1 < like.length()) {
+                literal.append(like.charAt(++i));
+            } else if (c == '%' || c == '_') {
+                flush(literal, regex, literals);
+                regex.append(c == '%' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        flush(literal, regex, literals);
+        int flags = Pattern.DOTALL | (ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+        return Pattern.compile(regex.toString(), flags);
+    }
+
+    private static void flush(StringBuilder literal, StringBuilder regex, List<String> literals) {
+        if (literal.length() > 0) {
+            literals.add(literal.toString());
+            regex.append(Pattern.quote(literal.toString()));
+            literal.setLength(0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return mode + (ignoreCase ? "_IC" : "") + "(" + value + ")";
+    }
+}
@@ -0,0 +1,25 @@
+package jpabook.example.shard;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Duration;
+
+@Getter
+@ToString
+public class BucketMove {
+
+    private final int bucket;
+    private final int fromShard;
+    private final int toShard;
+    private final long rows;
+    private final Duration elapsed;
+
+    public BucketMove(int bucket, int fromShard, int toShard, long rows, Duration elapsed) {
+        this.bucket = bucket;
+        this.fromShard = fromShard;
+        this.toShard = toShard;
+        this.rows = rows;
+        this.elapsed = elapsed;
+    }
+}
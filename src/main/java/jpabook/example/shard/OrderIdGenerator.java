@@ -0,0 +1,47 @@
+package jpabook.example.shard;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.Configurable;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Order id 생성기. 노드 번호는 hibernate 설정 jpabook.order-id.node에서 읽는다.
+ * 같은 DB나 샤드에 쓰는 애플리케이션 인스턴스마다 다른 번호를 줘야 한다.
+ * 모든 인스턴스가 같은 기본값을 쓰면 id가 겹치므로 기본값을 두지 않고, 지정하지 않으면 시작하지 않는다.
+ * 가장 큰 번호(MAX_NODE)는 DataGenerator가 쓰므로 0부터 MAX_NODE - 1까지 사용할 수 있다.
+ */
+public class OrderIdGenerator implements IdentifierGenerator, Configurable {
+
+    public static final String NODE_SETTING = "jpabook.order-id.node";
+
+    private SnowflakeIdAllocator allocator;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        Map<?, ?> settings = serviceRegistry.getService(ConfigurationService.class).getSettings();
+        Integer node = ConfigurationHelper.getInteger(NODE_SETTING, settings);
+        if (node == null) {
+            throw new MappingException(NODE_SETTING + " is not set; give every application instance "
+                    + "that writes orders its own node number between 0 and " + (SnowflakeIdAllocator.MAX_NODE - 1));
+        }
+        if (node < 0 || node >= SnowflakeIdAllocator.MAX_NODE) {
+            throw new MappingException(NODE_SETTING + " must be between 0 and " + (SnowflakeIdAllocator.MAX_NODE - 1)
+                    + ": " + node);
+        }
+        allocator = SnowflakeIdAllocator.forNode(node);
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        return allocator.nextId();
+    }
+}
@@ -0,0 +1,283 @@
+package jpabook.example.shard;
+
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 버킷 단위로 주문을 다른 샤드로 옮긴다.
+ *
+ * 옮기는 동안 해당 버킷의 쓰기는 실패하고 읽기는 원래 샤드에서 계속된다.
+ * 복사 -> 라우터 변경 -> 원본 삭제 순서로 진행하므로 중간에 실패하면 원본은 그대로 남고 대상 샤드의 복사본만 지운다.
+ *
+ * 지우지 못한 행(라우터 변경 뒤 원본, 실패한 복사본)은 그 버킷을 가지지 않은 샤드에 남는다. OrderShards의 조회는
+ * 샤드가 가진 버킷만 읽으므로 이 행은 보이지 않고, cleanup-retry 간격과 다음 이동 전에 다시 지운다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty("jpabook.shard.urls")
+public class OrderShardRebalancer {
+
+    private static final String BUCKET_CONDITION = " where mod(member_id, ?) = ?";
+
+    private final OrderShards shards;
+    private final int chunkSize;
+    private final Set<Leftover> leftovers = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "order-shard-cleaner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public OrderShardRebalancer(OrderShards shards,
+                                @Value("${jpabook.shard.move-chunk-size:1000}") int chunkSize,
+                                @Value("${jpabook.shard.cleanup-retry:30s}") Duration cleanupRetry) {
+        this.shards = shards;
+        this.chunkSize = chunkSize;
+        long period = Math.max(1, cleanupRetry.toMillis());
+        cleaner.scheduleWithFixedDelay(this::cleanUpLeftovers, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        cleaner.shutdownNow();
+    }
+
+    /**
+     * 지우지 못하고 남은 버킷 행의 수
+     */
+    public int getLeftoverCount() {
+        return leftovers.size();
+    }
+
+    /**
+     * 이동 중에 지우지 못한 행을 다시 지운다. 그 사이 버킷이 다시 그 샤드로 돌아왔다면 지우지 않는다.
+     *
+     * @return 남아 있는 (샤드, 버킷) 수
+     */
+    public int cleanUpLeftovers() {
+        ShardRouter router = shards.getRouter();
+        for (Leftover leftover : leftovers) {
+            long stamp = router.freeze(leftover.bucket);
+            try {
+                if (router.shardOfBucket(leftover.bucket) != leftover.shard) {
+                    delete(leftover.shard, leftover.bucket);
+                }
+                leftovers.remove(leftover);
+                log.info("cleaned up bucket {} in shard {}", leftover.bucket, leftover.shard);
+            } catch (SQLException | RuntimeException e) {
+                log.warn("failed to clean up bucket {} in shard {}, will retry", leftover.bucket, leftover.shard, e);
+            } finally {
+                router.unfreeze(leftover.bucket, stamp);
+            }
+        }
+        return leftovers.size();
+    }
+
+    /**
+     * [shard][bucket] 주문 건수.
+     */
+    public long[][] bucketRows() {
+        ShardRouter router = shards.getRouter();
+        long[][] rows = new long[shards.getShardCount()][router.getBucketCount()];
+        for (int shard = 0; shard < shards.getShardCount(); shard++) {
+            // group by 식은 select 식과 같아야 하므로 버킷 수를 파라미터가 아닌 리터럴로 넣는다.
+            String bucket = "mod(member_id, " + router.getBucketCount() + ")";
+            try (Connection connection = shards.getDataSource(shard).getConnection();
+                 PreparedStatement ps = connection.prepareStatement("select " + bucket + ", count(*) from "
+                         + ShardSchemaFilterProvider.SHARDED_TABLE + " group by " + bucket)) {
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        rows[shard][rs.getInt(1)] = rs.getLong(2);
+                    }
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException("failed to count buckets of shard " + shard, e);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 가장 많은 샤드에서 가장 적은 샤드로, 차이의 절반을 넘지 않는 가장 큰 버킷을 옮기는 계획을 반복해서 세운다.
+     * 샤드를 추가한 직후처럼 비어 있는 샤드도 같은 방식으로 채워진다.
+     */
+    public List<BucketMove> plan() {
+        ShardRouter router = shards.getRouter();
+        long[][] rows = bucketRows();
+        int[] assignment = router.getAssignment();
+        long[] load = new long[shards.getShardCount()];
+        long[] bucketRows = new long[router.getBucketCount()];
+        for (int bucket = 0; bucket < assignment.length; bucket++) {
+            bucketRows[bucket] = rows[assignment[bucket]][bucket];
+            load[assignment[bucket]] += bucketRows[bucket];
+        }
+
+        List<BucketMove> moves = new ArrayList<>();
+        while (true) {
+            int heaviest = 0;
+            int lightest = 0;
+            for (int shard = 1; shard < load.length; shard++) {
+                if (load[shard] > load[heaviest]) {
+                    heaviest = shard;
+                }
+                if (load[shard] < load[lightest]) {
+                    lightest = shard;
+                }
+            }
+            long limit = (load[heaviest] - load[lightest]) / 2;
+            int candidate = -1;
+            for (int bucket = 0; bucket < assignment.length; bucket++) {
+                if (assignment[bucket] == heaviest && bucketRows[bucket] > 0 && bucketRows[bucket] <= limit
+                        && (candidate < 0 || bucketRows[bucket] > bucketRows[candidate])) {
+                    candidate = bucket;
+                }
+            }
+            if (candidate < 0) {
+                return moves;
+            }
+            assignment[candidate] = lightest;
+            load[heaviest] -= bucketRows[candidate];
+            load[lightest] += bucketRows[candidate];
+            moves.add(new BucketMove(candidate, heaviest, lightest, bucketRows[candidate], Duration.ZERO));
+        }
+    }
+
+    public List<BucketMove> rebalance() {
+        cleanUpLeftovers();
+        List<BucketMove> moves = new ArrayList<>();
+        for (BucketMove planned : plan()) {
+            moves.add(moveBucket(planned.getBucket(), planned.getToShard()));
+        }
+        log.info("rebalanced {} buckets, assignment={}", moves.size(), shards.getRouter().describe());
+        return moves;
+    }
+
+    public BucketMove moveBucket(int bucket, int targetShard) {
+        ShardRouter router = shards.getRouter();
+        int sourceShard = router.shardOfBucket(bucket);
+        if (sourceShard == targetShard) {
+            return new BucketMove(bucket, sourceShard, targetShard, 0, Duration.ZERO);
+        }
+        cleanUpLeftovers();
+
+        long start = System.nanoTime();
+        long stamp = router.freeze(bucket);
+        try {
+            long rows;
+            try {
+                delete(targetShard, bucket);
+                // 대상 샤드에 남아 있던 행은 방금 지웠다.
+                leftovers.remove(new Leftover(targetShard, bucket));
+                rows = copy(sourceShard, targetShard, bucket);
+            } catch (SQLException | RuntimeException e) {
+                deleteOrRetry(targetShard, bucket);
+                throw new IllegalStateException("failed to move bucket " + bucket + " to shard " + targetShard, e);
+            }
+            router.assign(bucket, targetShard);
+            // 원본 샤드는 이제 이 버킷을 가지지 않으므로 지우지 못해도 남은 행은 조회에서 빠진다.
+            deleteOrRetry(sourceShard, bucket);
+            BucketMove move = new BucketMove(bucket, sourceShard, targetShard, rows, Duration.ofNanos(System.nanoTime() - start));
+            log.info("moved {}", move);
+            return move;
+        } finally {
+            router.unfreeze(bucket, stamp);
+        }
+    }
+
+    private long copy(int sourceShard, int targetShard, int bucket) throws SQLException {
+        int buckets = shards.getRouter().getBucketCount();
+        long rows = 0;
+        try (Connection source = shards.getDataSource(sourceShard).getConnection();
+             Connection target = shards.getDataSource(targetShard).getConnection();
+             PreparedStatement select = source.prepareStatement(
+                     "select * from " + ShardSchemaFilterProvider.SHARDED_TABLE + BUCKET_CONDITION)) {
+            target.setAutoCommit(false);
+            select.setFetchSize(chunkSize);
+            select.setInt(1, buckets);
+            select.setInt(2, bucket);
+            try (ResultSet rs = select.executeQuery()) {
+                ResultSetMetaData meta = rs.getMetaData();
+                int columns = meta.getColumnCount();
+                try (PreparedStatement insert = target.prepareStatement(insertSql(meta))) {
+                    while (rs.next()) {
+                        for (int i = 1; i <= columns; i++) {
+                            insert.setObject(i, rs.getObject(i));
+                        }
+                        insert.addBatch();
+                        if (++rows % chunkSize == 0) {
+                            insert.executeBatch();
+                            target.commit();
+                        }
+                    }
+                    insert.executeBatch();
+                    target.commit();
+                }
+            } finally {
+                target.setAutoCommit(true);
+            }
+        }
+        return rows;
+    }
+
+    private static String insertSql(ResultSetMetaData meta) throws SQLException {
+        StringBuilder columns = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            if (i > 1) {
+                columns.append(", ");
+                values.append(", ");
+            }
+            columns.append(meta.getColumnName(i));
+            values.append('?');
+        }
+        return "insert into " + ShardSchemaFilterProvider.SHARDED_TABLE + " (" + columns + ") values (" + values + ")";
+    }
+
+    private void delete(int shard, int bucket) throws SQLException {
+        try (Connection connection = shards.getDataSource(shard).getConnection();
+             PreparedStatement ps = connection.prepareStatement(
+                     "delete from " + ShardSchemaFilterProvider.SHARDED_TABLE + BUCKET_CONDITION)) {
+            ps.setInt(1, shards.getRouter().getBucketCount());
+            ps.setInt(2, bucket);
+            ps.executeUpdate();
+        }
+    }
+
+    private void deleteOrRetry(int shard, int bucket) {
+        try {
+            delete(shard, bucket);
+        } catch (SQLException | RuntimeException e) {
+            leftovers.add(new Leftover(shard, bucket));
+            log.warn("rows of bucket {} remain in shard {}, will retry", bucket, shard, e);
+        }
+    }
+
+    @ToString
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static class Leftover {
+
+        private final int shard;
+        private final int bucket;
+    }
+}
@@ -0,0 +1,375 @@
+package jpabook.example.shard;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.NumberExpression;
+import com.querydsl.jpa.JPQLQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.zaxxer.hikari.HikariDataSource;
+import jpabook.example.domain.Order;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.hibernate.mapping.ForeignKey;
+import org.hibernate.mapping.Table;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+import org.springframework.boot.orm.jpa.hibernate.SpringPhysicalNamingStrategy;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import static jpabook.example.domain.QOrder.order;
+
+/**
+ * member_id 기준으로 나눈 Order 저장소.
+ *
+ * jpabook.shard.urls에 적은 DB마다 DataSource와 EntityManagerFactory를 따로 만든다.
+ * 이들은 빈으로 등록하지 않으므로 애플리케이션의 기본 DataSource, EntityManager, 트랜잭션 매니저에는 영향이 없다.
+ * 샤드에서 읽은 Order는 샤드 EntityManager가 닫힌 뒤에 반환되므로 member, item은 id만 사용할 수 있다.
+ * 샤드 스키마에는 member, item 테이블이 없으므로 orders의 외래 키를 만들지 않는다.
+ *
+ * 여러 샤드를 읽는 조회는 샤드마다 그 샤드가 가진 버킷의 행만 읽는다. 버킷을 옮기는 동안 두 샤드에 모두 있는 행이나
+ * 옮긴 뒤 원본에 남은 행은 세지 않는다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty("jpabook.shard.urls")
+public class OrderShards {
+
+    private final ShardRouter router;
+    private final List<Shard> shards = new ArrayList<>();
+    private final ExecutorService executor;
+
+    public OrderShards(@Value("${jpabook.shard.urls}") String[] urls,
+                       @Value("${jpabook.shard.username:sa}") String username,
+                       @Value("${jpabook.shard.password:}") String password,
+                       @Value("${jpabook.shard.buckets:64}") int buckets,
+                       @Value("${jpabook.shard.assignment:}") String assignment,
+                       @Value("${jpabook.shard.pool-size:4}") int poolSize,
+                       @Value("${jpabook.shard.ddl-auto:update}") String ddlAuto,
+                       JpaProperties jpaProperties) {
+        this.router = assignment.isEmpty()
+                ? new ShardRouter(buckets, urls.length)
+                : new ShardRouter(buckets, urls.length, ShardRouter.parseAssignment(assignment));
+        try {
+            for (int i = 0; i < urls.length; i++) {
+                shards.add(new Shard(i, urls[i].trim(), username, password, poolSize, ddlAuto, jpaProperties.getProperties()));
+            }
+        } catch (RuntimeException e) {
+            shutdown();
+            throw e;
+        }
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(urls.length, runnable -> {
+            Thread thread = new Thread(runnable, "order-shard-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("order shards: {} shards, {} buckets", urls.length, buckets);
+    }
+
+    public ShardRouter getRouter() {
+        return router;
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public void save(Order order) {
+        long memberId = memberIdOf(order);
+        router.write(memberId, shard -> inShard(shard, em -> {
+            em.persist(order);
+            return null;
+        }));
+    }
+
+    /**
+     * 버킷별로 묶어서 버킷마다 하나의 트랜잭션으로 저장한다.
+     */
+    public void saveAll(Collection<Order> orders) {
+        Map<Integer, List<Order>> byBucket = new LinkedHashMap<>();
+        for (Order o : orders) {
+            byBucket.computeIfAbsent(router.bucketOf(memberIdOf(o)), bucket -> new ArrayList<>()).add(o);
+        }
+        byBucket.forEach((bucket, bucketOrders) -> router.write(memberIdOf(bucketOrders.get(0)), shard -> inShard(shard, em -> {
+            bucketOrders.forEach(em::persist);
+            return null;
+        })));
+    }
+
+    /**
+     * 회원이 속한 샤드 하나에서만 실행한다.
+     */
+    public <R> R inShardOf(long memberId, Function<EntityManager, R> work) {
+        return inShard(router.shardOf(memberId), work);
+    }
+
+    /**
+     * 읽는 동안 회원의 버킷이 다른 샤드로 옮겨지면 옮겨간 샤드에서 다시 읽는다.
+     */
+    public List<Order> findByMember(long memberId) {
+        while (true) {
+            long stamp = router.assignmentStamp();
+            List<Order> orders = inShardOf(memberId, em -> new JPAQueryFactory(em)
+                    .selectFrom(order)
+                    .where(order.member.id.eq(memberId))
+                    .orderBy(order.id.asc())
+                    .fetch());
+            if (router.validate(stamp)) {
+                return orders;
+            }
+        }
+    }
+
+    public <R> R inShard(int shard, Function<EntityManager, R> work) {
+        return shards.get(shard).execute(work);
+    }
+
+    /**
+     * 모든 샤드에 같은 쿼리를 병렬로 실행하고 샤드 순서대로 결과를 돌려준다.
+     *
+     * query의 두 번째 인자는 그 샤드가 가진 버킷의 주문만 고르는 조건이고, 샤드가 하나뿐이면 null이다.
+     * where에 넣어야 같은 주문을 두 샤드에서 읽지 않는다. 실행하는 동안 버킷 배정이 바뀌면 다시 실행한다.
+     */
+    public <R> List<R> scatter(BiFunction<JPAQueryFactory, Predicate, R> query) {
+        while (true) {
+            long stamp = router.assignmentStamp();
+            int[] assignment = router.getAssignment();
+            List<Future<R>> futures = new ArrayList<>(shards.size());
+            for (Shard shard : shards) {
+                Predicate owned = ownedBy(shard.index, assignment);
+                futures.add(executor.submit(() -> shard.execute(em -> query.apply(new JPAQueryFactory(em), owned))));
+            }
+            List<R> results = new ArrayList<>(shards.size());
+            for (Future<R> future : futures) {
+                results.add(await(future));
+            }
+            if (router.validate(stamp)) {
+                return results;
+            }
+            log.debug("bucket assignment changed during scatter, retrying");
+        }
+    }
+
+    /**
+     * 샤드별 결과를 이어 붙인다. 정렬, 페이징은 샤드 안에서만 적용된다.
+     * 쿼리는 QOrder.order를 from에 두어야 한다. 버킷 조건을 where에 더한다.
+     */
+    public <T> List<T> fetchAll(Function<JPAQueryFactory, JPQLQuery<T>> query) {
+        List<T> result = new ArrayList<>();
+        for (List<T> rows : scatter((queryFactory, owned) -> query.apply(queryFactory).where(owned).fetch())) {
+            result.addAll(rows);
+        }
+        return result;
+    }
+
+    public long count(Predicate... where) {
+        long total = 0;
+        for (Long count : scatter((queryFactory, owned) -> queryFactory
+                .select(order.count())
+                .from(order)
+                .where(where)
+                .where(owned)
+                .fetchOne())) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * 샤드마다 count, sum, min, max를 group by로 구한 뒤 key별로 합친다.
+     * avg는 샤드별 평균의 평균이 아니라 전체 합계 / 전체 건수로 계산된다.
+     */
+    public <K> Map<K, ShardAggregate> aggregate(Expression<K> key, NumberExpression<?> value, Predicate... where) {
+        Map<K, ShardAggregate> merged = new HashMap<>();
+        for (List<Tuple> rows : scatter((queryFactory, owned) -> queryFactory
+                .select(key, value.count(), value.sum(), value.min(), value.max())
+                .from(order)
+                .where(where)
+                .where(owned)
+                .groupBy(key)
+                .fetch())) {
+            for (Tuple row : rows) {
+                ShardAggregate partial = new ShardAggregate(row.get(1, Long.class),
+                        toDouble(row.get(2, Number.class)), toDouble(row.get(3, Number.class)),
+                        toDouble(row.get(4, Number.class)));
+                merged.computeIfAbsent(row.get(key), k -> new ShardAggregate()).merge(partial);
+            }
+        }
+        return merged;
+    }
+
+    DataSource getDataSource(int shard) {
+        return shards.get(shard).dataSource;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        for (Shard shard : shards) {
+            shard.close();
+        }
+    }
+
+    /**
+     * mod(member_id, 버킷 수)가 샤드에 배정된 버킷 중 하나인 주문
+     */
+    private static Predicate ownedBy(int shard, int[] assignment) {
+        List<Integer> owned = new ArrayList<>();
+        for (int bucket = 0; bucket < assignment.length; bucket++) {
+            if (assignment[bucket] == shard) {
+                owned.add(bucket);
+            }
+        }
+        if (owned.size() == assignment.length) {
+            return null;
+        }
+        // Hibernate의 mod는 integer를 반환하므로 버킷 번호도 Integer로 비교한다.
+        NumberExpression<Integer> bucket = Expressions.numberTemplate(Integer.class, "mod({0}, {1})",
+                order.member.id, assignment.length);
+        // 버킷이 없는 샤드는 아무 행도 고르지 않는다.
+        return owned.isEmpty() ? bucket.eq(-1) : bucket.in(owned);
+    }
+
+    private static long memberIdOf(Order order) {
+        if (order.getMember() == null || order.getMember().getId() == null) {
+            throw new IllegalArgumentException("order must have a persisted member to be routed: " + order);
+        }
+        return order.getMember().getId();
+    }
+
+    private static double toDouble(Number number) {
+        return number == null ? 0 : number.doubleValue();
+    }
+
+    private static <R> R await(Future<R> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for shard", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static class Shard {
+
+        private final int index;
+        private final HikariDataSource dataSource;
+        private final LocalContainerEntityManagerFactoryBean factoryBean;
+        private final EntityManagerFactory emf;
+
+        Shard(int index, String url, String username, String password, int poolSize, String ddlAuto,
+              Map<String, String> jpaProperties) {
+            this.index = index;
+            dataSource = new HikariDataSource();
+            dataSource.setPoolName("order-shard-" + index);
+            dataSource.setJdbcUrl(url);
+            dataSource.setUsername(username);
+            dataSource.setPassword(password);
+            dataSource.setMaximumPoolSize(poolSize);
+
+            // spring.jpa.properties(배치 크기, 노드 번호 등)는 그대로 따르고 스키마 관련 설정만 바꾼다.
+            Map<String, Object> properties = new HashMap<>(jpaProperties);
+            properties.put("hibernate.hbm2ddl.auto", ddlAuto);
+            properties.put("hibernate.hbm2ddl.schema_filter_provider", ShardSchemaFilterProvider.class.getName());
+            properties.put("hibernate.physical_naming_strategy", SpringPhysicalNamingStrategy.class.getName());
+            properties.put("hibernate.implicit_naming_strategy", SpringImplicitNamingStrategy.class.getName());
+            properties.put(EntityManagerFactoryBuilderImpl.INTEGRATOR_PROVIDER, (IntegratorProvider) () -> List.of(new NoForeignKeys()));
+
+            factoryBean = new LocalContainerEntityManagerFactoryBean();
+            factoryBean.setPersistenceUnitName("order-shard-" + index);
+            factoryBean.setDataSource(dataSource);
+            factoryBean.setPackagesToScan(Order.class.getPackage().getName());
+            factoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+            factoryBean.setJpaPropertyMap(properties);
+            try {
+                factoryBean.afterPropertiesSet();
+            } catch (RuntimeException e) {
+                dataSource.close();
+                throw e;
+            }
+            emf = factoryBean.getObject();
+        }
+
+        <R> R execute(Function<EntityManager, R> work) {
+            EntityManager em = emf.createEntityManager();
+            EntityTransaction transaction = em.getTransaction();
+            try {
+                transaction.begin();
+                R result = work.apply(em);
+                transaction.commit();
+                return result;
+            } catch (RuntimeException e) {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                throw e;
+            } finally {
+                em.close();
+            }
+        }
+
+        void close() {
+            factoryBean.destroy();
+            dataSource.close();
+        }
+    }
+
+    /**
+     * 스키마를 만들기 전에 외래 키 생성을 끈다. 샤드에는 참조할 member, item 테이블이 없다.
+     */
+    private static class NoForeignKeys implements Integrator {
+
+        @Override
+        public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory,
+                              SessionFactoryServiceRegistry serviceRegistry) {
+            for (Table table : metadata.collectTableMappings()) {
+                Iterator<ForeignKey> foreignKeys = table.getForeignKeyIterator();
+                while (foreignKeys.hasNext()) {
+                    foreignKeys.next().disableCreation();
+                }
+            }
+        }
+
+        @Override
+        public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+        }
+    }
+}
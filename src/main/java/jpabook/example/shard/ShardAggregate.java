@@ -0,0 +1,39 @@
+package jpabook.example.shard;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 샤드별 부분 집계를 합칠 수 있는 형태로 보관한다. 평균은 합계와 건수로 다시 계산한다.
+ */
+@Getter
+@ToString
+public class ShardAggregate {
+
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public ShardAggregate() {
+    }
+
+    public ShardAggregate(long count, double sum, double min, double max) {
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+    }
+
+    public double getAvg() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    public ShardAggregate merge(ShardAggregate other) {
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        return this;
+    }
+}
@@ -0,0 +1,145 @@
+package jpabook.example.shard;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntFunction;
+
+/**
+ * member_id를 버킷으로, 버킷을 샤드로 연결한다.
+ *
+ * 버킷은 mod(member_id, buckets)로 정해지고 바뀌지 않는다. 재분배는 버킷 단위로 샤드만 바꾼다.
+ * 버킷 배정표는 메모리에만 있으므로 재분배 후에는 getAssignment()를 jpabook.shard.assignment에 저장해야 한다.
+ */
+public class ShardRouter {
+
+    private final int bucketCount;
+    private final int shardCount;
+    private volatile int[] assignment;
+    private final StampedLock assignmentLock = new StampedLock();
+    private final StampedLock[] bucketLocks;
+
+    public ShardRouter(int bucketCount, int shardCount) {
+        this(bucketCount, shardCount, defaultAssignment(bucketCount, shardCount));
+    }
+
+    public ShardRouter(int bucketCount, int shardCount, int[] assignment) {
+        if (bucketCount < shardCount || shardCount <= 0) {
+            throw new IllegalArgumentException("need at least one bucket per shard: buckets=" + bucketCount
+                    + ", shards=" + shardCount);
+        }
+        if (assignment.length != bucketCount) {
+            throw new IllegalArgumentException("assignment must have " + bucketCount + " entries: " + assignment.length);
+        }
+        for (int shard : assignment) {
+            checkShard(shard, shardCount);
+        }
+        this.bucketCount = bucketCount;
+        this.shardCount = shardCount;
+        this.assignment = assignment.clone();
+        this.bucketLocks = new StampedLock[bucketCount];
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            bucketLocks[bucket] = new StampedLock();
+        }
+    }
+
+    public int getBucketCount() {
+        return bucketCount;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public int bucketOf(long memberId) {
+        return (int) Math.floorMod(memberId, (long) bucketCount);
+    }
+
+    public int shardOfBucket(int bucket) {
+        return assignment[bucket];
+    }
+
+    public int shardOf(long memberId) {
+        return assignment[bucketOf(memberId)];
+    }
+
+    /**
+     * 회원의 샤드에 쓰기 작업을 실행한다. 작업하는 동안 버킷이 다른 샤드로 옮겨지지 않는다.
+     * 옮기는 중인 버킷이면 기다리지 않고 실패한다.
+     */
+    public <R> R write(long memberId, IntFunction<R> work) {
+        int bucket = bucketOf(memberId);
+        StampedLock lock = bucketLocks[bucket];
+        long stamp = lock.tryReadLock();
+        if (stamp == 0) {
+            throw new IllegalStateException("bucket " + bucket + " is being moved, retry later");
+        }
+        try {
+            return work.apply(assignment[bucket]);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int[] getAssignment() {
+        return assignment.clone();
+    }
+
+    /**
+     * 배정표를 읽기 전에 받아두고, 작업이 끝난 뒤 validate()로 그 사이 배정이 바뀌었는지 확인한다.
+     */
+    public long assignmentStamp() {
+        return assignmentLock.tryOptimisticRead();
+    }
+
+    public boolean validate(long stamp) {
+        return stamp != 0 && assignmentLock.validate(stamp);
+    }
+
+    public String describe() {
+        return Arrays.toString(assignment).replaceAll("[\\[\\] ]", "");
+    }
+
+    /**
+     * 진행 중인 쓰기가 끝날 때까지 기다린 뒤 버킷에 대한 새 쓰기를 막는다.
+     */
+    long freeze(int bucket) {
+        return bucketLocks[bucket].writeLock();
+    }
+
+    void unfreeze(int bucket, long stamp) {
+        bucketLocks[bucket].unlockWrite(stamp);
+    }
+
+    void assign(int bucket, int shard) {
+        checkShard(shard, shardCount);
+        long stamp = assignmentLock.writeLock();
+        try {
+            int[] next = assignment.clone();
+            next[bucket] = shard;
+            assignment = next;
+        } finally {
+            assignmentLock.unlockWrite(stamp);
+        }
+    }
+
+    static int[] parseAssignment(String value) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .mapToInt(Integer::parseInt)
+                .toArray();
+    }
+
+    private static int[] defaultAssignment(int bucketCount, int shardCount) {
+        int[] assignment = new int[bucketCount];
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            assignment[bucket] = bucket % shardCount;
+        }
+        return assignment;
+    }
+
+    private static void checkShard(int shard, int shardCount) {
+        if (shard < 0 || shard >= shardCount) {
+            throw new IllegalArgumentException("shard must be between 0 and " + (shardCount - 1) + ": " + shard);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package jpabook.example.shard;
+
+import org.hibernate.boot.model.relational.Namespace;
+import org.hibernate.boot.model.relational.Sequence;
+import org.hibernate.mapping.Table;
+import org.hibernate.tool.schema.spi.SchemaFilter;
+import org.hibernate.tool.schema.spi.SchemaFilterProvider;
+
+/**
+ * 샤드 DB에는 orders 테이블만 만든다. 다른 엔티티는 Order의 연관관계 매핑 때문에 등록만 되어 있다.
+ */
+public class ShardSchemaFilterProvider implements SchemaFilterProvider {
+
+    static final String SHARDED_TABLE = "orders";
+
+    private static final SchemaFilter ORDERS_ONLY = new SchemaFilter() {
+        @Override
+        public boolean includeNamespace(Namespace namespace) {
+            return true;
+        }
+
+        @Override
+        public boolean includeTable(Table table) {
+            return SHARDED_TABLE.equalsIgnoreCase(table.getName());
+        }
+
+        @Override
+        public boolean includeSequence(Sequence sequence) {
+            return false;
+        }
+    };
+
+    @Override
+    public SchemaFilter getCreateFilter() {
+        return ORDERS_ONLY;
+    }
+
+    @Override
+    public SchemaFilter getDropFilter() {
+        return ORDERS_ONLY;
+    }
+
+    @Override
+    public SchemaFilter getMigrateFilter() {
+        return ORDERS_ONLY;
+    }
+
+    @Override
+    public SchemaFilter getValidateFilter() {
+        return ORDERS_ONLY;
+    }
+}
@@ -0,0 +1,100 @@
+package jpabook.example.shard;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 시간(41비트, ms) + 노드(10비트) + 순번(12비트)으로 된 64비트 id.
+ *
+ * DB 시퀀스 없이 애플리케이션 인스턴스마다 겹치지 않는 id를 만들고, id 순서가 생성 시간 순서와 같다.
+ * 같은 노드 번호를 쓰는 생성기는 하나의 할당기를 공유해야 하므로 forNode()로 얻는다.
+ */
+public final class SnowflakeIdAllocator {
+
+    public static final Instant EPOCH = Instant.parse("2021-01-01T00:00:00Z");
+
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    public static final int MAX_NODE = (1 << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int TIMESTAMP_SHIFT = NODE_BITS + SEQUENCE_BITS;
+
+    private static final Map<Integer, SnowflakeIdAllocator> ALLOCATORS = new ConcurrentHashMap<>();
+
+    private final int node;
+    private long lastMillis = -1;
+    private long sequence;
+
+    private SnowflakeIdAllocator(int node) {
+        this.node = node;
+    }
+
+    public static SnowflakeIdAllocator forNode(int node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("node must be between 0 and " + MAX_NODE + ": " + node);
+        }
+        return ALLOCATORS.computeIfAbsent(node, SnowflakeIdAllocator::new);
+    }
+
+    public int getNode() {
+        return node;
+    }
+
+    public synchronized long nextId() {
+        long millis = currentMillis();
+        if (millis < lastMillis) {
+            // 시계가 뒤로 가면 이전 시각을 따라잡을 때까지 기다린다.
+            millis = waitUntil(lastMillis);
+        }
+        if (millis == lastMillis) {
+            sequence = (sequence + 1) & SEQUENCE_MASK;
+            if (sequence == 0) {
+                millis = waitUntil(lastMillis + 1);
+            }
+        } else {
+            sequence = 0;
+        }
+        lastMillis = millis;
+        return (millis << TIMESTAMP_SHIFT) | ((long) node << SEQUENCE_BITS) | sequence;
+    }
+
+    public static Instant timestampOf(long id) {
+        return EPOCH.plusMillis(id >>> TIMESTAMP_SHIFT);
+    }
+
+    public static int nodeOf(long id) {
+        return (int) ((id >>> SEQUENCE_BITS) & MAX_NODE);
+    }
+
+    /**
+     * 해당 시각 이후에 만들어진 id는 모두 이 값 이상이다. 시간 범위를 id 범위 조건으로 바꿀 때 사용한다.
+     */
+    public static long minIdAt(Instant instant) {
+        long millis = Math.max(0, instant.toEpochMilli() - EPOCH.toEpochMilli());
+        return millis << TIMESTAMP_SHIFT;
+    }
+
+    /**
+     * 시각, 노드, 순번으로 id를 직접 만든다. 대량 데이터를 만들 때처럼 시각을 정해서 넣어야 할 때 사용한다.
+     */
+    public static long idOf(Instant instant, int node, int sequence) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("node must be between 0 and " + MAX_NODE + ": " + node);
+        }
+        return minIdAt(instant) | ((long) node << SEQUENCE_BITS) | (sequence & SEQUENCE_MASK);
+    }
+
+    private static long currentMillis() {
+        return System.currentTimeMillis() - EPOCH.toEpochMilli();
+    }
+
+    private static long waitUntil(long millis) {
+        long now = currentMillis();
+        while (now < millis) {
+            Thread.onSpinWait();
+            now = currentMillis();
+        }
+        return now;
+    }
+}
@@ -0,0 +1,32 @@
+package jpabook.example.startup;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+
+/**
+ * 첫 번째 SQL 실행 시점을 StartupTimeline에 기록한다.
+ */
+@Component
+public class FirstQueryListener extends SimpleJdbcEventListener {
+
+    private final StartupTimeline startupTimeline;
+
+    private volatile boolean recorded;
+
+    public FirstQueryListener(ObjectProvider<StartupTimeline> startupTimeline) {
+        // JPA 부트스트랩 스레드에서 빈을 조회하면 빈 팩토리 잠금을 기다리므로 생성 시점에 찾아둔다.
+        this.startupTimeline = startupTimeline.getIfAvailable();
+    }
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        if (!recorded && startupTimeline != null) {
+            recorded = true;
+            startupTimeline.mark(StartupTimeline.FIRST_QUERY);
+        }
+    }
+}
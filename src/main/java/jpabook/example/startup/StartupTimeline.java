@@ -0,0 +1,90 @@
+package jpabook.example.startup;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationContextInitializedEvent;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.boot.context.event.ApplicationPreparedEvent;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.boot.context.event.ApplicationStartingEvent;
+import org.springframework.boot.context.event.SpringApplicationEvent;
+import org.springframework.context.ApplicationListener;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM 시작부터 각 기동 단계까지 걸린 시간을 기록한다.
+ * SpringApplication 이벤트와 JPA 부트스트랩 완료, 첫 쿼리 실행 시점을 남긴다.
+ */
+@Slf4j
+public class StartupTimeline implements ApplicationListener<SpringApplicationEvent> {
+
+    public static final String JPA_BOOTSTRAPPED = "jpa.bootstrapped";
+    public static final String FIRST_QUERY = "first.query";
+
+    private final long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private final long createdNanos = System.nanoTime();
+    private final long createdMillis = System.currentTimeMillis();
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+
+    @Override
+    public void onApplicationEvent(SpringApplicationEvent event) {
+        if (event instanceof ApplicationStartingEvent) {
+            mark("application.starting");
+        } else if (event instanceof ApplicationEnvironmentPreparedEvent) {
+            mark("environment.prepared");
+        } else if (event instanceof ApplicationContextInitializedEvent) {
+            mark("context.initialized");
+        } else if (event instanceof ApplicationPreparedEvent) {
+            mark("context.prepared");
+        } else if (event instanceof ApplicationStartedEvent) {
+            mark("context.refreshed");
+        } else if (event instanceof ApplicationReadyEvent) {
+            mark("application.ready");
+            log.info("startup timeline: {}", getPhases());
+        }
+    }
+
+    /**
+     * 같은 단계는 처음 한 번만 기록한다.
+     */
+    public synchronized void mark(String phase) {
+        phases.putIfAbsent(phase, System.nanoTime());
+    }
+
+    public synchronized boolean isMarked(String phase) {
+        return phases.containsKey(phase);
+    }
+
+    /**
+     * 단계별로 JVM 시작 시점부터의 경과 시간
+     */
+    public synchronized Map<String, Duration> getPhases() {
+        long offsetMillis = createdMillis - jvmStartMillis;
+        Map<String, Duration> result = new LinkedHashMap<>();
+        phases.forEach((phase, nanos) -> result.put(phase,
+                Duration.ofMillis(offsetMillis + TimeUnit.NANOSECONDS.toMillis(nanos - createdNanos))));
+        return result;
+    }
+
+    /**
+     * 직전 단계부터 해당 단계까지 걸린 시간
+     */
+    public synchronized Map<String, Duration> getPhaseDurations() {
+        Map<String, Duration> result = new LinkedHashMap<>();
+        Duration previous = Duration.ZERO;
+        for (Map.Entry<String, Duration> entry : getPhases().entrySet()) {
+            result.put(entry.getKey(), entry.getValue().minus(previous));
+            previous = entry.getValue();
+        }
+        return result;
+    }
+
+    public synchronized Duration getTimeToFirstQuery() {
+        return getPhases().get(FIRST_QUERY);
+    }
+}
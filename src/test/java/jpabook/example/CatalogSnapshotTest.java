@@ -0,0 +1,110 @@
+package jpabook.example;
+
+import jpabook.example.catalog.CatalogEntry;
+import jpabook.example.catalog.CatalogSnapshot;
+import jpabook.example.catalog.CatalogSnapshotStore;
+import jpabook.example.catalog.CatalogSnapshotWriter;
+import jpabook.example.catalog.CatalogView;
+import jpabook.example.domain.Item;
+import jpabook.example.domain.Team;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 스냅샷은 커밋된 데이터로 만들어지므로 이 테스트는 @Transactional을 사용하지 않는다.
+ */
+@SpringBootTest
+public class CatalogSnapshotTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    CatalogSnapshotStore catalogSnapshotStore;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void writeAndOpen(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("catalog.bin");
+        CatalogSnapshotWriter.write(file,
+                List.of(new CatalogEntry(3, "teamC"), new CatalogEntry(1, "teamA"), new CatalogEntry(2, "팀B")),
+                List.of(new CatalogEntry(10, "item1")));
+
+        CatalogSnapshot snapshot = CatalogSnapshot.open(file);
+        CatalogView view = snapshot.newView();
+
+        assertThat(snapshot.getTeamCount()).isEqualTo(3);
+        assertThat(snapshot.findTeam(1, view)).isTrue();
+        assertThat(view.getName()).isEqualTo("teamA");
+        assertThat(snapshot.findTeam(2, view)).isTrue();
+        assertThat(view.nameEquals("팀B")).isTrue();
+        assertThat(snapshot.findTeam(3, view)).isTrue();
+        assertThat(view.nameEquals("teamC")).isTrue();
+        assertThat(view.nameEquals("teamA")).isFalse();
+        assertThat(snapshot.findTeam(4, view)).isFalse();
+
+        assertThat(snapshot.findItem(10, view)).isTrue();
+        assertThat(view.getName()).isEqualTo("item1");
+        assertThat(snapshot.findItem(1, view)).isFalse();
+    }
+
+    @Test
+    void refreshAfterCommit() throws Exception {
+        Item item = transactionTemplate.execute(status -> {
+            Team team = new Team("catalogTeam");
+            em.persist(team);
+            Item newItem = new Item("catalogItem");
+            em.persist(newItem);
+            return newItem;
+        });
+
+        // 커밋 후 비동기로 스냅샷이 교체된다.
+        CatalogView view = new CatalogView();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!catalogSnapshotStore.findItem(item.getId(), view) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        assertThat(catalogSnapshotStore.findItem(item.getId(), view)).isTrue();
+        assertThat(view.getName()).isEqualTo("catalogItem");
+
+        // 같은 파일을 다시 열면 DB 조회 없이 재사용할 수 있다.
+        CatalogSnapshot reopened = CatalogSnapshot.open(catalogSnapshotStore.getSnapshot().getPath());
+        assertThat(reopened.findItem(item.getId(), view)).isTrue();
+    }
+
+    /**
+     * 남아 있던 파일이 DB와 맞지 않으면 그대로 쓰지 않고 다시 만든다.
+     */
+    @Test
+    void staleFileIsRebuilt(@TempDir Path dir) throws Exception {
+        Item item = transactionTemplate.execute(status -> {
+            Item newItem = new Item("staleCheckItem");
+            em.persist(newItem);
+            return newItem;
+        });
+        Path file = dir.resolve("catalog.bin");
+        CatalogSnapshotWriter.write(file, List.of(new CatalogEntry(1, "oldTeam")), List.of(new CatalogEntry(1, "oldItem")));
+
+        CatalogSnapshotStore store = new CatalogSnapshotStore(entityManagerFactory, file.toString());
+        CatalogView view = new CatalogView();
+
+        assertThat(store.findItem(item.getId(), view)).isTrue();
+        assertThat(view.getName()).isEqualTo("staleCheckItem");
+    }
+}
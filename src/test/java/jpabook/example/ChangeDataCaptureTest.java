@@ -0,0 +1,204 @@
+package jpabook.example;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import jpabook.example.cdc.BulkChangeCapture;
+import jpabook.example.cdc.CdcEntity;
+import jpabook.example.cdc.ChangeConsumer;
+import jpabook.example.cdc.ChangeEvent;
+import jpabook.example.cdc.ChangeLog;
+import jpabook.example.cdc.ChangeSubscription;
+import jpabook.example.cdc.ChangeType;
+import jpabook.example.domain.Member;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import static jpabook.example.domain.QMember.member;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 변경은 커밋된 뒤에 기록되므로 이 테스트는 @Transactional을 사용하지 않는다.
+ */
+@SpringBootTest
+public class ChangeDataCaptureTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    ChangeLog changeLog;
+
+    @Autowired
+    BulkChangeCapture bulkChangeCapture;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Test
+    void entityChanges() {
+        ChangeConsumer consumer = changeLog.tail(changeLog.getLastSequence() + 1);
+
+        Long id = transactionTemplate.execute(status -> {
+            Member member = new Member("cdc", 10, null);
+            em.persist(member);
+            return member.getId();
+        });
+        transactionTemplate.executeWithoutResult(status -> em.find(Member.class, id).setAge(11));
+        transactionTemplate.executeWithoutResult(status -> {
+            em.persist(new Member("rolled back", 10, null));
+            status.setRollbackOnly();
+        });
+        transactionTemplate.executeWithoutResult(status -> em.remove(em.find(Member.class, id)));
+
+        List<ChangeEvent> events = consumer.poll(100);
+        assertThat(events).extracting(ChangeEvent::getType)
+                .containsExactly(ChangeType.INSERT, ChangeType.UPDATE, ChangeType.DELETE);
+        assertThat(events).allSatisfy(event -> {
+            assertThat(event.getEntity()).isEqualTo(CdcEntity.MEMBER);
+            assertThat(event.getEntityId()).isEqualTo(id);
+        });
+        assertThat(events.get(1).getSequence()).isEqualTo(events.get(0).getSequence() + 1);
+    }
+
+    @Test
+    void bulkChanges() {
+        List<Long> ids = transactionTemplate.execute(status -> {
+            List<Long> created = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                Member member = new Member("bulk" + i, i, null);
+                em.persist(member);
+                created.add(member.getId());
+            }
+            return created;
+        });
+        ChangeConsumer consumer = changeLog.tail(changeLog.getLastSequence() + 1);
+
+        long updated = bulkChangeCapture.update(member, member.id.in(ids).and(member.age.goe(2)),
+                clause -> clause.set(member.age, member.age.add(100)));
+        long deleted = bulkChangeCapture.delete(member, member.id.in(ids));
+
+        assertThat(updated).isEqualTo(3);
+        assertThat(deleted).isEqualTo(5);
+        List<ChangeEvent> events = consumer.poll(100);
+        assertThat(events.stream().filter(e -> e.getType() == ChangeType.UPDATE).map(ChangeEvent::getEntityId))
+                .containsExactlyElementsOf(ids.subList(2, 5));
+        assertThat(events.stream().filter(e -> e.getType() == ChangeType.DELETE).map(ChangeEvent::getEntityId))
+                .containsExactlyElementsOf(ids);
+        assertThat(events).extracting(ChangeEvent::getType).doesNotContain(ChangeType.TABLE);
+    }
+
+    /**
+     * BulkChangeCapture를 거치지 않은 벌크 연산은 커밋된 뒤 테이블 단위 변경으로 한 건 남는다.
+     */
+    @Test
+    void bulkStatements() {
+        ChangeConsumer consumer = changeLog.tail(changeLog.getLastSequence() + 1);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            em.createQuery("update Member m set m.age = m.age + 1 where m.name = 'bulkStatement'").executeUpdate();
+            queryFactory.delete(member).where(member.name.eq("bulkStatement")).execute();
+        });
+        transactionTemplate.executeWithoutResult(status -> {
+            queryFactory.update(member).set(member.age, 1).where(member.name.eq("bulkStatement")).execute();
+            status.setRollbackOnly();
+        });
+
+        List<ChangeEvent> events = consumer.poll(100);
+        assertThat(events).extracting(ChangeEvent::getType).containsExactly(ChangeType.TABLE);
+        assertThat(events.get(0).getEntity()).isEqualTo(CdcEntity.MEMBER);
+        assertThat(events.get(0).getEntityId()).isZero();
+    }
+
+    @Test
+    void batchedPollAndReplay(@TempDir Path dir) throws Exception {
+        try (ChangeLog log = ChangeLog.open(dir, 16 + 32 * 10, 100, false)) {
+            for (long id = 1; id <= 25; id++) {
+                log.append(ChangeType.INSERT, CdcEntity.ORDER, id);
+            }
+            assertThat(log.getSegmentCount()).isEqualTo(3);
+
+            ChangeConsumer consumer = log.tail(1);
+            assertThat(consumer.poll(10)).extracting(ChangeEvent::getEntityId)
+                    .containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L);
+            assertThat(consumer.poll(100)).hasSize(15);
+            assertThat(consumer.poll(100)).isEmpty();
+            assertThat(consumer.getPosition()).isEqualTo(26);
+
+            consumer.seek(8);
+            assertThat(consumer.poll(4)).extracting(ChangeEvent::getSequence).containsExactly(8L, 9L, 10L, 11L);
+
+            Thread writer = new Thread(() -> {
+                sleep(50);
+                log.append(ChangeType.DELETE, CdcEntity.ORDER, 99);
+            });
+            writer.start();
+            consumer.seek(26);
+            List<ChangeEvent> waited = consumer.poll(10, Duration.ofSeconds(5));
+            writer.join();
+            assertThat(waited).extracting(ChangeEvent::getEntityId).containsExactly(99L);
+        }
+    }
+
+    @Test
+    void reopenAndRetention(@TempDir Path dir) throws Exception {
+        try (ChangeLog log = ChangeLog.open(dir, 16 + 32 * 10, 2, false)) {
+            for (long id = 1; id <= 25; id++) {
+                log.append(ChangeType.UPDATE, CdcEntity.MEMBER, id);
+            }
+            assertThat(log.getSegmentCount()).isEqualTo(2);
+            assertThat(log.getFirstSequence()).isEqualTo(11);
+            assertThatThrownBy(() -> log.tail(1).poll(10)).isInstanceOf(IllegalArgumentException.class);
+        }
+
+        try (ChangeLog log = ChangeLog.open(dir, 16 + 32 * 10, 2, false)) {
+            assertThat(log.getLastSequence()).isEqualTo(25);
+            assertThat(log.append(ChangeType.DELETE, CdcEntity.MEMBER, 26)).isEqualTo(26);
+            List<ChangeEvent> events = log.tail(11).poll(100);
+            assertThat(events).extracting(ChangeEvent::getSequence).first().isEqualTo(11L);
+            assertThat(events).extracting(ChangeEvent::getEntityId).last().isEqualTo(26L);
+            assertThat(events).hasSize(16);
+        }
+    }
+
+    @Test
+    void subscription(@TempDir Path dir) throws Exception {
+        try (ChangeLog log = ChangeLog.open(dir, 1024 * 1024, 2, false)) {
+            List<List<ChangeEvent>> batches = new CopyOnWriteArrayList<>();
+            try (ChangeSubscription subscription = log.subscribe(1, 50, batches::add)) {
+                for (long id = 1; id <= 120; id++) {
+                    log.append(ChangeType.INSERT, CdcEntity.TEAM, id);
+                }
+                long deadline = System.currentTimeMillis() + 5000;
+                while (subscription.getDeliveredSequence() < 120 && System.currentTimeMillis() < deadline) {
+                    sleep(10);
+                }
+                assertThat(subscription.getDeliveredSequence()).isEqualTo(120);
+            }
+            assertThat(batches).allSatisfy(batch -> assertThat(batch.size()).isLessThanOrEqualTo(50));
+            assertThat(batches.stream().flatMap(List::stream).map(ChangeEvent::getEntityId)
+                    .collect(Collectors.toList())).hasSize(120).isSorted();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package jpabook.example;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jpabook.example.pool.ConnectionPoolMetrics;
+import jpabook.example.pool.PoolSizeAdvisor;
+import jpabook.example.pool.PoolSizeRecommendation;
+import jpabook.example.pool.PoolSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 클라이언트 스레드 수를 고정하고 풀 크기만 바꿔 가며 처리량을 잰다.
+ *
+ * ./gradlew benchmark --tests '*ConnectionPoolLoadTest'
+ *
+ * 처리량이 최대값의 90%에 처음 도달하는 풀 크기를 꺾이는 지점(knee)으로 보고, 그보다 큰 풀에서는
+ * 처리량은 그대로인데 획득 대기 대신 DB 안에서 기다리는 시간만 늘어난다.
+ */
+@Tag("benchmark")
+@SpringBootTest
+public class ConnectionPoolLoadTest {
+
+    static final String PREFIX = "pool-load-";
+    static final int ROWS = 20_000;
+    static final int CLIENTS = 32;
+    static final int[] POOL_SIZES = {1, 2, 4, 8, 16, 32};
+    static final Duration WARMUP = Duration.ofSeconds(1);
+    static final Duration MEASURE = Duration.ofSeconds(3);
+
+    @Autowired
+    DataSourceProperties dataSourceProperties;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanup() {
+        jdbcTemplate.update("delete from member where name like ?", PREFIX + "%");
+    }
+
+    @Test
+    void throughputCurve() throws Exception {
+        List<Object[]> rows = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            rows.add(new Object[]{800_000_000L + i, i % 100, PREFIX + i});
+        }
+        jdbcTemplate.batchUpdate("insert into member (member_id, age, name) values (?, ?, ?)", rows);
+
+        double best = 0;
+        double[] throughput = new double[POOL_SIZES.length];
+        PoolSnapshot[] snapshots = new PoolSnapshot[POOL_SIZES.length];
+        for (int i = 0; i < POOL_SIZES.length; i++) {
+            try (HikariDataSource pool = dataSourceProperties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class).build()) {
+                pool.setMaximumPoolSize(POOL_SIZES[i]);
+                pool.setMinimumIdle(POOL_SIZES[i]);
+                ConnectionPoolMetrics metrics = new ConnectionPoolMetrics(0);
+                DataSource dataSource = metrics.instrument(pool);
+
+                run(dataSource, WARMUP);
+                metrics.reset();
+                long queries = run(dataSource, MEASURE);
+
+                throughput[i] = queries / (double) MEASURE.getSeconds();
+                snapshots[i] = metrics.snapshot();
+                best = Math.max(best, throughput[i]);
+            }
+        }
+
+        int knee = -1;
+        System.out.println("pool  queries/s  acquire p95  hold mean  hold p95");
+        for (int i = 0; i < POOL_SIZES.length; i++) {
+            if (knee < 0 && throughput[i] >= best * 0.9) {
+                knee = POOL_SIZES[i];
+            }
+            System.out.printf("%4d  %9.0f  %9.2fms  %7.2fms  %6.2fms%n", POOL_SIZES[i], throughput[i],
+                    snapshots[i].getAcquireTime().getP95().toNanos() / 1e6,
+                    snapshots[i].getHoldTime().getMean().toNanos() / 1e6,
+                    snapshots[i].getHoldTime().getP95().toNanos() / 1e6);
+        }
+        System.out.println("knee = " + knee + " connections");
+
+        for (int i = 0; i < POOL_SIZES.length; i++) {
+            PoolSizeRecommendation recommendation = PoolSizeAdvisor.recommend(snapshots[i], 0.25,
+                    Runtime.getRuntime().availableProcessors(), Duration.ofMillis(1));
+            System.out.println("advisor at " + POOL_SIZES[i] + " -> " + recommendation.getRecommendedSize()
+                    + " (" + recommendation.getReason() + ")");
+        }
+
+        assertThat(knee).isPositive();
+    }
+
+    private long run(DataSource dataSource, Duration duration) throws InterruptedException {
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        LongAdder queries = new LongAdder();
+        long deadline = System.nanoTime() + duration.toNanos();
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        for (int c = 0; c < CLIENTS; c++) {
+            clients.execute(() -> {
+                while (System.nanoTime() < deadline) {
+                    template.queryForObject("select count(*) from member where name like ? and age > ?",
+                            Long.class, PREFIX + "%", ThreadLocalRandom.current().nextInt(100));
+                    queries.increment();
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(duration.toMillis() + 60_000, TimeUnit.MILLISECONDS);
+        return queries.sum();
+    }
+}
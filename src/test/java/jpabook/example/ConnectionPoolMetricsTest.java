@@ -0,0 +1,153 @@
+package jpabook.example;
+
+import jpabook.example.pool.ConnectionLease;
+import jpabook.example.pool.ConnectionPoolMetrics;
+import jpabook.example.pool.LatencyHistogram;
+import jpabook.example.pool.LatencySummary;
+import jpabook.example.pool.PoolInstrumentation;
+import jpabook.example.pool.PoolSizeAdvisor;
+import jpabook.example.pool.PoolSizeRecommendation;
+import jpabook.example.pool.PoolSnapshot;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+public class ConnectionPoolMetricsTest {
+
+    @Autowired
+    DataSource dataSource;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    PoolInstrumentation instrumentation;
+
+    @Test
+    void snapshot() {
+        instrumentation.getMetrics().reset();
+
+        for (int i = 0; i < 5; i++) {
+            jdbcTemplate.queryForObject("select count(*) from member", Long.class);
+        }
+
+        PoolSnapshot snapshot = instrumentation.snapshot();
+        assertThat(snapshot.getMaximumPoolSize()).isEqualTo(10);
+        assertThat(snapshot.getAcquired()).isGreaterThanOrEqualTo(5);
+        assertThat(snapshot.getHoldTime().getCount()).isGreaterThanOrEqualTo(5);
+        assertThat(snapshot.getActive()).isGreaterThanOrEqualTo(0);
+        assertThat(snapshot.getIdle()).isGreaterThan(0);
+        assertThat(snapshot.getPeakInUse()).isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    void leakDetection() throws Exception {
+        Connection connection = dataSource.getConnection();
+        try {
+            List<ConnectionLease> leaks = instrumentation.getMetrics().findLeaks(Duration.ZERO);
+
+            assertThat(leaks).anySatisfy(lease -> {
+                assertThat(lease.getThreadName()).isEqualTo(Thread.currentThread().getName());
+                // 기본값은 획득할 때 호출자 쪽 16개 프레임까지 기록한다.
+                assertThat(lease.getStackTrace()).hasSizeLessThanOrEqualTo(16)
+                        .noneMatch(element -> element.getClassName().startsWith(ConnectionPoolMetrics.class.getName()))
+                        .anyMatch(element -> element.getMethodName().equals("leakDetection"));
+                assertThat(lease.toThrowable().getMessage()).startsWith("Connection acquired by");
+                assertThat(lease.toThrowable().getStackTrace()).isEqualTo(lease.getStackTrace());
+            });
+        } finally {
+            connection.close();
+        }
+
+        assertThat(instrumentation.getMetrics().findLeaks(Duration.ZERO))
+                .noneMatch(lease -> lease.getThread() == Thread.currentThread());
+    }
+
+    /**
+     * 기록하지 않으면 지금 스택 트레이스를 얻은 위치라고 하지 않는다.
+     */
+    @Test
+    void leakWithoutStackTrace() throws Exception {
+        ConnectionPoolMetrics metrics = new ConnectionPoolMetrics(0);
+        DataSource other = metrics.instrument(new DriverManagerDataSource("jdbc:h2:mem:pool-nostack", "sa", ""));
+
+        try (Connection ignored = other.getConnection()) {
+            ConnectionLease lease = metrics.findLeaks(Duration.ZERO).get(0);
+
+            assertThat(lease.getStackTrace()).isEmpty();
+            assertThat(lease.toThrowable().getMessage()).startsWith("Connection held by")
+                    .contains("not recorded");
+            assertThat(Arrays.stream(lease.toThrowable().getStackTrace()))
+                    .anyMatch(element -> element.getMethodName().equals("leakWithoutStackTrace"));
+        }
+    }
+
+    @Test
+    void metricsPerPool() throws Exception {
+        DataSource other = instrumentation.decorate("otherDataSource",
+                new DriverManagerDataSource("jdbc:h2:mem:pool-other", "sa", ""));
+
+        try (Connection ignored = other.getConnection()) {
+            assertThat(instrumentation.snapshot("otherDataSource").getInUse()).isEqualTo(1);
+        }
+
+        assertThat(instrumentation.getPoolNames()).contains("jpabook", "otherDataSource");
+        assertThat(instrumentation.snapshot("otherDataSource").getAcquired()).isEqualTo(1);
+        // 기본 풀의 측정값은 다른 DataSource로 바뀌지 않는다.
+        assertThat(instrumentation.snapshot().getMaximumPoolSize()).isEqualTo(10);
+    }
+
+    @Test
+    void histogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 95; i++) {
+            histogram.record(100_000); // 100us
+        }
+        for (int i = 0; i < 5; i++) {
+            histogram.record(10_000_000); // 10ms
+        }
+
+        assertThat(histogram.getCount()).isEqualTo(100);
+        assertThat(histogram.percentile(50)).isEqualTo(Duration.ofNanos(128_000));
+        assertThat(histogram.percentile(95)).isEqualTo(Duration.ofNanos(128_000));
+        assertThat(histogram.percentile(99)).isEqualTo(Duration.ofMillis(10));
+        assertThat(histogram.getMax()).isEqualTo(Duration.ofMillis(10));
+    }
+
+    @Test
+    void advisor() {
+        LatencySummary fastAcquire = summary(Duration.ofNanos(50_000));
+        LatencySummary slowAcquire = summary(Duration.ofMillis(20));
+        LatencySummary hold = summary(Duration.ofMillis(5));
+
+        // 1000/s * 5ms = 5 connections, +25% = 6.25
+        PoolSnapshot light = new PoolSnapshot(10, 3, 7, 0, 0, 6, 1_000, 0, Duration.ofSeconds(1), fastAcquire, hold);
+        PoolSizeRecommendation lightRecommendation = PoolSizeAdvisor.recommend(light, 0.25, 8, Duration.ofMillis(1));
+        assertThat(lightRecommendation.getAverageInUse()).isEqualTo(5.0);
+        assertThat(lightRecommendation.getRecommendedSize()).isEqualTo(7);
+        assertThat(lightRecommendation.isSaturated()).isFalse();
+
+        PoolSnapshot saturated = new PoolSnapshot(4, 4, 0, 12, 4, 4, 800, 0, Duration.ofSeconds(1), slowAcquire, hold);
+        PoolSizeRecommendation saturatedRecommendation = PoolSizeAdvisor.recommend(saturated, 0.25, 8, Duration.ofMillis(1));
+        assertThat(saturatedRecommendation.isSaturated()).isTrue();
+        assertThat(saturatedRecommendation.getRecommendedSize()).isEqualTo(5);
+
+        PoolSnapshot huge = new PoolSnapshot(10, 10, 0, 30, 10, 10, 100_000, 0, Duration.ofSeconds(1), slowAcquire, hold);
+        assertThat(PoolSizeAdvisor.recommend(huge, 0.25, 2, Duration.ofMillis(1)).getRecommendedSize()).isEqualTo(5);
+    }
+
+    private static LatencySummary summary(Duration value) {
+        return new LatencySummary(100, value, value, value, value, value);
+    }
+}
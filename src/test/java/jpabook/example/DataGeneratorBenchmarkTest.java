@@ -0,0 +1,64 @@
+package jpabook.example;
+
+import jpabook.example.dataset.DataGenerator;
+import jpabook.example.dataset.Dataset;
+import jpabook.example.dataset.DatasetSpec;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 회원 20만 명, 주문 50만 건을 만들고 스냅샷으로 다시 넣는 시간을 잰다.
+ *
+ * ./gradlew benchmark --tests '*DataGeneratorBenchmarkTest'
+ *
+ * 빈 DB에 복원하는 시간을 재기 위해 스냅샷을 만든 뒤 데이터를 지우고 복원한다.
+ */
+@Tag("benchmark")
+@SpringBootTest
+public class DataGeneratorBenchmarkTest {
+
+    @Autowired
+    DataGenerator generator;
+
+    @Test
+    void generateAndRestore() throws IOException {
+        DatasetSpec spec = new DatasetSpec(42, 1_000, 200_000, 10_000, 500_000);
+        spec.setOrdersFrom(Instant.parse("2023-01-01T00:00:00Z"));
+        spec.setOrdersTo(Instant.parse("2025-01-01T00:00:00Z"));
+        Path snapshot = generator.snapshotPath(spec);
+        FileSystemUtils.deleteRecursively(snapshot);
+
+        Dataset generated = generator.generate(spec);
+        Optional<Dataset> restored = Optional.empty();
+        try {
+            System.out.printf("generate  %,d rows in %d ms (%,.0f rows/s)%n", generated.getRowCount(),
+                    generated.getElapsed().toMillis(), generated.getRowsPerSecond());
+
+            long start = System.nanoTime();
+            generator.snapshot(generated);
+            System.out.printf("snapshot  %d ms%n", (System.nanoTime() - start) / 1_000_000);
+            generator.remove(generated);
+
+            restored = generator.restore(spec);
+            assertThat(restored).isPresent();
+            System.out.printf("restore   %,d rows in %d ms (%,.0f rows/s)%n", restored.get().getRowCount(),
+                    restored.get().getElapsed().toMillis(), restored.get().getRowCount() * 1e3
+                            / Math.max(1, restored.get().getElapsed().toMillis()));
+        } finally {
+            generator.remove(generated);
+            // 복원한 데이터셋은 아이디를 다시 예약하므로 따로 지운다.
+            restored.ifPresent(generator::remove);
+            FileSystemUtils.deleteRecursively(snapshot);
+        }
+    }
+}
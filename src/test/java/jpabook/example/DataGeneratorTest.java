@@ -0,0 +1,179 @@
+package jpabook.example;
+
+import jpabook.example.dataset.DataGenerator;
+import jpabook.example.dataset.Dataset;
+import jpabook.example.dataset.DatasetSpec;
+import jpabook.example.shard.SnowflakeIdAllocator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+public class DataGeneratorTest {
+
+    @Autowired
+    DataGenerator generator;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    List<Dataset> created = new ArrayList<>();
+
+    @AfterEach
+    void cleanup() throws IOException {
+        for (Dataset dataset : created) {
+            generator.remove(dataset);
+            FileSystemUtils.deleteRecursively(generator.snapshotPath(dataset.getSpec()));
+        }
+    }
+
+    @Test
+    void sameSeedGeneratesSameRows() {
+        Dataset first = generate(spec(7));
+        List<String> members = members(first);
+        List<String> orders = orders(first);
+        assertThat(count("team", "team_id", first.getFirstTeamId(), first.getLastTeamId())).isEqualTo(20);
+        assertThat(orders).hasSize(3000);
+        generator.remove(first);
+
+        Dataset second = generate(spec(7));
+        assertThat(second.getFirstTeamId()).isGreaterThan(first.getLastMemberId());
+        assertThat(members(second)).isEqualTo(members);
+        assertThat(orders(second)).isEqualTo(orders);
+        generator.remove(second);
+
+        Dataset other = generate(spec(8));
+        assertThat(orders(other)).isNotEqualTo(orders);
+    }
+
+    @Test
+    void overlappingPeriodIsRejected() {
+        generate(spec(7));
+
+        assertThatThrownBy(() -> generator.generate(spec(8)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("already exist");
+    }
+
+    @Test
+    void ordersAreSkewedAndInPeriod() {
+        Dataset dataset = generate(spec(7));
+
+        // 상품 50개 중 가장 많이 팔린 5개가 주문의 30% 이상이다. 균등 분포면 10% 정도다.
+        List<Long> itemCounts = jdbcTemplate.queryForList("select count(*) from orders"
+                + " where order_id between ? and ? group by item_id order by count(*) desc", Long.class,
+                dataset.getFirstOrderId(), dataset.getLastOrderId());
+        long top = itemCounts.stream().limit(5).mapToLong(Long::longValue).sum();
+        assertThat(top).isGreaterThan(3000 * 3 / 10);
+
+        assertThat(jdbcTemplate.queryForObject("select count(*) from orders o"
+                + " join member m on o.member_id = m.member_id where o.order_id between ? and ?", Long.class,
+                dataset.getFirstOrderId(), dataset.getLastOrderId())).isEqualTo(3000);
+        assertThat(SnowflakeIdAllocator.timestampOf(dataset.getFirstOrderId()))
+                .isEqualTo(Instant.parse("2024-01-01T00:00:00Z"));
+        assertThat(SnowflakeIdAllocator.timestampOf(dataset.getLastOrderId()))
+                .isBefore(Instant.parse("2025-01-01T00:00:00Z"));
+    }
+
+    @Test
+    void snapshotRestoresSameRows() {
+        Dataset generated = generate(spec(9));
+        List<String> members = members(generated);
+        List<String> orders = orders(generated);
+        generator.snapshot(generated);
+        generator.remove(generated);
+        assertThat(members(generated)).isEmpty();
+
+        Optional<Dataset> restored = generator.restore(spec(9));
+
+        assertThat(restored).hasValueSatisfying(dataset -> {
+            created.add(dataset);
+            assertThat(dataset.isRestored()).isTrue();
+            // 아이디는 이 DB에서 다시 예약한다.
+            assertThat(dataset.getFirstTeamId()).isGreaterThan(generated.getLastMemberId());
+            assertThat(members(dataset)).isEqualTo(members);
+            assertThat(orders(dataset)).isEqualTo(orders);
+            Long next = jdbcTemplate.queryForObject("select next value for hibernate_sequence", Long.class);
+            assertThat(next).isGreaterThan(dataset.getLastMemberId());
+        });
+    }
+
+    /**
+     * 같은 기간의 주문이 남아 있으면 복원하지 않고, 기존 행도 지우지 않는다.
+     */
+    @Test
+    void restoreRefusesOverlappingOrders() {
+        Dataset generated = generate(spec(9));
+        generator.snapshot(generated);
+        List<String> orders = orders(generated);
+
+        assertThatThrownBy(() -> generator.restore(spec(9)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("already exist");
+        assertThat(orders(generated)).isEqualTo(orders);
+        assertThat(members(generated)).hasSize(500);
+    }
+
+    @Test
+    void loadReusesSnapshot() {
+        DatasetSpec spec = spec(10);
+        Dataset first = generator.load(spec);
+        created.add(first);
+        List<String> orders = orders(first);
+        generator.remove(first);
+        Dataset second = generator.load(spec);
+        created.add(second);
+
+        assertThat(first.isRestored()).isFalse();
+        assertThat(second.isRestored()).isTrue();
+        assertThat(orders(second)).isEqualTo(orders);
+    }
+
+    private Dataset generate(DatasetSpec spec) {
+        Dataset dataset = generator.generate(spec);
+        created.add(dataset);
+        return dataset;
+    }
+
+    private static DatasetSpec spec(long seed) {
+        DatasetSpec spec = new DatasetSpec(seed, 20, 500, 50, 3000);
+        spec.setOrdersFrom(Instant.parse("2024-01-01T00:00:00Z"));
+        spec.setOrdersTo(Instant.parse("2025-01-01T00:00:00Z"));
+        return spec;
+    }
+
+    /**
+     * 아이디는 만들 때마다 다르므로 데이터셋 안의 상대 위치로 비교한다.
+     */
+    private List<String> members(Dataset dataset) {
+        return jdbcTemplate.query("select name, age, team_id from member where member_id between ? and ?"
+                        + " order by member_id",
+                (rs, i) -> rs.getString(1) + "," + rs.getInt(2) + "," + (rs.getLong(3) - dataset.getFirstTeamId()),
+                dataset.getFirstMemberId(), dataset.getLastMemberId());
+    }
+
+    private List<String> orders(Dataset dataset) {
+        return jdbcTemplate.query("select order_id, member_id, item_id, quantity from orders"
+                        + " where order_id between ? and ? order by order_id",
+                (rs, i) -> rs.getLong(1) + "," + (rs.getLong(2) - dataset.getFirstMemberId()) + ","
+                        + (rs.getLong(3) - dataset.getFirstItemId()) + "," + rs.getInt(4),
+                dataset.getFirstOrderId(), dataset.getLastOrderId());
+    }
+
+    private long count(String table, String column, long first, long last) {
+        return jdbcTemplate.queryForObject("select count(*) from " + table + " where " + column + " between ? and ?",
+                Long.class, first, last);
+    }
+}
@@ -0,0 +1,76 @@
+package jpabook.example;
+
+import jpabook.example.domain.Member;
+import org.hibernate.engine.spi.SelfDirtinessTracker;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 영속성 컨텍스트에 엔티티 10만 개가 있을 때 플러시 시간
+ *
+ * ./gradlew benchmark --tests '*DirtyCheckingBenchmarkTest'
+ * ./gradlew benchmark --tests '*DirtyCheckingBenchmarkTest' -PnoEnhancement
+ *
+ * 바이트코드 향상을 적용하면 변경된 필드만 추적하므로 스냅샷과 모든 속성을 비교하지 않는다.
+ */
+@Tag("benchmark")
+@SpringBootTest
+@Transactional
+public class DirtyCheckingBenchmarkTest {
+
+    static final int ENTITIES = 100_000;
+    static final long FIRST_ID = 900_000_000L;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void flush() {
+        List<Object[]> rows = new ArrayList<>(ENTITIES);
+        for (int i = 0; i < ENTITIES; i++) {
+            rows.add(new Object[]{FIRST_ID + i, i % 100, "benchmark" + i});
+        }
+        jdbcTemplate.batchUpdate("insert into member (member_id, age, name) values (?, ?, ?)", rows);
+
+        List<Member> members = em.createQuery("select m from Member m where m.id >= :id", Member.class)
+                .setParameter("id", FIRST_ID)
+                .getResultList();
+        assertThat(members).hasSize(ENTITIES);
+
+        boolean enhanced = members.get(0) instanceof SelfDirtinessTracker;
+
+        for (int i = 0; i < 3; i++) {
+            em.flush();
+        }
+
+        long cleanNanos = timeFlush();
+
+        for (int i = 0; i < members.size(); i += 100) {
+            members.get(i).setAge(members.get(i).getAge() + 1);
+        }
+        long dirtyNanos = timeFlush();
+
+        System.out.println("enhanced = " + enhanced);
+        System.out.println("flush with 0 dirty entities    = " + cleanNanos / 1_000 + "us");
+        System.out.println("flush with 1% dirty entities   = " + dirtyNanos / 1_000 + "us");
+    }
+
+    private long timeFlush() {
+        long start = System.nanoTime();
+        em.flush();
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,95 @@
+package jpabook.example;
+
+import jpabook.example.domain.Item;
+import jpabook.example.domain.Member;
+import jpabook.example.domain.Order;
+import jpabook.example.domain.Team;
+import org.hibernate.Hibernate;
+import org.hibernate.engine.spi.PersistentAttributeInterceptable;
+import org.hibernate.engine.spi.SelfDirtinessTracker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * build.gradle의 hibernate.enhance 설정으로 엔티티 클래스가 바이트코드 향상되었는지 확인한다.
+ */
+@SpringBootTest
+@Transactional
+public class EnhancementTest {
+
+    @Autowired
+    EntityManager em;
+
+    @BeforeEach
+    void enhanced() {
+        assumeTrue(SelfDirtinessTracker.class.isAssignableFrom(Member.class), "-PnoEnhancement");
+    }
+
+    @Test
+    void enhancedEntities() {
+        assertThat(new Member()).isInstanceOf(SelfDirtinessTracker.class).isInstanceOf(PersistentAttributeInterceptable.class);
+        assertThat(new Order()).isInstanceOf(SelfDirtinessTracker.class);
+        assertThat(new Team()).isInstanceOf(SelfDirtinessTracker.class);
+        assertThat(new Item()).isInstanceOf(SelfDirtinessTracker.class);
+    }
+
+    @Test
+    void dirtyTracking() {
+        Member member = new Member("member1", 10, null);
+        em.persist(member);
+        em.flush();
+
+        SelfDirtinessTracker tracker = (SelfDirtinessTracker) member;
+        assertThat(tracker.$$_hibernate_hasDirtyAttributes()).isFalse();
+
+        member.setAge(20);
+        assertThat(tracker.$$_hibernate_getDirtyAttributes()).containsExactly("age");
+    }
+
+    /**
+     * 향상된 엔티티가 직접 지연 로딩을 처리하므로 프록시 서브클래스가 없다.
+     * getId()는 초기화하지 않고, 다른 속성에 처음 접근할 때 로딩한다.
+     */
+    @Test
+    void lazyToOneWithoutProxy() {
+        Team team = new Team("lazyTeam");
+        Member member = new Member("member1", 10, team);
+        Item item = new Item();
+        em.persist(team);
+        em.persist(member);
+        em.persist(item);
+        Order order = new Order(member, item, 1);
+        em.persist(order);
+        em.flush();
+        em.clear();
+
+        Order found = em.find(Order.class, order.getId());
+
+        assertThat(found.getMember().getClass()).isEqualTo(Member.class);
+        assertThat(found.getMember().getId()).isEqualTo(member.getId());
+        assertThat(Hibernate.isInitialized(found.getMember())).isFalse();
+        assertThat(Hibernate.isInitialized(found.getItem())).isFalse();
+
+        assertThat(found.getMember().getName()).isEqualTo("member1");
+        assertThat(Hibernate.isInitialized(found.getMember())).isTrue();
+    }
+
+    /**
+     * 연관관계 관리는 켜지 않는다. 향상 여부와 관계없이 Member.team을 설정해도 Team.members는 그대로다.
+     */
+    @Test
+    void noAssociationManagement() {
+        Team team = new Team("enhancedTeam");
+        new Member("member1", 10, team);
+
+        assertThat(team.getMembers()).isEmpty();
+    }
+}
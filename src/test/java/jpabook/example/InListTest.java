@@ -0,0 +1,168 @@
+package jpabook.example;
+
+import com.querydsl.core.types.Predicate;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import jpabook.example.domain.Member;
+import jpabook.example.inlist.InListRewriter;
+import jpabook.example.query.CapturedQuery;
+import jpabook.example.query.PlanCacheMetrics;
+import jpabook.example.query.PlanCacheStats;
+import jpabook.example.query.QueryCapture;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static jpabook.example.domain.QMember.member;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "jpabook.plan-cache.statistics=true")
+@Transactional
+public class InListTest {
+
+    static final int MEMBERS = 40;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    InListRewriter inListRewriter;
+
+    @Autowired
+    PlanCacheMetrics planCacheMetrics;
+
+    @Autowired
+    QueryCapture queryCapture;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    List<Long> ids = new ArrayList<>();
+
+    @BeforeEach
+    void init() {
+        for (int i = 0; i < MEMBERS; i++) {
+            Member member = new Member("in-list-member" + i, i, null);
+            em.persist(member);
+            ids.add(member.getId());
+        }
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    void listsArePaddedToPowersOfTwo() {
+        planCacheMetrics.reset();
+        for (int size = 1; size <= 16; size++) {
+            List<Integer> ages = new ArrayList<>();
+            for (int age = 0; age < size; age++) {
+                ages.add(age);
+            }
+            assertThat(queryFactory.selectFrom(member)
+                    .where(member.name.startsWith("in-list-"), member.age.in(ages))
+                    .fetch()).hasSize(size);
+        }
+
+        PlanCacheStats stats = planCacheMetrics.getStats();
+        // 1, 2, 4, 8, 16
+        assertThat(stats.getDistinctStatements()).isEqualTo(5);
+        assertThat(stats.getExecutions()).isEqualTo(16);
+        assertThat(stats.getPlanCacheMisses()).isLessThanOrEqualTo(6);
+        assertThat(stats.getPlanCacheHits()).isGreaterThanOrEqualTo(10);
+        // 통계를 켜도 세션마다 Session Metrics 로그를 남기지 않는다.
+        assertThat(em.getEntityManagerFactory().getProperties())
+                .containsEntry(AvailableSettings.LOG_SESSION_METRICS, false);
+    }
+
+    @Test
+    void largeListBecomesSubquery() {
+        List<Long> requested = new ArrayList<>(ids.subList(0, 10));
+        LongStream.range(0, inListRewriter.getMaxSize()).forEach(i -> requested.add(-1 - i));
+
+        queryCapture.clear();
+        Predicate where = inListRewriter.rewrite(member.id.in(requested).and(member.name.startsWith("in-list-")));
+        List<Member> members = queryFactory.selectFrom(member).where(where).orderBy(member.id.asc()).fetch();
+
+        assertThat(members).extracting(Member::getId).isEqualTo(ids.subList(0, 10));
+        assertThat(queryCapture.getQueries()).extracting(CapturedQuery::getFingerprint)
+                .anyMatch(sql -> sql.contains("in_list_value"));
+        assertThat(jdbcTemplate.queryForObject("select count(*) from in_list_value", Long.class))
+                .isEqualTo(requested.size());
+
+        List<Long> excluded = queryFactory.select(member.id).from(member)
+                .where(inListRewriter.rewrite(member.id.notIn(requested)), member.name.startsWith("in-list-"))
+                .orderBy(member.id.asc())
+                .fetch();
+        assertThat(excluded).isEqualTo(ids.subList(10, MEMBERS));
+    }
+
+    @Test
+    void shortListIsUnchanged() {
+        Predicate where = member.id.in(ids);
+        assertThat(inListRewriter.rewrite(where)).isSameAs(where);
+    }
+
+    @Test
+    void valuesAreRemovedOnCommit() {
+        List<Long> requested = LongStream.range(0, inListRewriter.getMaxSize() + 1).boxed().collect(Collectors.toList());
+        TransactionTemplate requiresNew = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        Long count = requiresNew.execute(status -> {
+            Predicate where = inListRewriter.rewrite(member.id.in(requested));
+            queryFactory.selectFrom(member).where(where).fetch();
+            return jdbcTemplate.queryForObject("select count(*) from in_list_value", Long.class);
+        });
+
+        assertThat(count).isEqualTo(requested.size());
+        assertThat(jdbcTemplate.queryForObject("select count(*) from in_list_value", Long.class)).isZero();
+    }
+
+    @Test
+    void valuesAreRemovedOnRollback() {
+        List<Long> requested = LongStream.range(0, inListRewriter.getMaxSize() + 1).boxed().collect(Collectors.toList());
+        TransactionTemplate requiresNew = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        requiresNew.executeWithoutResult(status -> {
+            queryFactory.selectFrom(member).where(inListRewriter.rewrite(member.id.in(requested))).fetch();
+            status.setRollbackOnly();
+        });
+
+        assertThat(jdbcTemplate.queryForObject("select count(*) from in_list_value", Long.class)).isZero();
+    }
+
+    /**
+     * SUPPORTS로 트랜잭션 없이 동기화만 켜진 경우에는 넣은 값이 바로 커밋되므로 바꾸지 않는다.
+     */
+    @Test
+    void noActualTransactionIsUnchanged() {
+        List<Long> requested = LongStream.range(0, inListRewriter.getMaxSize() + 1).boxed().collect(Collectors.toList());
+        TransactionTemplate notSupported = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        notSupported.setPropagationBehavior(TransactionDefinition.PROPAGATION_NOT_SUPPORTED);
+        TransactionTemplate supports = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        supports.setPropagationBehavior(TransactionDefinition.PROPAGATION_SUPPORTS);
+
+        Predicate where = member.id.in(requested);
+        Predicate rewritten = notSupported.execute(outer -> supports.execute(status -> inListRewriter.rewrite(where)));
+
+        assertThat(rewritten).isSameAs(where);
+    }
+}
@@ -0,0 +1,194 @@
+package jpabook.example;
+
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.JPAExpressions;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import jpabook.example.domain.Member;
+import jpabook.example.domain.MemberDto;
+import jpabook.example.domain.QMember;
+import jpabook.example.domain.Team;
+import jpabook.example.evaluate.InMemoryQueryFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static jpabook.example.domain.QMember.member;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Transactional
+public class InMemoryQueryTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    InMemoryQueryFactory inMemory;
+
+    List<Member> members = new ArrayList<>();
+    List<Long> ids;
+    Team teamA;
+
+    @BeforeEach
+    void init() {
+        teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        for (int i = 0; i < 40; i++) {
+            Team team = i % 5 == 0 ? null : i % 2 == 0 ? teamA : teamB;
+            String name = i % 7 == 0 ? null : "member" + i;
+            Member created = new Member(name, i % 13 * 5, team);
+            em.persist(created);
+            members.add(created);
+        }
+        em.flush();
+        ids = members.stream().map(Member::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    void searchMember2() {
+        assertSame(nameEq("member1"), ageEq(5));
+        assertSame(nameEq("member1"), ageEq(null));
+        assertSame(nameEq(null), ageEq(10));
+        assertSame(nameEq(null), ageEq(null));
+        assertSame(member.isOlderThan(20));
+    }
+
+    @Test
+    void sameSemanticsAsSql() {
+        assertSame(member.name.eq("member3"));
+        assertSame(member.name.ne("member3"));
+        assertSame(member.name.eq("member3").not());
+        assertSame(member.name.contains("ber1"));
+        assertSame(member.name.containsIgnoreCase("BER2"));
+        assertSame(member.name.startsWith("member3"));
+        assertSame(member.name.endsWith("9"));
+        assertSame(member.name.like("member_"));
+        assertSame(member.name.like("%r1%"));
+        assertSame(member.name.isNull());
+        assertSame(member.name.isNotNull().and(member.age.lt(20)));
+        assertSame(member.name.length().goe(8));
+        assertSame(member.name.eq("member1").or(member.age.goe(50)));
+        assertSame(member.name.eq("member1").or(member.age.goe(50)).not());
+        assertSame(member.age.between(10, 30));
+        assertSame(member.age.in(0, 15, 60));
+        assertSame(member.age.notIn(0, 15, 60));
+        assertSame(member.age.add(5).gt(30));
+        assertSame(member.age.multiply(2).loe(40));
+        assertSame(member.age.mod(2).eq(0));
+        assertSame(member.team.name.eq("teamA"));
+        assertSame(member.team.name.ne("teamA"));
+        assertSame(member.team.eq(teamA));
+        assertSame(member.team.isNull());
+    }
+
+    @Test
+    void sameOrderAsSql() {
+        assertSameOrder(member.age.desc(), member.id.asc());
+        assertSameOrder(member.name.asc(), member.id.asc());
+        assertSameOrder(member.name.desc(), member.id.desc());
+        assertSameOrder(member.name.asc().nullsLast(), member.id.asc());
+        assertSameOrder(member.name.desc().nullsFirst(), member.id.asc());
+
+        List<Member> page = inMemory.selectFrom(Member.class, members)
+                .where(member.age.goe(10))
+                .orderBy(member.age.desc(), member.id.asc())
+                .offset(2)
+                .limit(5)
+                .fetch();
+        assertThat(page).containsExactlyElementsOf(queryFactory.selectFrom(member)
+                .where(member.id.in(ids), member.age.goe(10))
+                .orderBy(member.age.desc(), member.id.asc())
+                .offset(2)
+                .limit(5)
+                .fetch());
+    }
+
+    @Test
+    void collectionsAndDtos() {
+        em.clear();
+        Team team = em.find(Team.class, teamA.getId());
+        List<Member> older = inMemory.selectFrom(Member.class, team.getMembers())
+                .where(member.isOlderThan(20))
+                .orderBy(member.age.asc(), member.id.asc())
+                .fetch();
+        assertThat(older).extracting(Member::getId).containsExactlyElementsOf(queryFactory.select(member.id)
+                .from(member)
+                .where(member.team.id.eq(teamA.getId()), member.isOlderThan(20))
+                .orderBy(member.age.asc(), member.id.asc())
+                .fetch());
+
+        List<MemberDto> dtos = members.stream()
+                .map(m -> new MemberDto(m.getName(), m.getAge()))
+                .collect(Collectors.toList());
+        assertThat(inMemory.selectFrom(MemberDto.class, dtos)
+                .where(member.name.startsWith("member1"), member.age.gt(10))
+                .fetchCount())
+                .isEqualTo(queryFactory.selectFrom(member)
+                        .where(member.id.in(ids), member.name.startsWith("member1"), member.age.gt(10))
+                        .fetchCount());
+    }
+
+    @Test
+    void compiledOnce() {
+        int before = inMemory.getCompiler().getCacheSize();
+        java.util.function.Predicate<Member> first = inMemory.predicate(Member.class, member.name.eq("member-cached"));
+        java.util.function.Predicate<Member> second = inMemory.predicate(Member.class, member.name.eq("member-cached"));
+        assertThat(second).isSameAs(first);
+        assertThat(inMemory.getCompiler().getCacheSize()).isEqualTo(before + 1);
+    }
+
+    @Test
+    void unsupported() {
+        QMember sub = new QMember("sub");
+        assertThatThrownBy(() -> inMemory.predicate(Member.class,
+                member.age.eq(JPAExpressions.select(sub.age.max()).from(sub))))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> inMemory.predicate(Member.class, member.age.eq(new QMember("other").age)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private void assertSame(Predicate... where) {
+        List<Member> expected = queryFactory.selectFrom(member)
+                .where(member.id.in(ids))
+                .where(where)
+                .fetch();
+        List<Member> actual = inMemory.selectFrom(Member.class, members)
+                .where(where)
+                .fetch();
+        assertThat(actual).containsExactlyInAnyOrderElementsOf(expected);
+    }
+
+    private void assertSameOrder(OrderSpecifier<?>... orders) {
+        List<Member> expected = queryFactory.selectFrom(member)
+                .where(member.id.in(ids))
+                .orderBy(orders)
+                .fetch();
+        List<Member> actual = inMemory.selectFrom(Member.class, members)
+                .orderBy(orders)
+                .fetch();
+        assertThat(actual).containsExactlyElementsOf(expected);
+    }
+
+    private BooleanExpression nameEq(String name) {
+        return name != null ? member.name.eq(name) : null;
+    }
+
+    private BooleanExpression ageEq(Integer age) {
+        return age != null ? member.age.eq(age) : null;
+    }
+}
@@ -0,0 +1,73 @@
+package jpabook.example;
+
+import jpabook.example.index.IndexAdvisor;
+import jpabook.example.index.IndexRecommendation;
+import jpabook.example.index.IndexReport;
+import jpabook.example.query.SqlFingerprint;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * DDL은 트랜잭션을 커밋하므로 이 테스트는 @Transactional을 사용하지 않는다.
+ */
+@SpringBootTest
+public class IndexAdvisorTest {
+
+    @Autowired
+    IndexAdvisor indexAdvisor;
+
+    @Test
+    void fingerprint() {
+        String sql1 = "select * from member where name = 'member1' and age in (10, 20)";
+        String sql2 = "select *  from member where name = 'member2' and age in (30)";
+
+        assertThat(SqlFingerprint.of(sql1)).isEqualTo(SqlFingerprint.of(sql2));
+        assertThat(SqlFingerprint.of(sql1)).isEqualTo("select * from member where name = ? and age in (?)");
+        assertThat(SqlFingerprint.tables("select * from orders o join member m on o.member_id = m.member_id"))
+                .containsExactly("orders", "member");
+        assertThat(SqlFingerprint.tables("select count(*) from orders o, member im where o.member_id = im.member_id"))
+                .containsExactly("orders", "member");
+        assertThat(SqlFingerprint.tables("select * from (select * from orders) o, member as m, team t where o.id in (select id from item)"))
+                .containsExactlyInAnyOrder("orders", "member", "team", "item");
+        assertThat(SqlFingerprint.tables("insert into member (member_id, name) values (?, ?)"))
+                .containsExactly("member");
+    }
+
+    @Test
+    void declaredIndexes() {
+        // @Index로 선언한 인덱스를 사용하므로 추천할 인덱스가 없다.
+        assertThat(indexAdvisor.advise("select * from member where name = 'member1'")).isEmpty();
+        assertThat(indexAdvisor.advise("select name, age from member where age > 20")).isEmpty();
+        assertThat(indexAdvisor.advise("select * from orders where member_id = 1")).isEmpty();
+
+        // thetaJoin: 바깥 테이블은 스캔하지만 안쪽 테이블은 인덱스를 탄다.
+        assertThat(indexAdvisor.advise("select m.name, t.name from member m, team t where m.name = t.name")).isEmpty();
+    }
+
+    @Test
+    void recommendAndReport() {
+        String sql = "select item_id, name from item where name = 'item1'";
+
+        List<IndexRecommendation> recommendations = indexAdvisor.advise(sql);
+        assertThat(recommendations).hasSize(1);
+
+        IndexRecommendation recommendation = recommendations.get(0);
+        assertThat(recommendation.getTable()).isEqualTo("ITEM");
+        assertThat(recommendation.getColumns()).containsExactly("NAME");
+
+        try {
+            IndexReport report = indexAdvisor.apply(sql, recommendation, 100);
+            System.out.println("report = " + report);
+
+            assertThat(report.isIndexUsed()).isTrue();
+            assertThat(indexAdvisor.advise(sql)).isEmpty();
+        } finally {
+            indexAdvisor.drop(recommendation);
+        }
+    }
+}
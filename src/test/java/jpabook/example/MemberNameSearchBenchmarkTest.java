@@ -0,0 +1,122 @@
+package jpabook.example;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import jpabook.example.batch.StatelessBatchTemplate;
+import jpabook.example.domain.Member;
+import jpabook.example.search.MemberNameIndex;
+import jpabook.example.search.MemberSearch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static jpabook.example.domain.QMember.member;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 회원 100만 명에서 이름 부분 검색을 LIKE 조회와 색인 조회로 비교한다.
+ *
+ * ./gradlew benchmark --tests '*MemberNameSearchBenchmarkTest'
+ *
+ * StatelessSession으로 넣은 행은 변경 로그에 남지 않으므로 넣은 뒤에 색인을 다시 만든다.
+ * 같은 조건을 반복하면 H2가 이전 결과를 재사용하므로 매번 다른 검색어를 사용한다.
+ */
+@Tag("benchmark")
+@SpringBootTest
+public class MemberNameSearchBenchmarkTest {
+
+    static final String PREFIX = "bench-name-";
+    static final int ROWS = 1_000_000;
+    static final int QUERIES = 200;
+
+    @Autowired
+    StatelessBatchTemplate batchTemplate;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    MemberSearch memberSearch;
+
+    @Autowired
+    MemberNameIndex memberNameIndex;
+
+    @AfterEach
+    void cleanup() {
+        jdbcTemplate.update("delete from member where name like ?", PREFIX + "%");
+        memberNameIndex.rebuild();
+    }
+
+    @Test
+    void containsSearch() {
+        batchTemplate.insert(generate());
+        long start = System.nanoTime();
+        memberNameIndex.rebuild();
+        System.out.printf("index build   %,d members in %d ms%n", memberNameIndex.size(),
+                (System.nanoTime() - start) / 1_000_000);
+
+        String[] terms = new SplittableRandom(7).ints(QUERIES * 2, 0, ROWS)
+                .mapToObj(i -> String.format("%06d", i))
+                .toArray(String[]::new);
+
+        long[] like = run(terms, 0, term -> queryFactory.selectFrom(member)
+                .where(member.name.contains(term))
+                .fetch());
+        long[] indexed = run(terms, QUERIES, term -> memberSearch.search(member.name.contains(term)));
+
+        print("like    ", like);
+        print("index   ", indexed);
+        assertThat(percentile(indexed, 0.5)).isLessThan(percentile(like, 0.5));
+    }
+
+    private long[] run(String[] terms, int offset, Function<String, List<Member>> search) {
+        long[] latencies = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String term = terms[offset + i];
+            long start = System.nanoTime();
+            List<Member> found = search.apply(term);
+            latencies[i] = System.nanoTime() - start;
+            assertThat(found).isNotEmpty();
+        }
+        return latencies;
+    }
+
+    private static void print(String label, long[] latencies) {
+        System.out.printf("%s p50=%.2f ms p99=%.2f ms%n", label,
+                percentile(latencies, 0.5) / 1e6, percentile(latencies, 0.99) / 1e6);
+    }
+
+    private static long percentile(long[] latencies, double p) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(p * (sorted.length - 1)))];
+    }
+
+    private static Iterable<Member> generate() {
+        return () -> new Iterator<>() {
+            final Iterator<Integer> ids = IntStream.range(0, ROWS).iterator();
+
+            @Override
+            public boolean hasNext() {
+                return ids.hasNext();
+            }
+
+            @Override
+            public Member next() {
+                return new Member(PREFIX + String.format("%06d", ids.next()), 20, null);
+            }
+        };
+    }
+}
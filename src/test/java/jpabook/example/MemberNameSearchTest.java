@@ -0,0 +1,231 @@
+package jpabook.example;
+
+import com.querydsl.core.types.Predicate;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import jpabook.example.batch.StatelessBatchTemplate;
+import jpabook.example.cdc.BulkChangeCapture;
+import jpabook.example.domain.Member;
+import jpabook.example.search.MemberNameIndex;
+import jpabook.example.search.MemberSearch;
+import jpabook.example.search.NameIndex;
+import jpabook.example.search.NameMatch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static jpabook.example.domain.QMember.member;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 색인은 커밋된 변경만 반영하므로 이 테스트는 @Transactional을 사용하지 않는다.
+ */
+@SpringBootTest
+public class MemberNameSearchTest {
+
+    static final String PREFIX = "srch-";
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    MemberSearch memberSearch;
+
+    @Autowired
+    MemberNameIndex memberNameIndex;
+
+    @Autowired
+    BulkChangeCapture bulkChangeCapture;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    StatelessBatchTemplate batchTemplate;
+
+    @AfterEach
+    void cleanup() {
+        bulkChangeCapture.delete(member, member.name.startsWith(PREFIX));
+    }
+
+    @Test
+    void nameIndex() {
+        NameIndex index = new NameIndex();
+        index.put(1, "Kim Younghan");
+        index.put(2, "Lee Younghee");
+        index.put(3, "Yo");
+        index.put(4, "50%_off");
+
+        assertThat(index.find(NameMatch.of(NameMatch.Mode.CONTAINS, "oungh", false), 10)).containsExactly(1, 2);
+        assertThat(index.find(NameMatch.of(NameMatch.Mode.CONTAINS, "YOUNGH", false), 10)).isEmpty();
+        assertThat(index.find(NameMatch.of(NameMatch.Mode.CONTAINS, "YOUNGH", true), 10)).containsExactly(1, 2);
+        assertThat(index.find(NameMatch.of(NameMatch.Mode.STARTS_WITH, "Lee", false), 10)).containsExactly(2);
+        assertThat(index.find(NameMatch.of(NameMatch.Mode.ENDS_WITH, "han", false), 10)).containsExactly(1);
+        assertThat(index.find(NameMatch.of(NameMatch.Mode.EQUALS, "Yo", false), 10)).containsExactly(3);
+        assertThat(index.find(NameMatch.of(NameMatch.Mode.CONTAINS, "Yo", false), 10)).containsExactly(1, 2, 3);
+        assertThat(index.find(NameMatch.like("%oung_ee", '!', false), 10)).containsExactly(2);
+        assertThat(index.find(NameMatch.like("50!%!_%", '!', false), 10)).containsExactly(4);
+        assertThat(index.find(NameMatch.of(NameMatch.Mode.CONTAINS, "oung", false), 1)).hasSize(2);
+
+        index.put(1, "Park");
+        index.remove(2);
+        assertThat(index.find(NameMatch.of(NameMatch.Mode.CONTAINS, "oungh", false), 10)).isEmpty();
+        assertThat(index.find(NameMatch.of(NameMatch.Mode.EQUALS, "Park", false), 10)).containsExactly(1);
+        assertThat(index.size()).isEqualTo(3);
+    }
+
+    @Test
+    void compaction() {
+        NameIndex index = new NameIndex(16);
+        for (int i = 0; i < 5000; i++) {
+            index.put(i, "name" + i);
+        }
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4000; i++) {
+                index.put(i, "renamed" + round + "-" + i);
+            }
+        }
+        for (int i = 0; i < 4000; i += 2) {
+            index.remove(i);
+        }
+        assertThat(index.size()).isEqualTo(3000);
+        assertThat(index.find(NameMatch.of(NameMatch.Mode.EQUALS, "renamed2-3999", false), 10)).containsExactly(3999);
+        assertThat(index.find(NameMatch.of(NameMatch.Mode.STARTS_WITH, "renamed0", false), 10)).isEmpty();
+        assertThat(index.find(NameMatch.of(NameMatch.Mode.STARTS_WITH, "name", false), 10_000)).hasSize(1000);
+    }
+
+    @Test
+    void sameResultAsLike() {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < 200; i++) {
+                em.persist(new Member(PREFIX + (i % 2 == 0 ? "Kim" : "Lee") + "-" + i, i % 40, null));
+            }
+        });
+        assertSameAsLike(member.name.contains("Kim-1"));
+        assertSameAsLike(member.name.containsIgnoreCase("lee-19"));
+        assertSameAsLike(member.name.startsWith(PREFIX + "Lee-1"));
+        assertSameAsLike(member.name.endsWith("-42"));
+        assertSameAsLike(member.name.eq(PREFIX + "Kim-100"));
+        assertSameAsLike(member.name.like(PREFIX + "K_m-1%"));
+        assertSameAsLike(member.name.contains("Kim-1").and(member.age.goe(20)));
+        assertSameAsLike(member.name.endsWith("-42").or(member.name.endsWith("-43")));
+        assertSameAsLike(member.name.startsWith(PREFIX).and(member.name.contains("Kim-1").not()));
+
+        Predicate rewritten = memberSearch.rewrite(member.name.contains("Kim-1"));
+        assertThat(rewritten.toString()).contains(".id in");
+        Predicate negated = member.name.contains("Kim-1").not();
+        assertThat(memberSearch.rewrite(negated)).isSameAs(negated);
+    }
+
+    /**
+     * 변경 로그를 거치지 않은 JDBC 변경 뒤 invalidate()하면 색인을 다시 만들 때까지 LIKE로 조회한다.
+     */
+    @Test
+    void fallsBackUntilRebuilt() {
+        assertThat(memberNameIndex.isFresh()).isTrue();
+        jdbcTemplate.update("insert into member (member_id, age, name) values (next value for hibernate_sequence, 10, ?)",
+                PREFIX + "jdbc");
+        memberNameIndex.invalidate();
+
+        assertThat(memberSearch.search(member.name.contains(PREFIX + "jdbc"))).hasSize(1);
+        assertThat(memberNameIndex.find(NameMatch.of(NameMatch.Mode.CONTAINS, PREFIX + "jdbc", false))).hasSize(1);
+        assertThat(memberNameIndex.isFresh()).isTrue();
+    }
+
+    /**
+     * 다른 트랜잭션이 벌크 JPQL이나 StatelessSession으로 바꾼 회원은 어느 회원인지 모르므로 색인을 다시 만들 때까지 LIKE로 조회한다.
+     */
+    @Test
+    void bulkWritesInvalidate() {
+        Long id = transactionTemplate.execute(status -> {
+            Member created = new Member(PREFIX + "bulk-before", 10, null);
+            em.persist(created);
+            return created.getId();
+        });
+        assertThat(memberNameIndex.isFresh()).isTrue();
+
+        transactionTemplate.executeWithoutResult(status -> em.createQuery("update Member m set m.name = :name where m.id = :id")
+                .setParameter("name", PREFIX + "bulk-after")
+                .setParameter("id", id)
+                .executeUpdate());
+        assertThat(memberNameIndex.isFresh()).isFalse();
+        assertThat(memberSearch.search(member.name.contains("bulk-before"))).isEmpty();
+        assertThat(ids(memberSearch.search(member.name.contains("bulk-after")))).containsExactly(id);
+
+        memberNameIndex.rebuild();
+        assertThat(memberNameIndex.isFresh()).isTrue();
+        batchTemplate.insert(List.of(new Member(PREFIX + "stateless", 10, null)));
+        assertThat(memberNameIndex.isFresh()).isFalse();
+        assertThat(memberSearch.search(member.name.contains(PREFIX + "stateless"))).hasSize(1);
+    }
+
+    /**
+     * 같은 트랜잭션에서 저장하거나 이름을 바꾼 회원은 색인에 없으므로 LIKE로 조회한다.
+     */
+    @Test
+    void pendingChangesInTransaction() {
+        Long id = transactionTemplate.execute(status -> {
+            Member created = new Member(PREFIX + "saved", 10, null);
+            em.persist(created);
+            return created.getId();
+        });
+
+        transactionTemplate.executeWithoutResult(status -> {
+            em.persist(new Member(PREFIX + "pending", 20, null));
+            assertThat(memberSearch.search(member.name.contains("pending"))).hasSize(1);
+        });
+        transactionTemplate.executeWithoutResult(status -> {
+            em.find(Member.class, id).setName(PREFIX + "renamed");
+            assertThat(ids(memberSearch.search(member.name.contains("renamed")))).containsExactly(id);
+            status.setRollbackOnly();
+        });
+        transactionTemplate.executeWithoutResult(status -> {
+            em.find(Member.class, id);
+            assertThat(ids(memberSearch.search(member.name.contains("saved")))).containsExactly(id);
+        });
+    }
+
+    @Test
+    void followsEntityAndBulkChanges() {
+        Long id = transactionTemplate.execute(status -> {
+            Member created = new Member(PREFIX + "before", 10, null);
+            em.persist(created);
+            return created.getId();
+        });
+        assertThat(ids(memberSearch.search(member.name.contains("before")))).containsExactly(id);
+
+        transactionTemplate.executeWithoutResult(status -> em.find(Member.class, id).setName(PREFIX + "after"));
+        assertThat(memberSearch.search(member.name.contains("before"))).isEmpty();
+        assertThat(ids(memberSearch.search(member.name.contains("after")))).containsExactly(id);
+
+        bulkChangeCapture.update(member, member.id.eq(id), clause -> clause.set(member.name, PREFIX + "bulk"));
+        assertThat(memberSearch.search(member.name.contains("after"))).isEmpty();
+        assertThat(ids(memberSearch.search(member.name.contains("bulk")))).containsExactly(id);
+
+        bulkChangeCapture.delete(member, member.id.eq(id));
+        assertThat(memberNameIndex.find(NameMatch.of(NameMatch.Mode.CONTAINS, PREFIX + "bulk", false))).isEmpty();
+    }
+
+    private void assertSameAsLike(Predicate predicate) {
+        List<Long> expected = ids(queryFactory.selectFrom(member).where(predicate).fetch());
+        List<Long> actual = ids(memberSearch.search(predicate));
+        assertThat(actual).containsExactlyInAnyOrderElementsOf(expected);
+        assertThat(actual).isNotEmpty();
+    }
+
+    private static List<Long> ids(List<Member> members) {
+        return members.stream().map(Member::getId).collect(Collectors.toList());
+    }
+}
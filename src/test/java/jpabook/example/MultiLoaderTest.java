@@ -0,0 +1,153 @@
+package jpabook.example;
+
+import jpabook.example.domain.Item;
+import jpabook.example.domain.Member;
+import jpabook.example.domain.Order;
+import jpabook.example.domain.Team;
+import jpabook.example.load.MissingIds;
+import jpabook.example.load.MultiLoader;
+import jpabook.example.query.QueryCapture;
+import org.hibernate.Hibernate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "jpabook.load.chunk-size=4")
+@Transactional
+public class MultiLoaderTest {
+
+    static final int MEMBERS = 20;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MultiLoader multiLoader;
+
+    @Autowired
+    QueryCapture queryCapture;
+
+    List<Long> memberIds = new ArrayList<>();
+    Team team;
+    Item item;
+    Order order;
+
+    @BeforeEach
+    void init() {
+        team = new Team("load-team");
+        em.persist(team);
+        item = new Item("load-item");
+        em.persist(item);
+        for (int i = 0; i < MEMBERS; i++) {
+            Member member = new Member("load-member" + i, i, team);
+            em.persist(member);
+            memberIds.add(member.getId());
+            if (i == 0) {
+                order = new Order(member, item, 1);
+                em.persist(order);
+            }
+        }
+        em.flush();
+        em.clear();
+        queryCapture.clear();
+    }
+
+    @Test
+    void keepsInputOrder() {
+        List<Long> ids = new ArrayList<>(memberIds);
+        Collections.reverse(ids);
+        ids.add(ids.get(0));
+
+        List<Member> members = multiLoader.members(ids);
+
+        assertThat(members.stream().map(Member::getId).collect(Collectors.toList())).isEqualTo(ids);
+        assertThat(members.get(0)).isSameAs(members.get(MEMBERS));
+    }
+
+    @Test
+    void missingIds() {
+        List<Long> ids = Arrays.asList(memberIds.get(0), -1L, memberIds.get(1));
+
+        assertThat(multiLoader.members(ids)).extracting(Member::getId)
+                .containsExactly(memberIds.get(0), memberIds.get(1));
+        assertThat(multiLoader.members(ids, MissingIds.NULL)).extracting(member -> member == null ? null : member.getId())
+                .containsExactly(memberIds.get(0), null, memberIds.get(1));
+    }
+
+    /**
+     * 아이디 타입이 엔티티와 달라도(Integer, Long) 같은 엔티티를 찾는다.
+     */
+    @Test
+    void convertsIdType() {
+        em.find(Member.class, memberIds.get(0));
+        List<Integer> ids = Arrays.asList(memberIds.get(0).intValue(), memberIds.get(1).intValue(), -1);
+
+        assertThat(multiLoader.load(Member.class, ids, MissingIds.NULL))
+                .extracting(member -> member == null ? null : member.getId())
+                .containsExactly(memberIds.get(0), memberIds.get(1), null);
+    }
+
+    @Test
+    void statementsProportionalToMisses() {
+        for (int i = 0; i < 5; i++) {
+            em.find(Member.class, memberIds.get(i));
+        }
+        queryCapture.clear();
+
+        assertThat(multiLoader.members(memberIds)).hasSize(MEMBERS);
+        // 15건을 4건씩
+        assertThat(queryCapture.getExecutionCount()).isEqualTo(4);
+
+        queryCapture.clear();
+        assertThat(multiLoader.members(memberIds)).hasSize(MEMBERS);
+        assertThat(queryCapture.getExecutionCount()).isZero();
+    }
+
+    @Test
+    void removedEntityIsMissing() {
+        Member removed = em.find(Member.class, memberIds.get(0));
+        em.remove(removed);
+        queryCapture.clear();
+
+        assertThat(multiLoader.members(memberIds.subList(0, 2), MissingIds.NULL))
+                .extracting(member -> member == null ? null : member.getId())
+                .containsExactly(null, memberIds.get(1));
+        assertThat(queryCapture.getExecutionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void initializesReferences() {
+        Member reference = em.getReference(Member.class, memberIds.get(0));
+        assertThat(Hibernate.isInitialized(reference)).isFalse();
+        queryCapture.clear();
+
+        List<Member> members = multiLoader.members(memberIds.subList(0, 3));
+
+        assertThat(members.get(0)).isSameAs(reference);
+        assertThat(Hibernate.isInitialized(reference)).isTrue();
+        assertThat(reference.getName()).isEqualTo("load-member0");
+        // 없는 2건, 초기화하지 않은 참조 1건
+        assertThat(queryCapture.getExecutionCount()).isEqualTo(2);
+    }
+
+    @Test
+    void otherTypes() {
+        assertThat(multiLoader.teams(Collections.singletonList(team.getId()))).extracting(Team::getName)
+                .containsExactly("load-team");
+        assertThat(multiLoader.items(Collections.singletonList(item.getId()))).extracting(Item::getName)
+                .containsExactly("load-item");
+        assertThat(multiLoader.orders(Collections.singletonList(order.getId()))).extracting(Order::getId)
+                .containsExactly(order.getId());
+    }
+}
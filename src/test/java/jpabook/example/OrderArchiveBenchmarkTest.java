@@ -0,0 +1,135 @@
+package jpabook.example;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import jpabook.example.archive.OrderArchiver;
+import jpabook.example.archive.OrderHistory;
+import jpabook.example.archive.OrderScope;
+import jpabook.example.shard.SnowflakeIdAllocator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static jpabook.example.domain.QOrder.order;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 주문 이력이 늘어날 때 최근 주문 조회 시간. 이력을 orders에 그대로 두는 경우와 보관하는 경우를 비교한다.
+ *
+ * ./gradlew benchmark --tests '*OrderArchiveBenchmarkTest'
+ */
+@Tag("benchmark")
+@SpringBootTest
+public class OrderArchiveBenchmarkTest {
+
+    static final long FIRST_MEMBER = 700_000_000L;
+    static final int MEMBERS = 1_000;
+    static final int HOT_ORDERS = 20_000;
+    static final int HISTORY_STEP = 100_000;
+    static final int ROUNDS = 3;
+    static final int ITERATIONS = 20;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    OrderArchiver archiver;
+
+    @Autowired
+    OrderHistory orderHistory;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @BeforeEach
+    void members() {
+        // orders.member_id는 member를 참조하므로 주문을 넣기 전에 회원을 만든다.
+        jdbcTemplate.update("insert into member (member_id, name, age) "
+                + "select ? + x, 'archiveMember' || x, 20 from system_range(0, ?)", FIRST_MEMBER, MEMBERS - 1);
+    }
+
+    @AfterEach
+    void cleanup() {
+        jdbcTemplate.update("delete from orders where member_id >= ?", FIRST_MEMBER);
+        jdbcTemplate.update("delete from orders_archive where member_id >= ?", FIRST_MEMBER);
+        jdbcTemplate.update("delete from member where member_id >= ?", FIRST_MEMBER);
+    }
+
+    @Test
+    void hotQueryLatency() {
+        Instant now = Instant.now();
+        insert(SnowflakeIdAllocator.minIdAt(now.minus(Duration.ofHours(1))), HOT_ORDERS);
+        measure(now);
+
+        // 이력을 orders에 그대로 쌓는 경우
+        long historyRows = 0;
+        double[] unarchived = new double[ROUNDS + 1];
+        unarchived[0] = measure(now);
+        for (int round = 1; round <= ROUNDS; round++) {
+            insert(SnowflakeIdAllocator.minIdAt(now.minus(Duration.ofDays(400L + 100 * round))), HISTORY_STEP);
+            historyRows += HISTORY_STEP;
+            unarchived[round] = measure(now);
+        }
+
+        // 같은 양의 이력을 더 쌓으면서 매번 보관하는 경우
+        double[] archived = new double[ROUNDS + 1];
+        archiver.archiveBefore(now.minus(Duration.ofDays(365)));
+        archived[0] = measure(now);
+        for (int round = 1; round <= ROUNDS; round++) {
+            insert(SnowflakeIdAllocator.minIdAt(now.minus(Duration.ofDays(1000L + 100 * round))), HISTORY_STEP);
+            historyRows += HISTORY_STEP;
+            archiver.archiveBefore(now.minus(Duration.ofDays(365)));
+            archived[round] = measure(now);
+        }
+
+        System.out.println("history in orders   latency (ms)  |  history archived   latency (ms)");
+        for (int round = 0; round <= ROUNDS; round++) {
+            System.out.printf("%,17d   %12.2f  |  %,16d   %12.2f%n",
+                    (long) HISTORY_STEP * round, unarchived[round],
+                    (long) HISTORY_STEP * (ROUNDS + round), archived[round]);
+        }
+
+        assertThat(orderHistory.orderCountsByMember(OrderScope.ALL).get(FIRST_MEMBER))
+                .isEqualTo((HOT_ORDERS + historyRows) / MEMBERS);
+    }
+
+    /**
+     * 회원별 주문 수 집계(orders 전체를 읽는다)와 최근 1일 기간 조회의 평균 시간.
+     * H2는 데이터가 바뀌지 않으면 같은 파라미터의 직전 결과를 재사용하므로 매번 결과에 영향이 없는 파라미터 값을 바꾼다.
+     */
+    private double measure(Instant now) {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            queryFactory
+                    .select(order.member.id, order.count())
+                    .from(order)
+                    .where(order.quantity.goe(-i))
+                    .groupBy(order.member.id)
+                    .fetch();
+            orderHistory.findBetween(now.minus(Duration.ofDays(1)).minusMillis(i), now, OrderScope.ALL);
+        }
+        return (System.nanoTime() - start) / 1e6 / ITERATIONS;
+    }
+
+    private void insert(long firstId, int rows) {
+        List<Object[]> batch = new ArrayList<>(10_000);
+        for (int i = 0; i < rows; i++) {
+            batch.add(new Object[]{firstId + i, FIRST_MEMBER + i % MEMBERS, i % 7});
+            if (batch.size() == 10_000) {
+                jdbcTemplate.batchUpdate("insert into orders (order_id, member_id, quantity) values (?, ?, ?)", batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate("insert into orders (order_id, member_id, quantity) values (?, ?, ?)", batch);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package jpabook.example;
+
+import jpabook.example.archive.ArchiveResult;
+import jpabook.example.archive.OrderArchiver;
+import jpabook.example.archive.OrderHistory;
+import jpabook.example.archive.OrderPartition;
+import jpabook.example.archive.OrderRecord;
+import jpabook.example.archive.OrderScope;
+import jpabook.example.domain.Item;
+import jpabook.example.domain.Member;
+import jpabook.example.domain.Order;
+import jpabook.example.shard.SnowflakeIdAllocator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Transactional
+public class OrderArchiveTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    OrderArchiver archiver;
+
+    @Autowired
+    OrderHistory orderHistory;
+
+    Instant now = Instant.now();
+    Instant cutoff = now.minus(Duration.ofDays(365));
+    Member member;
+    long oldId;
+    long boundaryId;
+
+    @BeforeEach
+    void init() {
+        member = new Member("archived", 10, null);
+        Item item = new Item("item");
+        em.persist(member);
+        em.persist(item);
+
+        OrderPartition cutoffPartition = OrderPartition.containing(cutoff, archiver.getPartitionLength());
+        oldId = SnowflakeIdAllocator.minIdAt(now.minus(Duration.ofDays(500)));
+        boundaryId = cutoffPartition.getFromId() + 1;
+        insertOrder(oldId, item, 1);
+        insertOrder(oldId + 1, item, 2);
+        insertOrder(boundaryId, item, 3);
+        em.persist(new Order(member, item, 4));
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    void archiveColdPartitions() {
+        ArchiveResult result = archiver.archiveBefore(cutoff);
+
+        assertThat(result.getRows()).isGreaterThanOrEqualTo(2);
+        assertThat(orderHistory.countByMember(member.getId(), OrderScope.HOT)).isEqualTo(2);
+        assertThat(orderHistory.countByMember(member.getId(), OrderScope.ALL)).isEqualTo(4);
+
+        List<OrderRecord> all = orderHistory.findByMember(member.getId(), OrderScope.ALL);
+        assertThat(all).extracting(OrderRecord::getQuantity).containsExactly(1, 2, 3, 4);
+        assertThat(all).extracting(OrderRecord::isArchived).containsExactly(true, true, false, false);
+        assertThat(orderHistory.findByMember(member.getId(), OrderScope.HOT))
+                .extracting(OrderRecord::getQuantity).containsExactly(3, 4);
+        assertThat(archiver.getWatermark()).isGreaterThan(oldId + 1);
+    }
+
+    @Test
+    void rerunIsIdempotent() {
+        archiver.archiveBefore(cutoff);
+        ArchiveResult second = archiver.archiveBefore(cutoff);
+
+        assertThat(second.getRows()).isZero();
+        assertThat(orderHistory.countByMember(member.getId(), OrderScope.ALL)).isEqualTo(4);
+    }
+
+    @Test
+    void findBetween() {
+        archiver.archiveBefore(cutoff);
+        Instant from = now.minus(Duration.ofDays(501));
+        Instant to = now.minus(Duration.ofDays(499));
+
+        assertThat(orderHistory.findBetween(from, to, OrderScope.HOT)).isEmpty();
+        assertThat(orderHistory.findBetween(from, to, OrderScope.ALL))
+                .extracting(OrderRecord::getQuantity).containsExactly(1, 2);
+        assertThat(orderHistory.findBetween(now.minusSeconds(60), now.plusSeconds(60), OrderScope.ALL))
+                .extracting(OrderRecord::getQuantity).containsExactly(4);
+    }
+
+    /**
+     * 다른 인스턴스가 나중에 보관한 주문도 워터마크를 다시 읽어서 찾는다.
+     */
+    @Test
+    void watermarkIsNotCached() {
+        archiver.archiveBefore(cutoff);
+        long watermark = archiver.getWatermark();
+        Instant from = now.minus(Duration.ofDays(400));
+        Instant to = now.minus(Duration.ofDays(399));
+        assertThat(orderHistory.findBetween(from, to, OrderScope.ALL)).isEmpty();
+
+        long laterId = SnowflakeIdAllocator.minIdAt(from);
+        em.createNativeQuery("insert into orders_archive (order_id, member_id, item_id, quantity) values (?, ?, null, 5)")
+                .setParameter(1, laterId)
+                .setParameter(2, member.getId())
+                .executeUpdate();
+
+        assertThat(laterId).isGreaterThanOrEqualTo(watermark);
+        assertThat(archiver.getWatermark()).isEqualTo(laterId + 1);
+        assertThat(orderHistory.findBetween(from, to, OrderScope.ALL))
+                .extracting(OrderRecord::getQuantity).containsExactly(5);
+    }
+
+    @Test
+    void orderCountsByMember() {
+        archiver.archiveBefore(cutoff);
+
+        assertThat(orderHistory.orderCountsByMember(OrderScope.HOT)).containsEntry(member.getId(), 2L);
+        assertThat(orderHistory.orderCountsByMember(OrderScope.ALL)).containsEntry(member.getId(), 4L);
+    }
+
+    private void insertOrder(long id, Item item, int quantity) {
+        em.createNativeQuery("insert into orders (order_id, member_id, item_id, quantity) values (?, ?, ?, ?)")
+                .setParameter(1, id)
+                .setParameter(2, member.getId())
+                .setParameter(3, item.getId())
+                .setParameter(4, quantity)
+                .executeUpdate();
+    }
+}
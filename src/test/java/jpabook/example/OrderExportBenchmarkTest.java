@@ -0,0 +1,121 @@
+package jpabook.example;
+
+import jpabook.example.dataset.DataGenerator;
+import jpabook.example.dataset.Dataset;
+import jpabook.example.dataset.DatasetSpec;
+import jpabook.example.domain.Order;
+import jpabook.example.export.ExportFormat;
+import jpabook.example.export.ExportResult;
+import jpabook.example.export.ExportSource;
+import jpabook.example.export.OrderExporter;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 주문 50만 건을 엔티티로 읽어 문자열로 만드는 방식과 OrderExporter의 CSV, 열 파일 내보내기를 비교한다.
+ *
+ * ./gradlew benchmark --tests '*OrderExportBenchmarkTest'
+ */
+@Tag("benchmark")
+@SpringBootTest
+public class OrderExportBenchmarkTest {
+
+    static final int PAGE_SIZE = 1_000;
+
+    @Autowired
+    DataGenerator generator;
+
+    @Autowired
+    OrderExporter exporter;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void export() throws IOException {
+        DatasetSpec spec = new DatasetSpec(42, 100, 50_000, 1_000, 500_000);
+        spec.setOrdersFrom(Instant.parse("2023-01-01T00:00:00Z"));
+        spec.setOrdersTo(Instant.parse("2025-01-01T00:00:00Z"));
+        Dataset dataset = generator.load(spec);
+        try {
+            long start = System.nanoTime();
+            long entityRows = exportEntities(directory.resolve("entities.csv"));
+            long entityMillis = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("entities  %,d rows in %d ms (%,.0f rows/s), %,d bytes%n", entityRows, entityMillis,
+                    entityRows * 1e3 / Math.max(1, entityMillis), Files.size(directory.resolve("entities.csv")));
+
+            for (ExportFormat format : ExportFormat.values()) {
+                exporter.export(ExportSource.ORDERS, format, directory);
+                ExportResult result = exporter.export(ExportSource.ORDERS, format, directory);
+                assertThat(result.getRows()).isEqualTo(entityRows);
+                System.out.printf("%-9s %,d rows in %d ms (%,.0f rows/s), %,d bytes, %,.0f allocated bytes/row%n",
+                        format, result.getRows(), result.getElapsed().toMillis(), result.getRowsPerSecond(),
+                        result.getBytes(), result.getAllocatedBytesPerRow());
+            }
+        } finally {
+            generator.remove(dataset);
+        }
+    }
+
+    /**
+     * 지금까지의 방식: 아이디 순으로 페이지를 읽어 엔티티를 만들고 행마다 문자열을 조립한다.
+     */
+    private long exportEntities(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            return transactionTemplate.execute(status -> {
+                long rows = 0;
+                long lastId = Long.MIN_VALUE;
+                while (true) {
+                    List<Order> orders = em.createQuery("select o from Order o"
+                            + " left join fetch o.member left join fetch o.item"
+                            + " where o.id > :lastId order by o.id", Order.class)
+                            .setParameter("lastId", lastId)
+                            .setMaxResults(PAGE_SIZE)
+                            .getResultList();
+                    if (orders.isEmpty()) {
+                        return rows;
+                    }
+                    try {
+                        for (Order order : orders) {
+                            StringBuilder row = new StringBuilder()
+                                    .append(order.getId()).append(',')
+                                    .append(order.getMember() == null ? "" : order.getMember().getId()).append(',')
+                                    .append(order.getMember() == null ? "" : order.getMember().getName()).append(',')
+                                    .append(order.getItem() == null ? "" : order.getItem().getId()).append(',')
+                                    .append(order.getItem() == null ? "" : order.getItem().getName()).append(',')
+                                    .append(order.getQuantity()).append('\n');
+                            writer.write(row.toString());
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    rows += orders.size();
+                    lastId = orders.get(orders.size() - 1).getId();
+                    em.clear();
+                }
+            });
+        }
+    }
+}
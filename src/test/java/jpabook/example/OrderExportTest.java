@@ -0,0 +1,220 @@
+package jpabook.example;
+
+import jpabook.example.export.ColumnEncoder;
+import jpabook.example.export.ColumnEncoders;
+import jpabook.example.export.ColumnarReader;
+import jpabook.example.export.ColumnarTable;
+import jpabook.example.export.ExportFormat;
+import jpabook.example.export.ExportResult;
+import jpabook.example.export.ExportSource;
+import jpabook.example.export.OrderExporter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "jpabook.export.min-rows-per-file=1000",
+        "jpabook.export.buffer-size=4096"
+})
+public class OrderExportTest {
+
+    static final long FIRST_ID = 830_000_000L;
+    static final int ORDERS = 5_000;
+    static final int ARCHIVED = 300;
+    static final String[] MEMBER_NAMES = {"export-kim, \"jr\"", "export-이름", "export-😀\nline"};
+
+    @Autowired
+    OrderExporter exporter;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void init() {
+        for (int i = 0; i < MEMBER_NAMES.length; i++) {
+            jdbcTemplate.update("insert into member (member_id, age, name) values (?, ?, ?)",
+                    FIRST_ID + i, 20 + i, MEMBER_NAMES[i]);
+        }
+        jdbcTemplate.update("insert into item (item_id, name) values (?, ?)", FIRST_ID, "export-item");
+        List<Object[]> orders = new ArrayList<>();
+        for (int i = 0; i < ORDERS; i++) {
+            // 네 번째 주문마다 회원이 없다.
+            Long memberId = i % 4 == 3 ? null : FIRST_ID + i % MEMBER_NAMES.length;
+            orders.add(new Object[]{FIRST_ID + i * 7L, memberId, FIRST_ID, i % 50});
+        }
+        insert("orders", orders);
+        insert("orders_archive", orders.subList(0, ARCHIVED));
+    }
+
+    @AfterEach
+    void cleanup() {
+        jdbcTemplate.update("delete from orders where order_id >= ?", FIRST_ID);
+        jdbcTemplate.update("delete from orders_archive where order_id >= ?", FIRST_ID);
+        jdbcTemplate.update("delete from member where member_id >= ?", FIRST_ID);
+        jdbcTemplate.update("delete from item where item_id >= ?", FIRST_ID);
+    }
+
+    @Test
+    void csv() throws IOException {
+        ExportResult result = exporter.export(ExportSource.ORDERS, ExportFormat.CSV, directory);
+
+        assertThat(result.getFiles()).hasSize(4);
+        assertThat(result.getRows()).isEqualTo(ORDERS);
+        List<String> rows = new ArrayList<>();
+        for (Path file : result.getFiles()) {
+            String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            assertThat(content).startsWith("order_id,member_id,member_name,item_id,item_name,quantity\r\n");
+            rows.add(content);
+        }
+        String all = String.join("", rows);
+        assertThat(all)
+                .contains((FIRST_ID) + "," + FIRST_ID + ",\"export-kim, \"\"jr\"\"\"," + FIRST_ID + ",export-item,0\r\n")
+                .contains((FIRST_ID + 7) + "," + (FIRST_ID + 1) + ",export-이름," + FIRST_ID + ",export-item,1\r\n")
+                .contains((FIRST_ID + 14) + "," + (FIRST_ID + 2) + ",\"export-😀\nline\"," + FIRST_ID + ",export-item,2\r\n")
+                .contains((FIRST_ID + 21) + ",,," + FIRST_ID + ",export-item,3\r\n");
+        assertThat(result.getBytes()).isEqualTo(all.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    void emptyStringIsQuoted() throws IOException {
+        jdbcTemplate.update("update member set name = '' where member_id = ?", FIRST_ID + 1);
+
+        ExportResult result = exporter.export(ExportSource.ORDERS, ExportFormat.CSV, directory);
+
+        StringBuilder all = new StringBuilder();
+        for (Path file : result.getFiles()) {
+            all.append(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        }
+        assertThat(all.toString())
+                .contains("\r\n" + (FIRST_ID + 7) + "," + (FIRST_ID + 1) + ",\"\"," + FIRST_ID + ",export-item,1\r\n")
+                .contains("\r\n" + (FIRST_ID + 21) + ",,," + FIRST_ID + ",export-item,3\r\n");
+    }
+
+    @Test
+    void columnarRoundTrip() throws IOException {
+        ExportResult csv = exporter.export(ExportSource.ORDERS, ExportFormat.CSV, directory);
+        ExportResult columnar = exporter.export(ExportSource.ORDERS, ExportFormat.COLUMNAR, directory);
+
+        List<Object[]> rows = new ArrayList<>();
+        for (Path file : columnar.getFiles()) {
+            ColumnarTable table = ColumnarReader.read(file);
+            assertThat(table.getColumns()).isEqualTo(OrderExporter.COLUMNS);
+            assertThat(table.getEncoders()).containsExactly("delta", "varlong", "utf8", "varlong", "utf8", "varlong");
+            rows.addAll(table.getRows());
+        }
+        assertThat(rows).hasSize(ORDERS);
+        for (int i = 0; i < ORDERS; i++) {
+            assertThat(rows.get(i)).containsExactly(expectedRow(i));
+        }
+        assertThat(columnar.getBytes()).isLessThan(csv.getBytes() / 4);
+    }
+
+    @Test
+    void customEncoder() throws IOException {
+        List<Supplier<ColumnEncoder>> encoders = Arrays.asList(FixedLongEncoder::new, ColumnEncoders::varLong,
+                ColumnEncoders::utf8, FixedLongEncoder::new, ColumnEncoders::utf8, ColumnEncoders::delta);
+        ExportResult result = exporter.exportColumnar(ExportSource.ORDERS, directory, encoders);
+
+        ColumnarTable table = ColumnarReader.read(result.getFiles().get(0),
+                name -> name.equals("fixed64") ? new FixedLongEncoder() : ColumnEncoders.forName(name));
+        assertThat(table.getRows().get(0)).containsExactly(expectedRow(0));
+        assertThat(table.getRows().get(3)).containsExactly(expectedRow(3));
+    }
+
+    @Test
+    void archive() throws IOException {
+        ExportResult result = exporter.export(ExportSource.ARCHIVE, ExportFormat.COLUMNAR, directory);
+
+        assertThat(result.getFiles()).hasSize(1);
+        assertThat(ColumnarReader.read(result.getFiles().get(0)).getRows()).hasSize(ARCHIVED);
+    }
+
+    @Test
+    void emptyTableWritesOneFile() throws IOException {
+        jdbcTemplate.update("delete from orders_archive where order_id >= ?", FIRST_ID);
+
+        ExportResult result = exporter.export(ExportSource.ARCHIVE, ExportFormat.CSV, directory);
+
+        assertThat(result.getRows()).isZero();
+        assertThat(result.getFiles()).hasSize(1);
+        assertThat(Files.readAllLines(result.getFiles().get(0))).hasSize(1);
+    }
+
+    @Test
+    void allocationPerRowDoesNotGrow() {
+        exporter.export(ExportSource.ORDERS, ExportFormat.CSV, directory);
+        ExportResult small = exporter.export(ExportSource.ORDERS, ExportFormat.CSV, directory);
+        assertThat(small.getAllocatedBytes()).isPositive();
+
+        List<Object[]> more = new ArrayList<>();
+        for (int i = ORDERS; i < ORDERS * 4; i++) {
+            more.add(new Object[]{FIRST_ID + i * 7L, FIRST_ID, FIRST_ID, i % 50});
+        }
+        insert("orders", more);
+        ExportResult large = exporter.export(ExportSource.ORDERS, ExportFormat.CSV, directory);
+
+        assertThat(large.getRows()).isEqualTo(ORDERS * 4);
+        assertThat(large.getAllocatedBytesPerRow()).isLessThan(small.getAllocatedBytesPerRow() * 1.2);
+    }
+
+    private Object[] expectedRow(int i) {
+        boolean hasMember = i % 4 != 3;
+        Long memberId = hasMember ? FIRST_ID + i % MEMBER_NAMES.length : null;
+        String memberName = hasMember ? MEMBER_NAMES[i % MEMBER_NAMES.length] : null;
+        return new Object[]{FIRST_ID + i * 7L, memberId, memberName, FIRST_ID, "export-item", (long) (i % 50)};
+    }
+
+    private void insert(String table, List<Object[]> rows) {
+        jdbcTemplate.batchUpdate("insert into " + table + " (order_id, member_id, item_id, quantity) values (?, ?, ?, ?)",
+                rows);
+    }
+
+    /**
+     * null 표시 1바이트와 8바이트 고정 폭 값
+     */
+    static class FixedLongEncoder implements ColumnEncoder {
+
+        @Override
+        public String getName() {
+            return "fixed64";
+        }
+
+        @Override
+        public boolean encode(ResultSet rs, int column, ByteBuffer out) throws SQLException {
+            if (out.remaining() < 9) {
+                return false;
+            }
+            long value = rs.getLong(column);
+            out.put((byte) (rs.wasNull() ? 0 : 1)).putLong(value);
+            return true;
+        }
+
+        @Override
+        public Object decode(ByteBuffer in) {
+            boolean present = in.get() == 1;
+            long value = in.getLong();
+            return present ? value : null;
+        }
+    }
+}
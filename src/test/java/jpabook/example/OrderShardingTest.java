@@ -0,0 +1,227 @@
+package jpabook.example;
+
+import jpabook.example.domain.Item;
+import jpabook.example.domain.Member;
+import jpabook.example.domain.Order;
+import jpabook.example.shard.BucketMove;
+import jpabook.example.shard.OrderIdGenerator;
+import jpabook.example.shard.OrderShardRebalancer;
+import jpabook.example.shard.OrderShards;
+import jpabook.example.shard.ShardAggregate;
+import jpabook.example.shard.ShardRouter;
+import jpabook.example.shard.SnowflakeIdAllocator;
+import org.hibernate.MappingException;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.type.LongType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import static jpabook.example.domain.QOrder.order;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+@SpringBootTest(properties = {
+        "jpabook.shard.urls=jdbc:h2:mem:orders0;DB_CLOSE_DELAY=-1,jdbc:h2:mem:orders1;DB_CLOSE_DELAY=-1,jdbc:h2:mem:orders2;DB_CLOSE_DELAY=-1",
+        "jpabook.shard.buckets=12"
+})
+public class OrderShardingTest {
+
+    @Autowired
+    OrderShards shards;
+
+    @Autowired
+    OrderShardRebalancer rebalancer;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    static final String REFERENTIAL_CONSTRAINTS = "select constraint_name from information_schema.constraints"
+            + " where table_name = 'ORDERS' and constraint_type = 'REFERENTIAL'";
+
+    List<Order> orders;
+
+    @BeforeEach
+    void init() {
+        for (int shard = 0; shard < shards.getShardCount(); shard++) {
+            shards.inShard(shard, em -> em.createQuery("delete from Order o").executeUpdate());
+        }
+        for (int bucket = 0; bucket < shards.getRouter().getBucketCount(); bucket++) {
+            rebalancer.moveBucket(bucket, bucket % shards.getShardCount());
+        }
+
+        Item item1 = item(1L);
+        Item item2 = item(2L);
+        orders = new ArrayList<>();
+        for (long memberId = 1; memberId <= 30; memberId++) {
+            orders.add(new Order(member(memberId), item1, (int) memberId));
+            orders.add(new Order(member(memberId), item2, 10));
+        }
+        shards.saveAll(orders);
+    }
+
+    @Test
+    void routing() {
+        ShardRouter router = shards.getRouter();
+        for (Order o : orders) {
+            long memberId = o.getMember().getId();
+            int home = router.shardOf(memberId);
+            for (int shard = 0; shard < shards.getShardCount(); shard++) {
+                Order found = shards.inShard(shard, em -> em.find(Order.class, o.getId()));
+                assertThat(found != null).isEqualTo(shard == home);
+            }
+        }
+
+        List<?> tables = shards.inShard(0, em -> em.createNativeQuery(
+                "select table_name from information_schema.tables where table_schema = 'PUBLIC'").getResultList());
+        assertThat(tables).hasSize(1).first().isEqualTo("ORDERS");
+        // 샤드에는 member, item이 없으므로 외래 키를 만들지 않고, 기본 스키마에는 그대로 둔다.
+        List<?> shardConstraints = shards.inShard(0, em -> em.createNativeQuery(REFERENTIAL_CONSTRAINTS).getResultList());
+        assertThat(shardConstraints).isEmpty();
+        assertThat(jdbcTemplate.queryForList(REFERENTIAL_CONSTRAINTS)).hasSize(2);
+
+        assertThat(shards.findByMember(7L))
+                .extracting(o -> o.getMember().getId())
+                .containsExactly(7L, 7L);
+    }
+
+    @Test
+    void globallyUniqueIds() {
+        assertThat(orders.stream().map(Order::getId).collect(Collectors.toSet()))
+                .hasSize(orders.size());
+        for (Order o : orders) {
+            assertThat(SnowflakeIdAllocator.timestampOf(o.getId()))
+                    .isBetween(Instant.now().minus(Duration.ofMinutes(1)), Instant.now());
+            assertThat(SnowflakeIdAllocator.nodeOf(o.getId())).isZero();
+            assertThat(SnowflakeIdAllocator.minIdAt(Instant.now().plusSeconds(1))).isGreaterThan(o.getId());
+        }
+    }
+
+    /**
+     * 노드 번호를 지정하지 않으면 모든 인스턴스가 같은 번호를 쓰게 되므로 시작하지 않는다.
+     */
+    @Test
+    void nodeMustBeSet() {
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder().build();
+        try {
+            assertThatThrownBy(() -> new OrderIdGenerator().configure(LongType.INSTANCE, new Properties(), registry))
+                    .isInstanceOf(MappingException.class)
+                    .hasMessageContaining(OrderIdGenerator.NODE_SETTING);
+        } finally {
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+
+        StandardServiceRegistry reserved = new StandardServiceRegistryBuilder()
+                .applySetting(OrderIdGenerator.NODE_SETTING, String.valueOf(SnowflakeIdAllocator.MAX_NODE))
+                .build();
+        try {
+            assertThatThrownBy(() -> new OrderIdGenerator().configure(LongType.INSTANCE, new Properties(), reserved))
+                    .isInstanceOf(MappingException.class);
+        } finally {
+            StandardServiceRegistryBuilder.destroy(reserved);
+        }
+    }
+
+    @Test
+    void scatterGather() {
+        assertThat(shards.count()).isEqualTo(60);
+        assertThat(shards.count(order.quantity.gt(10))).isEqualTo(20);
+        assertThat(shards.scatter((query, owned) -> query.select(order.count()).from(order).where(owned).fetchOne()))
+                .hasSize(3)
+                .allMatch(count -> count == 20);
+
+        Map<Long, ShardAggregate> byItem = shards.aggregate(order.item.id, order.quantity);
+
+        assertThat(byItem).containsOnlyKeys(1L, 2L);
+        assertThat(byItem.get(1L).getCount()).isEqualTo(30);
+        assertThat(byItem.get(1L).getSum()).isEqualTo(465.0);
+        assertThat(byItem.get(1L).getAvg()).isCloseTo(15.5, within(0.0001));
+        assertThat(byItem.get(1L).getMin()).isEqualTo(1.0);
+        assertThat(byItem.get(1L).getMax()).isEqualTo(30.0);
+        assertThat(byItem.get(2L).getAvg()).isEqualTo(10.0);
+
+        List<Integer> quantities = shards.fetchAll(query -> query
+                .select(order.quantity)
+                .from(order)
+                .where(order.member.id.loe(3L), order.item.id.eq(1L)));
+        assertThat(quantities).containsExactlyInAnyOrder(1, 2, 3);
+    }
+
+    @Test
+    void moveBucket() {
+        ShardRouter router = shards.getRouter();
+        int bucket = router.bucketOf(7L);
+        int source = router.shardOfBucket(bucket);
+        int target = (source + 1) % shards.getShardCount();
+
+        BucketMove move = rebalancer.moveBucket(bucket, target);
+
+        assertThat(move.getRows()).isEqualTo(4); // 회원 7, 19의 주문 각 2건
+        assertThat(router.shardOf(7L)).isEqualTo(target);
+        assertThat(shards.findByMember(7L)).hasSize(2);
+        Long remaining = shards.inShard(source, em -> em
+                .createQuery("select count(o) from Order o where o.member.id = 7", Long.class)
+                .getSingleResult());
+        assertThat(remaining).isZero();
+        assertThat(shards.count()).isEqualTo(60);
+    }
+
+    @Test
+    void rebalance() {
+        for (int bucket = 0; bucket < shards.getRouter().getBucketCount(); bucket++) {
+            rebalancer.moveBucket(bucket, 0);
+        }
+        assertThat(shards.scatter((query, owned) -> query.select(order.count()).from(order).where(owned).fetchOne()))
+                .containsExactly(60L, 0L, 0L);
+
+        List<BucketMove> moves = rebalancer.rebalance();
+
+        assertThat(moves).isNotEmpty();
+        assertThat(shards.scatter((query, owned) -> query.select(order.count()).from(order).where(owned).fetchOne()))
+                .allMatch(count -> count >= 15 && count <= 25);
+        assertThat(shards.count()).isEqualTo(60);
+    }
+
+    /**
+     * 원본 샤드에서 지우지 못한 행처럼, 버킷을 가지지 않은 샤드에 남은 주문은 조회에 포함되지 않는다.
+     */
+    @Test
+    void leftoverRowsAreNotRead() {
+        int other = (shards.getRouter().shardOf(7L) + 1) % shards.getShardCount();
+        shards.inShard(other, em -> {
+            em.persist(new Order(member(7L), item(1L), 100));
+            return null;
+        });
+
+        assertThat(shards.count()).isEqualTo(60);
+        assertThat(shards.fetchAll(query -> query.select(order.quantity).from(order).where(order.member.id.eq(7L))))
+                .containsExactlyInAnyOrder(7, 10);
+        assertThat(shards.aggregate(order.item.id, order.quantity).get(1L).getMax()).isEqualTo(30.0);
+        assertThat(shards.findByMember(7L)).hasSize(2);
+        assertThat(rebalancer.cleanUpLeftovers()).isZero();
+    }
+
+    private static Member member(long id) {
+        Member member = new Member();
+        member.setId(id);
+        return member;
+    }
+
+    private static Item item(long id) {
+        Item item = new Item();
+        item.setId(id);
+        return item;
+    }
+}
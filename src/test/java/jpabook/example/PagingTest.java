@@ -0,0 +1,197 @@
+package jpabook.example;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import jpabook.example.cache.QueryResultCache;
+import jpabook.example.domain.Member;
+import jpabook.example.domain.Team;
+import jpabook.example.paging.PageResult;
+import jpabook.example.paging.Pager;
+import jpabook.example.paging.TotalMode;
+import jpabook.example.query.QueryCapture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+
+import static jpabook.example.domain.QMember.member;
+import static jpabook.example.domain.QTeam.team;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Transactional
+public class PagingTest {
+
+    static final int MEMBERS = 25;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    Pager pager;
+
+    @Autowired
+    QueryCapture queryCapture;
+
+    @Autowired
+    QueryResultCache queryResultCache;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void init() {
+        Team teamA = new Team("paging-teamA");
+        Team teamB = new Team("paging-teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        for (int i = 0; i < MEMBERS; i++) {
+            em.persist(new Member(String.format("paging-member%02d", i), i, i % 5 == 0 ? null : i % 2 == 0 ? teamA : teamB));
+        }
+        em.flush();
+        em.clear();
+        queryResultCache.invalidateAll();
+        queryCapture.clear();
+    }
+
+    @Test
+    void lookaheadWithoutCount() {
+        PageResult<Member> page = pager.fetch(members(), 0, 10);
+
+        assertThat(page.getContent()).hasSize(10);
+        assertThat(page.getContent().get(0).getName()).isEqualTo("paging-member00");
+        assertThat(page.hasNext()).isTrue();
+        assertThat(page.hasTotal()).isFalse();
+        assertThat(page.getTotal()).isEqualTo(-1);
+        assertThat(queryCapture.getExecutionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shortLastPageNeedsNoCount() {
+        PageResult<Member> page = pager.fetch(members(), 20, 10, TotalMode.EXACT);
+
+        assertThat(page.getContent()).hasSize(5);
+        assertThat(page.hasNext()).isFalse();
+        assertThat(page.getTotalMode()).isEqualTo(TotalMode.EXACT);
+        assertThat(page.getTotal()).isEqualTo(MEMBERS);
+        assertThat(page.getTotalPages()).isEqualTo(3);
+        assertThat(queryCapture.getExecutionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void exactCountDropsOrderByAndFetchJoins() {
+        JPAQuery<Member> query = queryFactory.selectFrom(member)
+                .leftJoin(member.team, team).fetchJoin()
+                .where(member.name.startsWith("paging-"))
+                .orderBy(member.name.asc());
+
+        String count = pager.countQuery(query).toString();
+        assertThat(count).doesNotContain("order by").doesNotContain("fetch").doesNotContain("join");
+
+        PageResult<Member> page = pager.fetch(query, 0, 10, TotalMode.EXACT);
+        assertThat(page.getTotal()).isEqualTo(MEMBERS);
+        assertThat(page.getContent().get(1).getTeam().getName()).isEqualTo("paging-teamB");
+        assertThat(queryCapture.getExecutionCount()).isEqualTo(2);
+
+        // 내부 조인은 건수를 거르므로 fetch만 빼고 남긴다.
+        JPAQuery<Member> inner = queryFactory.selectFrom(member)
+                .join(member.team, team).fetchJoin()
+                .where(member.name.startsWith("paging-"));
+        assertThat(pager.countQuery(inner).toString()).contains("inner join").doesNotContain("fetch");
+        assertThat(pager.count(inner)).isEqualTo(MEMBERS - MEMBERS / 5);
+
+        // 별칭을 조건에서 쓰면 left join도 남긴다.
+        JPAQuery<Member> filtered = queryFactory.selectFrom(member)
+                .leftJoin(member.team, team).fetchJoin()
+                .where(member.name.startsWith("paging-"), team.name.eq("paging-teamA"));
+        assertThat(pager.countQuery(filtered).toString()).contains("left join").doesNotContain("fetch");
+        assertThat(pager.count(filtered)).isEqualTo(10);
+    }
+
+    /**
+     * 쓰기를 한 트랜잭션에서는 count 결과를 캐시하지 않는다. 다른 트랜잭션에서 커밋된 데이터로 확인한다.
+     */
+    @Test
+    void estimatedCountIsCachedAcrossPages() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        tx.execute(status -> {
+            for (int i = 0; i < MEMBERS; i++) {
+                em.persist(new Member(String.format("committed-member%02d", i), i, null));
+            }
+            return null;
+        });
+        try {
+            queryCapture.clear();
+            tx.setReadOnly(true);
+            PageResult<Member> first = tx.execute(status -> pager.fetch(committedMembers(), 0, 10, TotalMode.ESTIMATED));
+            PageResult<Member> second = tx.execute(status -> pager.fetch(committedMembers(), 10, 10, TotalMode.ESTIMATED));
+
+            assertThat(first.getTotalMode()).isEqualTo(TotalMode.ESTIMATED);
+            assertThat(first.getTotal()).isEqualTo(MEMBERS);
+            assertThat(second.getTotal()).isEqualTo(MEMBERS);
+            assertThat(second.getContent().get(0).getName()).isEqualTo("committed-member10");
+            // 첫 페이지만 count를 실행한다.
+            assertThat(queryCapture.getExecutionCount()).isEqualTo(3);
+        } finally {
+            tx.setReadOnly(false);
+            tx.execute(status -> em.createQuery("delete from Member m where m.name like 'committed-member%'").executeUpdate());
+        }
+    }
+
+    @Test
+    void estimatedCountIsNotCachedAfterWrites() {
+        pager.fetch(members(), 0, 10, TotalMode.ESTIMATED);
+        PageResult<Member> second = pager.fetch(members(), 10, 10, TotalMode.ESTIMATED);
+
+        assertThat(second.getTotal()).isEqualTo(MEMBERS);
+        assertThat(queryCapture.getExecutionCount()).isEqualTo(4);
+    }
+
+    @Test
+    void estimateFromTableStatistics() {
+        queryCapture.clear();
+        PageResult<Member> page = pager.fetch(queryFactory.selectFrom(member), 0, 10, TotalMode.ESTIMATED);
+
+        assertThat(page.getTotal()).isGreaterThanOrEqualTo(11);
+        assertThat(queryCapture.getQueries()).noneMatch(query -> query.toString().contains("count("));
+    }
+
+    @Test
+    void groupByCount() {
+        // 팀이 없는 회원도 한 그룹이다.
+        JPAQuery<Tuple> query = queryFactory.select(member.team.id, member.count())
+                .from(member)
+                .where(member.name.startsWith("paging-"))
+                .groupBy(member.team.id)
+                .orderBy(member.team.id.asc());
+
+        PageResult<Tuple> page = pager.fetch(query, 0, 2, TotalMode.EXACT);
+
+        assertThat(page.getContent()).hasSize(2);
+        assertThat(page.hasNext()).isTrue();
+        assertThat(page.getTotal()).isEqualTo(3);
+    }
+
+    private JPAQuery<Member> committedMembers() {
+        return queryFactory.selectFrom(member)
+                .where(member.name.startsWith("committed-member"))
+                .orderBy(member.name.asc());
+    }
+
+    private JPAQuery<Member> members() {
+        return queryFactory.selectFrom(member)
+                .where(member.name.startsWith("paging-"))
+                .orderBy(member.name.asc());
+    }
+}
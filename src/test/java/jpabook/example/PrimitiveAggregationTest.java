@@ -0,0 +1,151 @@
+package jpabook.example;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import jpabook.example.aggregate.LongGroupAggregator;
+import jpabook.example.aggregate.PrimitiveColumns;
+import jpabook.example.aggregate.PrimitiveResultReader;
+import jpabook.example.domain.Member;
+import jpabook.example.domain.Team;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static jpabook.example.domain.QMember.member;
+import static jpabook.example.domain.QTeam.team;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Transactional
+public class PrimitiveAggregationTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    PrimitiveResultReader reader;
+
+    Team teamA;
+    Team teamB;
+
+    @BeforeEach
+    void init() {
+        teamA = new Team("aggregateTeamA");
+        teamB = new Team("aggregateTeamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamB));
+        em.persist(new Member("member4", 30, teamB));
+
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    void aggregation() {
+        PrimitiveColumns columns = reader.read(queryFactory.select(member.age)
+                .from(member)
+                .where(member.team.id.in(teamA.getId(), teamB.getId())), PrimitiveColumns.of(member.age));
+
+        assertThat(columns.getRowCount()).isEqualTo(4);
+        assertThat(columns.ints(member.age).sum()).isEqualTo(90);
+        assertThat(columns.ints(member.age).max()).isEqualTo(30);
+        assertThat(columns.ints(member.age).min()).isEqualTo(10);
+    }
+
+    /**
+     * QuerydslTest.group()과 같은 결과를 Tuple 없이 계산한다.
+     */
+    @Test
+    void group() {
+        List<Tuple> tuples = queryFactory.select(team.id, member.age.avg())
+                .from(member)
+                .join(member.team, team)
+                .where(team.id.in(teamA.getId(), teamB.getId()))
+                .groupBy(team.id)
+                .fetch();
+
+        PrimitiveColumns columns = reader.read(queryFactory.select(team.id, member.age)
+                .from(member)
+                .join(member.team, team)
+                .where(team.id.in(teamA.getId(), teamB.getId())), PrimitiveColumns.of(team.id, member.age));
+        LongGroupAggregator groups = columns.groupBy(team.id, member.age);
+
+        assertThat(groups.size()).isEqualTo(2);
+        for (Tuple tuple : tuples) {
+            assertThat(groups.avg(tuple.get(team.id))).isEqualTo(tuple.get(member.age.avg()));
+        }
+        assertThat(groups.avg(teamA.getId())).isEqualTo(15);
+        assertThat(groups.count(teamB.getId())).isEqualTo(2);
+    }
+
+    /**
+     * JPQL을 SQL로 번역해서 읽어도 파라미터, offset/limit, 자동 flush가 Querydsl fetch()와 같아야 한다.
+     */
+    @Test
+    void translatedSql() {
+        em.persist(new Member("member5", 40, em.find(Team.class, teamB.getId())));
+
+        PrimitiveColumns columns = reader.read(queryFactory.select(member.age)
+                .from(member)
+                .where(member.team.id.in(teamA.getId(), teamB.getId()), member.name.startsWith("member"))
+                .orderBy(member.age.asc())
+                .offset(1)
+                .limit(3), PrimitiveColumns.of(member.age));
+        List<Integer> ages = queryFactory.select(member.age)
+                .from(member)
+                .where(member.team.id.in(teamA.getId(), teamB.getId()), member.name.startsWith("member"))
+                .orderBy(member.age.asc())
+                .offset(1)
+                .limit(3)
+                .fetch();
+
+        assertThat(columns.getRowCount()).isEqualTo(3);
+        assertThat(columns.ints(member.age).sum()).isEqualTo(ages.stream().mapToInt(Integer::intValue).sum());
+
+        columns.clear();
+        reader.read(queryFactory.select(member.age).from(member).where(member.team.eq(teamB)), columns);
+        assertThat(columns.ints(member.age).sum()).isEqualTo(100);
+    }
+
+    @Test
+    void nativeSql() {
+        PrimitiveColumns columns = PrimitiveColumns.of(member.team.id, member.age);
+        reader.read("select team_id, age from member where team_id in (?, ?)", columns, teamA.getId(), teamB.getId());
+
+        LongGroupAggregator groups = columns.groupBy(member.team.id, member.age);
+        assertThat(groups.sum(teamA.getId())).isEqualTo(30);
+        assertThat(groups.sum(teamB.getId())).isEqualTo(60);
+
+        // clear() 후 같은 버퍼를 재사용한다.
+        columns.clear();
+        reader.read("select team_id, age from member where team_id = ?", columns, teamA.getId());
+        assertThat(columns.getRowCount()).isEqualTo(2);
+    }
+
+    @Test
+    void groupAggregatorRehash() {
+        LongGroupAggregator groups = new LongGroupAggregator(2);
+        for (long key = 0; key < 10_000; key++) {
+            groups.add(key, key);
+            groups.add(key, key + 2);
+        }
+
+        assertThat(groups.size()).isEqualTo(10_000);
+        assertThat(groups.avg(1234)).isEqualTo(1235);
+        assertThat(groups.min(9999)).isEqualTo(9999);
+        assertThat(groups.max(9999)).isEqualTo(10001);
+        assertThat(groups.contains(10_000)).isFalse();
+    }
+}
@@ -0,0 +1,122 @@
+package jpabook.example;
+
+import jpabook.example.domain.Item;
+import jpabook.example.domain.Member;
+import jpabook.example.domain.Order;
+import jpabook.example.domain.Team;
+import jpabook.example.prefetch.PrefetchScope;
+import jpabook.example.prefetch.ProxyPrefetcher;
+import jpabook.example.query.QueryCapture;
+import org.hibernate.Hibernate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Transactional
+public class ProxyPrefetchTest {
+
+    static final int TEAMS = 10;
+    static final int MEMBERS = 30;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    ProxyPrefetcher prefetcher;
+
+    @Autowired
+    QueryCapture queryCapture;
+
+    List<Long> orderIds = new ArrayList<>();
+
+    @BeforeEach
+    void init() {
+        List<Team> teams = new ArrayList<>();
+        for (int i = 0; i < TEAMS; i++) {
+            Team team = new Team("prefetch-team" + i);
+            em.persist(team);
+            teams.add(team);
+        }
+        Item item = new Item("prefetch-item");
+        em.persist(item);
+        for (int i = 0; i < MEMBERS; i++) {
+            Member member = new Member("prefetch-member" + i, i, teams.get(i % TEAMS));
+            em.persist(member);
+            Order order = new Order(member, item, 1);
+            em.persist(order);
+            orderIds.add(order.getId());
+        }
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    void withoutScope() {
+        long queries = walk();
+        assertThat(queries).isGreaterThan(1 + MEMBERS / 2);
+    }
+
+    @Test
+    void queriesProportionalToDepth() {
+        long queries;
+        Set<String> prefetchedTypes;
+        try (PrefetchScope scope = prefetcher.open()) {
+            queries = walk();
+            prefetchedTypes = scope.getPrefetched().keySet();
+            assertThat(scope.getPrefetched().get(Member.class.getName()))
+                    .isEqualTo(MEMBERS - 2);
+            assertThat(scope.getPrefetched().get(Team.class.getName()))
+                    .isEqualTo(TEAMS - 2);
+        }
+        // orders + (first batch + prefetch) for members + (first batch + prefetch) for teams
+        assertThat(queries).isEqualTo(5);
+        assertThat(prefetchedTypes).contains(Member.class.getName(), Team.class.getName());
+    }
+
+    @Test
+    void chunked() {
+        try (PrefetchScope scope = prefetcher.open(8)) {
+            walk();
+            assertThat(scope.getQueries().get(Member.class.getName())).isEqualTo((MEMBERS - 2 + 7) / 8);
+        }
+    }
+
+    @Test
+    void nestedScopesRestoreOuter() {
+        try (PrefetchScope outer = prefetcher.open()) {
+            try (PrefetchScope inner = prefetcher.open(4)) {
+                assertThat(inner.getMaxBatchSize()).isEqualTo(4);
+            }
+            walk();
+            assertThat(outer.getQueryCount()).isEqualTo(2);
+        }
+    }
+
+    /**
+     * 주문을 읽고 회원, 팀 이름까지 따라간다. 실행한 SELECT 수를 반환한다.
+     */
+    private long walk() {
+        queryCapture.clear();
+        List<Order> orders = em.createQuery("select o from Order o where o.id in :ids order by o.id", Order.class)
+                .setParameter("ids", orderIds)
+                .getResultList();
+        Set<String> names = new TreeSet<>();
+        for (Order order : orders) {
+            names.add(order.getMember().getTeam().getName());
+        }
+        assertThat(names).hasSize(TEAMS);
+        assertThat(orders).allSatisfy(order -> assertThat(Hibernate.isInitialized(order.getMember())).isTrue());
+        return queryCapture.getExecutionCount();
+    }
+}
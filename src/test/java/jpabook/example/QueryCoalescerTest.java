@@ -0,0 +1,361 @@
+package jpabook.example;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import jpabook.example.cache.QueryCacheKey;
+import jpabook.example.coalesce.CoalesceStats;
+import jpabook.example.coalesce.QueryCoalescer;
+import jpabook.example.domain.Member;
+import jpabook.example.domain.MemberDto;
+import jpabook.example.domain.QMemberDto;
+import jpabook.example.pool.ConnectionLease;
+import jpabook.example.pool.PoolInstrumentation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.QueryTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static jpabook.example.domain.QMember.member;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+public class QueryCoalescerTest {
+
+    static final String PREFIX = "coalesce-";
+    static final int THREADS = 8;
+
+    @Autowired
+    QueryCoalescer coalescer;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    PoolInstrumentation poolInstrumentation;
+
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    @BeforeEach
+    void init() {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            rows.add(new Object[]{810_000_000L + i, i, PREFIX + i});
+        }
+        jdbcTemplate.batchUpdate("insert into member (member_id, age, name) values (?, ?, ?)", rows);
+    }
+
+    @AfterEach
+    void cleanup() {
+        executor.shutdownNow();
+        jdbcTemplate.update("delete from member where name like ?", PREFIX + "%");
+    }
+
+    @Test
+    void concurrentCallersShareOneExecution() throws Exception {
+        QueryCacheKey key = new QueryCacheKey("test-shared", 1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        long coalescedBefore = coalescer.getStats().getCoalescedCallers();
+
+        List<Future<List<String>>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> coalescer.execute(key, Duration.ofSeconds(10), () -> {
+                loads.incrementAndGet();
+                await(release);
+                return Arrays.asList("a", "b");
+            })));
+        }
+        while (coalescer.getStats().getCoalescedCallers() - coalescedBefore < THREADS - 1) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+
+        List<List<String>> results = new ArrayList<>();
+        for (Future<List<String>> future : futures) {
+            results.add(future.get(10, TimeUnit.SECONDS));
+        }
+        assertThat(loads).hasValue(1);
+        assertThat(results).allSatisfy(result -> assertThat(result).containsExactly("a", "b"));
+        // 호출마다 다른 리스트를 받는다.
+        results.get(0).set(0, "changed");
+        assertThat(results.get(1)).containsExactly("a", "b");
+        assertThat(coalescer.getStats().getCoalescedByFingerprint()).containsKey("test-shared");
+    }
+
+    @Test
+    void waitingCallerTimesOut() throws Exception {
+        QueryCacheKey key = new QueryCacheKey("test-timeout");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        long timeoutsBefore = coalescer.getStats().getTimeouts();
+
+        Future<List<String>> leader = executor.submit(() -> coalescer.execute(key, Duration.ofSeconds(10), () -> {
+            started.countDown();
+            await(release);
+            return Arrays.asList("late");
+        }));
+        started.await();
+
+        assertThatThrownBy(() -> coalescer.execute(key, Duration.ofMillis(50), () -> Arrays.asList("own")))
+                .isInstanceOf(QueryTimeoutException.class);
+        release.countDown();
+        assertThat(leader.get(10, TimeUnit.SECONDS)).containsExactly("late");
+        assertThat(coalescer.getStats().getTimeouts()).isEqualTo(timeoutsBefore + 1);
+    }
+
+    @Test
+    void failureIsSharedAndNotRemembered() throws Exception {
+        QueryCacheKey key = new QueryCacheKey("test-failure");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<List<String>> leader = executor.submit(() -> coalescer.execute(key, Duration.ofSeconds(10), () -> {
+            started.countDown();
+            await(release);
+            throw new IllegalStateException("boom");
+        }));
+        started.await();
+        Future<List<String>> follower = executor.submit(
+                () -> coalescer.execute(key, Duration.ofSeconds(10), () -> Arrays.asList("own")));
+        while (coalescer.getStats().getCoalescedByFingerprint().getOrDefault("test-failure", 0L) == 0) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+
+        assertThatThrownBy(() -> leader.get(10, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+                .hasRootCauseMessage("boom");
+        assertThatThrownBy(() -> follower.get(10, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+                .hasRootCauseMessage("boom");
+        assertThat(coalescer.execute(key, Duration.ofSeconds(10), () -> Arrays.asList("again")))
+                .containsExactly("again");
+    }
+
+    @Test
+    void fetchProjection() {
+        JPAQuery<MemberDto> query = olderThan(20);
+        String fingerprint = coalescer.enable(query);
+        long executionsBefore = coalescer.getStats().getExecutions();
+
+        assertThat(coalescer.isEnabled(fingerprint)).isTrue();
+        assertThat(coalescer.fingerprint(olderThan(25))).isEqualTo(fingerprint);
+        assertThat(coalescer.fetch(olderThan(20))).extracting(MemberDto::getAge)
+                .containsExactly(21, 22, 23, 24, 25, 26, 27, 28, 29);
+        assertThat(coalescer.fetch(olderThan(27))).extracting(MemberDto::getAge).containsExactly(28, 29);
+        assertThat(coalescer.getStats().getExecutions()).isEqualTo(executionsBefore + 2);
+        coalescer.disable(fingerprint);
+    }
+
+    @Test
+    void notEnabledRunsDirectly() {
+        long executionsBefore = coalescer.getStats().getExecutions();
+
+        assertThat(coalescer.fetch(olderThan(27))).hasSize(2);
+        assertThat(coalescer.getStats().getExecutions()).isEqualTo(executionsBefore);
+    }
+
+    @Test
+    void entityProjectionIsRejected() {
+        JPAQuery<Member> query = queryFactory.selectFrom(member).where(member.isOlderThan(20));
+        String fingerprint = coalescer.enable(query);
+
+        assertThatThrownBy(() -> coalescer.fetch(query)).isInstanceOf(IllegalArgumentException.class);
+        coalescer.disable(fingerprint);
+    }
+
+    @Test
+    void pendingChangesBypass() {
+        String fingerprint = coalescer.enable(olderThan(20));
+        CoalesceStats before = coalescer.getStats();
+
+        List<MemberDto> result = transactionTemplate.execute(status -> {
+            em.persist(new Member(PREFIX + "new", 40, null));
+            List<MemberDto> members = coalescer.fetch(olderThan(30));
+            status.setRollbackOnly();
+            return members;
+        });
+
+        assertThat(result).extracting(MemberDto::getAge).containsExactly(40);
+        assertThat(coalescer.getStats().getBypassed()).isEqualTo(before.getBypassed() + 1);
+        assertThat(coalescer.getStats().getExecutions()).isEqualTo(before.getExecutions());
+        coalescer.disable(fingerprint);
+    }
+
+    /**
+     * flush한 쓰기가 있는 트랜잭션은 실행하는 쪽이 되지 않으므로 커밋되지 않은 행이 다른 호출에 전달되지 않는다.
+     */
+    @Test
+    void flushedWriterDoesNotLead() {
+        String fingerprint = coalescer.enable(olderThan(20));
+        CoalesceStats before = coalescer.getStats();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            em.persist(new Member(PREFIX + "flushed", 40, null));
+            em.flush();
+
+            assertThat(coalescer.fetch(olderThan(30))).extracting(MemberDto::getAge).containsExactly(40);
+            assertThat(coalescer.getStats().getInFlight()).isZero();
+            try {
+                assertThat(executor.submit(() -> coalescer.fetch(olderThan(30))).get(10, TimeUnit.SECONDS)).isEmpty();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            status.setRollbackOnly();
+        });
+
+        CoalesceStats after = coalescer.getStats();
+        assertThat(after.getBypassed()).isEqualTo(before.getBypassed() + 1);
+        assertThat(after.getExecutions()).isEqualTo(before.getExecutions() + 1);
+        coalescer.disable(fingerprint);
+    }
+
+    @Test
+    void readOnlyTransactionCoalesces() {
+        String fingerprint = coalescer.enable(olderThan(20));
+        long executionsBefore = coalescer.getStats().getExecutions();
+        TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnly.setReadOnly(true);
+
+        List<MemberDto> result = readOnly.execute(status -> coalescer.fetch(olderThan(27)));
+        assertThat(result).hasSize(2);
+        assertThat(coalescer.getStats().getExecutions()).isEqualTo(executionsBefore + 1);
+        coalescer.disable(fingerprint);
+    }
+
+    /**
+     * 합류한 호출도 자기만의 DTO, Tuple을 받는다. 한 호출이 결과를 바꿔도 다른 호출에 보이지 않는다.
+     */
+    @Test
+    void callersGetOwnProjections() throws Exception {
+        String fingerprint = coalescer.enable(olderThan(20));
+        String tupleFingerprint = coalescer.enable(tupleOlderThan(20));
+        long coalescedBefore = coalescer.getStats().getCoalescedCallers();
+
+        for (int round = 0; round < 50 && coalescer.getStats().getCoalescedCallers() == coalescedBefore; round++) {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<List<Object>>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                boolean tuple = i % 2 == 0;
+                futures.add(executor.submit(() -> {
+                    await(start);
+                    return new ArrayList<>(tuple ? coalescer.fetch(tupleOlderThan(20)) : coalescer.fetch(olderThan(20)));
+                }));
+            }
+            start.countDown();
+
+            Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            int total = 0;
+            for (Future<List<Object>> future : futures) {
+                List<Object> result = future.get(10, TimeUnit.SECONDS);
+                assertThat(result).hasSize(9);
+                seen.addAll(result);
+                total += result.size();
+            }
+            assertThat(seen).hasSize(total);
+        }
+        assertThat(coalescer.getStats().getCoalescedCallers()).isGreaterThan(coalescedBefore);
+        coalescer.disable(fingerprint);
+        coalescer.disable(tupleFingerprint);
+    }
+
+    @Test
+    void mutableValueIsRejected() {
+        JPAQuery<Tuple> query = queryFactory.select(member.name, Expressions.dateTimeTemplate(Date.class, "current_timestamp"))
+                .from(member);
+        String fingerprint = coalescer.enable(query);
+
+        assertThatThrownBy(() -> coalescer.fetch(query)).isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("mutable");
+        coalescer.disable(fingerprint);
+    }
+
+    /**
+     * 읽기 전용 트랜잭션은 시작할 때 커넥션을 받으므로 합류해서 기다리는 호출도 커넥션을 잡고 있다.
+     */
+    @Test
+    void readOnlyWaiterHoldsConnection() throws Exception {
+        QueryCacheKey key = new QueryCacheKey("test-read-only");
+        TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnly.setReadOnly(true);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Thread> waiter = new AtomicReference<>();
+
+        Future<List<String>> leader = executor.submit(() -> readOnly.execute(status ->
+                coalescer.execute(key, Duration.ofSeconds(10), () -> {
+                    started.countDown();
+                    await(release);
+                    return Arrays.asList("shared");
+                })));
+        started.await();
+        Future<List<String>> follower = executor.submit(() -> readOnly.execute(status -> {
+            waiter.set(Thread.currentThread());
+            return coalescer.execute(key, Duration.ofSeconds(10), () -> Arrays.asList("own"));
+        }));
+        while (coalescer.getStats().getCoalescedByFingerprint().getOrDefault("test-read-only", 0L) == 0) {
+            Thread.sleep(10);
+        }
+
+        assertThat(poolInstrumentation.getMetrics().findLeaks(Duration.ZERO))
+                .extracting(ConnectionLease::getThread)
+                .contains(waiter.get());
+        release.countDown();
+        assertThat(leader.get(10, TimeUnit.SECONDS)).containsExactly("shared");
+        assertThat(follower.get(10, TimeUnit.SECONDS)).containsExactly("shared");
+    }
+
+    private JPAQuery<Tuple> tupleOlderThan(int age) {
+        return queryFactory.select(member.name, member.age)
+                .from(member)
+                .where(member.name.startsWith(PREFIX), member.isOlderThan(age))
+                .orderBy(member.age.asc());
+    }
+
+    private JPAQuery<MemberDto> olderThan(int age) {
+        return queryFactory.select(new QMemberDto(member.name, member.age))
+                .from(member)
+                .where(member.name.startsWith(PREFIX), member.isOlderThan(age))
+                .orderBy(member.age.asc());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package jpabook.example;
+
+import jpabook.example.cache.CachedQueries;
+import jpabook.example.cache.QueryCacheKey;
+import jpabook.example.cache.QueryCacheStats;
+import jpabook.example.cache.QueryResultCache;
+import jpabook.example.domain.Member;
+import jpabook.example.domain.Team;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 쓰기를 한 트랜잭션은 캐시를 거치지 않으므로 데이터는 커밋해서 준비하고 끝나면 지운다.
+ */
+@SpringBootTest
+public class QueryResultCacheTest {
+
+    static final String JPQL = "select m from Member m where m.team.id = :teamId";
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    CachedQueries cachedQueries;
+
+    @Autowired
+    QueryResultCache queryResultCache;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    TransactionTemplate tx;
+    Long teamId;
+
+    @BeforeEach
+    void init() {
+        tx = new TransactionTemplate(transactionManager);
+        teamId = tx.execute(status -> {
+            Team team = new Team("cacheTeam");
+            em.persist(team);
+            em.persist(new Member("member1", 10, team));
+            em.persist(new Member("member2", 20, team));
+            return team.getId();
+        });
+        queryResultCache.invalidateAll();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        tx.execute(status -> {
+            em.createQuery("delete from Member m where m.team.id = :teamId").setParameter("teamId", teamId).executeUpdate();
+            em.createQuery("delete from Team t where t.id = :teamId").setParameter("teamId", teamId).executeUpdate();
+            return null;
+        });
+    }
+
+    @Test
+    void nativeQuery() {
+        String sql = "select member_id, age, name, team_id from member where team_id = ?";
+        QueryCacheStats before = cachedQueries.getStats();
+
+        List<Member> result1 = cachedQueries.nativeQuery(sql, Member.class, teamId);
+        List<Member> result2 = cachedQueries.nativeQuery(sql, Member.class, teamId);
+
+        assertThat(result1).hasSize(2);
+        assertThat(result2).isSameAs(result1);
+
+        QueryCacheStats after = cachedQueries.getStats();
+        assertThat(after.getMissCount() - before.getMissCount()).isEqualTo(1);
+        assertThat(after.getHitCount() - before.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void namedNativeQuery() {
+        List<Member> result1 = cachedQueries.namedNativeQuery("Member.memberSQL", 15);
+        List<Member> result2 = cachedQueries.namedNativeQuery("Member.memberSQL", 15);
+        List<Member> result3 = cachedQueries.namedNativeQuery("Member.memberSQL", 25);
+
+        assertThat(result2).isSameAs(result1);
+        assertThat(result3).isNotSameAs(result1);
+    }
+
+    /**
+     * 플러시로 member 테이블에 insert가 나간 트랜잭션은 캐시를 거치지 않는다.
+     * 커밋되지 않은 행을 다른 세션에 보여주지 않도록 결과를 저장하지도 않는다.
+     */
+    @Test
+    void bypassAfterFlush() {
+        List<Member> cached = cachedQueries.jpql(JPQL, Member.class, Map.of("teamId", teamId));
+
+        tx.execute(status -> {
+            em.persist(new Member("member3", 30, em.getReference(Team.class, teamId)));
+            em.flush();
+            QueryCacheStats before = cachedQueries.getStats();
+
+            List<Member> result1 = cachedQueries.jpql(JPQL, Member.class, Map.of("teamId", teamId));
+            List<Member> result2 = cachedQueries.jpql(JPQL, Member.class, Map.of("teamId", teamId));
+            assertThat(result1).hasSize(3);
+            assertThat(result2).isNotSameAs(result1).hasSize(3);
+
+            QueryCacheStats after = cachedQueries.getStats();
+            assertThat(after.getHitCount()).isEqualTo(before.getHitCount());
+            assertThat(after.getMissCount()).isEqualTo(before.getMissCount());
+            // 무효화는 커밋 뒤에 한다.
+            assertThat(after.getInvalidationCount()).isEqualTo(before.getInvalidationCount());
+
+            status.setRollbackOnly();
+            return null;
+        });
+
+        // 롤백됐으므로 다른 세션은 캐시된 결과를 그대로 본다.
+        assertThat(cachedQueries.jpql(JPQL, Member.class, Map.of("teamId", teamId))).isSameAs(cached);
+    }
+
+    /**
+     * 자동 플러시로 쓰기가 나간 조회의 결과는 저장하지 않는다.
+     */
+    @Test
+    void noPutAfterAutoFlush() {
+        tx.execute(status -> {
+            em.persist(new Member("member3", 30, em.getReference(Team.class, teamId)));
+
+            assertThat(cachedQueries.jpql(JPQL, Member.class, Map.of("teamId", teamId))).hasSize(3);
+            assertThat(cachedQueries.getStats().getSize()).isZero();
+
+            status.setRollbackOnly();
+            return null;
+        });
+
+        assertThat(cachedQueries.jpql(JPQL, Member.class, Map.of("teamId", teamId)))
+                .extracting(Member::getName)
+                .containsExactlyInAnyOrder("member1", "member2");
+    }
+
+    @Test
+    void invalidateOnCommit() {
+        List<Member> result1 = cachedQueries.jpql(JPQL, Member.class, Map.of("teamId", teamId));
+        long invalidations = cachedQueries.getStats().getInvalidationCount();
+
+        tx.execute(status -> {
+            em.persist(new Member("member3", 30, em.getReference(Team.class, teamId)));
+            em.flush();
+            assertThat(cachedQueries.getStats().getInvalidationCount()).isEqualTo(invalidations);
+            return null;
+        });
+        assertThat(cachedQueries.getStats().getInvalidationCount()).isGreaterThan(invalidations);
+
+        List<Member> result2 = cachedQueries.jpql(JPQL, Member.class, Map.of("teamId", teamId));
+        assertThat(result2).isNotSameAs(result1).hasSize(3);
+    }
+
+    @Test
+    void invalidateOnBulkUpdate() {
+        String sql = "select member_id, age, name, team_id from member where team_id = ?";
+        List<Member> result1 = cachedQueries.nativeQuery(sql, Member.class, teamId);
+
+        tx.execute(status -> em.createQuery("update Member m set m.age = 40 where m.team.id = :teamId")
+                .setParameter("teamId", teamId)
+                .executeUpdate());
+
+        List<Member> result2 = cachedQueries.nativeQuery(sql, Member.class, teamId);
+        assertThat(result2).isNotSameAs(result1);
+        assertThat(result2).extracting(Member::getAge).containsOnly(40);
+    }
+
+    @Test
+    void unknownTablesInvalidateAll() {
+        QueryResultCache cache = new QueryResultCache(10, Duration.ofMinutes(1));
+        QueryCacheKey key = new QueryCacheKey("select 1", 1);
+        cache.put(key, Set.of("member"), List.of(1));
+
+        cache.recordWrite(Set.of());
+
+        assertThat(cache.<Integer>getIfPresent(key)).isNull();
+    }
+
+    /**
+     * 조회 도중 다른 트랜잭션의 커밋으로 무효화되면 그 조회 결과는 저장하지 않는다.
+     */
+    @Test
+    void noPutAfterConcurrentInvalidation() {
+        QueryResultCache cache = new QueryResultCache(10, Duration.ofMinutes(1));
+        QueryCacheKey key = new QueryCacheKey("select 1", 1);
+
+        List<Integer> result = cache.get(key, Set.of("member"), () -> {
+            cache.invalidateTable("MEMBER");
+            return List.of(1);
+        });
+        assertThat(result).containsExactly(1);
+        assertThat(cache.<Integer>getIfPresent(key)).isNull();
+
+        // 다른 테이블의 무효화는 상관없다.
+        cache.get(key, Set.of("member"), () -> {
+            cache.invalidateTable("orders");
+            return List.of(2);
+        });
+        assertThat(cache.<Integer>getIfPresent(key)).containsExactly(2);
+    }
+
+    @Test
+    void lruAndTtl() throws InterruptedException {
+        QueryResultCache cache = new QueryResultCache(2, Duration.ofMillis(50));
+        QueryCacheKey key1 = new QueryCacheKey("select 1", 1);
+        QueryCacheKey key2 = new QueryCacheKey("select 2", 2);
+        QueryCacheKey key3 = new QueryCacheKey("select 3", 3);
+
+        cache.put(key1, Set.of("member"), List.of(1));
+        cache.put(key2, Set.of("member"), List.of(2));
+        cache.getIfPresent(key1);
+        cache.put(key3, Set.of("orders"), List.of(3));
+
+        // key2가 가장 오래 사용되지 않았으므로 제거된다.
+        assertThat(cache.<Integer>getIfPresent(key2)).isNull();
+        assertThat(cache.<Integer>getIfPresent(key1)).containsExactly(1);
+        assertThat(cache.getStats().getEvictionCount()).isEqualTo(1);
+
+        cache.invalidateTable("orders");
+        assertThat(cache.<Integer>getIfPresent(key3)).isNull();
+
+        Thread.sleep(100);
+        assertThat(cache.<Integer>getIfPresent(key1)).isNull();
+        assertThat(cache.getStats().getExpirationCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,122 @@
+package jpabook.example;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import jpabook.example.domain.Item;
+import jpabook.example.domain.Member;
+import jpabook.example.domain.Team;
+import jpabook.example.flush.FlushCause;
+import jpabook.example.flush.FlushStats;
+import jpabook.example.flush.QuerySpaceFlushListener;
+import org.hibernate.engine.spi.SelfDirtinessTracker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static jpabook.example.domain.QItem.item;
+import static jpabook.example.domain.QMember.member;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+@SpringBootTest
+@Transactional
+public class QuerySpaceFlushTest {
+
+    static final int MEMBERS = 50;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    QuerySpaceFlushListener flushListener;
+
+    List<Member> members = new ArrayList<>();
+
+    @BeforeEach
+    void init() {
+        assumeTrue(SelfDirtinessTracker.class.isAssignableFrom(Member.class), "-PnoEnhancement");
+        Team team = new Team("flush-team");
+        em.persist(team);
+        em.persist(new Item("flush-item"));
+        for (int i = 0; i < MEMBERS; i++) {
+            Member member = new Member("flush-member" + i, i, team);
+            em.persist(member);
+            members.add(member);
+        }
+        em.flush();
+        flushListener.reset();
+    }
+
+    @Test
+    void unrelatedQuerySkipsDirtyCheck() {
+        members.get(0).setName("flush-renamed");
+
+        assertThat(queryFactory.selectFrom(item).where(item.name.eq("flush-item")).fetch()).hasSize(1);
+        assertThat(count(FlushCause.AUTO_SKIPPED)).isEqualTo(1);
+        assertThat(count(FlushCause.AUTO) + count(FlushCause.AUTO_NOT_NEEDED)).isZero();
+
+        assertThat(queryFactory.selectFrom(member).where(member.name.eq("flush-renamed")).fetch())
+                .containsExactly(members.get(0));
+        FlushStats auto = flushListener.getStats().get(FlushCause.AUTO);
+        assertThat(auto.getCount()).isEqualTo(1);
+        assertThat(auto.getEntitiesChecked()).isGreaterThanOrEqualTo(MEMBERS);
+    }
+
+    @Test
+    void pendingInsertIsFlushed() {
+        em.persist(new Item("flush-item2"));
+
+        assertThat(queryFactory.selectFrom(item).where(item.name.startsWith("flush-item")).fetch()).hasSize(2);
+        assertThat(count(FlushCause.AUTO)).isEqualTo(1);
+    }
+
+    @Test
+    void pendingDeleteIsFlushed() {
+        em.remove(members.get(1));
+
+        assertThat(queryFactory.selectFrom(member).where(member.name.startsWith("flush-member")).fetch())
+                .hasSize(MEMBERS - 1);
+        assertThat(count(FlushCause.AUTO)).isEqualTo(1);
+    }
+
+    @Test
+    void cleanContextSkips() {
+        assertThat(queryFactory.selectFrom(member).where(member.name.startsWith("flush-member")).fetch())
+                .hasSize(MEMBERS);
+        assertThat(count(FlushCause.AUTO_SKIPPED)).isEqualTo(1);
+    }
+
+    @Test
+    void nativeQueryWithoutSpacesIsNotSkipped() {
+        members.get(0).setAge(100);
+
+        em.createNativeQuery("select count(*) from item").getSingleResult();
+        assertThat(count(FlushCause.AUTO_SKIPPED)).isZero();
+    }
+
+    @Test
+    void explicitFlush() {
+        members.get(0).setAge(100);
+        em.flush();
+
+        Map<FlushCause, FlushStats> stats = flushListener.getStats();
+        assertThat(stats.get(FlushCause.EXPLICIT).getCount()).isEqualTo(1);
+        assertThat(stats.get(FlushCause.EXPLICIT).getEntitiesChecked()).isGreaterThanOrEqualTo(MEMBERS);
+        assertThat(em.createQuery("select m.age from Member m where m.id = :id", Integer.class)
+                .setParameter("id", members.get(0).getId())
+                .getSingleResult()).isEqualTo(100);
+    }
+
+    private long count(FlushCause cause) {
+        return flushListener.getStats().get(cause).getCount();
+    }
+}
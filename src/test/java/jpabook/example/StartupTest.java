@@ -0,0 +1,95 @@
+package jpabook.example;
+
+import jpabook.example.flush.QuerySpaceFlushListener;
+import jpabook.example.prefetch.ProxyPrefetcher;
+import jpabook.example.startup.StartupTimeline;
+import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.NamedNativeQueries;
+import javax.persistence.NamedNativeQuery;
+import javax.persistence.metamodel.EntityType;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * prod 프로필은 hibernate.query.startup_check를 끄므로 이름 있는 쿼리는 빌드 시점에 이 테스트로 검증한다.
+ */
+public class StartupTest {
+
+    @Test
+    void startupTimelineAndNamedQueries() throws Exception {
+        try (ConfigurableApplicationContext context = ExampleApplication.createApplication()
+                .run("--jpabook.startup.background-bootstrap=true", "--spring.jpa.hibernate.ddl-auto=update")) {
+
+            EntityManagerFactory emf = context.getBean(EntityManagerFactory.class);
+            EntityManager em = emf.createEntityManager();
+            try {
+                em.createQuery("select count(m) from Member m").getSingleResult();
+            } finally {
+                em.close();
+            }
+
+            StartupTimeline timeline = context.getBean(StartupTimeline.class);
+            Map<String, Duration> phases = timeline.getPhaseDurations();
+            System.out.println("phases = " + phases);
+
+            assertThat(phases).containsKeys("application.starting", "context.refreshed", "application.ready");
+            assertThat(timeline.isMarked(StartupTimeline.JPA_BOOTSTRAPPED)).isTrue();
+            assertThat(timeline.getTimeToFirstQuery()).isNotNull();
+
+            // 리스너는 부트스트랩 스레드에서 SessionFactory를 만들 때 등록된다.
+            EventListenerRegistry registry = emf.unwrap(SessionFactoryImplementor.class)
+                    .getServiceRegistry()
+                    .getService(EventListenerRegistry.class);
+            assertThat(registry.getEventListenerGroup(EventType.AUTO_FLUSH).listeners())
+                    .containsExactly(context.getBean(QuerySpaceFlushListener.class));
+            assertThat(registry.getEventListenerGroup(EventType.POST_LOAD).listeners())
+                    .contains(context.getBean(ProxyPrefetcher.class));
+
+            validateNamedQueries(emf, context.getBean(DataSource.class));
+        }
+    }
+
+    private void validateNamedQueries(EntityManagerFactory emf, DataSource dataSource) throws Exception {
+        SessionFactoryImplementor sessionFactory = emf.unwrap(SessionFactoryImplementor.class);
+        Map<String, HibernateException> errors = sessionFactory.getNamedQueryRepository()
+                .checkNamedQueries(sessionFactory.getQueryPlanCache());
+        assertThat(errors).isEmpty();
+
+        // 네이티브 쿼리는 H2에서 prepare 해서 테이블과 컬럼 이름까지 확인한다.
+        List<NamedNativeQuery> nativeQueries = new ArrayList<>();
+        for (EntityType<?> entity : emf.getMetamodel().getEntities()) {
+            NamedNativeQueries queries = entity.getJavaType().getAnnotation(NamedNativeQueries.class);
+            if (queries != null) {
+                nativeQueries.addAll(List.of(queries.value()));
+            }
+            NamedNativeQuery query = entity.getJavaType().getAnnotation(NamedNativeQuery.class);
+            if (query != null) {
+                nativeQueries.add(query);
+            }
+        }
+        assertThat(nativeQueries).extracting(NamedNativeQuery::name).contains("Member.memberSQL", "Member.memberWithOrderCount");
+
+        try (Connection connection = dataSource.getConnection()) {
+            for (NamedNativeQuery query : nativeQueries) {
+                try (PreparedStatement ignored = connection.prepareStatement(query.query())) {
+                    System.out.println("validated = " + query.name());
+                }
+            }
+        }
+    }
+}
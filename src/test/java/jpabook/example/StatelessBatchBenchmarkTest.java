@@ -0,0 +1,128 @@
+package jpabook.example;
+
+import jpabook.example.batch.BatchResult;
+import jpabook.example.batch.StatelessBatchTemplate;
+import jpabook.example.domain.Member;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static jpabook.example.domain.QMember.member;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 같은 ETL 작업을 EntityManager와 StatelessSession으로 실행해서 처리량과 힙 사용량을 비교한다.
+ *
+ * ./gradlew benchmark --tests '*StatelessBatchBenchmarkTest'
+ *
+ * 힙은 마지막 행을 처리하는 시점에 GC 후 남아 있는 크기다. EntityManager는 1차 캐시와 스냅샷이 남는다.
+ */
+@Tag("benchmark")
+@SpringBootTest
+public class StatelessBatchBenchmarkTest {
+
+    static final String PREFIX = "bench-etl-";
+    static final int ROWS = 100_000;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    StatelessBatchTemplate batchTemplate;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    long retainedBytes;
+
+    @AfterEach
+    void cleanup() {
+        jdbcTemplate.update("delete from member where name like ?", PREFIX + "%");
+    }
+
+    @Test
+    void insertAndUpdate() {
+        long start = System.nanoTime();
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < ROWS; i++) {
+                em.persist(new Member(PREFIX + i, 10, null));
+                sampleAtLastRow(i);
+            }
+        });
+        print("stateful  insert", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Member> members = em.createQuery("select m from Member m where m.name like :name", Member.class)
+                    .setParameter("name", PREFIX + "%")
+                    .getResultList();
+            for (int i = 0; i < members.size(); i++) {
+                members.get(i).setAge(20);
+                sampleAtLastRow(i);
+            }
+        });
+        print("stateful  update", System.nanoTime() - start);
+        cleanup();
+
+        BatchResult inserted = batchTemplate.insert(generate());
+        print("stateless insert", inserted.getElapsed().toNanos());
+
+        int[] index = {0};
+        BatchResult updated = batchTemplate.process(query -> query
+                .selectFrom(member)
+                .where(member.name.startsWith(PREFIX)), (m, writer) -> {
+            m.setAge(20);
+            writer.update(m);
+            sampleAtLastRow(index[0]++);
+        });
+        print("stateless update", updated.getElapsed().toNanos());
+
+        assertThat(updated.getWriteCount()).isEqualTo(ROWS);
+    }
+
+    /**
+     * 행을 미리 만들어 두지 않고 그때그때 생성한다. 마지막 행을 넘길 때 힙을 측정한다.
+     */
+    private Iterable<Member> generate() {
+        return () -> new Iterator<>() {
+            final Iterator<Integer> ids = IntStream.range(0, ROWS).iterator();
+
+            @Override
+            public boolean hasNext() {
+                return ids.hasNext();
+            }
+
+            @Override
+            public Member next() {
+                int i = ids.next();
+                sampleAtLastRow(i);
+                return new Member(PREFIX + i, 10, null);
+            }
+        };
+    }
+
+    private void sampleAtLastRow(int i) {
+        if (i == ROWS - 1) {
+            System.gc();
+            Runtime runtime = Runtime.getRuntime();
+            retainedBytes = runtime.totalMemory() - runtime.freeMemory();
+        }
+    }
+
+    private void print(String name, long nanos) {
+        System.out.printf("%s: %,d rows/s, heap after GC at last row = %,d KB%n",
+                name, ROWS * 1_000_000_000L / nanos, retainedBytes / 1024);
+    }
+}
@@ -0,0 +1,135 @@
+package jpabook.example;
+
+import com.querydsl.jpa.JPAExpressions;
+import jpabook.example.batch.BatchException;
+import jpabook.example.batch.BatchResult;
+import jpabook.example.batch.StatelessBatchTemplate;
+import jpabook.example.domain.Member;
+import jpabook.example.domain.Order;
+import jpabook.example.domain.QMember;
+import jpabook.example.domain.QOrder;
+import jpabook.example.domain.Team;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static jpabook.example.domain.QMember.member;
+import static jpabook.example.domain.QOrder.order;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * StatelessBatchTemplate은 자체 트랜잭션으로 커밋하므로 @Transactional 없이 실행하고 직접 정리한다.
+ */
+@SpringBootTest
+public class StatelessBatchTest {
+
+    static final String PREFIX = "etl-";
+    static final int COUNT = 2_500;
+
+    @Autowired
+    StatelessBatchTemplate batchTemplate;
+
+    Team team;
+
+    @BeforeEach
+    void init() {
+        team = new Team("etlTeam");
+        batchTemplate.insert(List.of(team));
+
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            members.add(new Member(PREFIX + i, 10, team));
+        }
+        BatchResult result = batchTemplate.insert(members);
+
+        assertThat(result.getWriteCount()).isEqualTo(COUNT);
+        assertThat(result.getChunkCount()).isEqualTo(3);
+        assertThat(members).allMatch(m -> m.getId() != null);
+    }
+
+    @AfterEach
+    void cleanup() {
+        batchTemplate.execute(query -> query.delete(order)
+                .where(order.member.in(JPAExpressions.selectFrom(member).where(member.name.startsWith(PREFIX))))
+                .execute());
+        batchTemplate.execute(query -> query.delete(member)
+                .where(member.name.startsWith(PREFIX))
+                .execute());
+        batchTemplate.delete(List.of(team));
+    }
+
+    @Test
+    void read() {
+        List<String> names = new ArrayList<>();
+
+        BatchResult result = batchTemplate.read(query -> query
+                .select(member.name)
+                .from(member)
+                .where(member.name.startsWith(PREFIX))
+                .orderBy(member.id.asc()), names::add);
+
+        assertThat(result.getReadCount()).isEqualTo(COUNT);
+        assertThat(result.getWriteCount()).isZero();
+        assertThat(names).hasSize(COUNT).startsWith(PREFIX + 0, PREFIX + 1);
+    }
+
+    @Test
+    void process() {
+        BatchResult result = batchTemplate.process(query -> query
+                .selectFrom(member)
+                .where(member.name.startsWith(PREFIX)), (m, writer) -> {
+            m.setAge(m.getAge() + 1);
+            writer.update(m);
+            writer.insert(new Order(m, null, 2));
+        });
+
+        assertThat(result.getReadCount()).isEqualTo(COUNT);
+        assertThat(result.getWriteCount()).isEqualTo(COUNT * 2);
+        assertThat(result.getChunkCount()).isEqualTo(3);
+
+        assertThat(countMembers(11)).isEqualTo(COUNT);
+        Long orders = batchTemplate.execute(query -> query
+                .select(QOrder.order.count())
+                .from(QOrder.order)
+                .where(QOrder.order.member.name.startsWith(PREFIX), QOrder.order.quantity.eq(2))
+                .fetchOne());
+        assertThat(orders).isEqualTo(COUNT);
+    }
+
+    @Test
+    void failedChunkIsRolledBack() {
+        int[] seen = {0};
+
+        assertThatThrownBy(() -> batchTemplate.process(query -> query
+                .selectFrom(member)
+                .where(member.name.startsWith(PREFIX))
+                .orderBy(member.id.asc()), (m, writer) -> {
+            if (++seen[0] == 1_500) {
+                throw new IllegalStateException("boom");
+            }
+            m.setAge(20);
+            writer.update(m);
+        }))
+                .isInstanceOf(BatchException.class)
+                .hasCauseInstanceOf(IllegalStateException.class)
+                .extracting("committedCount", "committedChunks")
+                .containsExactly(1_000L, 1);
+
+        assertThat(countMembers(20)).isEqualTo(1_000);
+        assertThat(countMembers(10)).isEqualTo(COUNT - 1_000);
+    }
+
+    private long countMembers(int age) {
+        return batchTemplate.execute(query -> query
+                .select(QMember.member.count())
+                .from(QMember.member)
+                .where(QMember.member.name.startsWith(PREFIX), QMember.member.age.eq(age))
+                .fetchOne());
+    }
+}